@@ -0,0 +1,471 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel parser for uncompressed delimited files (user, item, preference
+ * and, optionally, timestamp per line). The file is split on line boundaries
+ * into ranges which are memory-mapped and parsed concurrently on a fork-join
+ * pool; the records of the parsed ranges are then passed to a visitor in file
+ * order, so that a data model built from them is the same as the one built by
+ * a sequential parse. Thread-safe visitors (e.g., one that adds the records to
+ * a {@link ConcurrentDataModel}) can instead receive the records directly from
+ * the parsing threads, which avoids buffering and merging the ranges.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+final class ChunkedFileParser {
+
+    /**
+     * Minimum size (in bytes) of a range.
+     */
+    static final long MIN_CHUNK_SIZE = 1L << 20;
+    /**
+     * Maximum size (in bytes) of a range.
+     */
+    static final long MAX_CHUNK_SIZE = 1L << 28;
+    /**
+     * Number of ranges per thread, to balance the load.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+    /**
+     * Initial capacity (in records) of the buffer of a range, which grows
+     * with the records actually parsed.
+     */
+    private static final int INITIAL_BUFFER_CAPACITY = 1 << 10;
+    /**
+     * Size of the buffer used to look for line boundaries.
+     */
+    private static final int SCAN_BUFFER_SIZE = 8192;
+    /**
+     * Utility classes should not have a public constructor.
+     */
+    private ChunkedFileParser() {
+    }
+
+    /**
+     * Checks whether a file can be parsed by this parser: it has to be an
+     * uncompressed regular file and the separator a single ASCII character.
+     *
+     * @param f the file.
+     * @param token the separator between fields.
+     * @return true if the file can be parsed in parallel.
+     */
+    static boolean supports(final File f, final String token) {
+        if ((f == null) || (!f.isFile()) || (token.length() != 1) || (token.charAt(0) > Byte.MAX_VALUE)) {
+            return false;
+        }
+        return !CompressedInput.isCompressed(f);
+    }
+
+    /**
+     * Parses a file, passing its records to a visitor.
+     *
+     * @param f the file.
+     * @param delimiter the separator between fields.
+     * @param withTimestamps whether timestamps should be parsed.
+     * @param visitor the visitor of the records.
+     * @param parallelism number of threads.
+     * @throws IOException if the file cannot be read.
+     */
+    static void parse(final File f, final char delimiter, final boolean withTimestamps, final RecordVisitor visitor, final int parallelism) throws IOException {
+        parse(f, delimiter, withTimestamps, visitor, parallelism, 0L);
+    }
+
+    /**
+     * Parses a file, passing its records to a visitor, with a given range
+     * size.
+     *
+     * @param f the file.
+     * @param delimiter the separator between fields.
+     * @param withTimestamps whether timestamps should be parsed.
+     * @param visitor the visitor of the records.
+     * @param parallelism number of threads.
+     * @param chunkSize size of the ranges, or 0 to derive it from the file
+     * size and the number of threads.
+     * @throws IOException if the file cannot be read.
+     */
+    static void parse(final File f, final char delimiter, final boolean withTimestamps, final RecordVisitor visitor, final int parallelism, final long chunkSize) throws IOException {
+        parse(f, delimiter, withTimestamps, visitor, parallelism, chunkSize, false);
+    }
+
+    /**
+     * Parses a file, passing its records to a visitor, with a given range
+     * size.
+     *
+     * @param f the file.
+     * @param delimiter the separator between fields.
+     * @param withTimestamps whether timestamps should be parsed.
+     * @param visitor the visitor of the records.
+     * @param parallelism number of threads.
+     * @param chunkSize size of the ranges, or 0 to derive it from the file
+     * size and the number of threads.
+     * @param concurrentVisitor whether the visitor is thread-safe, in which
+     * case it is called from the parsing threads and records are not visited
+     * in file order.
+     * @throws IOException if the file cannot be read.
+     */
+    static void parse(final File f, final char delimiter, final boolean withTimestamps, final RecordVisitor visitor, final int parallelism, final long chunkSize,
+            final boolean concurrentVisitor) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            long targetSize = chunkSize;
+            if (targetSize <= 0L) {
+                targetSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, size / ((long) parallelism * CHUNKS_PER_THREAD)));
+            }
+            List<Long> bounds = findLineBounds(channel, size, targetSize);
+            int numChunks = bounds.size() - 1;
+            // keep a bounded number of parsed ranges in memory: one per thread
+            // plus the one being merged
+            int window = parallelism + 1;
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                List<Future<PreferenceBuffer>> futures = new ArrayList<>(numChunks);
+                for (int c = 0; c < numChunks; c++) {
+                    futures.add(null);
+                }
+                int submitted = 0;
+                for (int c = 0; c < numChunks; c++) {
+                    while (submitted < numChunks && submitted < c + window) {
+                        futures.set(submitted, pool.submit(new ChunkTask(channel, bounds.get(submitted), bounds.get(submitted + 1),
+                                (byte) delimiter, withTimestamps, submitted == 0, concurrentVisitor ? visitor : null)));
+                        submitted++;
+                    }
+                    PreferenceBuffer buffer = getResult(futures.get(c));
+                    futures.set(c, null);
+                    if (buffer != null) {
+                        buffer.visitAll(visitor);
+                    }
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Splits a file into ranges that start and end on line boundaries.
+     *
+     * @param channel the channel of the file.
+     * @param size the size of the file.
+     * @param chunkSize the approximate size of every range.
+     * @return the offsets of the boundaries, starting with 0 and ending with
+     * the size of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    private static List<Long> findLineBounds(final FileChannel channel, final long size, final long chunkSize) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = 0L;
+        while (position < size) {
+            long next = position + chunkSize;
+            if (next >= size) {
+                next = size;
+            } else {
+                // move to the first byte after the next line break
+                boolean found = false;
+                while (!found && next < size) {
+                    buffer.clear();
+                    int read = channel.read(buffer, next);
+                    if (read <= 0) {
+                        next = size;
+                        break;
+                    }
+                    for (int i = 0; i < read; i++) {
+                        if (buffer.get(i) == '\n') {
+                            next += i + 1;
+                            found = true;
+                            break;
+                        }
+                    }
+                    if (!found) {
+                        next += read;
+                    }
+                }
+                next = Math.min(next, size);
+            }
+            bounds.add(next);
+            position = next;
+        }
+        return bounds;
+    }
+
+    /**
+     * Waits for a parsed range.
+     *
+     * @param future the pending result.
+     * @return the preferences of the range (null if they were visited
+     * directly).
+     * @throws IOException if the range could not be read.
+     */
+    private static PreferenceBuffer getResult(final Future<PreferenceBuffer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Task that parses a range of the file.
+     */
+    private static final class ChunkTask implements Callable<PreferenceBuffer> {
+
+        /**
+         * The channel of the file.
+         */
+        private final FileChannel channel;
+        /**
+         * First byte of the range.
+         */
+        private final long start;
+        /**
+         * Last byte of the range (exclusive).
+         */
+        private final long end;
+        /**
+         * The separator between fields.
+         */
+        private final byte delimiter;
+        /**
+         * Whether timestamps should be parsed.
+         */
+        private final boolean withTimestamps;
+        /**
+         * Whether this is the first range of the file (that may have a
+         * header).
+         */
+        private final boolean first;
+        /**
+         * Thread-safe visitor that receives the records directly (null if
+         * they have to be buffered).
+         */
+        private final RecordVisitor sink;
+
+        /**
+         * Constructor.
+         *
+         * @param fc the channel of the file.
+         * @param from first byte of the range.
+         * @param to last byte of the range (exclusive).
+         * @param sep the separator between fields.
+         * @param timestamps whether timestamps should be parsed.
+         * @param isFirst whether this is the first range of the file.
+         * @param directVisitor thread-safe visitor of the records, or null to
+         * buffer them.
+         */
+        ChunkTask(final FileChannel fc, final long from, final long to, final byte sep, final boolean timestamps, final boolean isFirst,
+                final RecordVisitor directVisitor) {
+            this.channel = fc;
+            this.start = from;
+            this.end = to;
+            this.delimiter = sep;
+            this.withTimestamps = timestamps;
+            this.first = isFirst;
+            this.sink = directVisitor;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public PreferenceBuffer call() throws IOException {
+            int length = (int) (end - start);
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            CharSequence chars = LineTokenizer.asCharSequence(buffer);
+            LineTokenizer tokenizer = new LineTokenizer(String.valueOf((char) delimiter));
+            PreferenceBuffer prefs = null;
+            if (sink == null) {
+                prefs = new PreferenceBuffer(INITIAL_BUFFER_CAPACITY, withTimestamps);
+            }
+            int lineStart = 0;
+            boolean checkHeader = first;
+            while (lineStart < length) {
+                int lineEnd = lineStart;
+                while (lineEnd < length && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int next = lineEnd + 1;
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                if (checkHeader) {
+                    // as in the sequential parser, a first line with letters is a header
+                    checkHeader = false;
+                    if (hasLetters(buffer, lineStart, lineEnd)) {
+                        lineStart = next;
+                        continue;
+                    }
+                }
+                // blank lines are skipped, as in the sequential parser
+                if (lineEnd > lineStart) {
+                    parseLine(tokenizer.tokenize(chars, lineStart, lineEnd), prefs);
+                }
+                lineStart = next;
+            }
+            return prefs;
+        }
+
+        /**
+         * Checks whether a range of bytes contains ASCII letters.
+         *
+         * @param buffer the bytes.
+         * @param from first position (inclusive).
+         * @param to last position (exclusive).
+         * @return true if there is a letter in the range.
+         */
+        private static boolean hasLetters(final ByteBuffer buffer, final int from, final int to) {
+            for (int i = from; i < to; i++) {
+                byte b = buffer.get(i);
+                if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z')) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Parses a line.
+         *
+         * @param toks the tokens of the line.
+         * @param prefs where the parsed preference is stored (null if it is
+         * passed to the direct visitor).
+         */
+        private void parseLine(final LineTokenizer toks, final PreferenceBuffer prefs) {
+            long user = toks.getLong(SimpleParser.USER_TOK);
+            long item = toks.getLong(SimpleParser.ITEM_TOK);
+            double preference = toks.getDouble(SimpleParser.RATING_TOK);
+            long timestamp = -1L;
+            if (withTimestamps && toks.size() > SimpleParser.TIME_TOK) {
+                timestamp = toks.getLong(SimpleParser.TIME_TOK);
+            }
+            if (prefs == null) {
+                sink.visit(user, item, preference, timestamp);
+            } else {
+                prefs.add(user, item, preference, timestamp);
+            }
+        }
+    }
+
+    /**
+     * Growable buffer of parsed preferences.
+     */
+    private static final class PreferenceBuffer {
+
+        /**
+         * The users.
+         */
+        private long[] users;
+        /**
+         * The items.
+         */
+        private long[] items;
+        /**
+         * The preferences.
+         */
+        private double[] preferences;
+        /**
+         * The timestamps (null if not parsed).
+         */
+        private long[] timestamps;
+        /**
+         * Number of preferences in the buffer.
+         */
+        private int size;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity initial capacity.
+         * @param withTimestamps whether timestamps are stored.
+         */
+        PreferenceBuffer(final int capacity, final boolean withTimestamps) {
+            users = new long[capacity];
+            items = new long[capacity];
+            preferences = new double[capacity];
+            timestamps = withTimestamps ? new long[capacity] : null;
+            size = 0;
+        }
+
+        /**
+         * Adds a preference to the buffer.
+         *
+         * @param u the user.
+         * @param i the item.
+         * @param d the preference.
+         * @param t the timestamp (-1 if not available).
+         */
+        void add(final long u, final long i, final double d, final long t) {
+            if (size == users.length) {
+                int capacity = size << 1;
+                users = Arrays.copyOf(users, capacity);
+                items = Arrays.copyOf(items, capacity);
+                preferences = Arrays.copyOf(preferences, capacity);
+                if (timestamps != null) {
+                    timestamps = Arrays.copyOf(timestamps, capacity);
+                }
+            }
+            users[size] = u;
+            items[size] = i;
+            preferences[size] = d;
+            if (timestamps != null) {
+                timestamps[size] = t;
+            }
+            size++;
+        }
+
+        /**
+         * Passes the preferences in the buffer to a visitor, in the order
+         * they were parsed.
+         *
+         * @param visitor the visitor.
+         */
+        void visitAll(final RecordVisitor visitor) {
+            for (int k = 0; k < size; k++) {
+                visitor.visit(users[k], items[k], preferences[k], timestamps == null ? -1L : timestamps[k]);
+            }
+        }
+    }
+}
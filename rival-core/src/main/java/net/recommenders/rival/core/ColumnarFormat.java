@@ -0,0 +1,394 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary columnar format for data models. A file starts with a header
+ * (magic number, version, number of preferences, users, items and
+ * timestamps, and rows per block) followed by blocks of preferences. Every
+ * block stores five columns, each one compressed with a {@link Deflater}:
+ * users (as differences with the previous row), items, preferences, number
+ * of timestamps of each preference, and the timestamps themselves (sorted,
+ * as differences within every preference). Every column but the preferences
+ * is stored as variable-length integers (zig-zag encoded when they may be
+ * negative), so that small ids and differences take one or two bytes. Ids
+ * must be numeric.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+final class ColumnarFormat {
+
+    /**
+     * Magic number at the beginning of every file ("RVCF").
+     */
+    static final int MAGIC = 0x52564346;
+    /**
+     * Version of the format.
+     */
+    static final int VERSION = 2;
+    /**
+     * Number of preferences per block.
+     */
+    static final int BLOCK_ROWS = 1 << 16;
+    /**
+     * Maximum number of bytes of a variable-length long.
+     */
+    static final int MAX_VARLONG_BYTES = 10;
+
+    /**
+     * Utility classes should not have a public constructor.
+     */
+    private ColumnarFormat() {
+    }
+
+    /**
+     * Writes a data model.
+     *
+     * @param <U> type of users
+     * @param <I> type of items
+     * @param dm the data model (its timestamps are written if it is
+     * temporal).
+     * @param out the output stream.
+     * @throws IOException if the model cannot be written.
+     */
+    @SuppressWarnings("unchecked")
+    static <U, I> void write(final DataModelIF<U, I> dm, final DataOutputStream out) throws IOException {
+        Map<U, Map<I, Set<Long>>> timestamps = null;
+        if (dm instanceof TemporalDataModelIF) {
+            timestamps = ((TemporalDataModelIF<U, I>) dm).getUserItemTimestamps();
+        }
+        long numPreferences = 0L;
+        long numTimestamps = 0L;
+        for (Map.Entry<U, Map<I, Double>> e : dm.getUserItemPreferences().entrySet()) {
+            numPreferences += e.getValue().size();
+            Map<I, Set<Long>> userTimestamps = timestamps == null ? null : timestamps.get(e.getKey());
+            if (userTimestamps != null) {
+                for (I i : e.getValue().keySet()) {
+                    Set<Long> set = userTimestamps.get(i);
+                    numTimestamps += set == null ? 0 : set.size();
+                }
+            }
+        }
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(numPreferences);
+        out.writeInt(dm.getNumUsers());
+        out.writeInt(dm.getNumItems());
+        out.writeLong(numTimestamps);
+        out.writeInt(BLOCK_ROWS);
+        Block block = new Block();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            long previousUser = 0L;
+            for (Map.Entry<U, Map<I, Double>> e : dm.getUserItemPreferences().entrySet()) {
+                long user = toLong(e.getKey());
+                Map<I, Set<Long>> userTimestamps = timestamps == null ? null : timestamps.get(e.getKey());
+                for (Map.Entry<I, Double> p : e.getValue().entrySet()) {
+                    Set<Long> set = userTimestamps == null ? null : userTimestamps.get(p.getKey());
+                    if (block.rows == 0) {
+                        // users are decoded from the start of every block
+                        previousUser = 0L;
+                    }
+                    block.add(user - previousUser, toLong(p.getKey()), p.getValue(), set);
+                    previousUser = user;
+                    if (block.rows == BLOCK_ROWS) {
+                        block.write(out, deflater);
+                    }
+                }
+            }
+            if (block.rows > 0) {
+                block.write(out, deflater);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Converts an id into a long.
+     *
+     * @param id the id.
+     * @return the id as a long.
+     */
+    private static long toLong(final Object id) {
+        if (!(id instanceof Number)) {
+            throw new IllegalArgumentException("Only numeric ids can be stored in the columnar format: " + id);
+        }
+        return ((Number) id).longValue();
+    }
+
+    /**
+     * Reads the header of a file.
+     *
+     * @param f the file.
+     * @return the number of preferences, users, items and timestamps in the
+     * file.
+     * @throws IOException if the header cannot be read or is not valid.
+     */
+    static long[] readHeader(final File f) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 64));
+        try {
+            return readHeader(f, in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Checks the header of a file.
+     *
+     * @param f the file (for the error messages).
+     * @param in the input stream.
+     * @return the number of preferences, users, items and timestamps in the
+     * file.
+     * @throws IOException if the header is not valid.
+     */
+    static long[] readHeader(final File f, final DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a columnar data file: " + f);
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of the columnar format: " + f);
+        }
+        long numPreferences = in.readLong();
+        long numUsers = in.readInt();
+        long numItems = in.readInt();
+        long numTimestamps = in.readLong();
+        in.readInt();
+        return new long[]{numPreferences, numUsers, numItems, numTimestamps};
+    }
+
+    /**
+     * Maps a signed long to an unsigned one, so that values close to zero
+     * (positive or negative) are small.
+     *
+     * @param value the value.
+     * @return the zig-zag encoded value.
+     */
+    static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverses {@link #zigZag(long)}.
+     *
+     * @param value the zig-zag encoded value.
+     * @return the value.
+     */
+    static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    /**
+     * Writes an (unsigned) variable-length long: seven bits per byte, with
+     * the highest bit set on every byte but the last.
+     *
+     * @param buffer the buffer.
+     * @param value the value.
+     */
+    static void putVarLong(final ByteBuffer buffer, final long value) {
+        long v = value;
+        while ((v & ~0x7FL) != 0L) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    /**
+     * Reads an (unsigned) variable-length long.
+     *
+     * @param buffer the buffer.
+     * @return the value.
+     */
+    static long getVarLong(final ByteBuffer buffer) {
+        long v = 0L;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return v;
+    }
+
+    /**
+     * Reads a compressed column.
+     *
+     * @param in the input stream.
+     * @param inflater the decompressor.
+     * @return the uncompressed column.
+     * @throws IOException if the column cannot be read.
+     */
+    static ByteBuffer readColumn(final DataInputStream in, final Inflater inflater) throws IOException {
+        int rawLength = in.readInt();
+        byte[] compressed = new byte[in.readInt()];
+        in.readFully(compressed);
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                n += inflater.inflate(raw, n, rawLength - n);
+            }
+            if (n != rawLength) {
+                throw new IOException("Truncated column in columnar data file");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        return ByteBuffer.wrap(raw);
+    }
+
+    /**
+     * Block of preferences being written.
+     */
+    private static final class Block {
+
+        /**
+         * Users, as differences with the previous row.
+         */
+        private final ByteBuffer users = ByteBuffer.allocate(BLOCK_ROWS * MAX_VARLONG_BYTES);
+        /**
+         * Items.
+         */
+        private final ByteBuffer items = ByteBuffer.allocate(BLOCK_ROWS * MAX_VARLONG_BYTES);
+        /**
+         * Preferences.
+         */
+        private final ByteBuffer preferences = ByteBuffer.allocate(BLOCK_ROWS * 8);
+        /**
+         * Number of timestamps of every preference.
+         */
+        private final ByteBuffer counts = ByteBuffer.allocate(BLOCK_ROWS * 5);
+        /**
+         * Timestamps, as differences within every preference.
+         */
+        private ByteBuffer timestamps = ByteBuffer.allocate(BLOCK_ROWS * 8);
+        /**
+         * Buffer where the timestamps of a preference are sorted.
+         */
+        private long[] sorted = new long[16];
+        /**
+         * Buffer for the compressed columns.
+         */
+        private byte[] compressed = new byte[BLOCK_ROWS * 8];
+        /**
+         * Number of rows in the block.
+         */
+        private int rows = 0;
+
+        /**
+         * Adds a preference to the block.
+         *
+         * @param userDelta the user, minus the user of the previous row.
+         * @param item the item.
+         * @param preference the preference.
+         * @param times the timestamps of the preference (may be null).
+         */
+        void add(final long userDelta, final long item, final double preference, final Set<Long> times) {
+            putVarLong(users, zigZag(userDelta));
+            putVarLong(items, zigZag(item));
+            preferences.putDouble(preference);
+            int n = times == null ? 0 : times.size();
+            putVarLong(counts, n);
+            if (n > 0) {
+                if (timestamps.remaining() < n * MAX_VARLONG_BYTES) {
+                    ByteBuffer bigger = ByteBuffer.allocate(Math.max(timestamps.capacity() * 2, timestamps.position() + n * MAX_VARLONG_BYTES));
+                    timestamps.flip();
+                    bigger.put(timestamps);
+                    timestamps = bigger;
+                }
+                if (sorted.length < n) {
+                    sorted = new long[Math.max(n, sorted.length * 2)];
+                }
+                int k = 0;
+                for (Long t : times) {
+                    sorted[k++] = t;
+                }
+                Arrays.sort(sorted, 0, n);
+                putVarLong(timestamps, zigZag(sorted[0]));
+                for (k = 1; k < n; k++) {
+                    // the difference is positive, even if it overflows a signed long
+                    putVarLong(timestamps, sorted[k] - sorted[k - 1]);
+                }
+            }
+            rows++;
+        }
+
+        /**
+         * Writes the block and empties it.
+         *
+         * @param out the output stream.
+         * @param deflater the compressor.
+         * @throws IOException if the block cannot be written.
+         */
+        void write(final DataOutputStream out, final Deflater deflater) throws IOException {
+            out.writeInt(rows);
+            writeColumn(users, out, deflater);
+            writeColumn(items, out, deflater);
+            writeColumn(preferences, out, deflater);
+            writeColumn(counts, out, deflater);
+            writeColumn(timestamps, out, deflater);
+            rows = 0;
+        }
+
+        /**
+         * Compresses and writes a column, and empties it.
+         *
+         * @param column the column.
+         * @param out the output stream.
+         * @param deflater the compressor.
+         * @throws IOException if the column cannot be written.
+         */
+        private void writeColumn(final ByteBuffer column, final DataOutputStream out, final Deflater deflater) throws IOException {
+            int length = column.position();
+            deflater.reset();
+            deflater.setInput(column.array(), 0, length);
+            deflater.finish();
+            int n = 0;
+            while (!deflater.finished()) {
+                if (n == compressed.length) {
+                    byte[] bigger = new byte[compressed.length * 2];
+                    System.arraycopy(compressed, 0, bigger, 0, n);
+                    compressed = bigger;
+                }
+                n += deflater.deflate(compressed, n, compressed.length - n);
+            }
+            out.writeInt(length);
+            out.writeInt(n);
+            out.write(compressed, 0, n);
+            column.clear();
+        }
+    }
+}
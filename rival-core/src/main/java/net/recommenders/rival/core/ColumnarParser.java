@@ -0,0 +1,270 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Inflater;
+
+/**
+ * Parser of the binary columnar format written by
+ * {@link DataModelUtils#saveColumnarDataModel(DataModelIF, String, boolean)}.
+ * Files are recognized by their extension ({@link #EXTENSION}); they are read
+ * block by block, without any text parsing, into models presized with the
+ * counts in the header of the file; non-temporal models are loaded straight
+ * into a {@link PrimitiveDataModel}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public class ColumnarParser implements StreamingParser {
+
+    /**
+     * Extension of the files in the columnar format.
+     */
+    public static final String EXTENSION = ".rcf";
+
+    /**
+     * Checks whether a file is in the columnar format, according to its
+     * extension.
+     *
+     * @param f The file.
+     * @return true if the file is in the columnar format.
+     */
+    public static boolean isColumnarFile(final File f) {
+        return f.getName().endsWith(EXTENSION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PrimitiveDataModel parseData(final File f) throws IOException {
+        long[] header = ColumnarFormat.readHeader(f);
+        PrimitiveDataModel dataset = new PrimitiveDataModel((int) header[1], (int) header[2], toCapacity(header[0]));
+        read(f, new PreferenceLoader(dataset));
+        return dataset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TemporalDataModelIF<Long, Long> parseTemporalData(final File f) throws IOException {
+        long[] header = ColumnarFormat.readHeader(f);
+        int numUsers = DataModelUtils.mapCapacity((int) header[1]);
+        Map<Long, Map<Long, Double>> preferences = new HashMap<>(numUsers);
+        Set<Long> items = new HashSet<>(DataModelUtils.mapCapacity((int) header[2]));
+        Map<Long, Map<Long, Set<Long>>> timestamps = new HashMap<>(header[3] == 0L ? 0 : numUsers);
+        TemporalDataModelIF<Long, Long> dataset = new TemporalDataModel<>(false, preferences, items, timestamps);
+        read(f, new TemporalLoader(dataset));
+        return dataset;
+    }
+
+    /**
+     * Parse a data file, passing every preference to a visitor. Since a
+     * preference is visited only once, it is visited with its first timestamp
+     * (or -1 if it has none).
+     *
+     * @param f The file to be parsed.
+     * @param visitor The visitor of the records.
+     * @throws IOException if the file cannot be read.
+     */
+    @Override
+    public void parse(final File f, final RecordVisitor visitor) throws IOException {
+        read(f, new RecordForwarder(visitor));
+    }
+
+    /**
+     * Converts the number of preferences in a header into the capacity of a
+     * model.
+     *
+     * @param numPreferences The number of preferences.
+     * @return The capacity.
+     */
+    private static int toCapacity(final long numPreferences) {
+        return (int) Math.min(numPreferences, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Reads a timestamp of a preference.
+     *
+     * @param timestamps The timestamps column, positioned at the timestamp.
+     * @param k The position of the timestamp among those of the preference.
+     * @param previous The previous timestamp of the preference.
+     * @return The timestamp.
+     */
+    private static long readTimestamp(final ByteBuffer timestamps, final int k, final long previous) {
+        long v = ColumnarFormat.getVarLong(timestamps);
+        return k == 0 ? ColumnarFormat.unZigZag(v) : previous + v;
+    }
+
+    /**
+     * Reads a file block by block.
+     *
+     * @param f The file to be read.
+     * @param visitor The visitor of the preferences.
+     * @throws IOException if the file cannot be read.
+     */
+    private static void read(final File f, final BlockVisitor visitor) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+        Inflater inflater = new Inflater();
+        try {
+            long remaining = ColumnarFormat.readHeader(f, in)[0];
+            while (remaining > 0) {
+                int rows;
+                try {
+                    rows = in.readInt();
+                } catch (EOFException e) {
+                    throw new IOException("Truncated columnar data file: " + f, e);
+                }
+                ByteBuffer users = ColumnarFormat.readColumn(in, inflater);
+                ByteBuffer items = ColumnarFormat.readColumn(in, inflater);
+                ByteBuffer preferences = ColumnarFormat.readColumn(in, inflater);
+                ByteBuffer counts = ColumnarFormat.readColumn(in, inflater);
+                ByteBuffer timestamps = ColumnarFormat.readColumn(in, inflater);
+                long user = 0L;
+                for (int r = 0; r < rows; r++) {
+                    user += ColumnarFormat.unZigZag(ColumnarFormat.getVarLong(users));
+                    long item = ColumnarFormat.unZigZag(ColumnarFormat.getVarLong(items));
+                    visitor.visit(user, item, preferences.getDouble(), timestamps, (int) ColumnarFormat.getVarLong(counts));
+                }
+                remaining -= rows;
+            }
+        } finally {
+            inflater.end();
+            in.close();
+        }
+    }
+
+    /**
+     * Visitor of the preferences of a block.
+     */
+    private interface BlockVisitor {
+
+        /**
+         * Visits a preference. The visitor has to consume the timestamps of
+         * the preference.
+         *
+         * @param user The user.
+         * @param item The item.
+         * @param preference The preference.
+         * @param timestamps The timestamps column, positioned at the first
+         * timestamp of the preference (stored as variable-length
+         * differences, see {@link ColumnarFormat}).
+         * @param numTimestamps The number of timestamps of the preference.
+         */
+        void visit(long user, long item, double preference, ByteBuffer timestamps, int numTimestamps);
+    }
+
+    /**
+     * Block visitor that adds the preferences (without timestamps) to a
+     * {@link PrimitiveDataModel}.
+     */
+    private static final class PreferenceLoader implements BlockVisitor {
+
+        /**
+         * The model where the preferences are added.
+         */
+        private final PrimitiveDataModel dataset;
+
+        /**
+         * Constructor.
+         *
+         * @param model The model where the preferences are added.
+         */
+        PreferenceLoader(final PrimitiveDataModel model) {
+            this.dataset = model;
+        }
+
+        @Override
+        public void visit(final long user, final long item, final double preference, final ByteBuffer timestamps, final int numTimestamps) {
+            dataset.addPreference(user, item, preference);
+        }
+    }
+
+    /**
+     * Block visitor that adds the preferences and all their timestamps to a
+     * temporal model.
+     */
+    private static final class TemporalLoader implements BlockVisitor {
+
+        /**
+         * The model where the preferences are added.
+         */
+        private final TemporalDataModelIF<Long, Long> dataset;
+
+        /**
+         * Constructor.
+         *
+         * @param model The model where the preferences are added.
+         */
+        TemporalLoader(final TemporalDataModelIF<Long, Long> model) {
+            this.dataset = model;
+        }
+
+        @Override
+        public void visit(final long user, final long item, final double preference, final ByteBuffer timestamps, final int numTimestamps) {
+            dataset.addPreference(user, item, preference);
+            long t = 0L;
+            for (int k = 0; k < numTimestamps; k++) {
+                t = readTimestamp(timestamps, k, t);
+                dataset.addTimestamp(user, item, t);
+            }
+        }
+    }
+
+    /**
+     * Block visitor that passes every preference, with its first timestamp,
+     * to a record visitor.
+     */
+    private static final class RecordForwarder implements BlockVisitor {
+
+        /**
+         * The visitor of the records.
+         */
+        private final RecordVisitor visitor;
+
+        /**
+         * Constructor.
+         *
+         * @param recordVisitor The visitor of the records.
+         */
+        RecordForwarder(final RecordVisitor recordVisitor) {
+            this.visitor = recordVisitor;
+        }
+
+        @Override
+        public void visit(final long user, final long item, final double preference, final ByteBuffer timestamps, final int numTimestamps) {
+            long t = -1L;
+            if (numTimestamps > 0) {
+                t = readTimestamp(timestamps, 0, 0L);
+                for (int k = 1; k < numTimestamps; k++) {
+                    ColumnarFormat.getVarLong(timestamps);
+                }
+            }
+            visitor.visit(user, item, preference, t);
+        }
+    }
+}
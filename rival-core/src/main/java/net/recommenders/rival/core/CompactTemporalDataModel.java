@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Set;
+
+/**
+ * Temporal data model that stores the timestamps of every (user, item) pair
+ * as a sorted, delta-encoded run of primitive longs instead of a hash set of
+ * boxed longs, which greatly reduces the memory needed by datasets with many
+ * timestamps per pair (e.g., listening logs). The sets returned by
+ * {@link #getUserItemTimestamps()} iterate the timestamps in increasing
+ * order and do not support removals.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ *
+ * @param <U> generic type for users
+ * @param <I> generic type for items
+ */
+public class CompactTemporalDataModel<U, I> extends TemporalDataModel<U, I> {
+
+    /**
+     * Default constructor.
+     */
+    public CompactTemporalDataModel() {
+        super();
+    }
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param ignoreDupPreferences The flag to indicate whether preferences
+     * should be ignored.
+     */
+    public CompactTemporalDataModel(final boolean ignoreDupPreferences) {
+        super(ignoreDupPreferences);
+    }
+
+    /**
+     * Method that creates the set where the timestamps between a user and an
+     * item are stored, as a delta-encoded run of primitive longs.
+     *
+     * @return an empty set of timestamps.
+     */
+    @Override
+    protected Set<Long> newTimestampSet() {
+        return new TimestampSet();
+    }
+}
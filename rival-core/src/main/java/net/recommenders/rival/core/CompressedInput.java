@@ -0,0 +1,371 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens data files that may be compressed or archived, depending on their
+ * extension: gzip files (.gz, possibly with several members), zip archives
+ * (.zip), and tar archives, either plain (.tar) or gzipped (.tgz and
+ * .tar.gz). From an archive, the first regular file is read, unless the name
+ * of an entry is given. Compressed files are decompressed on a background
+ * thread (see {@link ReadAheadInputStream}), so that decompression and
+ * parsing run concurrently.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+final class CompressedInput {
+
+    /**
+     * Size of the buffers of the decompressing streams.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Size of a tar block.
+     */
+    private static final int TAR_BLOCK = 512;
+
+    /**
+     * Utility classes should not have a public constructor.
+     */
+    private CompressedInput() {
+    }
+
+    /**
+     * Checks whether a file is compressed or archived, according to its
+     * extension.
+     *
+     * @param f the file.
+     * @return true if the file is compressed or archived.
+     */
+    static boolean isCompressed(final File f) {
+        String name = f.getName();
+        return name.endsWith(".gz") || name.endsWith(".tgz") || name.endsWith(".zip") || name.endsWith(".tar");
+    }
+
+    /**
+     * Opens a file, decompressing it if needed.
+     *
+     * @param f the file.
+     * @param entry the name (or the path suffix) of the entry to be read if
+     * the file is an archive, or null for the first regular file in it.
+     * @return the uncompressed contents of the file (or of the entry).
+     * @throws IOException if the file cannot be read.
+     * @throws FileNotFoundException if the entry is not in the archive.
+     */
+    static InputStream open(final File f, final String entry) throws IOException {
+        String name = f.getName();
+        InputStream in = new FileInputStream(f);
+        try {
+            if (name.endsWith(".tgz") || name.endsWith(".tar.gz")) {
+                in = openTarEntry(new GZIPInputStream(in, BUFFER_SIZE), f, entry);
+            } else if (name.endsWith(".gz")) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            } else if (name.endsWith(".zip")) {
+                in = openZipEntry(new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE)), f, entry);
+            } else if (name.endsWith(".tar")) {
+                in = openTarEntry(new BufferedInputStream(in, BUFFER_SIZE), f, entry);
+            } else {
+                return in;
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new ReadAheadInputStream(in);
+    }
+
+    /**
+     * Positions a zip stream at the beginning of an entry.
+     *
+     * @param zip the zip stream.
+     * @param f the file, for the error messages.
+     * @param entry the name (or the path suffix) of the entry, or null for
+     * the first regular file.
+     * @return the stream, positioned at the entry.
+     * @throws IOException if the archive cannot be read or the entry is not
+     * in it.
+     */
+    private static InputStream openZipEntry(final ZipInputStream zip, final File f, final String entry) throws IOException {
+        ZipEntry e;
+        while ((e = zip.getNextEntry()) != null) {
+            if (!e.isDirectory() && matches(e.getName(), entry)) {
+                return zip;
+            }
+        }
+        throw notFound(f, entry);
+    }
+
+    /**
+     * Positions a tar stream at the beginning of an entry.
+     *
+     * @param tar the tar stream.
+     * @param f the file, for the error messages.
+     * @param entry the name (or the path suffix) of the entry, or null for
+     * the first regular file.
+     * @return a stream with the contents of the entry.
+     * @throws IOException if the archive cannot be read or the entry is not
+     * in it.
+     */
+    private static InputStream openTarEntry(final InputStream tar, final File f, final String entry) throws IOException {
+        byte[] header = new byte[TAR_BLOCK];
+        String longName = null;
+        while (true) {
+            readFully(tar, header, header.length);
+            if (header[0] == 0) {
+                // end of the archive
+                throw notFound(f, entry);
+            }
+            long size = parseTarSize(header);
+            byte type = header[156];
+            String name = (longName != null) ? longName : parseTarName(header);
+            longName = null;
+            if (type == 'L') {
+                // GNU long name of the next entry
+                byte[] data = new byte[(int) size];
+                readFully(tar, data, data.length);
+                longName = cString(data, 0, data.length);
+                skipFully(tar, padding(size));
+            } else if (((type == '0') || (type == 0)) && matches(name, entry)) {
+                return new BoundedInputStream(tar, size);
+            } else {
+                skipFully(tar, size + padding(size));
+            }
+        }
+    }
+
+    /**
+     * Checks whether the name of an entry in an archive matches the requested
+     * one.
+     *
+     * @param name the name of the entry.
+     * @param entry the requested name or path suffix, or null for any.
+     * @return true if the entry matches.
+     */
+    private static boolean matches(final String name, final String entry) {
+        return (entry == null) || name.equals(entry) || name.endsWith("/" + entry);
+    }
+
+    /**
+     * Builds the exception thrown when an entry is not in an archive.
+     *
+     * @param f the archive.
+     * @param entry the requested entry, or null for any.
+     * @return the exception.
+     */
+    private static FileNotFoundException notFound(final File f, final String entry) {
+        return new FileNotFoundException((entry == null ? "No regular file" : "No entry " + entry) + " in archive " + f);
+    }
+
+    /**
+     * Parses the name of a tar entry, including the ustar prefix, if any.
+     *
+     * @param header the header of the entry.
+     * @return the name of the entry.
+     */
+    private static String parseTarName(final byte[] header) {
+        String name = cString(header, 0, 100);
+        if ((header[257] == 'u') && (header[258] == 's') && (header[259] == 't') && (header[260] == 'a') && (header[261] == 'r')) {
+            String prefix = cString(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Parses the size of a tar entry, in octal or in the base-256 encoding of
+     * large sizes.
+     *
+     * @param header the header of the entry.
+     * @return the size of the entry.
+     */
+    private static long parseTarSize(final byte[] header) {
+        long size = 0L;
+        if ((header[124] & 0x80) != 0) {
+            for (int k = 125; k < 136; k++) {
+                size = (size << 8) | (header[k] & 0xff);
+            }
+            return size;
+        }
+        for (int k = 124; k < 136; k++) {
+            byte b = header[k];
+            if ((b >= '0') && (b <= '7')) {
+                size = (size << 3) + (b - '0');
+            } else if ((b == 0) || ((b == ' ') && (size > 0))) {
+                break;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Number of bytes after an entry up to the next tar block.
+     *
+     * @param size the size of the entry.
+     * @return the number of padding bytes.
+     */
+    private static long padding(final long size) {
+        return (TAR_BLOCK - (size % TAR_BLOCK)) % TAR_BLOCK;
+    }
+
+    /**
+     * Decodes a NUL-terminated string.
+     *
+     * @param bytes the bytes.
+     * @param from the first byte of the string.
+     * @param maxLength the maximum length of the string.
+     * @return the string.
+     */
+    private static String cString(final byte[] bytes, final int from, final int maxLength) {
+        int to = from;
+        while ((to < from + maxLength) && (bytes[to] != 0)) {
+            to++;
+        }
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads an exact number of bytes from a stream.
+     *
+     * @param in the stream.
+     * @param b the buffer.
+     * @param len the number of bytes.
+     * @throws IOException if the stream ends before.
+     */
+    private static void readFully(final InputStream in, final byte[] b, final int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            int read = in.read(b, n, len - n);
+            if (read < 0) {
+                throw new EOFException("Truncated tar archive");
+            }
+            n += read;
+        }
+    }
+
+    /**
+     * Skips an exact number of bytes of a stream.
+     *
+     * @param in the stream.
+     * @param len the number of bytes.
+     * @throws IOException if the stream ends before.
+     */
+    private static void skipFully(final InputStream in, final long len) throws IOException {
+        long remaining = len;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Truncated tar archive");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Stream limited to a number of bytes of another one.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+
+        /**
+         * Number of bytes that can still be read.
+         */
+        private long remaining;
+
+        /**
+         * Constructor.
+         *
+         * @param in the underlying stream.
+         * @param length the number of bytes that can be read.
+         */
+        BoundedInputStream(final InputStream in, final long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long skip(final long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
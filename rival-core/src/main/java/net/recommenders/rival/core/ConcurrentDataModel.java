@@ -0,0 +1,297 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe temporal data model: preferences and timestamps can be added
+ * from several threads at the same time (e.g., by parsers or splitters that
+ * process different parts of a dataset in parallel). Every user has its own
+ * concurrent bucket of preferences and timestamps, which is updated without
+ * locks.
+ *
+ * Duplicate preferences are handled as in {@link DataModel}: they are summed
+ * or, if duplicates are ignored, the first stored value is kept. Note that
+ * when the same (user, item) pair is added concurrently, which value is the
+ * first one (and the order in which values are summed) depends on the thread
+ * scheduling.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ *
+ * @param <U> generic type for users
+ * @param <I> generic type for items
+ */
+public class ConcurrentDataModel<U, I> implements TemporalDataModelIF<U, I>, IndexedDataModelIF<U, I>,
+        VisitableDataModelIF<U, I> {
+
+    /**
+     * Preference map between users and items.
+     */
+    private final ConcurrentMap<U, ConcurrentMap<I, Double>> userItemPreferences;
+    /**
+     * The map with the timestamps between users and items.
+     */
+    private final ConcurrentMap<U, ConcurrentMap<I, Set<Long>>> userItemTimestamps;
+    /**
+     * Set containing all the items.
+     */
+    private final Set<I> items;
+    /**
+     * Inverted index between items and users, null until requested.
+     */
+    private volatile ConcurrentMap<I, Set<U>> itemUsers;
+    /**
+     * Flag to indicate if duplicate preferences should be ignored or not.
+     */
+    private final boolean ignoreDuplicatePreferences;
+
+    /**
+     * Default constructor.
+     */
+    public ConcurrentDataModel() {
+        this(false);
+    }
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param ignoreDupPreferences The flag to indicate whether preferences
+     * should be ignored.
+     */
+    public ConcurrentDataModel(final boolean ignoreDupPreferences) {
+        this.ignoreDuplicatePreferences = ignoreDupPreferences;
+        this.userItemPreferences = new ConcurrentHashMap<>();
+        this.userItemTimestamps = new ConcurrentHashMap<>();
+        this.items = newConcurrentSet();
+        this.itemUsers = null;
+    }
+
+    /**
+     * Creates a thread-safe set.
+     *
+     * @param <T> type of the elements
+     * @return an empty set.
+     */
+    private static <T> Set<T> newConcurrentSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+    }
+
+    /**
+     * Method that returns the preference map between users and items.
+     *
+     * @return the preference map between users and items.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<U, Map<I, Double>> getUserItemPreferences() {
+        return (Map<U, Map<I, Double>>) (Map<U, ?>) userItemPreferences;
+    }
+
+    /**
+     * Method that returns the map with the timestamps between users and items.
+     *
+     * @return the map with the timestamps between users and items.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<U, Map<I, Set<Long>>> getUserItemTimestamps() {
+        return (Map<U, Map<I, Set<Long>>>) (Map<U, ?>) userItemTimestamps;
+    }
+
+    /**
+     * Method that returns the inverted (item to users) index of the model,
+     * built the first time it is requested and updated by
+     * {@link #addPreference(java.lang.Object, java.lang.Object, java.lang.Double)}
+     * afterwards (also when both happen concurrently).
+     *
+     * @return the map between items and the users with preferences for them.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<I, Set<U>> getItemUsers() {
+        ConcurrentMap<I, Set<U>> index = itemUsers;
+        if (index == null) {
+            synchronized (this) {
+                index = itemUsers;
+                if (index == null) {
+                    // publish the index before filling it, so that concurrent
+                    // additions either update it or are seen by the scan
+                    index = new ConcurrentHashMap<>();
+                    itemUsers = index;
+                    for (Map.Entry<U, ConcurrentMap<I, Double>> e : userItemPreferences.entrySet()) {
+                        for (I i : e.getValue().keySet()) {
+                            addToIndex(index, e.getKey(), i);
+                        }
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Adds a (user, item) pair to the inverted index.
+     *
+     * @param index the inverted index.
+     * @param u the user.
+     * @param i the item.
+     */
+    private void addToIndex(final ConcurrentMap<I, Set<U>> index, final U u, final I i) {
+        Set<U> users = index.get(i);
+        if (users == null) {
+            Set<U> newUsers = newConcurrentSet();
+            users = index.putIfAbsent(i, newUsers);
+            if (users == null) {
+                users = newUsers;
+            }
+        }
+        users.add(u);
+    }
+
+    /**
+     * Method that adds a preference to the model between a user and an item.
+     * This method can be called concurrently.
+     *
+     * @param u the user.
+     * @param i the item.
+     * @param d the preference.
+     */
+    @Override
+    public void addPreference(final U u, final I i, final Double d) {
+        ConcurrentMap<I, Double> userPreferences = userItemPreferences.get(u);
+        if (userPreferences == null) {
+            ConcurrentMap<I, Double> newPreferences = new ConcurrentHashMap<>();
+            userPreferences = userItemPreferences.putIfAbsent(u, newPreferences);
+            if (userPreferences == null) {
+                userPreferences = newPreferences;
+            }
+        }
+        // same value as DataModel, which adds the preference to 0.0
+        Double preference = userPreferences.putIfAbsent(i, 0.0 + d);
+        if (preference != null && !ignoreDuplicatePreferences) {
+            while (!userPreferences.replace(i, preference, preference + d)) {
+                preference = userPreferences.get(i);
+            }
+        }
+        items.add(i);
+        ConcurrentMap<I, Set<U>> index = itemUsers;
+        if (index != null) {
+            addToIndex(index, u, i);
+        }
+    }
+
+    /**
+     * Method that adds a timestamp to the model between a user and an item.
+     * This method can be called concurrently.
+     *
+     * @param u the user.
+     * @param i the item.
+     * @param t the timestamp.
+     */
+    @Override
+    public void addTimestamp(final U u, final I i, final Long t) {
+        ConcurrentMap<I, Set<Long>> userTimestamps = userItemTimestamps.get(u);
+        if (userTimestamps == null) {
+            ConcurrentMap<I, Set<Long>> newTimestamps = new ConcurrentHashMap<>();
+            userTimestamps = userItemTimestamps.putIfAbsent(u, newTimestamps);
+            if (userTimestamps == null) {
+                userTimestamps = newTimestamps;
+            }
+        }
+        Set<Long> timestamps = userTimestamps.get(i);
+        if (timestamps == null) {
+            Set<Long> newSet = newConcurrentSet();
+            timestamps = userTimestamps.putIfAbsent(i, newSet);
+            if (timestamps == null) {
+                timestamps = newSet;
+            }
+        }
+        timestamps.add(t);
+    }
+
+    /**
+     * Method that returns the items in the model.
+     *
+     * @return the items in the model.
+     */
+    @Override
+    public Set<I> getItems() {
+        return items;
+    }
+
+    /**
+     * Method that returns the users in the model.
+     *
+     * @return the users in the model.
+     */
+    @Override
+    public Set<U> getUsers() {
+        return userItemPreferences.keySet();
+    }
+
+    /**
+     * Method that returns the number of items in the model.
+     *
+     * @return the number of items in the model.
+     */
+    @Override
+    public int getNumItems() {
+        return items.size();
+    }
+
+    /**
+     * Method that returns the number of users in the model.
+     *
+     * @return the number of users in the model.
+     */
+    @Override
+    public int getNumUsers() {
+        return userItemPreferences.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachPreference(final PreferenceVisitor<U, I> visitor) {
+        DataModelUtils.forEachPreference(userItemPreferences, visitor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachUser(final UserVisitor<U, I> visitor) {
+        DataModelUtils.forEachUser(userItemPreferences, visitor);
+    }
+
+    /**
+     * Method that clears all the maps contained in the model. This method
+     * should not be called while other threads are adding data.
+     */
+    @Override
+    public synchronized void clear() {
+        userItemPreferences.clear();
+        userItemTimestamps.clear();
+        items.clear();
+        itemUsers = null;
+    }
+}
@@ -30,7 +30,7 @@ import java.util.Set;
  * @param <U> generic type for users
  * @param <I> generic type for items
  */
-public class DataModel<U, I> implements DataModelIF<U, I> {
+public class DataModel<U, I> implements IndexedDataModelIF<U, I>, VisitableDataModelIF<U, I> {
 
     /**
      * Preference map between users and items.
@@ -40,6 +40,10 @@ public class DataModel<U, I> implements DataModelIF<U, I> {
      * Set containing all the items.
      */
     protected Set<I> items;
+    /**
+     * Inverted index between items and users, null until requested.
+     */
+    protected Map<I, Set<U>> itemUsers;
     /**
      * Flag to indicate if duplicate preferences should be ignored or not.
      * Default: false.
@@ -75,6 +79,7 @@ public class DataModel<U, I> implements DataModelIF<U, I> {
         this.ignoreDuplicatePreferences = ignoreDupPreferences;
         this.userItemPreferences = userItemPreference;
         this.items = itemSet;
+        this.itemUsers = null;
     }
 
     /**
@@ -87,6 +92,34 @@ public class DataModel<U, I> implements DataModelIF<U, I> {
         return userItemPreferences;
     }
 
+    /**
+     * Method that returns the inverted (item to users) index of the model,
+     * built the first time it is requested and updated by
+     * {@link #addPreference(java.lang.Object, java.lang.Object, java.lang.Double)}
+     * afterwards.
+     *
+     * @return the map between items and the users with preferences for them.
+     */
+    @Override
+    public Map<I, Set<U>> getItemUsers() {
+        if (itemUsers == null) {
+            Map<I, Set<U>> index = new HashMap<>();
+            for (Map.Entry<U, Map<I, Double>> e : userItemPreferences.entrySet()) {
+                U u = e.getKey();
+                for (I i : e.getValue().keySet()) {
+                    Set<U> users = index.get(i);
+                    if (users == null) {
+                        users = new HashSet<>();
+                        index.put(i, users);
+                    }
+                    users.add(u);
+                }
+            }
+            itemUsers = index;
+        }
+        return itemUsers;
+    }
+
     /**
      * Method that adds a preference to the model between a user and an item.
      *
@@ -115,6 +148,60 @@ public class DataModel<U, I> implements DataModelIF<U, I> {
         }
         // update items
         items.add(i);
+        // update inverted index, if already built
+        if (itemUsers != null) {
+            Set<U> users = itemUsers.get(i);
+            if (users == null) {
+                users = new HashSet<>();
+                itemUsers.put(i, users);
+            }
+            users.add(u);
+        }
+    }
+
+    /**
+     * Method that adds a batch of preferences to the model, with the same
+     * result as adding them one by one with
+     * {@link #addPreference(java.lang.Object, java.lang.Object, java.lang.Double)}
+     * but grouped by user: the preference map of every user is looked up
+     * once. The maps of new users grow from the default capacity, as when
+     * preferences are added one by one, so that they iterate in the same
+     * order (a group may have duplicate items, so its size is not the final
+     * size of the map).
+     *
+     * @param batch the preferences.
+     */
+    public void addPreferences(final PreferenceBatch<U, I> batch) {
+        int numGroups = batch.groupByUser();
+        int[] order = batch.getGroupOrder();
+        int[] offsets = batch.getGroupOffsets();
+        for (int g = 0; g < numGroups; g++) {
+            U u = batch.getUser(order[offsets[g]]);
+            Map<I, Double> userPreferences = userItemPreferences.get(u);
+            if (userPreferences == null) {
+                userPreferences = new HashMap<>();
+                userItemPreferences.put(u, userPreferences);
+            }
+            for (int k = offsets[g]; k < offsets[g + 1]; k++) {
+                int n = order[k];
+                I i = batch.getItem(n);
+                double d = batch.getPreference(n);
+                // a single lookup for new items, a second one for duplicates
+                Double preference = userPreferences.put(i, 0.0 + d);
+                if (preference != null) {
+                    userPreferences.put(i, ignoreDuplicatePreferences ? preference : preference + d);
+                }
+                items.add(i);
+                if (itemUsers != null) {
+                    Set<U> users = itemUsers.get(i);
+                    if (users == null) {
+                        users = new HashSet<>();
+                        itemUsers.put(i, users);
+                    }
+                    users.add(u);
+                }
+            }
+        }
     }
 
     /**
@@ -157,6 +244,22 @@ public class DataModel<U, I> implements DataModelIF<U, I> {
         return getUsers().size();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachPreference(final PreferenceVisitor<U, I> visitor) {
+        DataModelUtils.forEachPreference(userItemPreferences, visitor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachUser(final UserVisitor<U, I> visitor) {
+        DataModelUtils.forEachUser(userItemPreferences, visitor);
+    }
+
     /**
      * Method that clears all the maps contained in the model.
      */
@@ -164,5 +267,6 @@ public class DataModel<U, I> implements DataModelIF<U, I> {
     public void clear() {
         userItemPreferences.clear();
         items.clear();
+        itemUsers = null;
     }
 }
@@ -33,4 +33,38 @@ public class DataModelFactory {
         return new TemporalDataModel<>();
     }
 
+    public static <U, I> TemporalDataModelIF<U, I> getCompactTemporalModel() {
+        return new CompactTemporalDataModel<>();
+    }
+
+    public static <U, I> TemporalDataModelIF<U, I> getConcurrentModel() {
+        return new ConcurrentDataModel<>();
+    }
+
+    public static PrimitiveDataModel getPrimitiveModel() {
+        return new PrimitiveDataModel();
+    }
+
+    public static PrimitiveDataModel getPrimitiveModel(final IdDictionary users, final IdDictionary items) {
+        return new PrimitiveDataModel(users, items);
+    }
+
+    /**
+     * Creates an empty model of the same kind as the one received; primitive
+     * models share their id dictionaries with the new model.
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     * @param model the model to take as reference
+     * @return an empty model
+     */
+    @SuppressWarnings("unchecked")
+    public static <U, I> DataModelIF<U, I> getSimilarModel(final DataModelIF<U, I> model) {
+        if (model instanceof PrimitiveDataModel) {
+            PrimitiveDataModel primitiveModel = (PrimitiveDataModel) model;
+            return (DataModelIF<U, I>) getPrimitiveModel(primitiveModel.getUserDictionary(), primitiveModel.getItemDictionary());
+        }
+        return getDefaultModel();
+    }
+
 }
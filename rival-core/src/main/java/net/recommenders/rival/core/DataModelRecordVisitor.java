@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+/**
+ * Record visitor that stores the records into a data model: preferences are
+ * added with {@link DataModelIF#addPreference(java.lang.Object, java.lang.Object, java.lang.Double)}
+ * and, if the data model is temporal, timestamps (other than -1) with
+ * {@link TemporalDataModelIF#addTimestamp(java.lang.Object, java.lang.Object, java.lang.Long)}.
+ * If a batch size is given and the data model is a {@link DataModel}, the
+ * records are accumulated in a {@link PreferenceBatch} and added to the model
+ * when the batch is full, hence {@link #flush()} has to be called once all the
+ * records have been visited.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public class DataModelRecordVisitor implements RecordVisitor {
+
+    /**
+     * The data model.
+     */
+    private final DataModelIF<Long, Long> dataset;
+    /**
+     * The data model, if it is a primitive one (to avoid boxing).
+     */
+    private final PrimitiveDataModel primitiveDataset;
+    /**
+     * The data model, if timestamps have to be stored.
+     */
+    private final TemporalDataModelIF<Long, Long> temporalDataset;
+    /**
+     * The batch of records not yet added to the data model, null if records
+     * are added one by one.
+     */
+    private final PreferenceBatch<Long, Long> batch;
+
+    /**
+     * Constructor that stores timestamps if the data model is temporal.
+     *
+     * @param model The data model where the records will be stored.
+     */
+    public DataModelRecordVisitor(final DataModelIF<Long, Long> model) {
+        this(model, true);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param model The data model where the records will be stored.
+     * @param storeTimestamps A flag indicating if timestamps should be stored
+     * (only used if the data model is temporal).
+     */
+    public DataModelRecordVisitor(final DataModelIF<Long, Long> model, final boolean storeTimestamps) {
+        this(model, storeTimestamps, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param model The data model where the records will be stored.
+     * @param storeTimestamps A flag indicating if timestamps should be stored
+     * (only used if the data model is temporal).
+     * @param batchSize The number of records added to the data model at once
+     * (only used if the data model is a {@link DataModel}), or 0 to add them
+     * one by one.
+     */
+    public DataModelRecordVisitor(final DataModelIF<Long, Long> model, final boolean storeTimestamps, final int batchSize) {
+        this.dataset = model;
+        this.batch = ((batchSize > 0) && (model instanceof DataModel)) ? new PreferenceBatch<Long, Long>(batchSize) : null;
+        this.primitiveDataset = (model instanceof PrimitiveDataModel) ? (PrimitiveDataModel) model : null;
+        if (storeTimestamps && (model instanceof TemporalDataModelIF)) {
+            this.temporalDataset = (TemporalDataModelIF<Long, Long>) model;
+        } else {
+            this.temporalDataset = null;
+        }
+    }
+
+    /**
+     * Returns the data model where the records are stored.
+     *
+     * @return the data model.
+     */
+    public DataModelIF<Long, Long> getDataModel() {
+        return dataset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visit(final long user, final long item, final double preference, final long timestamp) {
+        if (batch != null) {
+            batch.add(user, item, preference, (temporalDataset != null) ? timestamp : PreferenceBatch.NO_TIMESTAMP);
+            if (batch.isFull()) {
+                batch.flushTo(dataset);
+            }
+            return;
+        }
+        if (primitiveDataset != null) {
+            primitiveDataset.addPreference(user, item, preference);
+        } else {
+            dataset.addPreference(user, item, preference);
+        }
+        if (temporalDataset != null && timestamp != -1) {
+            temporalDataset.addTimestamp(user, item, timestamp);
+        }
+    }
+
+    /**
+     * Adds the records still in the batch, if any, to the data model.
+     */
+    public void flush() {
+        if (batch != null) {
+            batch.flushTo(dataset);
+        }
+    }
+}
@@ -15,10 +15,16 @@
  */
 package net.recommenders.rival.core;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -30,6 +36,11 @@ import java.util.Set;
  */
 public final class DataModelUtils {
 
+    /**
+     * Minimum capacity of a {@link HashMap}.
+     */
+    private static final int MIN_MAP_CAPACITY = 16;
+
     /**
      * Utility classes should not have a public constructor.
      */
@@ -37,7 +48,102 @@ public final class DataModelUtils {
     }
 
     /**
-     * Method that saves a data model to a file.
+     * Returns the initial capacity with which a {@link HashMap} ends up with
+     * the same table as if the given number of entries were added to a map
+     * with the default capacity, but without the intermediate rehashes (and
+     * hence with the same iteration order).
+     *
+     * @param entries number of entries.
+     * @return the initial capacity.
+     */
+    static int mapCapacity(final int entries) {
+        int capacity = MIN_MAP_CAPACITY;
+        while (capacity * 3L / 4 < entries) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Method that returns the popularity (number of users with a preference)
+     * of every item, read from the inverted index of the model.
+     *
+     * @param dm  the data model
+     * @param <U> type of users
+     * @param <I> type of items
+     * @return the map between items and their popularity
+     */
+    public static <U, I> Map<I, Integer> getItemPopularity(final DataModelIF<U, I> dm) {
+        Map<I, Set<U>> itemUsers = getItemUsers(dm);
+        Map<I, Integer> popularity = new HashMap<>(itemUsers.size() * 4 / 3 + 1);
+        for (Entry<I, Set<U>> e : itemUsers.entrySet()) {
+            popularity.put(e.getKey(), e.getValue().size());
+        }
+        return popularity;
+    }
+
+    /**
+     * Method that returns the inverted (item to users) index of a data model:
+     * the one kept by the model if it is an {@link IndexedDataModelIF}, or
+     * one built from its preferences otherwise.
+     *
+     * @param dm  the data model
+     * @param <U> type of users
+     * @param <I> type of items
+     * @return the map between items and the users with preferences for them
+     */
+    public static <U, I> Map<I, Set<U>> getItemUsers(final DataModelIF<U, I> dm) {
+        if (dm instanceof IndexedDataModelIF) {
+            return ((IndexedDataModelIF<U, I>) dm).getItemUsers();
+        }
+        return buildItemUsers(dm.getUserItemPreferences());
+    }
+
+    /**
+     * Method that builds the inverted (item to users) index of a map between
+     * users and items.
+     *
+     * @param preferences the preference map between users and items
+     * @param <U>         type of users
+     * @param <I>         type of items
+     * @return the map between items and the users with preferences for them
+     */
+    public static <U, I> Map<I, Set<U>> buildItemUsers(final Map<U, ? extends Map<I, Double>> preferences) {
+        Map<I, Set<U>> itemUsers = new HashMap<>();
+        for (Map.Entry<U, ? extends Map<I, Double>> e : preferences.entrySet()) {
+            for (I i : e.getValue().keySet()) {
+                Set<U> users = itemUsers.get(i);
+                if (users == null) {
+                    users = new HashSet<>();
+                    itemUsers.put(i, users);
+                }
+                users.add(e.getKey());
+            }
+        }
+        return itemUsers;
+    }
+
+    /**
+     * Method that converts a data model into an immutable snapshot optimized
+     * for reading: the preferences (and timestamps, if the model is temporal)
+     * of every user are stored in exact-sized arrays sorted by item. The
+     * snapshot does not change if the original model is modified afterwards.
+     *
+     * @param dm  the data model
+     * @param <U> type of users
+     * @param <I> type of items
+     * @return the immutable snapshot of the model
+     */
+    public static <U, I> TemporalDataModelIF<U, I> freeze(final DataModelIF<U, I> dm) {
+        if (dm instanceof FrozenDataModel) {
+            return (FrozenDataModel<U, I>) dm;
+        }
+        return new FrozenDataModel<>(dm);
+    }
+
+    /**
+     * Method that saves a data model to a file. See {@link DataModelWriter} for
+     * a faster way to write large models.
      *
      * @param dm        the data model
      * @param outfile   file where the model will be saved
@@ -59,7 +165,7 @@ public final class DataModelUtils {
                 Map<I, Double> userPrefModel = dm.getUserItemPreferences().get(user);
                 for (Entry<I, Double> e : userPrefModel.entrySet()) {
                     I item = e.getKey();
-                    Double pref = userPrefModel.get(item);
+                    Double pref = e.getValue();
                     out.println(user + delimiter + item + delimiter + pref);
                 }
             }
@@ -68,7 +174,8 @@ public final class DataModelUtils {
     }
 
     /**
-     * Method that saves a temporal data model to a file.
+     * Method that saves a temporal data model to a file. See {@link DataModelWriter} for
+     * a faster way to write large models.
      *
      * @param dm        the data model
      * @param outfile   file where the model will be saved
@@ -91,7 +198,7 @@ public final class DataModelUtils {
                 Map<I, Set<Long>> userTimeModel = dm.getUserItemTimestamps().get(user);
                 for (Entry<I, Double> e : userPrefModel.entrySet()) {
                     I item = e.getKey();
-                    Double pref = userPrefModel.get(item);
+                    Double pref = e.getValue();
                     Set<Long> time = null;
                     if (userTimeModel != null) {
                         time = userTimeModel.get(item);
@@ -108,4 +215,126 @@ public final class DataModelUtils {
             out.close();
         }
     }
+
+    /**
+     * Method that loads a data model from a file: files with the extension of
+     * the columnar format ({@link ColumnarParser#EXTENSION}) are loaded with a
+     * {@link ColumnarParser}, the rest are parsed with a {@link SimpleParser}.
+     *
+     * @param f the file
+     * @return the data model
+     * @throws IOException when the file cannot be read.
+     */
+    public static DataModelIF<Long, Long> loadDataModel(final File f) throws IOException {
+        if (ColumnarParser.isColumnarFile(f)) {
+            return new ColumnarParser().parseData(f);
+        }
+        return new SimpleParser().parseData(f);
+    }
+
+    /**
+     * Method that visits every preference of a data model, user by user: the
+     * model visits them itself if it is a {@link VisitableDataModelIF}, and
+     * they are read from {@link DataModelIF#getUserItemPreferences()}
+     * otherwise.
+     *
+     * @param dm      the data model
+     * @param visitor the visitor of the preferences
+     * @param <U>     type of users
+     * @param <I>     type of items
+     */
+    public static <U, I> void forEachPreference(final DataModelIF<U, I> dm, final PreferenceVisitor<U, I> visitor) {
+        if (dm instanceof VisitableDataModelIF) {
+            ((VisitableDataModelIF<U, I>) dm).forEachPreference(visitor);
+        } else {
+            forEachPreference(dm.getUserItemPreferences(), visitor);
+        }
+    }
+
+    /**
+     * Method that visits every user of a data model and (unless the visitor
+     * skips them) the preferences of the user: the model visits them itself
+     * if it is a {@link VisitableDataModelIF}, and they are read from
+     * {@link DataModelIF#getUserItemPreferences()} otherwise.
+     *
+     * @param dm      the data model
+     * @param visitor the visitor of the users
+     * @param <U>     type of users
+     * @param <I>     type of items
+     */
+    public static <U, I> void forEachUser(final DataModelIF<U, I> dm, final UserVisitor<U, I> visitor) {
+        if (dm instanceof VisitableDataModelIF) {
+            ((VisitableDataModelIF<U, I>) dm).forEachUser(visitor);
+        } else {
+            forEachUser(dm.getUserItemPreferences(), visitor);
+        }
+    }
+
+    /**
+     * Method that visits every preference of a map between users and items,
+     * as used by map-backed models to implement
+     * {@link VisitableDataModelIF#forEachPreference(PreferenceVisitor)}.
+     *
+     * @param preferences the preference map between users and items
+     * @param visitor     the visitor of the preferences
+     * @param <U>         type of users
+     * @param <I>         type of items
+     */
+    public static <U, I> void forEachPreference(final Map<U, ? extends Map<I, Double>> preferences, final PreferenceVisitor<U, I> visitor) {
+        for (Map.Entry<U, ? extends Map<I, Double>> e : preferences.entrySet()) {
+            U user = e.getKey();
+            for (Map.Entry<I, Double> p : e.getValue().entrySet()) {
+                visitor.visit(user, p.getKey(), p.getValue());
+            }
+        }
+    }
+
+    /**
+     * Method that visits every user of a map between users and items, as used
+     * by map-backed models to implement
+     * {@link VisitableDataModelIF#forEachUser(UserVisitor)}.
+     *
+     * @param preferences the preference map between users and items
+     * @param visitor     the visitor of the users
+     * @param <U>         type of users
+     * @param <I>         type of items
+     */
+    public static <U, I> void forEachUser(final Map<U, ? extends Map<I, Double>> preferences, final UserVisitor<U, I> visitor) {
+        for (Map.Entry<U, ? extends Map<I, Double>> e : preferences.entrySet()) {
+            U user = e.getKey();
+            Map<I, Double> userPreferences = e.getValue();
+            if (visitor.visitUser(user, userPreferences.size())) {
+                for (Map.Entry<I, Double> p : userPreferences.entrySet()) {
+                    visitor.visitPreference(p.getKey(), p.getValue());
+                }
+                visitor.endUser(user);
+            }
+        }
+    }
+
+    /**
+     * Method that saves a data model to a file in the binary columnar format
+     * read by {@link ColumnarParser} (timestamps are saved if the model is
+     * temporal). Ids must be numeric.
+     *
+     * @param dm        the data model
+     * @param outfile   file where the model will be saved
+     * @param overwrite flag that indicates if the file should be overwritten
+     * @param <U>       type of users
+     * @param <I>       type of items
+     * @throws IOException when outfile cannot be written.
+     */
+    public static <U, I> void saveColumnarDataModel(final DataModelIF<U, I> dm, final String outfile, final boolean overwrite)
+            throws IOException {
+        if (new File(outfile).exists() && !overwrite) {
+            System.out.println("Ignoring " + outfile);
+        } else {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outfile), 1 << 16));
+            try {
+                ColumnarFormat.write(dm, out);
+            } finally {
+                out.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fast writer of data models as delimited text, producing the same output as
+ * {@link DataModelUtils#saveDataModel(DataModelIF, String, boolean, String)}
+ * (and its temporal counterpart). Lines are formatted straight into a
+ * reusable byte buffer (numeric ids and integral preferences without
+ * creating strings) which is written through a {@link FileChannel}. Several
+ * models (e.g., the folds of a cross validation) can be written concurrently
+ * with {@link #writeAll(List, List, String, boolean, int)}.
+ *
+ * A writer is not thread-safe: every thread needs its own instance.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public final class DataModelWriter {
+
+    /**
+     * Default size of the buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    /**
+     * Maximum length of a formatted number.
+     */
+    private static final int MAX_NUMBER_LENGTH = 32;
+    /**
+     * Integral preferences below this value are formatted directly (above
+     * it, {@link Double#toString(double)} uses scientific notation).
+     */
+    private static final double MAX_PLAIN_INTEGRAL = 1e7;
+    /**
+     * The encoding of the output.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * The line separator, as written by {@link java.io.PrintStream#println()}.
+     */
+    private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes(UTF8);
+    /**
+     * The buffer where lines are formatted.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * Scratch space to format numbers.
+     */
+    private final byte[] digits = new byte[MAX_NUMBER_LENGTH];
+    /**
+     * The channel being written.
+     */
+    private FileChannel channel;
+
+    /**
+     * Default constructor.
+     */
+    public DataModelWriter() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor with a buffer size.
+     *
+     * @param bufferSize size of the buffer, in bytes.
+     */
+    public DataModelWriter(final int bufferSize) {
+        if (bufferSize < 1024) {
+            throw new IllegalArgumentException("Buffer too small: " + bufferSize);
+        }
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Writes a data model to a file (which is overwritten), one preference
+     * per line (user, item, preference) or, with timestamps, one line per
+     * timestamp (user, item, preference, timestamp, with -1 for preferences
+     * without timestamps).
+     *
+     * @param <U> type of users
+     * @param <I> type of items
+     * @param dm the data model.
+     * @param f the file.
+     * @param delimiter the field delimiter.
+     * @param withTimestamps whether timestamps should be written (only if the
+     * model is temporal).
+     * @throws IOException if the file cannot be written.
+     */
+    @SuppressWarnings("unchecked")
+    public <U, I> void write(final DataModelIF<U, I> dm, final File f, final String delimiter, final boolean withTimestamps) throws IOException {
+        Map<U, Map<I, Set<Long>>> timestamps = null;
+        if (withTimestamps && dm instanceof TemporalDataModelIF) {
+            timestamps = ((TemporalDataModelIF<U, I>) dm).getUserItemTimestamps();
+        }
+        byte[] sep = delimiter.getBytes(UTF8);
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            channel = out.getChannel();
+            buffer.clear();
+            for (Map.Entry<U, Map<I, Double>> e : dm.getUserItemPreferences().entrySet()) {
+                U user = e.getKey();
+                Map<I, Set<Long>> userTimestamps = timestamps == null ? null : timestamps.get(user);
+                for (Map.Entry<I, Double> p : e.getValue().entrySet()) {
+                    if (timestamps == null) {
+                        writeLine(user, p.getKey(), p.getValue(), sep, false, 0L);
+                        continue;
+                    }
+                    Set<Long> times = userTimestamps == null ? null : userTimestamps.get(p.getKey());
+                    if (times == null) {
+                        writeLine(user, p.getKey(), p.getValue(), sep, true, -1L);
+                    } else {
+                        for (Long t : times) {
+                            writeLine(user, p.getKey(), p.getValue(), sep, true, t);
+                        }
+                    }
+                }
+            }
+            drain();
+        } finally {
+            channel = null;
+            out.close();
+        }
+    }
+
+    /**
+     * Writes several data models concurrently.
+     *
+     * @param <U> type of users
+     * @param <I> type of items
+     * @param models the data models.
+     * @param files the files, one per model.
+     * @param delimiter the field delimiter.
+     * @param withTimestamps whether timestamps should be written.
+     * @param nThreads number of threads.
+     * @throws IOException if a file cannot be written.
+     */
+    public static <U, I> void writeAll(final List<? extends DataModelIF<U, I>> models, final List<File> files, final String delimiter,
+            final boolean withTimestamps, final int nThreads) throws IOException {
+        if (models.size() != files.size()) {
+            throw new IllegalArgumentException("There should be a file per model");
+        }
+        if (nThreads <= 1 || models.size() <= 1) {
+            DataModelWriter writer = new DataModelWriter();
+            for (int k = 0; k < models.size(); k++) {
+                writer.write(models.get(k), files.get(k), delimiter, withTimestamps);
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(nThreads, models.size()));
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int k = 0; k < models.size(); k++) {
+                final DataModelIF<U, I> dm = models.get(k);
+                final File f = files.get(k);
+                futures.add(pool.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws IOException {
+                        new DataModelWriter().write(dm, f, delimiter, withTimestamps);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while writing");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Formats a line into the buffer.
+     *
+     * @param user the user.
+     * @param item the item.
+     * @param preference the preference.
+     * @param sep the field delimiter.
+     * @param withTimestamp whether the timestamp should be written.
+     * @param timestamp the timestamp.
+     * @throws IOException if the buffer cannot be written.
+     */
+    private void writeLine(final Object user, final Object item, final Double preference, final byte[] sep, final boolean withTimestamp,
+            final long timestamp) throws IOException {
+        writeId(user);
+        put(sep);
+        writeId(item);
+        put(sep);
+        writePreference(preference);
+        if (withTimestamp) {
+            put(sep);
+            writeLong(timestamp);
+        }
+        put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Formats an id into the buffer.
+     *
+     * @param id the id.
+     * @throws IOException if the buffer cannot be written.
+     */
+    private void writeId(final Object id) throws IOException {
+        if (id instanceof Long || id instanceof Integer) {
+            writeLong(((Number) id).longValue());
+        } else {
+            put(String.valueOf(id).getBytes(UTF8));
+        }
+    }
+
+    /**
+     * Formats a preference into the buffer, as {@link Double#toString()}.
+     *
+     * @param preference the preference.
+     * @throws IOException if the buffer cannot be written.
+     */
+    private void writePreference(final Double preference) throws IOException {
+        double d = preference == null ? Double.NaN : preference;
+        // integral values (but not -0.0, whose bits are those of
+        // Long.MIN_VALUE) are formatted without going through a string
+        if ((Math.abs(d) < MAX_PLAIN_INTEGRAL) && (Double.compare(Math.rint(d), d) == 0)
+                && (Double.doubleToLongBits(d) != Long.MIN_VALUE)) {
+            writeLong((long) d);
+            ensure(2);
+            buffer.put((byte) '.').put((byte) '0');
+        } else {
+            put(String.valueOf(preference).getBytes(UTF8));
+        }
+    }
+
+    /**
+     * Formats a long into the buffer.
+     *
+     * @param value the value.
+     * @throws IOException if the buffer cannot be written.
+     */
+    private void writeLong(final long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            put(Long.toString(value).getBytes(UTF8));
+            return;
+        }
+        long v = Math.abs(value);
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        if (value < 0) {
+            digits[--pos] = '-';
+        }
+        ensure(digits.length - pos);
+        buffer.put(digits, pos, digits.length - pos);
+    }
+
+    /**
+     * Copies some bytes into the buffer.
+     *
+     * @param bytes the bytes.
+     * @throws IOException if the buffer cannot be written.
+     */
+    private void put(final byte[] bytes) throws IOException {
+        if (bytes.length > buffer.capacity()) {
+            drain();
+            channel.write(ByteBuffer.wrap(bytes));
+            return;
+        }
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Makes room in the buffer.
+     *
+     * @param n number of bytes needed.
+     * @throws IOException if the buffer cannot be written.
+     */
+    private void ensure(final int n) throws IOException {
+        if (buffer.remaining() < n) {
+            drain();
+        }
+    }
+
+    /**
+     * Writes the contents of the buffer to the channel.
+     *
+     * @throws IOException if the buffer cannot be written.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Single-pass profiler of a dataset: it visits the records streamed by a
+ * {@link StreamingParser} and computes, in bounded memory, exact counts (of
+ * records, timestamps, and the range and mean of preferences and
+ * timestamps), HyperLogLog estimates of the number of distinct users, items
+ * and (user, item) pairs, and quantile sketches of the preferences and of the
+ * activity of users and the popularity of items.
+ *
+ * Activity and popularity are computed exactly for a sample of users and
+ * items selected by hashing their ids: whenever the sample exceeds its
+ * maximum size, the sampling rate is halved and the ids that are no longer
+ * selected are discarded. Since an id is either always or never selected
+ * (for a given rate), the counts of the sampled ids are exact, and their
+ * distribution estimates the one of the whole dataset.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public class DatasetProfiler implements RecordVisitor {
+
+    /**
+     * Default precision of the HyperLogLog sketches.
+     */
+    public static final int DEFAULT_PRECISION = 14;
+    /**
+     * Default size of the samples.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 1 << 15;
+    /**
+     * Number of records visited.
+     */
+    private long numRecords;
+    /**
+     * Number of records with a timestamp.
+     */
+    private long numTimestamps;
+    /**
+     * Minimum timestamp.
+     */
+    private long minTimestamp;
+    /**
+     * Maximum timestamp.
+     */
+    private long maxTimestamp;
+    /**
+     * Minimum preference.
+     */
+    private double minPreference;
+    /**
+     * Maximum preference.
+     */
+    private double maxPreference;
+    /**
+     * Sum of the preferences.
+     */
+    private double sumPreferences;
+    /**
+     * Distinct users.
+     */
+    private final HyperLogLog users;
+    /**
+     * Distinct items.
+     */
+    private final HyperLogLog items;
+    /**
+     * Distinct (user, item) pairs.
+     */
+    private final HyperLogLog pairs;
+    /**
+     * Distribution of the preferences.
+     */
+    private final QuantileSketch preferences;
+    /**
+     * Activity (number of records) of the sampled users.
+     */
+    private final HashSample userActivity;
+    /**
+     * Popularity (number of records) of the sampled items.
+     */
+    private final HashSample itemPopularity;
+
+    /**
+     * Default constructor.
+     */
+    public DatasetProfiler() {
+        this(DEFAULT_PRECISION, DEFAULT_SAMPLE_SIZE, 0L);
+    }
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param precision precision of the HyperLogLog sketches.
+     * @param sampleSize maximum size of the samples of preferences, users and
+     * items.
+     * @param seed seed for the sampling of preferences.
+     */
+    public DatasetProfiler(final int precision, final int sampleSize, final long seed) {
+        this.users = new HyperLogLog(precision);
+        this.items = new HyperLogLog(precision);
+        this.pairs = new HyperLogLog(precision);
+        this.preferences = new QuantileSketch(sampleSize, seed);
+        this.userActivity = new HashSample(sampleSize);
+        this.itemPopularity = new HashSample(sampleSize);
+        this.numRecords = 0L;
+        this.numTimestamps = 0L;
+        this.minTimestamp = Long.MAX_VALUE;
+        this.maxTimestamp = Long.MIN_VALUE;
+        this.minPreference = Double.POSITIVE_INFINITY;
+        this.maxPreference = Double.NEGATIVE_INFINITY;
+        this.sumPreferences = 0.0;
+    }
+
+    /**
+     * Profiles a file in a single pass.
+     *
+     * @param parser the parser of the file.
+     * @param f the file.
+     * @return the profile of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static DatasetProfiler profile(final StreamingParser parser, final File f) throws IOException {
+        DatasetProfiler profiler = new DatasetProfiler();
+        parser.parse(f, profiler);
+        return profiler;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visit(final long user, final long item, final double preference, final long timestamp) {
+        numRecords++;
+        long userHash = HyperLogLog.hash(user);
+        long itemHash = HyperLogLog.hash(item);
+        users.addHash(userHash);
+        items.addHash(itemHash);
+        pairs.addHash(HyperLogLog.hash(userHash ^ item));
+        userActivity.add(user, userHash);
+        itemPopularity.add(item, itemHash);
+        preferences.add(preference);
+        minPreference = Math.min(minPreference, preference);
+        maxPreference = Math.max(maxPreference, preference);
+        sumPreferences += preference;
+        if (timestamp != -1L) {
+            numTimestamps++;
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+    }
+
+    /**
+     * Gets the number of records visited.
+     *
+     * @return the number of records.
+     */
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * Gets the number of records with a timestamp.
+     *
+     * @return the number of records with a timestamp.
+     */
+    public long getNumTimestamps() {
+        return numTimestamps;
+    }
+
+    /**
+     * Gets the minimum timestamp.
+     *
+     * @return the minimum timestamp, or -1 if there are no timestamps.
+     */
+    public long getMinTimestamp() {
+        return numTimestamps == 0L ? -1L : minTimestamp;
+    }
+
+    /**
+     * Gets the maximum timestamp.
+     *
+     * @return the maximum timestamp, or -1 if there are no timestamps.
+     */
+    public long getMaxTimestamp() {
+        return numTimestamps == 0L ? -1L : maxTimestamp;
+    }
+
+    /**
+     * Gets the minimum preference.
+     *
+     * @return the minimum preference, or NaN if there are no records.
+     */
+    public double getMinPreference() {
+        return numRecords == 0L ? Double.NaN : minPreference;
+    }
+
+    /**
+     * Gets the maximum preference.
+     *
+     * @return the maximum preference, or NaN if there are no records.
+     */
+    public double getMaxPreference() {
+        return numRecords == 0L ? Double.NaN : maxPreference;
+    }
+
+    /**
+     * Gets the mean preference.
+     *
+     * @return the mean preference, or NaN if there are no records.
+     */
+    public double getMeanPreference() {
+        return numRecords == 0L ? Double.NaN : sumPreferences / numRecords;
+    }
+
+    /**
+     * Estimates the number of distinct users.
+     *
+     * @return the estimated number of users.
+     */
+    public long getNumUsers() {
+        return userActivity.isComplete() ? userActivity.size() : users.estimate();
+    }
+
+    /**
+     * Estimates the number of distinct items.
+     *
+     * @return the estimated number of items.
+     */
+    public long getNumItems() {
+        return itemPopularity.isComplete() ? itemPopularity.size() : items.estimate();
+    }
+
+    /**
+     * Estimates the number of distinct (user, item) pairs, i.e., the number
+     * of preferences once duplicates are aggregated.
+     *
+     * @return the estimated number of pairs.
+     */
+    public long getNumPreferences() {
+        return Math.min(numRecords, pairs.estimate());
+    }
+
+    /**
+     * Estimates the density of the dataset: the fraction of (user, item)
+     * pairs with a preference.
+     *
+     * @return the estimated density.
+     */
+    public double getDensity() {
+        long n = getNumUsers() * getNumItems();
+        return n == 0L ? 0.0 : Math.min(1.0, (double) getNumPreferences() / n);
+    }
+
+    /**
+     * Estimates the sparsity of the dataset (one minus the density).
+     *
+     * @return the estimated sparsity.
+     */
+    public double getSparsity() {
+        return 1.0 - getDensity();
+    }
+
+    /**
+     * Estimates a quantile of the preferences.
+     *
+     * @param q the quantile, between 0 and 1.
+     * @return the estimated quantile.
+     */
+    public double getPreferenceQuantile(final double q) {
+        return preferences.getQuantile(q);
+    }
+
+    /**
+     * Estimates a quantile of the activity (number of records) of users.
+     *
+     * @param q the quantile, between 0 and 1.
+     * @return the estimated quantile.
+     */
+    public long getUserActivityQuantile(final double q) {
+        return userActivity.getQuantile(q);
+    }
+
+    /**
+     * Estimates a quantile of the popularity (number of records) of items.
+     *
+     * @param q the quantile, between 0 and 1.
+     * @return the estimated quantile.
+     */
+    public long getItemPopularityQuantile(final double q) {
+        return itemPopularity.getQuantile(q);
+    }
+
+    /**
+     * Estimates the shape of the long tail: the fraction of the records that
+     * belong to the most popular items.
+     *
+     * @param fraction fraction of the items (the most popular ones), between
+     * 0 and 1.
+     * @return the estimated fraction of the records of those items.
+     */
+    public double getTopItemsShare(final double fraction) {
+        return itemPopularity.getTopShare(fraction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("records\t").append(numRecords).append('\n');
+        sb.append("users\t").append(getNumUsers()).append('\n');
+        sb.append("items\t").append(getNumItems()).append('\n');
+        sb.append("preferences\t").append(getNumPreferences()).append('\n');
+        sb.append("sparsity\t").append(getSparsity()).append('\n');
+        sb.append("preference.min\t").append(getMinPreference()).append('\n');
+        sb.append("preference.mean\t").append(getMeanPreference()).append('\n');
+        sb.append("preference.max\t").append(getMaxPreference()).append('\n');
+        sb.append("timestamps\t").append(numTimestamps).append('\n');
+        sb.append("timestamp.min\t").append(getMinTimestamp()).append('\n');
+        sb.append("timestamp.max\t").append(getMaxTimestamp()).append('\n');
+        double[] quantiles = new double[]{0.1, 0.25, 0.5, 0.75, 0.9, 0.99};
+        for (double q : quantiles) {
+            sb.append("preference.q").append(q).append('\t').append(getPreferenceQuantile(q)).append('\n');
+        }
+        for (double q : quantiles) {
+            sb.append("user.activity.q").append(q).append('\t').append(getUserActivityQuantile(q)).append('\n');
+        }
+        for (double q : quantiles) {
+            sb.append("item.popularity.q").append(q).append('\t').append(getItemPopularityQuantile(q)).append('\n');
+        }
+        sb.append("items.top0.2.share\t").append(getTopItemsShare(0.2)).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Sample of ids, selected by their hash, with the number of records of
+     * every one.
+     */
+    private static final class HashSample {
+
+        /**
+         * Maximum number of ids in the sample.
+         */
+        private final int maxSize;
+        /**
+         * The sampled ids and their counts.
+         */
+        private final Map<Long, long[]> counts;
+        /**
+         * Ids are sampled when the lowest {@code level} bits of their hash
+         * are zero.
+         */
+        private int level;
+
+        /**
+         * Constructor.
+         *
+         * @param size maximum number of ids in the sample.
+         */
+        HashSample(final int size) {
+            this.maxSize = size;
+            this.counts = new HashMap<>();
+            this.level = 0;
+        }
+
+        /**
+         * Checks whether an id is sampled at the current rate.
+         *
+         * @param hash the hash of the id.
+         * @return true if the id is sampled.
+         */
+        private boolean isSampled(final long hash) {
+            return (hash & ((1L << level) - 1L)) == 0L;
+        }
+
+        /**
+         * Counts a record of an id.
+         *
+         * @param id the id.
+         * @param hash the hash of the id.
+         */
+        void add(final long id, final long hash) {
+            if (!isSampled(hash)) {
+                return;
+            }
+            long[] count = counts.get(id);
+            if (count == null) {
+                count = new long[1];
+                counts.put(id, count);
+                while (counts.size() > maxSize) {
+                    // halve the sampling rate
+                    level++;
+                    Iterator<Long> it = counts.keySet().iterator();
+                    while (it.hasNext()) {
+                        if (!isSampled(HyperLogLog.hash(it.next()))) {
+                            it.remove();
+                        }
+                    }
+                }
+                if (!isSampled(hash)) {
+                    return;
+                }
+            }
+            count[0]++;
+        }
+
+        /**
+         * Checks whether every id is in the sample.
+         *
+         * @return true if no id has been discarded.
+         */
+        boolean isComplete() {
+            return level == 0;
+        }
+
+        /**
+         * Gets the number of sampled ids.
+         *
+         * @return the number of ids.
+         */
+        int size() {
+            return counts.size();
+        }
+
+        /**
+         * Gets the counts of the sampled ids, sorted.
+         *
+         * @return the sorted counts.
+         */
+        private long[] sortedCounts() {
+            long[] values = new long[counts.size()];
+            int k = 0;
+            for (long[] c : counts.values()) {
+                values[k++] = c[0];
+            }
+            Arrays.sort(values);
+            return values;
+        }
+
+        /**
+         * Computes a quantile of the counts.
+         *
+         * @param q the quantile, between 0 and 1.
+         * @return the quantile, or 0 if there are no ids.
+         */
+        long getQuantile(final double q) {
+            if (q < 0.0 || q > 1.0) {
+                throw new IllegalArgumentException("Invalid quantile: " + q);
+            }
+            long[] values = sortedCounts();
+            if (values.length == 0) {
+                return 0L;
+            }
+            return values[Math.min(values.length - 1, (int) (q * values.length))];
+        }
+
+        /**
+         * Computes the fraction of the records that belong to the ids with
+         * the highest counts.
+         *
+         * @param fraction fraction of the ids.
+         * @return the fraction of the records.
+         */
+        double getTopShare(final double fraction) {
+            if (fraction < 0.0 || fraction > 1.0) {
+                throw new IllegalArgumentException("Invalid fraction: " + fraction);
+            }
+            long[] values = sortedCounts();
+            long total = 0L;
+            for (long v : values) {
+                total += v;
+            }
+            if (total == 0L) {
+                return 0.0;
+            }
+            int top = (int) Math.ceil(fraction * values.length);
+            long sum = 0L;
+            for (int k = values.length - top; k < values.length; k++) {
+                sum += values[k];
+            }
+            return (double) sum / total;
+        }
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Temporal data model for datasets that grow over time, made of a base
+ * snapshot and a log of delta segments with new preferences and timestamps.
+ * Segments are appended cheaply (e.g., by parsing only the file of the last
+ * day) and merged into the base lazily, the first time the model is read
+ * after an append. Duplicate preferences are summed, as in
+ * {@link DataModel}, unless they are ignored.
+ *
+ * A model can be persisted in a directory: the base and every segment are
+ * stored in their own files, in the columnar format read by
+ * {@link ColumnarParser}. Segment files are numbered in the order they are
+ * written, and the name of the base file has the number of the first segment
+ * not merged into it. Opening the directory again loads the base and the
+ * segments after it without parsing the original data, and
+ * {@link #compact()} writes a new base with all the segments merged.
+ * Preferences added directly to a persisted model form a new segment, which
+ * is only written when the model is flushed (or compacted): reading the model
+ * merges it into the base in memory, without touching the disk.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public class DeltaLogDataModel implements TemporalDataModelIF<Long, Long>, IndexedDataModelIF<Long, Long>,
+        VisitableDataModelIF<Long, Long> {
+
+    /**
+     * Prefix of the names of the files with the base snapshot.
+     */
+    public static final String BASE_PREFIX = "base-";
+    /**
+     * Prefix of the names of the files with the segments.
+     */
+    public static final String SEGMENT_PREFIX = "delta-";
+    /**
+     * Directory where the model is persisted (null if it is only kept in
+     * memory).
+     */
+    private final File directory;
+    /**
+     * The base snapshot, with the segments merged so far.
+     */
+    private final TemporalDataModelIF<Long, Long> base;
+    /**
+     * Segments not merged yet.
+     */
+    private final List<TemporalDataModelIF<Long, Long>> pending;
+    /**
+     * Segments with preferences added to the model that are not persisted
+     * yet (only if the model is stored in a directory), in the order they
+     * were created.
+     */
+    private final List<TemporalDataModelIF<Long, Long>> unflushed;
+    /**
+     * Segment receiving the preferences added to the model.
+     */
+    private TemporalDataModelIF<Long, Long> current;
+    /**
+     * Number of the next segment file written to the directory.
+     */
+    private int nextSegment;
+    /**
+     * Flag to indicate if duplicate preferences should be ignored or not.
+     */
+    private final boolean ignoreDuplicatePreferences;
+
+    /**
+     * Constructor of a model kept in memory.
+     *
+     * @param ignoreDupPreferences The flag to indicate whether duplicate
+     * preferences should be ignored.
+     */
+    public DeltaLogDataModel(final boolean ignoreDupPreferences) {
+        this(null, ignoreDupPreferences);
+    }
+
+    /**
+     * Constructor of an empty model persisted in a directory.
+     *
+     * @param dir The directory.
+     * @param ignoreDupPreferences The flag to indicate whether duplicate
+     * preferences should be ignored.
+     */
+    private DeltaLogDataModel(final File dir, final boolean ignoreDupPreferences) {
+        this.directory = dir;
+        this.ignoreDuplicatePreferences = ignoreDupPreferences;
+        this.base = new TemporalDataModel<>(ignoreDupPreferences);
+        this.pending = new ArrayList<>();
+        this.unflushed = new ArrayList<>();
+        this.current = null;
+        this.nextSegment = 0;
+    }
+
+    /**
+     * Opens a model persisted in a directory (which is created if it does not
+     * exist): the newest base is loaded and the segments not merged into it
+     * are kept pending until the model is read.
+     *
+     * @param dir The directory.
+     * @param ignoreDupPreferences The flag to indicate whether duplicate
+     * preferences should be ignored.
+     * @return The model.
+     * @throws IOException if the files cannot be read.
+     */
+    public static DeltaLogDataModel open(final File dir, final boolean ignoreDupPreferences) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        DeltaLogDataModel model = new DeltaLogDataModel(dir, ignoreDupPreferences);
+        ColumnarParser parser = new ColumnarParser();
+        File[] bases = getFiles(dir, BASE_PREFIX);
+        int generation = 0;
+        if (bases.length > 0) {
+            File baseFile = bases[bases.length - 1];
+            generation = getNumber(baseFile, BASE_PREFIX);
+            model.merge(parser.parseTemporalData(baseFile));
+        }
+        model.nextSegment = generation;
+        for (File f : getFiles(dir, SEGMENT_PREFIX)) {
+            int n = getNumber(f, SEGMENT_PREFIX);
+            // older segments are already in the base (a compaction stopped before deleting them)
+            if (n >= generation) {
+                model.pending.add(parser.parseTemporalData(f));
+            }
+            model.nextSegment = Math.max(model.nextSegment, n + 1);
+        }
+        return model;
+    }
+
+    /**
+     * Gets the name of a numbered file.
+     *
+     * @param prefix The prefix of the name.
+     * @param n The number.
+     * @return The name of the file.
+     */
+    private static String getFileName(final String prefix, final int n) {
+        return String.format("%s%08d%s", prefix, n, ColumnarParser.EXTENSION);
+    }
+
+    /**
+     * Gets the number of a file named by {@link #getFileName(String, int)}.
+     *
+     * @param f The file.
+     * @param prefix The prefix of the name.
+     * @return The number, or -1 if the name has no number.
+     */
+    private static int getNumber(final File f, final String prefix) {
+        String name = f.getName();
+        if (!name.startsWith(prefix) || !name.endsWith(ColumnarParser.EXTENSION)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(prefix.length(), name.length() - ColumnarParser.EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the numbered files of a directory with a prefix, in the order they
+     * were written.
+     *
+     * @param dir The directory.
+     * @param prefix The prefix of the names.
+     * @return The files.
+     */
+    private static File[] getFiles(final File dir, final String prefix) {
+        File[] files = dir.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(final File d, final String name) {
+                return getNumber(new File(d, name), prefix) >= 0;
+            }
+        });
+        // names have a zero-padded number
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Appends a segment to the model, persisting it if the model is stored in
+     * a directory.
+     *
+     * @param segment The segment.
+     * @throws IOException if the segment cannot be persisted.
+     */
+    public void appendSegment(final TemporalDataModelIF<Long, Long> segment) throws IOException {
+        // the segments are numbered in the order they are merged
+        flush();
+        writeSegment(segment);
+        pending.add(segment);
+    }
+
+    /**
+     * Writes a segment to a new file of the directory, if the model is stored
+     * in one.
+     *
+     * @param segment The segment.
+     * @throws IOException if the segment cannot be persisted.
+     */
+    private void writeSegment(final TemporalDataModelIF<Long, Long> segment) throws IOException {
+        if (directory != null) {
+            File f = new File(directory, getFileName(SEGMENT_PREFIX, nextSegment));
+            DataModelUtils.saveColumnarDataModel(segment, f.getPath(), true);
+            nextSegment++;
+        }
+    }
+
+    /**
+     * Parses a file with new data and appends it as a segment.
+     *
+     * @param parser The parser of the file.
+     * @param f The file.
+     * @throws IOException if the file cannot be parsed or the segment cannot
+     * be persisted.
+     */
+    public void appendFile(final StreamingParser parser, final File f) throws IOException {
+        TemporalDataModelIF<Long, Long> segment = new TemporalDataModel<>(ignoreDuplicatePreferences);
+        parser.parse(f, new DataModelRecordVisitor(segment, true));
+        appendSegment(segment);
+    }
+
+    /**
+     * Persists the preferences and timestamps added with
+     * {@link #addPreference(java.lang.Long, java.lang.Long, java.lang.Double)}
+     * and {@link #addTimestamp(java.lang.Long, java.lang.Long, java.lang.Long)}
+     * as new segments. This is the only method, besides {@link #compact()},
+     * that writes these preferences to the directory of the model.
+     *
+     * @throws IOException if the segments cannot be persisted.
+     */
+    public void flush() throws IOException {
+        closeCurrentSegment();
+        while (!unflushed.isEmpty()) {
+            writeSegment(unflushed.get(0));
+            unflushed.remove(0);
+        }
+    }
+
+    /**
+     * Merges every segment into the base and, if the model is stored in a
+     * directory, writes a new base file and deletes the old one and the
+     * segment files. Preferences added since the last {@link #flush()} are
+     * persisted too.
+     *
+     * The new base is written to a temporary file and moved atomically into
+     * place, and its name tells which segments it includes, so that the
+     * directory can be opened again whenever the compaction stops: before the
+     * move, the old base and the segments are loaded; after it, the segments
+     * left behind are skipped.
+     *
+     * @throws IOException if the base cannot be written.
+     */
+    public void compact() throws IOException {
+        mergePending();
+        if (directory != null) {
+            int generation = nextSegment;
+            File baseFile = new File(directory, getFileName(BASE_PREFIX, generation));
+            File tmp = new File(directory, baseFile.getName() + ".tmp");
+            DataModelUtils.saveColumnarDataModel(base, tmp.getPath(), true);
+            Files.move(tmp.toPath(), baseFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            // the new base has the preferences not persisted yet
+            unflushed.clear();
+            for (File f : getFiles(directory, BASE_PREFIX)) {
+                if (!f.equals(baseFile) && !f.delete()) {
+                    throw new IOException("Cannot delete " + f);
+                }
+            }
+            for (File f : getFiles(directory, SEGMENT_PREFIX)) {
+                if (getNumber(f, SEGMENT_PREFIX) < generation && !f.delete()) {
+                    throw new IOException("Cannot delete " + f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of segments not merged into the base yet.
+     *
+     * @return the number of pending segments.
+     */
+    public int getNumPendingSegments() {
+        return pending.size() + (current == null ? 0 : 1);
+    }
+
+    /**
+     * Moves the segment receiving new preferences to the pending ones (and,
+     * if the model is stored in a directory, to those to be persisted by the
+     * next {@link #flush()}).
+     */
+    private void closeCurrentSegment() {
+        if (current != null) {
+            pending.add(current);
+            if (directory != null) {
+                unflushed.add(current);
+            }
+            current = null;
+        }
+    }
+
+    /**
+     * Merges the pending segments into the base, in memory.
+     */
+    private void mergePending() {
+        closeCurrentSegment();
+        for (TemporalDataModelIF<Long, Long> segment : pending) {
+            merge(segment);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Merges a segment into the base.
+     *
+     * @param segment The segment.
+     */
+    private void merge(final TemporalDataModelIF<Long, Long> segment) {
+        for (Map.Entry<Long, Map<Long, Double>> e : segment.getUserItemPreferences().entrySet()) {
+            Long u = e.getKey();
+            for (Map.Entry<Long, Double> p : e.getValue().entrySet()) {
+                base.addPreference(u, p.getKey(), p.getValue());
+            }
+        }
+        for (Map.Entry<Long, Map<Long, Set<Long>>> e : segment.getUserItemTimestamps().entrySet()) {
+            Long u = e.getKey();
+            for (Map.Entry<Long, Set<Long>> t : e.getValue().entrySet()) {
+                for (Long timestamp : t.getValue()) {
+                    base.addTimestamp(u, t.getKey(), timestamp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that returns the preference map between users and items, once
+     * the pending segments have been merged.
+     *
+     * @return the preference map between users and items.
+     */
+    @Override
+    public Map<Long, Map<Long, Double>> getUserItemPreferences() {
+        mergePending();
+        return base.getUserItemPreferences();
+    }
+
+    /**
+     * Method that returns the map with the timestamps between users and
+     * items, once the pending segments have been merged.
+     *
+     * @return the map with the timestamps between users and items.
+     */
+    @Override
+    public Map<Long, Map<Long, Set<Long>>> getUserItemTimestamps() {
+        mergePending();
+        return base.getUserItemTimestamps();
+    }
+
+    /**
+     * Method that returns the inverted (item to users) index of the model,
+     * once the pending segments have been merged.
+     *
+     * @return the map between items and the users with preferences for them.
+     */
+    @Override
+    public Map<Long, Set<Long>> getItemUsers() {
+        mergePending();
+        return DataModelUtils.getItemUsers(base);
+    }
+
+    /**
+     * Method that adds a preference to the current segment of the model.
+     *
+     * @param u the user.
+     * @param i the item.
+     * @param d the preference.
+     */
+    @Override
+    public void addPreference(final Long u, final Long i, final Double d) {
+        getCurrentSegment().addPreference(u, i, d);
+    }
+
+    /**
+     * Method that adds a timestamp to the current segment of the model.
+     *
+     * @param u the user.
+     * @param i the item.
+     * @param t the timestamp.
+     */
+    @Override
+    public void addTimestamp(final Long u, final Long i, final Long t) {
+        getCurrentSegment().addTimestamp(u, i, t);
+    }
+
+    /**
+     * Gets the segment receiving new preferences, creating it if needed.
+     *
+     * @return the current segment.
+     */
+    private TemporalDataModelIF<Long, Long> getCurrentSegment() {
+        if (current == null) {
+            current = new TemporalDataModel<>(ignoreDuplicatePreferences);
+        }
+        return current;
+    }
+
+    /**
+     * Method that returns the items in the model.
+     *
+     * @return the items in the model.
+     */
+    @Override
+    public Set<Long> getItems() {
+        mergePending();
+        return base.getItems();
+    }
+
+    /**
+     * Method that returns the users in the model.
+     *
+     * @return the users in the model.
+     */
+    @Override
+    public Set<Long> getUsers() {
+        mergePending();
+        return base.getUsers();
+    }
+
+    /**
+     * Method that returns the number of items in the model.
+     *
+     * @return the number of items in the model.
+     */
+    @Override
+    public int getNumItems() {
+        mergePending();
+        return base.getNumItems();
+    }
+
+    /**
+     * Method that returns the number of users in the model.
+     *
+     * @return the number of users in the model.
+     */
+    @Override
+    public int getNumUsers() {
+        mergePending();
+        return base.getNumUsers();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachPreference(final PreferenceVisitor<Long, Long> visitor) {
+        mergePending();
+        DataModelUtils.forEachPreference(base, visitor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachUser(final UserVisitor<Long, Long> visitor) {
+        mergePending();
+        DataModelUtils.forEachUser(base, visitor);
+    }
+
+    /**
+     * Method that clears the model in memory (the persisted files, if any,
+     * are not deleted).
+     */
+    @Override
+    public void clear() {
+        base.clear();
+        pending.clear();
+        unflushed.clear();
+        current = null;
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fingerprints of files and data models, to find out whether the splits,
+ * recommendations or evaluations computed from them can be reused.
+ *
+ * The fingerprint of a file is the 128-bit MurmurHash3 (x64 variant, seed 0)
+ * of its bytes, computed in a single streaming pass; its first half can be
+ * used as a 64-bit fingerprint. The fingerprint of a data model only depends
+ * on its set of (user, item, preference) triples, not on the order in which
+ * they were added or are iterated: every triple is hashed on its own and the
+ * hashes are added up. Ids are hashed by value if they are numbers, by their
+ * UTF-8 bytes if they are strings, and by {@link Object#hashCode()}
+ * otherwise, so fingerprints of models with numeric or string ids are stable
+ * across runs.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public final class Fingerprint {
+
+    /**
+     * First multiplier of MurmurHash3.
+     */
+    private static final long C1 = 0x87c37b91114253d5L;
+    /**
+     * Second multiplier of MurmurHash3.
+     */
+    private static final long C2 = 0x4cf5ad432745937fL;
+    /**
+     * Size of the buffer used to read files (a multiple of the block size).
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Key of the preferences in the hash of a data model.
+     */
+    private static final long PREFERENCE_KEY = 0x5052454645524e43L;
+    /**
+     * Key of the timestamps in the hash of a data model.
+     */
+    private static final long TIMESTAMP_KEY = 0x54494d455354414dL;
+
+    /**
+     * Utility classes should not have a public constructor.
+     */
+    private Fingerprint() {
+    }
+
+    /**
+     * Computes the fingerprint of the bytes of a file.
+     *
+     * @param f the file.
+     * @return the 128-bit fingerprint, as two longs.
+     * @throws IOException if the file cannot be read.
+     */
+    public static long[] of(final File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            Murmur3 hash = new Murmur3();
+            while (true) {
+                int read = channel.read(buffer);
+                buffer.flip();
+                while (buffer.remaining() >= 16) {
+                    hash.block(buffer.getLong(), buffer.getLong());
+                }
+                if (read < 0) {
+                    break;
+                }
+                buffer.compact();
+            }
+            return hash.finish(buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Computes the fingerprint of an array of bytes, the same as that of a
+     * file with those bytes.
+     *
+     * @param bytes the bytes.
+     * @return the 128-bit fingerprint, as two longs.
+     */
+    public static long[] of(final byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        Murmur3 hash = new Murmur3();
+        while (buffer.remaining() >= 16) {
+            hash.block(buffer.getLong(), buffer.getLong());
+        }
+        return hash.finish(buffer);
+    }
+
+    /**
+     * Computes the fingerprint of the (user, item, preference) triples of a
+     * data model, independently of their order.
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     * @param model the data model.
+     * @return the 128-bit fingerprint, as two longs.
+     */
+    public static <U, I> long[] of(final DataModelIF<U, I> model) {
+        Accumulator<U, I> sum = new Accumulator<>();
+        DataModelUtils.forEachPreference(model, sum);
+        return sum.finish();
+    }
+
+    /**
+     * Computes the fingerprint of the (user, item, preference) triples and
+     * the (user, item, timestamp) triples of a temporal data model,
+     * independently of their order.
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     * @param model the data model.
+     * @return the 128-bit fingerprint, as two longs.
+     */
+    public static <U, I> long[] ofTemporal(final TemporalDataModelIF<U, I> model) {
+        Accumulator<U, I> sum = new Accumulator<>();
+        DataModelUtils.forEachPreference(model, sum);
+        for (Map.Entry<U, Map<I, Set<Long>>> e : model.getUserItemTimestamps().entrySet()) {
+            long u = hashId(e.getKey());
+            for (Map.Entry<I, Set<Long>> f : e.getValue().entrySet()) {
+                long i = hashId(f.getKey());
+                for (Long t : f.getValue()) {
+                    sum.add(TIMESTAMP_KEY, u, i, t);
+                }
+            }
+        }
+        return sum.finish();
+    }
+
+    /**
+     * Formats a fingerprint as a hexadecimal string (16 characters per long).
+     *
+     * @param fingerprint the fingerprint.
+     * @return the hexadecimal string.
+     */
+    public static String toHex(final long[] fingerprint) {
+        StringBuilder sb = new StringBuilder(16 * fingerprint.length);
+        for (long h : fingerprint) {
+            String s = Long.toHexString(h);
+            for (int k = s.length(); k < 16; k++) {
+                sb.append('0');
+            }
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Hashes an id: numbers by their value, strings by their UTF-8 bytes, and
+     * other objects by their hash code.
+     *
+     * @param id the id.
+     * @return the hash of the id.
+     */
+    static long hashId(final Object id) {
+        if ((id instanceof Long) || (id instanceof Integer) || (id instanceof Short) || (id instanceof Byte)) {
+            return ((Number) id).longValue();
+        }
+        if (id instanceof String) {
+            return of(((String) id).getBytes(StandardCharsets.UTF_8))[0];
+        }
+        return (id == null) ? 0L : id.hashCode();
+    }
+
+    /**
+     * Finalization mix of MurmurHash3, a bijection on longs.
+     *
+     * @param h the value.
+     * @return the mixed value.
+     */
+    static long fmix(final long h) {
+        long k = h;
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    /**
+     * State of a streaming MurmurHash3 (x64, 128 bits).
+     */
+    private static final class Murmur3 {
+
+        /**
+         * First half of the state.
+         */
+        private long h1 = 0L;
+        /**
+         * Second half of the state.
+         */
+        private long h2 = 0L;
+        /**
+         * Number of bytes hashed in blocks.
+         */
+        private long length = 0L;
+
+        /**
+         * Hashes a 16-byte block.
+         *
+         * @param block1 the first 8 bytes, little-endian.
+         * @param block2 the last 8 bytes, little-endian.
+         */
+        void block(final long block1, final long block2) {
+            h1 ^= mixK1(block1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(block2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+            length += 16;
+        }
+
+        /**
+         * Hashes the remaining bytes (less than a block) and finalizes the
+         * hash.
+         *
+         * @param tail the buffer with the remaining bytes.
+         * @return the hash, as two longs.
+         */
+        long[] finish(final ByteBuffer tail) {
+            int n = tail.remaining();
+            long k1 = 0L;
+            long k2 = 0L;
+            for (int k = 0; k < n; k++) {
+                long b = tail.get(tail.position() + k) & 0xffL;
+                if (k < 8) {
+                    k1 |= b << (8 * k);
+                } else {
+                    k2 |= b << (8 * (k - 8));
+                }
+            }
+            if (n > 8) {
+                h2 ^= mixK2(k2);
+            }
+            if (n > 0) {
+                h1 ^= mixK1(k1);
+            }
+            finalizeState(length + n);
+            return new long[]{h1, h2};
+        }
+
+        /**
+         * Finalizes the state, once all the bytes have been hashed.
+         *
+         * @param total the number of bytes hashed.
+         */
+        void finalizeState(final long total) {
+            h1 ^= total;
+            h2 ^= total;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+        }
+
+        /**
+         * Resets the state, to hash other bytes.
+         */
+        void reset() {
+            h1 = 0L;
+            h2 = 0L;
+            length = 0L;
+        }
+
+        /**
+         * Mixes the first half of a block.
+         *
+         * @param k the first half of a block.
+         * @return the mixed value.
+         */
+        private static long mixK1(final long k) {
+            return Long.rotateLeft(k * C1, 31) * C2;
+        }
+
+        /**
+         * Mixes the second half of a block.
+         *
+         * @param k the second half of a block.
+         * @return the mixed value.
+         */
+        private static long mixK2(final long k) {
+            return Long.rotateLeft(k * C2, 33) * C1;
+        }
+    }
+
+    /**
+     * Order-independent accumulator of the hashes of triples.
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     */
+    private static final class Accumulator<U, I> implements PreferenceVisitor<U, I> {
+
+        /**
+         * Sum of the first halves of the hashes.
+         */
+        private long sum1 = 0L;
+        /**
+         * Sum of the second halves of the hashes.
+         */
+        private long sum2 = 0L;
+        /**
+         * Number of triples.
+         */
+        private long count = 0L;
+        /**
+         * The hash of a triple, reused for all of them.
+         */
+        private final Murmur3 hash = new Murmur3();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visit(final U user, final I item, final double preference) {
+            // 0.0 and -0.0 are the same preference
+            add(PREFERENCE_KEY, hashId(user), hashId(item), Double.doubleToLongBits(preference + 0.0));
+        }
+
+        /**
+         * Adds the hash of a triple, computed as the MurmurHash3 of two
+         * blocks: the user and the item, and the value and the kind of
+         * triple.
+         *
+         * @param key the kind of triple.
+         * @param user the hash of the user.
+         * @param item the hash of the item.
+         * @param value the value of the triple.
+         */
+        void add(final long key, final long user, final long item, final long value) {
+            hash.reset();
+            hash.block(user, item);
+            hash.block(value, key);
+            hash.finalizeState(32L);
+            sum1 += hash.h1;
+            sum2 += hash.h2;
+            count++;
+        }
+
+        /**
+         * Finalizes the fingerprint.
+         *
+         * @return the fingerprint, as two longs.
+         */
+        long[] finish() {
+            return new long[]{fmix(sum1 ^ count), fmix(sum2 + count)};
+        }
+    }
+}
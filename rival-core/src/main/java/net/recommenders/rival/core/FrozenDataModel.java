@@ -0,0 +1,736 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable, read-optimized snapshot of a data model. The preferences of
+ * every user are stored in exact-sized arrays sorted by item (and the
+ * timestamps, if any, in sorted arrays aligned with them), so that iterating
+ * over a user profile is a sequential scan and looking up a preference is a
+ * binary search; counts are computed once. Items are ordered by their natural
+ * order when they are comparable, and by order of appearance otherwise; items
+ * that only have timestamps go after those with preferences.
+ *
+ * Snapshots are obtained with {@link DataModelUtils#freeze(DataModelIF)};
+ * every method that would modify them throws an
+ * {@link UnsupportedOperationException}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ *
+ * @param <U> generic type for users
+ * @param <I> generic type for items
+ */
+public final class FrozenDataModel<U, I> implements TemporalDataModelIF<U, I>, IndexedDataModelIF<U, I>,
+        VisitableDataModelIF<U, I> {
+
+    /**
+     * Message of the exceptions thrown by the methods that modify the model.
+     */
+    private static final String READ_ONLY = "Frozen data models cannot be modified";
+    /**
+     * The items, by index: first those with preferences, then those with
+     * only timestamps.
+     */
+    private final I[] itemIds;
+    /**
+     * Number of items with preferences.
+     */
+    private final int numItems;
+    /**
+     * The index of every item.
+     */
+    private final Map<I, Integer> itemIndex;
+    /**
+     * The users, in the order of the original model.
+     */
+    private final Object[] userIds;
+    /**
+     * The profile of every user.
+     */
+    private final Map<U, PreferenceRow> preferenceRows;
+    /**
+     * The timestamps of every user.
+     */
+    private final Map<U, TimestampRow> timestampRows;
+    /**
+     * Read-only view of the profiles.
+     */
+    private final Map<U, Map<I, Double>> userItemPreferences;
+    /**
+     * Read-only view of the timestamps.
+     */
+    private final Map<U, Map<I, Set<Long>>> userItemTimestamps;
+    /**
+     * Number of preferences in the model.
+     */
+    private final int numPreferences;
+    /**
+     * Inverted index between items and users, null until requested.
+     */
+    private volatile Map<I, Set<U>> itemUsers;
+
+    /**
+     * Constructor: copies a data model.
+     *
+     * @param model the model to copy.
+     */
+    @SuppressWarnings("unchecked")
+    FrozenDataModel(final DataModelIF<U, I> model) {
+        Map<U, Map<I, Set<Long>>> timestamps = null;
+        if (model instanceof TemporalDataModelIF) {
+            timestamps = ((TemporalDataModelIF<U, I>) model).getUserItemTimestamps();
+        }
+        Map<U, Map<I, Double>> prefs = model.getUserItemPreferences();
+        // items, sorted if possible
+        List<I> items = new ArrayList<>(model.getItems());
+        numItems = items.size();
+        if (timestamps != null) {
+            // items with only timestamps should be indexed too
+            Set<I> known = new HashSet<>(items);
+            for (Map<I, Set<Long>> m : timestamps.values()) {
+                for (I i : m.keySet()) {
+                    if (known.add(i)) {
+                        items.add(i);
+                    }
+                }
+            }
+        }
+        I[] sorted = (I[]) items.toArray();
+        try {
+            Arrays.sort(sorted, 0, numItems);
+            Arrays.sort(sorted, numItems, sorted.length);
+        } catch (ClassCastException e) {
+            // not comparable: keep the order of appearance
+            sorted = (I[]) items.toArray();
+        }
+        itemIds = sorted;
+        itemIndex = new HashMap<>(capacity(itemIds.length));
+        for (int i = 0; i < itemIds.length; i++) {
+            itemIndex.put(itemIds[i], i);
+        }
+        // user profiles
+        userIds = prefs.keySet().toArray();
+        Map<U, PreferenceRow> rows = new HashMap<>(capacity(userIds.length));
+        int total = 0;
+        for (Object u : userIds) {
+            PreferenceRow row = new PreferenceRow(prefs.get(u));
+            rows.put((U) u, row);
+            total += row.items.length;
+        }
+        preferenceRows = rows;
+        userItemPreferences = Collections.<U, Map<I, Double>>unmodifiableMap(rows);
+        numPreferences = total;
+        Map<U, TimestampRow> timeRows = new HashMap<>();
+        if (timestamps != null) {
+            timeRows = new HashMap<>(capacity(timestamps.size()));
+            for (Map.Entry<U, Map<I, Set<Long>>> e : timestamps.entrySet()) {
+                timeRows.put(e.getKey(), new TimestampRow(e.getValue()));
+            }
+        }
+        timestampRows = timeRows;
+        userItemTimestamps = Collections.<U, Map<I, Set<Long>>>unmodifiableMap(timeRows);
+        itemUsers = null;
+    }
+
+    /**
+     * Computes the initial capacity of a hash map that holds a number of
+     * elements without being resized.
+     *
+     * @param n number of elements.
+     * @return the initial capacity.
+     */
+    private static int capacity(final int n) {
+        return n * 4 / 3 + 1;
+    }
+
+    /**
+     * Sorts the indices of some items.
+     *
+     * @param keys the items.
+     * @return the sorted indices of the items.
+     */
+    private int[] sortedIndices(final Set<I> keys) {
+        int[] indices = new int[keys.size()];
+        int k = 0;
+        for (I i : keys) {
+            indices[k++] = itemIndex.get(i);
+        }
+        Arrays.sort(indices);
+        return indices;
+    }
+
+    /**
+     * Looks up the position of an item in a sorted array of item indices.
+     *
+     * @param indices the sorted indices.
+     * @param key the item.
+     * @return the position, or -1 if the item is not in the array.
+     */
+    private int find(final int[] indices, final Object key) {
+        Integer index = itemIndex.get(key);
+        if (index == null) {
+            return -1;
+        }
+        int pos = Arrays.binarySearch(indices, index);
+        return pos < 0 ? -1 : pos;
+    }
+
+    /**
+     * Method that returns the preference map between users and items.
+     *
+     * @return the preference map between users and items.
+     */
+    @Override
+    public Map<U, Map<I, Double>> getUserItemPreferences() {
+        return userItemPreferences;
+    }
+
+    /**
+     * Method that returns the map with the timestamps between users and items.
+     *
+     * @return the map with the timestamps between users and items.
+     */
+    @Override
+    public Map<U, Map<I, Set<Long>>> getUserItemTimestamps() {
+        return userItemTimestamps;
+    }
+
+    /**
+     * Method that returns the inverted (item to users) index of the model,
+     * built the first time it is requested.
+     *
+     * @return the map between items and the users with preferences for them.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<I, Set<U>> getItemUsers() {
+        Map<I, Set<U>> index = itemUsers;
+        if (index == null) {
+            int[] counts = new int[itemIds.length];
+            for (PreferenceRow row : preferenceRows.values()) {
+                for (int i : row.items) {
+                    counts[i]++;
+                }
+            }
+            Object[][] columns = new Object[itemIds.length][];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = new Object[counts[i]];
+                counts[i] = 0;
+            }
+            for (Object u : userIds) {
+                for (int i : preferenceRows.get(u).items) {
+                    columns[i][counts[i]++] = u;
+                }
+            }
+            Map<I, Set<U>> map = new HashMap<>(capacity(itemIds.length));
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].length > 0) {
+                    map.put(itemIds[i], (Set<U>) Collections.unmodifiableSet(new ArraySet(columns[i], columns[i].length)));
+                }
+            }
+            index = Collections.unmodifiableMap(map);
+            itemUsers = index;
+        }
+        return index;
+    }
+
+    /**
+     * Not supported: frozen models cannot be modified.
+     *
+     * @param u the user.
+     * @param i the item.
+     * @param d the preference.
+     */
+    @Override
+    public void addPreference(final U u, final I i, final Double d) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    /**
+     * Not supported: frozen models cannot be modified.
+     *
+     * @param u the user.
+     * @param i the item.
+     * @param t the timestamp.
+     */
+    @Override
+    public void addTimestamp(final U u, final I i, final Long t) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    /**
+     * Method that returns the items in the model.
+     *
+     * @return the items in the model.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<I> getItems() {
+        return (Set<I>) Collections.unmodifiableSet(new ArraySet(itemIds, numItems));
+    }
+
+    /**
+     * Method that returns the users in the model.
+     *
+     * @return the users in the model.
+     */
+    @Override
+    public Set<U> getUsers() {
+        return userItemPreferences.keySet();
+    }
+
+    /**
+     * Method that returns the number of items in the model.
+     *
+     * @return the number of items in the model.
+     */
+    @Override
+    public int getNumItems() {
+        return numItems;
+    }
+
+    /**
+     * Method that returns the number of users in the model.
+     *
+     * @return the number of users in the model.
+     */
+    @Override
+    public int getNumUsers() {
+        return userIds.length;
+    }
+
+    /**
+     * Method that returns the number of preferences in the model.
+     *
+     * @return the number of preferences in the model.
+     */
+    public int getNumPreferences() {
+        return numPreferences;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The preferences are read directly from the arrays of every profile.
+     */
+    @Override
+    public void forEachPreference(final PreferenceVisitor<U, I> visitor) {
+        for (Map.Entry<U, PreferenceRow> e : preferenceRows.entrySet()) {
+            U user = e.getKey();
+            PreferenceRow row = e.getValue();
+            for (int k = 0; k < row.items.length; k++) {
+                visitor.visit(user, itemIds[row.items[k]], row.values[k]);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The preferences are read directly from the arrays of every profile.
+     */
+    @Override
+    public void forEachUser(final UserVisitor<U, I> visitor) {
+        for (Map.Entry<U, PreferenceRow> e : preferenceRows.entrySet()) {
+            U user = e.getKey();
+            PreferenceRow row = e.getValue();
+            if (visitor.visitUser(user, row.items.length)) {
+                for (int k = 0; k < row.items.length; k++) {
+                    visitor.visitPreference(itemIds[row.items[k]], row.values[k]);
+                }
+                visitor.endUser(user);
+            }
+        }
+    }
+
+    /**
+     * Not supported: frozen models cannot be modified.
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    /**
+     * Estimates the heap footprint of the snapshot.
+     *
+     * @return the estimated size, in bytes.
+     */
+    long estimateBytes() {
+        int refs = MemoryEstimator.REFERENCE;
+        long bytes = MemoryEstimator.array(refs, itemIds.length) + MemoryEstimator.hashMap(itemIds.length)
+                + MemoryEstimator.array(refs, userIds.length) + MemoryEstimator.hashMap(userIds.length)
+                + itemIds.length * (long) MemoryEstimator.BOXED;
+        long rowHeader = MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 3 * refs);
+        for (PreferenceRow row : preferenceRows.values()) {
+            int n = row.items.length;
+            bytes += rowHeader + MemoryEstimator.array(4, n) + MemoryEstimator.array(8, n);
+        }
+        bytes += MemoryEstimator.hashMap(timestampRows.size());
+        for (TimestampRow row : timestampRows.values()) {
+            long[][] values = row.values;
+            bytes += rowHeader + MemoryEstimator.array(4, values.length) + MemoryEstimator.array(refs, values.length);
+            for (long[] t : values) {
+                bytes += MemoryEstimator.array(8, t.length);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Read-only set backed by a prefix of an array of distinct elements.
+     */
+    private final class ArraySet extends AbstractSet<Object> {
+
+        /**
+         * The elements.
+         */
+        private final Object[] elements;
+        /**
+         * Number of elements of the set.
+         */
+        private final int length;
+
+        /**
+         * Constructor.
+         *
+         * @param array the elements.
+         * @param n the number of elements of the set.
+         */
+        ArraySet(final Object[] array, final int n) {
+            this.elements = array;
+            this.length = n;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean contains(final Object o) {
+            if (elements == itemIds) {
+                Integer index = itemIndex.get(o);
+                return (index != null) && (index < length);
+            }
+            return super.contains(o);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Iterator<Object> iterator() {
+            return Arrays.asList(elements).subList(0, length).iterator();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return length;
+        }
+    }
+
+    /**
+     * Profile of a user: preferences stored in arrays sorted by item.
+     */
+    private final class PreferenceRow extends AbstractMap<I, Double> {
+
+        /**
+         * Indices of the items, in increasing order.
+         */
+        private final int[] items;
+        /**
+         * Preferences, aligned with the items.
+         */
+        private final double[] values;
+
+        /**
+         * Constructor.
+         *
+         * @param prefs the preferences of the user.
+         */
+        PreferenceRow(final Map<I, Double> prefs) {
+            items = sortedIndices(prefs.keySet());
+            values = new double[items.length];
+            for (int k = 0; k < items.length; k++) {
+                values[k] = prefs.get(itemIds[items[k]]);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Double get(final Object key) {
+            int pos = find(items, key);
+            return pos < 0 ? null : values[pos];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean containsKey(final Object key) {
+            return find(items, key) >= 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return items.length;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Entry<I, Double>> entrySet() {
+            return new AbstractSet<Entry<I, Double>>() {
+
+                @Override
+                public Iterator<Entry<I, Double>> iterator() {
+                    return new RowIterator<Entry<I, Double>>(items.length) {
+
+                        @Override
+                        protected Entry<I, Double> get(final int pos) {
+                            return new SimpleImmutableEntry<I, Double>(itemIds[items[pos]], values[pos]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return items.length;
+                }
+            };
+        }
+    }
+
+    /**
+     * Timestamps of a user: sorted arrays of timestamps, aligned with the
+     * items (sorted too).
+     */
+    private final class TimestampRow extends AbstractMap<I, Set<Long>> {
+
+        /**
+         * Indices of the items, in increasing order.
+         */
+        private final int[] items;
+        /**
+         * Sorted timestamps, aligned with the items.
+         */
+        private final long[][] values;
+
+        /**
+         * Constructor.
+         *
+         * @param timestamps the timestamps of the user.
+         */
+        TimestampRow(final Map<I, Set<Long>> timestamps) {
+            items = sortedIndices(timestamps.keySet());
+            values = new long[items.length][];
+            for (int k = 0; k < items.length; k++) {
+                Set<Long> set = timestamps.get(itemIds[items[k]]);
+                long[] array = new long[set.size()];
+                int n = 0;
+                for (Long t : set) {
+                    array[n++] = t;
+                }
+                Arrays.sort(array);
+                values[k] = array;
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Long> get(final Object key) {
+            int pos = find(items, key);
+            return pos < 0 ? null : new LongArraySet(values[pos]);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean containsKey(final Object key) {
+            return find(items, key) >= 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return items.length;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Entry<I, Set<Long>>> entrySet() {
+            return new AbstractSet<Entry<I, Set<Long>>>() {
+
+                @Override
+                public Iterator<Entry<I, Set<Long>>> iterator() {
+                    return new RowIterator<Entry<I, Set<Long>>>(items.length) {
+
+                        @Override
+                        protected Entry<I, Set<Long>> get(final int pos) {
+                            Set<Long> set = new LongArraySet(values[pos]);
+                            return new SimpleImmutableEntry<I, Set<Long>>(itemIds[items[pos]], set);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return items.length;
+                }
+            };
+        }
+    }
+
+    /**
+     * Read-only set backed by a sorted array of longs.
+     */
+    private static final class LongArraySet extends AbstractSet<Long> {
+
+        /**
+         * The sorted values.
+         */
+        private final long[] values;
+
+        /**
+         * Constructor.
+         *
+         * @param array the sorted values.
+         */
+        LongArraySet(final long[] array) {
+            this.values = array;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean contains(final Object o) {
+            return (o instanceof Long) && Arrays.binarySearch(values, (Long) o) >= 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Iterator<Long> iterator() {
+            return new RowIterator<Long>(values.length) {
+
+                @Override
+                protected Long get(final int pos) {
+                    return values[pos];
+                }
+            };
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+
+    /**
+     * Read-only iterator over the positions of an array.
+     *
+     * @param <T> type of the elements
+     */
+    private abstract static class RowIterator<T> implements Iterator<T> {
+
+        /**
+         * Length of the array.
+         */
+        private final int length;
+        /**
+         * Next position.
+         */
+        private int next;
+
+        /**
+         * Constructor.
+         *
+         * @param n length of the array.
+         */
+        RowIterator(final int n) {
+            this.length = n;
+            this.next = 0;
+        }
+
+        /**
+         * Gets the element at a position.
+         *
+         * @param pos the position.
+         * @return the element.
+         */
+        protected abstract T get(int pos);
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean hasNext() {
+            return next < length;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public T next() {
+            if (next >= length) {
+                throw new NoSuchElementException();
+            }
+            return get(next++);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(READ_ONLY);
+        }
+    }
+}
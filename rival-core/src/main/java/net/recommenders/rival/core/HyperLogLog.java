@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+/**
+ * HyperLogLog sketch to estimate the number of distinct values in a stream
+ * in constant memory ({@code 2^precision} bytes), with a relative standard
+ * error of about {@code 1.04 / sqrt(2^precision)}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public final class HyperLogLog {
+
+    /**
+     * Minimum precision.
+     */
+    public static final int MIN_PRECISION = 4;
+    /**
+     * Maximum precision.
+     */
+    public static final int MAX_PRECISION = 18;
+    /**
+     * Number of bits used to select a register.
+     */
+    private final int precision;
+    /**
+     * The registers: maximum rank observed in every one.
+     */
+    private final byte[] registers;
+
+    /**
+     * Constructor.
+     *
+     * @param thePrecision number of bits used to select a register (between
+     * {@link #MIN_PRECISION} and {@link #MAX_PRECISION}).
+     */
+    public HyperLogLog(final int thePrecision) {
+        if (thePrecision < MIN_PRECISION || thePrecision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Invalid precision: " + thePrecision);
+        }
+        this.precision = thePrecision;
+        this.registers = new byte[1 << thePrecision];
+    }
+
+    /**
+     * Mixes the bits of a value (finalizer of MurmurHash3), so that similar
+     * ids are spread over the whole range of hashes.
+     *
+     * @param value the value.
+     * @return the hash of the value.
+     */
+    static long hash(final long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Adds a value to the sketch.
+     *
+     * @param value the value.
+     */
+    public void add(final long value) {
+        addHash(hash(value));
+    }
+
+    /**
+     * Adds an already hashed value to the sketch.
+     *
+     * @param h the hash of the value.
+     */
+    void addHash(final long h) {
+        int index = (int) (h >>> (64 - precision));
+        // rank of the first 1 in the remaining bits (bounded by a sentinel bit)
+        int rank = Long.numberOfLeadingZeros((h << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Merges another sketch (with the same precision) into this one.
+     *
+     * @param other the other sketch.
+     */
+    public void merge(final HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Sketches with different precision cannot be merged");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of distinct values added to the sketch.
+     *
+     * @return the estimated number of distinct values.
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) {
+                zeros++;
+            }
+        }
+        double alpha;
+        switch (m) {
+            case 16:
+                alpha = 0.673;
+                break;
+            case 32:
+                alpha = 0.697;
+                break;
+            case 64:
+                alpha = 0.709;
+                break;
+            default:
+                alpha = 0.7213 / (1.0 + 1.079 / m);
+                break;
+        }
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // small range correction: linear counting
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Arrays;
+
+/**
+ * Bidirectional dictionary between external (long) ids and dense int indices
+ * (0, 1, 2, ...). A dictionary can be shared by several in-memory data
+ * models (for instance, the splits created from a {@link PrimitiveDataModel}
+ * through
+ * {@link DataModelFactory#getSimilarModel(net.recommenders.rival.core.DataModelIF)}),
+ * so that the same user or item gets the same index in all of them and arrays
+ * can be indexed directly.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public class IdDictionary {
+
+    /**
+     * Index returned for ids not in the dictionary.
+     */
+    public static final int NOT_FOUND = LongIntHashMap.NO_VALUE;
+    /**
+     * Initial number of ids.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * Mapping from ids to indices.
+     */
+    private LongIntHashMap indices;
+    /**
+     * Ids, by index.
+     */
+    private long[] ids;
+    /**
+     * Number of ids in the dictionary.
+     */
+    private int size;
+
+    /**
+     * Default constructor.
+     */
+    public IdDictionary() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor with an expected number of ids.
+     *
+     * @param expectedSize number of ids the dictionary should hold without
+     * resizing.
+     */
+    public IdDictionary(final int expectedSize) {
+        indices = new LongIntHashMap(expectedSize);
+        ids = new long[Math.max(expectedSize, INITIAL_CAPACITY)];
+        size = 0;
+    }
+
+    /**
+     * Returns the index of an id.
+     *
+     * @param id the id
+     * @return the index of the id, or {@link #NOT_FOUND} if the id is not in
+     * the dictionary
+     */
+    public int getIndex(final long id) {
+        return indices.get(id);
+    }
+
+    /**
+     * Returns the index of an id, adding the id to the dictionary if needed.
+     *
+     * @param id the id
+     * @return the index of the id
+     */
+    public int add(final long id) {
+        int index = indices.get(id);
+        if (index == NOT_FOUND) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+            }
+            index = size++;
+            ids[index] = id;
+            indices.put(id, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the id stored at an index.
+     *
+     * @param index the index
+     * @return the id
+     */
+    public long getId(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return ids[index];
+    }
+
+    /**
+     * Checks whether an id is in the dictionary.
+     *
+     * @param id the id
+     * @return true if the id is in the dictionary
+     */
+    public boolean contains(final long id) {
+        return indices.get(id) != NOT_FOUND;
+    }
+
+    /**
+     * Returns the number of ids in the dictionary.
+     *
+     * @return the number of ids in the dictionary
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every id from the dictionary.
+     */
+    public void clear() {
+        indices.clear();
+        size = 0;
+    }
+
+    /**
+     * Estimates the heap footprint of the dictionary.
+     *
+     * @return the estimated size, in bytes.
+     */
+    long estimateBytes() {
+        return MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 2 * MemoryEstimator.REFERENCE + 4)
+                + indices.estimateBytes() + MemoryEstimator.array(8, ids.length);
+    }
+}
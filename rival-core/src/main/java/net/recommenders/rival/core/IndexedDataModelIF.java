@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Data model that keeps an inverted (item to users) index. Use
+ * {@link DataModelUtils#getItemUsers(net.recommenders.rival.core.DataModelIF)}
+ * to get the index of any data model.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ *
+ * @param <U> generic type for users
+ * @param <I> generic type for items
+ */
+public interface IndexedDataModelIF<U, I> extends DataModelIF<U, I> {
+
+    /**
+     * Method that returns the inverted (item to users) index of the model:
+     * for every item, the set of users with a preference for it, so that the
+     * popularity of an item is the size of its set. The index is built the
+     * first time it is requested and kept up to date afterwards.
+     *
+     * @return the map between items and the users with preferences for them.
+     */
+    public Map<I, Set<U>> getItemUsers();
+}
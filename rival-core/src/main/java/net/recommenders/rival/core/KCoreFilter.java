@@ -0,0 +1,471 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Filter that keeps the k-core of a dataset, that is, that repeatedly removes
+ * the users with less than a minimum number of items and the items with less
+ * than a minimum number of users (counting distinct (user, item) pairs) until
+ * every remaining user and item has enough of them.
+ *
+ * The filter runs on integer arrays: the preferences are indexed as
+ * compressed rows (taken directly from a {@link PrimitiveDataModel}, or built
+ * in one pass from any other model) and columns, the degree of every user and
+ * item is kept in an array, and the users and items that fall below the
+ * minimum are peeled off through a work queue, hence every preference is
+ * visited a constant number of times regardless of the number of rounds.
+ * The statistics of the last filtered model are available after
+ * {@link #filter(net.recommenders.rival.core.DataModelIF)}. This class is not
+ * thread-safe.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public class KCoreFilter {
+
+    /**
+     * Minimum number of items of every user.
+     */
+    private final int minUserItems;
+    /**
+     * Minimum number of users of every item.
+     */
+    private final int minItemUsers;
+    /**
+     * Number of users removed by the last filtering.
+     */
+    private int removedUsers;
+    /**
+     * Number of items removed by the last filtering.
+     */
+    private int removedItems;
+    /**
+     * Number of (user, item) pairs removed by the last filtering.
+     */
+    private long removedPreferences;
+    /**
+     * Number of peeling rounds of the last filtering.
+     */
+    private int rounds;
+
+    /**
+     * Constructor.
+     *
+     * @param k The minimum number of items of every user and of users of
+     * every item.
+     */
+    public KCoreFilter(final int k) {
+        this(k, k);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param minItemsPerUser The minimum number of items of every user.
+     * @param minUsersPerItem The minimum number of users of every item.
+     */
+    public KCoreFilter(final int minItemsPerUser, final int minUsersPerItem) {
+        this.minUserItems = minItemsPerUser;
+        this.minItemUsers = minUsersPerItem;
+    }
+
+    /**
+     * Filters a data model, returning a new data model with the preferences
+     * (and timestamps, if the model is temporal) of the users and items in
+     * its k-core. Primitive models are filtered into primitive models sharing
+     * their id dictionaries.
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     * @param model The data model.
+     * @return The filtered data model.
+     */
+    @SuppressWarnings("unchecked")
+    public <U, I> DataModelIF<U, I> filter(final DataModelIF<U, I> model) {
+        if (model instanceof PrimitiveDataModel) {
+            return (DataModelIF<U, I>) filter((PrimitiveDataModel) model);
+        }
+        RowIndexer<U, I> rows = new RowIndexer<>(model.getNumUsers(), model.getNumItems());
+        DataModelUtils.forEachUser(model, rows);
+        BitSet[] kept = peel(rows.users.size(), rows.itemIndex.size(), rows.offsets, rows.itemIndices);
+        // copy the preferences in the core, in the same order
+        DataModelIF<U, I> filtered;
+        if (model instanceof CompactTemporalDataModel) {
+            filtered = DataModelFactory.getCompactTemporalModel();
+        } else if (model instanceof TemporalDataModelIF) {
+            filtered = DataModelFactory.getSimpleTemporalModel();
+        } else {
+            filtered = DataModelFactory.getSimilarModel(model);
+        }
+        TemporalDataModelIF<U, I> temporal = (model instanceof TemporalDataModelIF) ? (TemporalDataModelIF<U, I>) model : null;
+        PreferenceBatch<U, I> batch = new PreferenceBatch<>();
+        DataModelUtils.forEachUser(model, new CoreCopier<>(rows, kept, temporal, filtered, batch));
+        batch.flushTo(filtered);
+        return filtered;
+    }
+
+    /**
+     * Filters a primitive data model, returning a new primitive data model
+     * that shares the id dictionaries of the original one.
+     *
+     * @param model The data model.
+     * @return The filtered data model.
+     */
+    public PrimitiveDataModel filter(final PrimitiveDataModel model) {
+        int[] offsets = model.getUserOffsets();
+        int[] itemIndices = model.getItemIndices();
+        double[] values = model.getPreferenceValues();
+        int numUsers = offsets.length - 1;
+        BitSet[] kept = peel(numUsers, model.getItemDictionary().size(), offsets, itemIndices);
+        PrimitiveDataModel filtered = new PrimitiveDataModel(model.getUserDictionary(), model.getItemDictionary());
+        for (int u = kept[0].nextSetBit(0); u >= 0; u = kept[0].nextSetBit(u + 1)) {
+            long user = model.getUserId(u);
+            for (int p = offsets[u]; p < offsets[u + 1]; p++) {
+                if (kept[1].get(itemIndices[p])) {
+                    filtered.addPreference(user, model.getItemId(itemIndices[p]), values[p]);
+                }
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Computes the k-core of a set of preferences stored as compressed rows,
+     * updating the statistics of the filter.
+     *
+     * @param numUsers The number of user indices.
+     * @param numItems The number of item indices.
+     * @param offsets The offsets of the row of every user (one more than the
+     * number of users).
+     * @param itemIndices The item index of every preference.
+     * @return the users (first) and items (second) in the k-core.
+     */
+    private BitSet[] peel(final int numUsers, final int numItems, final int[] offsets, final int[] itemIndices) {
+        int numPreferences = offsets[numUsers];
+        int[] userDegree = new int[numUsers];
+        int[] itemDegree = new int[numItems];
+        for (int u = 0; u < numUsers; u++) {
+            userDegree[u] = offsets[u + 1] - offsets[u];
+        }
+        for (int p = 0; p < numPreferences; p++) {
+            itemDegree[itemIndices[p]]++;
+        }
+        // compressed columns: the users of every item
+        int[] itemOffsets = new int[numItems + 1];
+        for (int i = 0; i < numItems; i++) {
+            itemOffsets[i + 1] = itemOffsets[i] + itemDegree[i];
+        }
+        int[] next = Arrays.copyOf(itemOffsets, numItems);
+        int[] itemUsers = new int[numPreferences];
+        for (int u = 0; u < numUsers; u++) {
+            for (int p = offsets[u]; p < offsets[u + 1]; p++) {
+                itemUsers[next[itemIndices[p]]++] = u;
+            }
+        }
+        // users are queued as their index, items as numUsers plus their index
+        BitSet keptUsers = new BitSet(numUsers);
+        BitSet keptItems = new BitSet(numItems);
+        int[] queue = new int[numUsers + numItems];
+        int tail = 0;
+        for (int u = 0; u < numUsers; u++) {
+            if (userDegree[u] >= minUserItems) {
+                keptUsers.set(u);
+            } else if (userDegree[u] > 0) {
+                queue[tail++] = u;
+            }
+        }
+        for (int i = 0; i < numItems; i++) {
+            if (itemDegree[i] >= minItemUsers) {
+                keptItems.set(i);
+            } else if (itemDegree[i] > 0) {
+                queue[tail++] = numUsers + i;
+            }
+        }
+        int head = 0;
+        rounds = 0;
+        while (head < tail) {
+            rounds++;
+            int end = tail;
+            while (head < end) {
+                int x = queue[head++];
+                if (x < numUsers) {
+                    for (int p = offsets[x]; p < offsets[x + 1]; p++) {
+                        int i = itemIndices[p];
+                        if (keptItems.get(i) && (--itemDegree[i] < minItemUsers)) {
+                            keptItems.clear(i);
+                            queue[tail++] = numUsers + i;
+                        }
+                    }
+                } else {
+                    int i = x - numUsers;
+                    for (int p = itemOffsets[i]; p < itemOffsets[i + 1]; p++) {
+                        int u = itemUsers[p];
+                        if (keptUsers.get(u) && (--userDegree[u] < minUserItems)) {
+                            keptUsers.clear(u);
+                            queue[tail++] = u;
+                        }
+                    }
+                }
+            }
+        }
+        // statistics
+        removedUsers = 0;
+        removedItems = 0;
+        for (int k = 0; k < tail; k++) {
+            if (queue[k] < numUsers) {
+                removedUsers++;
+            } else {
+                removedItems++;
+            }
+        }
+        long keptPreferences = 0L;
+        for (int u = keptUsers.nextSetBit(0); u >= 0; u = keptUsers.nextSetBit(u + 1)) {
+            keptPreferences += userDegree[u];
+        }
+        removedPreferences = numPreferences - keptPreferences;
+        return new BitSet[]{keptUsers, keptItems};
+    }
+
+    /**
+     * Returns the number of users removed by the last filtering.
+     *
+     * @return the number of users removed.
+     */
+    public int getRemovedUsers() {
+        return removedUsers;
+    }
+
+    /**
+     * Returns the number of items removed by the last filtering.
+     *
+     * @return the number of items removed.
+     */
+    public int getRemovedItems() {
+        return removedItems;
+    }
+
+    /**
+     * Returns the number of (user, item) pairs removed by the last filtering.
+     *
+     * @return the number of pairs removed.
+     */
+    public long getRemovedPreferences() {
+        return removedPreferences;
+    }
+
+    /**
+     * Returns the number of peeling rounds of the last filtering: the first
+     * round removes the users and items below the minimum in the original
+     * data, and every other round those that fell below it because of the
+     * removals of the previous round.
+     *
+     * @return the number of rounds.
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Visitor that indexes the preferences of a data model as compressed
+     * rows, with users indexed in visiting order and items in order of
+     * appearance.
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     */
+    private static final class RowIndexer<U, I> implements UserVisitor<U, I> {
+
+        /**
+         * The users, by index.
+         */
+        private final List<U> users;
+        /**
+         * The index of every item.
+         */
+        private final Map<I, Integer> itemIndex;
+        /**
+         * The offsets of the row of every user.
+         */
+        private final int[] offsets;
+        /**
+         * The item index of every preference.
+         */
+        private int[] itemIndices;
+        /**
+         * Number of preferences indexed.
+         */
+        private int n;
+
+        /**
+         * Constructor.
+         *
+         * @param numUsers the number of users of the data model.
+         * @param numItems the number of items of the data model.
+         */
+        RowIndexer(final int numUsers, final int numItems) {
+            this.users = new ArrayList<>(numUsers);
+            this.itemIndex = new HashMap<>(DataModelUtils.mapCapacity(numItems));
+            this.offsets = new int[numUsers + 1];
+            this.itemIndices = new int[Math.max(numUsers, 16)];
+            this.n = 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitUser(final U user, final int numPreferences) {
+            users.add(user);
+            if (n + numPreferences > itemIndices.length) {
+                itemIndices = Arrays.copyOf(itemIndices, Math.max(n + numPreferences, itemIndices.length << 1));
+            }
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitPreference(final I item, final double preference) {
+            Integer i = itemIndex.get(item);
+            if (i == null) {
+                i = itemIndex.size();
+                itemIndex.put(item, i);
+            }
+            itemIndices[n++] = i;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void endUser(final U user) {
+            offsets[users.size()] = n;
+        }
+    }
+
+    /**
+     * Visitor that copies the preferences (and timestamps) in the core of a
+     * data model, visited in the same order as when it was indexed by a
+     * {@link RowIndexer}, into another data model.
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     */
+    private static final class CoreCopier<U, I> implements UserVisitor<U, I> {
+
+        /**
+         * The rows of the visited data model.
+         */
+        private final RowIndexer<U, I> rows;
+        /**
+         * The user and item indices in the core.
+         */
+        private final BitSet[] kept;
+        /**
+         * The visited data model, if temporal, or null otherwise.
+         */
+        private final TemporalDataModelIF<U, I> temporal;
+        /**
+         * The data model where the core is copied.
+         */
+        private final DataModelIF<U, I> filtered;
+        /**
+         * The batch of preferences to be added to the filtered data model.
+         */
+        private final PreferenceBatch<U, I> batch;
+        /**
+         * Index of the current user.
+         */
+        private int u;
+        /**
+         * Index of the current preference.
+         */
+        private int p;
+        /**
+         * Timestamps of the current user, if any.
+         */
+        private Map<I, Set<Long>> timestamps;
+
+        /**
+         * Constructor.
+         *
+         * @param theRows the rows of the visited data model.
+         * @param theKept the user and item indices in the core.
+         * @param theTemporal the visited data model, if temporal, or null
+         * otherwise.
+         * @param theFiltered the data model where the core is copied.
+         * @param theBatch the batch of preferences to be added to the
+         * filtered data model.
+         */
+        CoreCopier(final RowIndexer<U, I> theRows, final BitSet[] theKept, final TemporalDataModelIF<U, I> theTemporal,
+                final DataModelIF<U, I> theFiltered, final PreferenceBatch<U, I> theBatch) {
+            this.rows = theRows;
+            this.kept = theKept;
+            this.temporal = theTemporal;
+            this.filtered = theFiltered;
+            this.batch = theBatch;
+            this.u = -1;
+            this.p = 0;
+            this.timestamps = null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitUser(final U user, final int numPreferences) {
+            u++;
+            if (!kept[0].get(u)) {
+                p += numPreferences;
+                return false;
+            }
+            timestamps = (temporal == null) ? null : temporal.getUserItemTimestamps().get(user);
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitPreference(final I item, final double preference) {
+            if (kept[1].get(rows.itemIndices[p++])) {
+                U user = rows.users.get(u);
+                batch.add(filtered, user, item, preference);
+                Set<Long> times = (timestamps == null) ? null : timestamps.get(item);
+                if (times != null) {
+                    for (Long t : times) {
+                        ((TemporalDataModelIF<U, I>) filtered).addTimestamp(user, item, t);
+                    }
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void endUser(final U user) {
+        }
+    }
+}
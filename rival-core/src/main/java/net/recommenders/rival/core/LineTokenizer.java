@@ -0,0 +1,470 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reusable tokenizer for delimited lines. Unlike {@link String#split}, the
+ * line is scanned in place: only the offsets of the tokens are stored, and
+ * numbers are parsed directly from those offsets, so tokenizing a line and
+ * reading its numeric fields does not allocate any object.
+ *
+ * The tokens are the same as those returned by {@code line.split(delimiter)}
+ * (in particular, trailing empty tokens are discarded). Delimiters with
+ * special characters are matched as regular expressions, which is slower.
+ * A tokenizer is not thread-safe.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public final class LineTokenizer {
+
+    /**
+     * Initial number of tokens.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+    /**
+     * Largest number of decimal digits that always fit in a long.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+    /**
+     * Largest number of significant digits that are exactly represented by a
+     * double.
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+    /**
+     * Powers of ten exactly represented by a double.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /**
+     * Characters with a special meaning in regular expressions.
+     */
+    private static final String REGEX_CHARS = ".$|()[]{}^?*+\\";
+    /**
+     * The delimiter between tokens.
+     */
+    private final String delimiter;
+    /**
+     * The delimiter as a regular expression, null if it is a literal string.
+     */
+    private final Pattern pattern;
+    /**
+     * The line being tokenized.
+     */
+    private CharSequence line;
+    /**
+     * First position of every token.
+     */
+    private int[] starts;
+    /**
+     * Last position (exclusive) of every token.
+     */
+    private int[] ends;
+    /**
+     * Number of tokens in the line.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param sep the delimiter between tokens (as in {@link String#split}).
+     */
+    public LineTokenizer(final String sep) {
+        if (sep == null || sep.isEmpty()) {
+            throw new IllegalArgumentException("Empty delimiter");
+        }
+        this.delimiter = sep;
+        this.pattern = isLiteral(sep) ? null : Pattern.compile(sep);
+        this.starts = new int[INITIAL_CAPACITY];
+        this.ends = new int[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Checks whether a regular expression (as those used with
+     * {@link String#split}) matches only itself, in which case it can be used
+     * as the delimiter of a tokenizer (escaped characters, such as a
+     * backslash followed by a t, are not considered literal).
+     *
+     * @param regex the regular expression.
+     * @return true if the expression is a literal string.
+     */
+    static boolean isLiteral(final String regex) {
+        if (regex == null || regex.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < regex.length(); i++) {
+            if (REGEX_CHARS.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tokenizes a line.
+     *
+     * @param l the line.
+     * @return this tokenizer.
+     */
+    public LineTokenizer tokenize(final CharSequence l) {
+        return tokenize(l, 0, l.length());
+    }
+
+    /**
+     * Tokenizes a region of a character sequence.
+     *
+     * @param l the sequence.
+     * @param from first position of the line (inclusive).
+     * @param to last position of the line (exclusive).
+     * @return this tokenizer.
+     */
+    public LineTokenizer tokenize(final CharSequence l, final int from, final int to) {
+        this.line = l;
+        this.size = 0;
+        if (pattern != null) {
+            return tokenizeRegex(l, from, to);
+        }
+        char first = delimiter.charAt(0);
+        int dlen = delimiter.length();
+        int start = from;
+        int pos = from;
+        while (pos <= to - dlen) {
+            if (l.charAt(pos) == first && matchesDelimiter(l, pos)) {
+                addToken(start, pos);
+                pos += dlen;
+                start = pos;
+            } else {
+                pos++;
+            }
+        }
+        addToken(start, to);
+        // as String.split, remove trailing empty tokens (if a delimiter was found)
+        int minSize = size > 1 ? 0 : 1;
+        while (size > minSize && starts[size - 1] == ends[size - 1]) {
+            size--;
+        }
+        return this;
+    }
+
+    /**
+     * Tokenizes a region of a character sequence when the delimiter is a
+     * regular expression.
+     *
+     * @param l the sequence.
+     * @param from first position of the line (inclusive).
+     * @param to last position of the line (exclusive).
+     * @return this tokenizer.
+     */
+    private LineTokenizer tokenizeRegex(final CharSequence l, final int from, final int to) {
+        Matcher m = pattern.matcher(l);
+        m.region(from, to);
+        int start = from;
+        while (m.find()) {
+            if (m.end() == from) {
+                // as String.split, no leading empty token for a zero-width match
+                continue;
+            }
+            addToken(start, m.start());
+            start = m.end();
+        }
+        addToken(start, to);
+        int minSize = size > 1 ? 0 : 1;
+        while (size > minSize && starts[size - 1] == ends[size - 1]) {
+            size--;
+        }
+        return this;
+    }
+
+    /**
+     * Checks whether the delimiter appears at a position.
+     *
+     * @param l the sequence.
+     * @param pos the position.
+     * @return true if the delimiter starts at the position.
+     */
+    private boolean matchesDelimiter(final CharSequence l, final int pos) {
+        for (int k = 1; k < delimiter.length(); k++) {
+            if (l.charAt(pos + k) != delimiter.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the offsets of a token.
+     *
+     * @param start first position (inclusive).
+     * @param end last position (exclusive).
+     */
+    private void addToken(final int start, final int end) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size << 1);
+            ends = Arrays.copyOf(ends, size << 1);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /**
+     * Returns the number of tokens in the line.
+     *
+     * @return the number of tokens.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the first position (inclusive) of a token in the line.
+     *
+     * @param i the index of the token.
+     * @return the position.
+     */
+    public int getStart(final int i) {
+        checkIndex(i);
+        return starts[i];
+    }
+
+    /**
+     * Returns the last position (exclusive) of a token in the line.
+     *
+     * @param i the index of the token.
+     * @return the position.
+     */
+    public int getEnd(final int i) {
+        checkIndex(i);
+        return ends[i];
+    }
+
+    /**
+     * Parses a token as a long.
+     *
+     * @param i the index of the token.
+     * @return the value of the token.
+     */
+    public long getLong(final int i) {
+        checkIndex(i);
+        return parseLong(line, starts[i], ends[i]);
+    }
+
+    /**
+     * Parses a token as a double.
+     *
+     * @param i the index of the token.
+     * @return the value of the token.
+     */
+    public double getDouble(final int i) {
+        checkIndex(i);
+        return parseDouble(line, starts[i], ends[i]);
+    }
+
+    /**
+     * Returns a token as a string (this allocates a new string).
+     *
+     * @param i the index of the token.
+     * @return the token.
+     */
+    public String getString(final int i) {
+        checkIndex(i);
+        return line.subSequence(starts[i], ends[i]).toString();
+    }
+
+    /**
+     * Checks that a token exists.
+     *
+     * @param i the index of the token.
+     */
+    private void checkIndex(final int i) {
+        if (i < 0 || i >= size) {
+            throw new ArrayIndexOutOfBoundsException(i);
+        }
+    }
+
+    /**
+     * Parses a long from a region of a character sequence, with the same
+     * result (or exception) as {@link Long#parseLong(java.lang.String)}.
+     *
+     * @param s the sequence.
+     * @param from first position (inclusive).
+     * @param to last position (exclusive).
+     * @return the parsed value.
+     */
+    public static long parseLong(final CharSequence s, final int from, final int to) {
+        int pos = from;
+        boolean negative = false;
+        if (pos < to && (s.charAt(pos) == '-' || s.charAt(pos) == '+')) {
+            negative = s.charAt(pos) == '-';
+            pos++;
+        }
+        if (pos == to || to - pos > MAX_LONG_DIGITS) {
+            return Long.parseLong(s.subSequence(from, to).toString());
+        }
+        long value = 0L;
+        for (; pos < to; pos++) {
+            int digit = s.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(s.subSequence(from, to).toString());
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a double from a region of a character sequence, with the same
+     * result (or exception) as {@link Double#parseDouble(java.lang.String)}.
+     * Plain decimals with up to 15 significant digits are computed directly
+     * (a single, correctly rounded, division of two exact doubles); any other
+     * number is handed to {@link Double#parseDouble(java.lang.String)}.
+     *
+     * @param s the sequence.
+     * @param from first position (inclusive).
+     * @param to last position (exclusive).
+     * @return the parsed value.
+     */
+    public static double parseDouble(final CharSequence s, final int from, final int to) {
+        int pos = from;
+        boolean negative = false;
+        if (pos < to && (s.charAt(pos) == '-' || s.charAt(pos) == '+')) {
+            negative = s.charAt(pos) == '-';
+            pos++;
+        }
+        long mantissa = 0L;
+        int digits = 0;
+        int decimals = -1;
+        boolean empty = true;
+        for (; pos < to; pos++) {
+            char c = s.charAt(pos);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                empty = false;
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0L) {
+                    digits++;
+                }
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                return Double.parseDouble(s.subSequence(from, to).toString());
+            }
+        }
+        if (empty || digits > MAX_EXACT_DIGITS || decimals >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(s.subSequence(from, to).toString());
+        }
+        double value = mantissa;
+        if (decimals > 0) {
+            value /= POWERS_OF_TEN[decimals];
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Returns a character sequence view of a buffer of (ASCII or UTF-8)
+     * bytes, where every byte is a character. The view can be tokenized
+     * without decoding the buffer; only the bytes of the tokens converted to
+     * strings are decoded (as UTF-8).
+     *
+     * @param buffer the buffer.
+     * @return the view.
+     */
+    public static CharSequence asCharSequence(final ByteBuffer buffer) {
+        return new ByteSequence(buffer, 0, buffer.limit());
+    }
+
+    /**
+     * Character sequence view over a region of a byte buffer.
+     */
+    private static final class ByteSequence implements CharSequence {
+
+        /**
+         * The buffer.
+         */
+        private final ByteBuffer buffer;
+        /**
+         * First position of the region.
+         */
+        private final int offset;
+        /**
+         * Length of the region.
+         */
+        private final int length;
+
+        /**
+         * Constructor.
+         *
+         * @param b the buffer.
+         * @param off first position of the region.
+         * @param len length of the region.
+         */
+        ByteSequence(final ByteBuffer b, final int off, final int len) {
+            this.buffer = b;
+            this.offset = off;
+            this.length = len;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int length() {
+            return length;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public char charAt(final int index) {
+            return (char) (buffer.get(offset + index) & 0xff);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            if (start < 0 || start > end || end > length) {
+                throw new IndexOutOfBoundsException("[" + start + ", " + end + ")");
+            }
+            return new ByteSequence(buffer, offset + start, end - start);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive longs to non-negative ints, used to
+ * translate external ids into dense indices without boxing.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+final class LongIntHashMap {
+
+    /**
+     * Value stored in empty slots (valid values are never negative).
+     */
+    static final int NO_VALUE = -1;
+    /**
+     * Default number of slots.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+    /**
+     * The keys of the map.
+     */
+    private long[] keys;
+    /**
+     * The values of the map, {@link #NO_VALUE} for empty slots.
+     */
+    private int[] values;
+    /**
+     * Number of entries in the map.
+     */
+    private int size;
+    /**
+     * Mask used to map hashes into slots (capacity - 1).
+     */
+    private int mask;
+
+    /**
+     * Default constructor.
+     */
+    LongIntHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor with an expected number of entries.
+     *
+     * @param expectedSize number of entries the map should hold without
+     * resizing.
+     */
+    LongIntHashMap(final int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Returns the value associated to a key.
+     *
+     * @param key the key
+     * @return the value, or {@link #NO_VALUE} if the key is not present
+     */
+    int get(final long key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != NO_VALUE) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Associates a value to a key, replacing any previous value.
+     *
+     * @param key the key
+     * @param value the value (must be non-negative)
+     */
+    void put(final long key, final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative values are not supported: " + value);
+        }
+        int slot = hash(key) & mask;
+        while (values[slot] != NO_VALUE) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size > (values.length >> 1) + (values.length >> 2)) {
+            rehash(values.length << 1);
+        }
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     *
+     * @return the number of entries in the map
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes every entry from the map.
+     */
+    void clear() {
+        Arrays.fill(values, NO_VALUE);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of slots, used for footprint estimations.
+     *
+     * @return the number of slots
+     */
+    int capacity() {
+        return values.length;
+    }
+
+    /**
+     * Computes the power-of-two number of slots for an expected size.
+     *
+     * @param expectedSize expected number of entries
+     * @return the number of slots
+     */
+    private static int capacityFor(final int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity - (capacity >> 2) <= expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Allocates empty storage.
+     *
+     * @param capacity number of slots
+     */
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Moves every entry into a larger table.
+     *
+     * @param capacity the new number of slots
+     */
+    private void rehash(final int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != NO_VALUE) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != NO_VALUE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Mixes the bits of a key (finalizer of MurmurHash3), so that sequential
+     * ids are spread over the table.
+     *
+     * @param key the key
+     * @return the hash of the key
+     */
+    static int hash(final long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Estimates the heap footprint of the map.
+     *
+     * @return the estimated size, in bytes.
+     */
+    long estimateBytes() {
+        return MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 2 * MemoryEstimator.REFERENCE + 8)
+                + MemoryEstimator.array(8, keys.length) + MemoryEstimator.array(4, values.length);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estimates the heap footprint of data models, so that the memory needed by
+ * a pipeline (e.g., the copies of a dataset created by a splitter) can be
+ * checked before running it. Estimates assume a 64-bit JVM with compressed
+ * references and boxed ids that are not shared between maps; they are
+ * approximations, not exact measurements.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public final class MemoryEstimator {
+
+    /**
+     * Size of an object header.
+     */
+    static final int OBJECT_HEADER = 12;
+    /**
+     * Size of an array header.
+     */
+    static final int ARRAY_HEADER = 16;
+    /**
+     * Size of a reference.
+     */
+    static final int REFERENCE = 4;
+    /**
+     * Size of a boxed long or double.
+     */
+    static final int BOXED = 16;
+    /**
+     * Size of an entry of a {@link HashMap} or a
+     * {@link java.util.concurrent.ConcurrentHashMap}.
+     */
+    static final int HASH_ENTRY = 32;
+    /**
+     * Size of a {@link HashMap} object, without its table.
+     */
+    static final int HASH_MAP = 48;
+    /**
+     * Size of a {@link HashSet} object, without its map.
+     */
+    static final int HASH_SET = 16;
+
+    /**
+     * Utility classes should not have a public constructor.
+     */
+    private MemoryEstimator() {
+    }
+
+    /**
+     * Rounds a size up to the alignment of objects (8 bytes).
+     *
+     * @param bytes the size.
+     * @return the aligned size.
+     */
+    static long align(final long bytes) {
+        return (bytes + 7L) & ~7L;
+    }
+
+    /**
+     * Estimates the size of an array.
+     *
+     * @param elementSize size of every element.
+     * @param length length of the array.
+     * @return the size of the array.
+     */
+    static long array(final int elementSize, final long length) {
+        return align(ARRAY_HEADER + elementSize * length);
+    }
+
+    /**
+     * Estimates the size of a hash map (without its keys and values).
+     *
+     * @param entries number of entries.
+     * @return the size of the map.
+     */
+    public static long hashMap(final long entries) {
+        long table = 16L;
+        while (table * 3 / 4 < entries) {
+            table <<= 1;
+        }
+        return HASH_MAP + array(REFERENCE, table) + entries * HASH_ENTRY;
+    }
+
+    /**
+     * Estimates the size of a hash set (without its elements).
+     *
+     * @param entries number of elements.
+     * @return the size of the set.
+     */
+    public static long hashSet(final long entries) {
+        return HASH_SET + hashMap(entries);
+    }
+
+    /**
+     * Estimates the size of the preferences of a user (a map between items
+     * and preferences).
+     *
+     * @param prefs the preferences.
+     * @return the size of the preferences, in bytes.
+     */
+    public static long estimateUserPreferences(final Map<?, Double> prefs) {
+        int n = prefs.size();
+        return hashMap(n) + n * 2L * BOXED;
+    }
+
+    /**
+     * Estimates the size of the timestamps of a (user, item) pair.
+     *
+     * @param timestamps the timestamps.
+     * @return the size of the timestamps, in bytes.
+     */
+    public static long estimateTimestamps(final Set<Long> timestamps) {
+        if (timestamps instanceof TimestampSet) {
+            return ((TimestampSet) timestamps).estimateBytes();
+        }
+        int n = timestamps.size();
+        return hashSet(n) + n * (long) BOXED;
+    }
+
+    /**
+     * Estimates the size of a data model, including its timestamps if it is
+     * temporal.
+     *
+     * @param dm the data model.
+     * @return the size of the model, in bytes.
+     */
+    public static long estimate(final DataModelIF<?, ?> dm) {
+        if (dm instanceof PrimitiveDataModel) {
+            return ((PrimitiveDataModel) dm).estimateBytes();
+        }
+        if (dm instanceof FrozenDataModel) {
+            return ((FrozenDataModel<?, ?>) dm).estimateBytes();
+        }
+        return estimateMaps(dm);
+    }
+
+    /**
+     * Estimates the size of a data model stored in maps.
+     *
+     * @param <U> type of users
+     * @param <I> type of items
+     * @param dm the data model.
+     * @return the size of the model, in bytes.
+     */
+    private static <U, I> long estimateMaps(final DataModelIF<U, I> dm) {
+        Map<U, Map<I, Double>> prefs = dm.getUserItemPreferences();
+        long bytes = hashMap(prefs.size()) + prefs.size() * (long) BOXED;
+        for (Map<I, Double> userPrefs : prefs.values()) {
+            bytes += estimateUserPreferences(userPrefs);
+        }
+        // the items are shared with the preference maps
+        bytes += hashSet(dm.getNumItems());
+        if (dm instanceof TemporalDataModelIF) {
+            Map<U, Map<I, Set<Long>>> timestamps = ((TemporalDataModelIF<U, I>) dm).getUserItemTimestamps();
+            bytes += hashMap(timestamps.size()) + timestamps.size() * (long) BOXED;
+            for (Map<I, Set<Long>> userTimestamps : timestamps.values()) {
+                bytes += hashMap(userTimestamps.size()) + userTimestamps.size() * (long) BOXED;
+                for (Set<Long> t : userTimestamps.values()) {
+                    bytes += estimateTimestamps(t);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Projects the size of a temporal data model stored in maps (such as
+     * {@link TemporalDataModel}) from its counts.
+     *
+     * @param users number of users.
+     * @param items number of items.
+     * @param preferences number of preferences.
+     * @param timestamps number of timestamps.
+     * @return the projected size of the model, in bytes.
+     */
+    public static long projectTemporalModel(final long users, final long items, final long preferences, final long timestamps) {
+        // per-user maps, assuming their tables are half full on average
+        long perUser = HASH_MAP + ARRAY_HEADER + BOXED;
+        long perPreference = HASH_ENTRY + 2L * REFERENCE + 2L * BOXED;
+        long bytes = hashMap(users) + users * perUser + preferences * perPreference + hashSet(items);
+        if (timestamps > 0L) {
+            long perTimestampSet = HASH_SET + HASH_MAP + array(REFERENCE, 2L) + perPreference - BOXED;
+            bytes += hashMap(users) + users * perUser + preferences * perTimestampSet + timestamps * (HASH_ENTRY + BOXED);
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the heap that is still available: the maximum heap minus the
+     * memory currently used.
+     *
+     * @return the available heap, in bytes.
+     */
+    public static long getAvailableHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+    }
+
+    /**
+     * Checks whether some projected memory fits in the available heap, and
+     * prints a warning otherwise.
+     *
+     * @param projectedBytes the projected memory, in bytes.
+     * @param description what the memory is needed for (for the warning).
+     * @return true if the projected memory fits in the available heap.
+     */
+    public static boolean checkHeap(final long projectedBytes, final String description) {
+        long available = getAvailableHeap();
+        if (projectedBytes > available) {
+            System.out.println("Warning: " + description + " needs about " + (projectedBytes >> 20) + " MB but only "
+                    + (available >> 20) + " MB of heap are available (-Xmx" + (Runtime.getRuntime().maxMemory() >> 20) + "m)");
+            return false;
+        }
+        return true;
+    }
+}
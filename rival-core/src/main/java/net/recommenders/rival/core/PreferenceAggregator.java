@@ -0,0 +1,609 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Arrays;
+
+/**
+ * Record visitor that aggregates the repeated records of every (user, item)
+ * pair according to a {@link Policy}, as needed by implicit feedback logs
+ * (e.g., Last.fm plays). Records are kept in primitive arrays which, whenever
+ * they get full, are sorted by user, item and arrival order and merged with
+ * the records already reduced, leaving one record per pair; hence the memory
+ * needed depends on the number of distinct pairs rather than on the number of
+ * records, and no hash lookup is done per record. Consecutive records of the
+ * same pair are combined as soon as they are visited, and records with small
+ * non-negative ids (e.g., those mapped by a dictionary) are sorted as packed
+ * primitive keys. The aggregated record of a pair keeps the latest timestamp
+ * of the pair. This class is not thread-safe.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public class PreferenceAggregator implements RecordVisitor {
+
+    /**
+     * Aggregation of the records of a (user, item) pair.
+     */
+    public static enum Policy {
+
+        /**
+         * Sum of the preferences (as {@link DataModel} does by default).
+         */
+        SUM,
+        /**
+         * Preference of the first record (as {@link DataModel} does when
+         * duplicate preferences are ignored).
+         */
+        FIRST,
+        /**
+         * Number of records.
+         */
+        COUNT,
+        /**
+         * Maximum preference.
+         */
+        MAX,
+        /**
+         * Preference of the record with the latest timestamp (the last one
+         * in case of ties).
+         */
+        LATEST,
+        /**
+         * Sum of the preferences, each of them halved for every half-life
+         * elapsed between its timestamp and the latest timestamp of the data.
+         */
+        DECAYED;
+    }
+    /**
+     * Default initial capacity of the arrays.
+     */
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    /**
+     * Number of bits of the digits of the radix sort of packed keys.
+     */
+    private static final int RADIX_BITS = 11;
+    /**
+     * Size below which ranges are sorted by insertion.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    /**
+     * The aggregation policy.
+     */
+    private final Policy policy;
+    /**
+     * The half-life of the preferences (only for {@link Policy#DECAYED}).
+     */
+    private final double halfLife;
+    /**
+     * The records: a prefix of reduced records, sorted by user and item,
+     * followed by the records visited since the last reduction.
+     */
+    private Records records;
+    /**
+     * Spare arrays where the records are merged when reduced.
+     */
+    private Records spare;
+    /**
+     * Packed keys of the records visited since the last reduction.
+     */
+    private long[] keys;
+    /**
+     * Auxiliary array for the radix sort of the packed keys.
+     */
+    private long[] sortedKeys;
+    /**
+     * Number of bits of the item in the packed keys.
+     */
+    private int keyItemBits;
+    /**
+     * Number of bits of the position in the packed keys.
+     */
+    private int keyPositionBits;
+    /**
+     * Number of records.
+     */
+    private int size;
+    /**
+     * Number of records at the beginning of the arrays already reduced.
+     */
+    private int reduced;
+    /**
+     * Number of records visited.
+     */
+    private long visited;
+    /**
+     * Latest timestamp visited.
+     */
+    private long maxTimestamp;
+
+    /**
+     * Constructor.
+     *
+     * @param aggregation The aggregation policy, other than
+     * {@link Policy#DECAYED}.
+     */
+    public PreferenceAggregator(final Policy aggregation) {
+        this(aggregation, Double.NaN);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param aggregation The aggregation policy.
+     * @param preferenceHalfLife The half-life of the preferences, in the units
+     * of the timestamps (only used by {@link Policy#DECAYED}).
+     */
+    public PreferenceAggregator(final Policy aggregation, final double preferenceHalfLife) {
+        this(aggregation, preferenceHalfLife, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param aggregation The aggregation policy.
+     * @param preferenceHalfLife The half-life of the preferences, in the units
+     * of the timestamps (only used by {@link Policy#DECAYED}).
+     * @param capacity The initial capacity of the arrays.
+     */
+    PreferenceAggregator(final Policy aggregation, final double preferenceHalfLife, final int capacity) {
+        if ((aggregation == Policy.DECAYED) && !(preferenceHalfLife > 0.0)) {
+            throw new IllegalArgumentException("Time-decayed aggregation needs a positive half-life: " + preferenceHalfLife);
+        }
+        this.policy = aggregation;
+        this.halfLife = preferenceHalfLife;
+        this.records = new Records(capacity);
+        this.spare = null;
+        this.keys = null;
+        this.sortedKeys = null;
+        this.size = 0;
+        this.reduced = 0;
+        this.visited = 0L;
+        this.maxTimestamp = -1L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visit(final long user, final long item, final double preference, final long timestamp) {
+        if (size == records.capacity()) {
+            reduce();
+            // grow if the reduction did not free at least half of the arrays
+            if (size > records.capacity() / 2) {
+                records = records.copyOf(records.capacity() << 1);
+                spare = null;
+            }
+        }
+        double value = preference;
+        if (policy == Policy.COUNT) {
+            value = 1.0;
+        } else if (policy == Policy.DECAYED) {
+            if (timestamp == -1L) {
+                throw new IllegalArgumentException("Time-decayed aggregation needs timestamps");
+            }
+        }
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        if ((size > reduced) && (records.users[size - 1] == user) && (records.items[size - 1] == item)) {
+            // same pair as the previous record
+            combine(records, size - 1, value, timestamp);
+            visited++;
+            return;
+        }
+        records.users[size] = user;
+        records.items[size] = item;
+        records.values[size] = value;
+        records.timestamps[size] = timestamp;
+        records.sequence[size] = visited++;
+        size++;
+    }
+
+    /**
+     * Returns the number of distinct (user, item) pairs visited.
+     *
+     * @return the number of pairs.
+     */
+    public int getNumPairs() {
+        reduce();
+        return size;
+    }
+
+    /**
+     * Passes the aggregated records, sorted by user and item, to a visitor.
+     *
+     * @param visitor The visitor.
+     */
+    public void visitAll(final RecordVisitor visitor) {
+        reduce();
+        for (int k = 0; k < size; k++) {
+            double value = records.values[k];
+            if (policy == Policy.DECAYED) {
+                value *= decay(maxTimestamp - records.timestamps[k]);
+            }
+            visitor.visit(records.users[k], records.items[k], value, records.timestamps[k]);
+        }
+    }
+
+    /**
+     * Adds the aggregated records to a data model, together with their
+     * timestamps if the data model is temporal.
+     *
+     * @param model The data model.
+     */
+    public void addTo(final DataModelIF<Long, Long> model) {
+        DataModelRecordVisitor visitor = new DataModelRecordVisitor(model, true, PreferenceBatch.DEFAULT_CAPACITY);
+        visitAll(visitor);
+        visitor.flush();
+    }
+
+    /**
+     * Sorts the records visited since the last reduction and merges them with
+     * the reduced ones, leaving one record per (user, item) pair.
+     */
+    private void reduce() {
+        if (reduced == size) {
+            return;
+        }
+        boolean packed = packKeys();
+        if (!packed) {
+            records.sort(reduced, size - 1);
+        }
+        if (spare == null) {
+            spare = new Records(records.capacity());
+        }
+        Records in = records;
+        Records out = spare;
+        long positionMask = (1L << keyPositionBits) - 1;
+        long itemMask = (1L << keyItemBits) - 1;
+        int userShift = keyItemBits + keyPositionBits;
+        int a = 0;
+        int b = reduced;
+        int w = -1;
+        while ((a < reduced) || (b < size)) {
+            // next unreduced record, sorted in place or through its key
+            int rb = b;
+            long bu = 0L;
+            long bi = 0L;
+            boolean fromReduced = true;
+            if (b < size) {
+                if (packed) {
+                    long key = keys[b - reduced];
+                    bu = key >>> userShift;
+                    bi = (key >>> keyPositionBits) & itemMask;
+                    rb = reduced + (int) (key & positionMask);
+                } else {
+                    bu = in.users[b];
+                    bi = in.items[b];
+                }
+                // on the same pair, reduced records come first (they arrived earlier)
+                fromReduced = (a < reduced) && ((in.users[a] < bu) || ((in.users[a] == bu) && (in.items[a] <= bi)));
+            }
+            int r;
+            long user;
+            long item;
+            if (fromReduced) {
+                r = a++;
+                user = in.users[r];
+                item = in.items[r];
+            } else {
+                r = rb;
+                b++;
+                user = bu;
+                item = bi;
+            }
+            if ((w >= 0) && (out.users[w] == user) && (out.items[w] == item)) {
+                combine(out, w, in.values[r], in.timestamps[r]);
+            } else {
+                w++;
+                out.users[w] = user;
+                out.items[w] = item;
+                out.values[w] = in.values[r];
+                out.timestamps[w] = in.timestamps[r];
+            }
+        }
+        records = out;
+        spare = in;
+        size = w + 1;
+        reduced = size;
+    }
+
+    /**
+     * Sorts the records visited since the last reduction as packed keys
+     * (user, item and position, in this order), if their ids are small
+     * enough. Since the keys are created in arrival order, a stable radix sort
+     * on the bits of the user and the item is enough.
+     *
+     * @return true if the records were packed and sorted.
+     */
+    private boolean packKeys() {
+        long maxUser = 0L;
+        long maxItem = 0L;
+        for (int k = reduced; k < size; k++) {
+            if ((records.users[k] < 0L) || (records.items[k] < 0L)) {
+                return false;
+            }
+            maxUser = Math.max(maxUser, records.users[k]);
+            maxItem = Math.max(maxItem, records.items[k]);
+        }
+        int n = size - reduced;
+        int positionBits = Integer.SIZE - Integer.numberOfLeadingZeros(n - 1);
+        int itemBits = Long.SIZE - Long.numberOfLeadingZeros(maxItem);
+        int userBits = Long.SIZE - Long.numberOfLeadingZeros(maxUser);
+        if (userBits + itemBits + positionBits >= Long.SIZE) {
+            return false;
+        }
+        if ((keys == null) || (keys.length < n)) {
+            keys = new long[records.capacity()];
+            sortedKeys = new long[records.capacity()];
+        }
+        for (int k = 0; k < n; k++) {
+            keys[k] = (((records.users[reduced + k] << itemBits) | records.items[reduced + k]) << positionBits) | k;
+        }
+        int[] counts = new int[1 << RADIX_BITS];
+        for (int shift = positionBits; shift < positionBits + itemBits + userBits; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int k = 0; k < n; k++) {
+                counts[(int) (keys[k] >>> shift) & ((1 << RADIX_BITS) - 1)]++;
+            }
+            int offset = 0;
+            for (int d = 0; d < counts.length; d++) {
+                int c = counts[d];
+                counts[d] = offset;
+                offset += c;
+            }
+            for (int k = 0; k < n; k++) {
+                long key = keys[k];
+                sortedKeys[counts[(int) (key >>> shift) & ((1 << RADIX_BITS) - 1)]++] = key;
+            }
+            long[] swap = keys;
+            keys = sortedKeys;
+            sortedKeys = swap;
+        }
+        keyItemBits = itemBits;
+        keyPositionBits = positionBits;
+        return true;
+    }
+
+    /**
+     * Combines a record into an earlier record of the same pair.
+     *
+     * @param out the records with the earlier record.
+     * @param w position of the earlier record.
+     * @param value the value of the later record.
+     * @param timestamp the timestamp of the later record.
+     */
+    private void combine(final Records out, final int w, final double value, final long timestamp) {
+        switch (policy) {
+            case SUM:
+            case COUNT:
+                out.values[w] += value;
+                break;
+            case DECAYED:
+                // values are decayed up to the latest timestamp of their pair, so no factor is above one
+                long latest = Math.max(out.timestamps[w], timestamp);
+                out.values[w] = out.values[w] * decay(latest - out.timestamps[w]) + value * decay(latest - timestamp);
+                break;
+            case MAX:
+                out.values[w] = Math.max(out.values[w], value);
+                break;
+            case LATEST:
+                if (timestamp >= out.timestamps[w]) {
+                    out.values[w] = value;
+                }
+                break;
+            default:
+                // FIRST: the earlier record is kept
+                break;
+        }
+        out.timestamps[w] = Math.max(out.timestamps[w], timestamp);
+    }
+
+    /**
+     * Returns the factor by which a preference decays over some time.
+     *
+     * @param elapsed the time elapsed, in the units of the timestamps.
+     * @return the decay factor.
+     */
+    private double decay(final long elapsed) {
+        if (elapsed == 0L) {
+            return 1.0;
+        }
+        return Math.pow(2.0, -elapsed / halfLife);
+    }
+
+    /**
+     * Parallel arrays of records.
+     */
+    private static final class Records {
+
+        /**
+         * The users.
+         */
+        private final long[] users;
+        /**
+         * The items.
+         */
+        private final long[] items;
+        /**
+         * The (aggregated) values.
+         */
+        private final double[] values;
+        /**
+         * The (latest) timestamps.
+         */
+        private final long[] timestamps;
+        /**
+         * The arrival order of the records not yet reduced.
+         */
+        private final long[] sequence;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity the capacity of the arrays.
+         */
+        Records(final int capacity) {
+            this(new long[capacity], new long[capacity], new double[capacity], new long[capacity], new long[capacity]);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param u the users.
+         * @param i the items.
+         * @param v the values.
+         * @param t the timestamps.
+         * @param s the arrival order.
+         */
+        private Records(final long[] u, final long[] i, final double[] v, final long[] t, final long[] s) {
+            this.users = u;
+            this.items = i;
+            this.values = v;
+            this.timestamps = t;
+            this.sequence = s;
+        }
+
+        /**
+         * Returns the capacity of the arrays.
+         *
+         * @return the capacity.
+         */
+        int capacity() {
+            return users.length;
+        }
+
+        /**
+         * Copies the records into larger arrays.
+         *
+         * @param capacity the new capacity.
+         * @return the new records.
+         */
+        Records copyOf(final int capacity) {
+            return new Records(Arrays.copyOf(users, capacity), Arrays.copyOf(items, capacity), Arrays.copyOf(values, capacity),
+                    Arrays.copyOf(timestamps, capacity), Arrays.copyOf(sequence, capacity));
+        }
+
+        /**
+         * Compares two records by user and item.
+         *
+         * @param a position of the first record.
+         * @param b position of the second record.
+         * @return a negative number, zero, or a positive number if the pair of
+         * the first record goes before, is the same as, or goes after the pair
+         * of the second one.
+         */
+        int comparePair(final int a, final int b) {
+            if (users[a] != users[b]) {
+                return users[a] < users[b] ? -1 : 1;
+            }
+            if (items[a] != items[b]) {
+                return items[a] < items[b] ? -1 : 1;
+            }
+            return 0;
+        }
+
+        /**
+         * Compares two records by user, item and arrival order.
+         *
+         * @param a position of the first record.
+         * @param b position of the second record.
+         * @return a negative number, zero, or a positive number if the first
+         * record goes before, in the same position, or after the second one.
+         */
+        int compare(final int a, final int b) {
+            int c = comparePair(a, b);
+            return (c != 0) ? c : Long.compare(sequence[a], sequence[b]);
+        }
+
+        /**
+         * Swaps two records.
+         *
+         * @param a position of the first record.
+         * @param b position of the second record.
+         */
+        void swap(final int a, final int b) {
+            long l = users[a];
+            users[a] = users[b];
+            users[b] = l;
+            l = items[a];
+            items[a] = items[b];
+            items[b] = l;
+            double d = values[a];
+            values[a] = values[b];
+            values[b] = d;
+            l = timestamps[a];
+            timestamps[a] = timestamps[b];
+            timestamps[b] = l;
+            l = sequence[a];
+            sequence[a] = sequence[b];
+            sequence[b] = l;
+        }
+
+        /**
+         * Sorts a range of records (quicksort with median-of-three pivots; no
+         * two records are equal, since their arrival order is different).
+         *
+         * @param from first position of the range.
+         * @param to last position of the range (inclusive).
+         */
+        void sort(final int from, final int to) {
+            int lo = from;
+            int hi = to;
+            while (hi - lo > INSERTION_SORT_THRESHOLD) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(mid, lo) < 0) {
+                    swap(mid, lo);
+                }
+                if (compare(hi, lo) < 0) {
+                    swap(hi, lo);
+                }
+                if (compare(hi, mid) < 0) {
+                    swap(hi, mid);
+                }
+                // the pivot is kept at hi - 1
+                swap(mid, hi - 1);
+                int p = hi - 1;
+                int i = lo;
+                int j = hi - 1;
+                while (true) {
+                    while (compare(++i, p) < 0) {
+                        continue;
+                    }
+                    while (compare(--j, p) > 0) {
+                        continue;
+                    }
+                    if (i >= j) {
+                        break;
+                    }
+                    swap(i, j);
+                }
+                swap(i, hi - 1);
+                // recurse into the smaller part, iterate over the larger one
+                if (i - lo < hi - i) {
+                    sort(lo, i - 1);
+                    lo = i + 1;
+                } else {
+                    sort(i + 1, hi);
+                    hi = i - 1;
+                }
+            }
+            for (int i = lo + 1; i <= hi; i++) {
+                for (int j = i; (j > lo) && (compare(j, j - 1) < 0); j--) {
+                    swap(j, j - 1);
+                }
+            }
+        }
+    }
+}
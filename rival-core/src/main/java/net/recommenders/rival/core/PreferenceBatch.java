@@ -0,0 +1,340 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fixed-capacity batch of preferences (user, item, preference and, optionally,
+ * timestamp) to be added to a data model at once. A {@link DataModel} ingests
+ * the batch in a single pass grouped by user (see
+ * {@link DataModel#addPreferences(net.recommenders.rival.core.PreferenceBatch)}),
+ * that is, with one lookup per user instead of one per preference; any other
+ * data model receives the preferences one by one. In both cases, the resulting model is
+ * the same as if the preferences had been added in the order of the batch.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ *
+ * @param <U> generic type for users
+ * @param <I> generic type for items
+ */
+public class PreferenceBatch<U, I> {
+
+    /**
+     * Default number of preferences in a batch.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+    /**
+     * Timestamp of the preferences without one.
+     */
+    public static final long NO_TIMESTAMP = -1L;
+    /**
+     * The users.
+     */
+    private final Object[] users;
+    /**
+     * The items.
+     */
+    private final Object[] items;
+    /**
+     * The preferences.
+     */
+    private final double[] preferences;
+    /**
+     * The timestamps.
+     */
+    private final long[] timestamps;
+    /**
+     * Number of preferences in the batch.
+     */
+    private int size;
+    /**
+     * Positions of the preferences grouped by user, null if not computed.
+     */
+    private int[] groupOrder;
+    /**
+     * Offsets of every user group in {@link #groupOrder}.
+     */
+    private int[] groupOffsets;
+    /**
+     * Number of user groups.
+     */
+    private int numGroups;
+
+    /**
+     * Constructor of an empty batch with the default capacity.
+     */
+    public PreferenceBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor of an empty batch.
+     *
+     * @param capacity The maximum number of preferences in the batch.
+     */
+    public PreferenceBatch(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.users = new Object[capacity];
+        this.items = new Object[capacity];
+        this.preferences = new double[capacity];
+        this.timestamps = new long[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Constructor of a full batch with a copy of the given arrays.
+     *
+     * @param userArray The users.
+     * @param itemArray The items.
+     * @param preferenceArray The preferences.
+     * @param timestampArray The timestamps ({@link #NO_TIMESTAMP} if not
+     * available), or null if there are no timestamps.
+     */
+    public PreferenceBatch(final U[] userArray, final I[] itemArray, final double[] preferenceArray, final long[] timestampArray) {
+        int n = userArray.length;
+        if ((itemArray.length != n) || (preferenceArray.length != n) || ((timestampArray != null) && (timestampArray.length != n))) {
+            throw new IllegalArgumentException("Arrays of different lengths");
+        }
+        this.users = Arrays.copyOf(userArray, n, Object[].class);
+        this.items = Arrays.copyOf(itemArray, n, Object[].class);
+        this.preferences = preferenceArray.clone();
+        if (timestampArray == null) {
+            this.timestamps = new long[n];
+            Arrays.fill(timestamps, NO_TIMESTAMP);
+        } else {
+            this.timestamps = timestampArray.clone();
+        }
+        this.size = n;
+    }
+
+    /**
+     * Adds a preference without timestamp to the batch.
+     *
+     * @param u the user.
+     * @param i the item.
+     * @param d the preference.
+     */
+    public void add(final U u, final I i, final double d) {
+        add(u, i, d, NO_TIMESTAMP);
+    }
+
+    /**
+     * Adds a preference to the batch.
+     *
+     * @param u the user.
+     * @param i the item.
+     * @param d the preference.
+     * @param t the timestamp, or {@link #NO_TIMESTAMP} if not available.
+     */
+    public void add(final U u, final I i, final double d, final long t) {
+        if (size == users.length) {
+            throw new IllegalStateException("The batch is full");
+        }
+        users[size] = u;
+        items[size] = i;
+        preferences[size] = d;
+        timestamps[size] = t;
+        size++;
+        groupOrder = null;
+    }
+
+    /**
+     * Adds a preference without timestamp to the batch, after flushing the
+     * batch into a data model if it is full.
+     *
+     * @param model the data model.
+     * @param u the user.
+     * @param i the item.
+     * @param d the preference.
+     */
+    public void add(final DataModelIF<U, I> model, final U u, final I i, final double d) {
+        if (isFull()) {
+            flushTo(model);
+        }
+        add(u, i, d, NO_TIMESTAMP);
+    }
+
+    /**
+     * Returns the number of preferences in the batch.
+     *
+     * @return the number of preferences in the batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether no more preferences fit in the batch.
+     *
+     * @return true if the batch is full.
+     */
+    public boolean isFull() {
+        return size == users.length;
+    }
+
+    /**
+     * Returns the user of a preference in the batch.
+     *
+     * @param n position of the preference.
+     * @return the user.
+     */
+    @SuppressWarnings("unchecked")
+    public U getUser(final int n) {
+        return (U) users[n];
+    }
+
+    /**
+     * Returns the item of a preference in the batch.
+     *
+     * @param n position of the preference.
+     * @return the item.
+     */
+    @SuppressWarnings("unchecked")
+    public I getItem(final int n) {
+        return (I) items[n];
+    }
+
+    /**
+     * Returns the value of a preference in the batch.
+     *
+     * @param n position of the preference.
+     * @return the preference.
+     */
+    public double getPreference(final int n) {
+        return preferences[n];
+    }
+
+    /**
+     * Returns the timestamp of a preference in the batch.
+     *
+     * @param n position of the preference.
+     * @return the timestamp, or {@link #NO_TIMESTAMP} if not available.
+     */
+    public long getTimestamp(final int n) {
+        return timestamps[n];
+    }
+
+    /**
+     * Adds the preferences in the batch to a data model (and their timestamps,
+     * if the data model is temporal).
+     *
+     * @param model the data model.
+     */
+    @SuppressWarnings("unchecked")
+    public void addTo(final DataModelIF<U, I> model) {
+        if (model instanceof DataModel) {
+            ((DataModel<U, I>) model).addPreferences(this);
+            return;
+        }
+        TemporalDataModelIF<U, I> temporal = (model instanceof TemporalDataModelIF) ? (TemporalDataModelIF<U, I>) model : null;
+        for (int n = 0; n < size; n++) {
+            U u = getUser(n);
+            I i = getItem(n);
+            model.addPreference(u, i, preferences[n]);
+            if ((temporal != null) && (timestamps[n] != NO_TIMESTAMP)) {
+                temporal.addTimestamp(u, i, timestamps[n]);
+            }
+        }
+    }
+
+    /**
+     * Adds the preferences in the batch to a data model and empties the
+     * batch.
+     *
+     * @param model the data model.
+     */
+    public void flushTo(final DataModelIF<U, I> model) {
+        addTo(model);
+        clear();
+    }
+
+    /**
+     * Removes all the preferences from the batch.
+     */
+    public void clear() {
+        Arrays.fill(users, 0, size, null);
+        Arrays.fill(items, 0, size, null);
+        size = 0;
+        groupOrder = null;
+    }
+
+    /**
+     * Groups the preferences in the batch by user: users are sorted by their
+     * first appearance, and the preferences of every user keep their order in
+     * the batch. The grouping is kept until the batch is modified.
+     *
+     * @return the number of user groups.
+     */
+    int groupByUser() {
+        if (groupOrder != null) {
+            return numGroups;
+        }
+        int[] groupOf = new int[size];
+        int[] counts = new int[size + 1];
+        Map<Object, Integer> groups = new HashMap<>();
+        int g = -1;
+        for (int n = 0; n < size; n++) {
+            // consecutive preferences of the same user need no lookup
+            if ((n == 0) || !users[n].equals(users[n - 1])) {
+                Integer known = groups.get(users[n]);
+                if (known == null) {
+                    known = groups.size();
+                    groups.put(users[n], known);
+                }
+                g = known;
+            }
+            groupOf[n] = g;
+            counts[g + 1]++;
+        }
+        numGroups = groups.size();
+        for (int k = 0; k < numGroups; k++) {
+            counts[k + 1] += counts[k];
+        }
+        groupOffsets = Arrays.copyOf(counts, numGroups + 1);
+        int[] order = new int[size];
+        for (int n = 0; n < size; n++) {
+            order[counts[groupOf[n]]++] = n;
+        }
+        groupOrder = order;
+        return numGroups;
+    }
+
+    /**
+     * Returns the positions of the preferences grouped by user, as computed
+     * by {@link #groupByUser()}.
+     *
+     * @return the positions of the preferences grouped by user.
+     */
+    int[] getGroupOrder() {
+        return groupOrder;
+    }
+
+    /**
+     * Returns the offsets of the user groups in {@link #getGroupOrder()}, as
+     * computed by {@link #groupByUser()}.
+     *
+     * @return the offsets of the user groups (one more than the number of
+     * groups).
+     */
+    int[] getGroupOffsets() {
+        return groupOffsets;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+/**
+ * Visitor of the preferences of a data model (see
+ * {@link VisitableDataModelIF#forEachPreference(PreferenceVisitor)}). Preferences are
+ * passed as primitive values, so visiting a model does not create map
+ * entries or unbox any preference.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ *
+ * @param <U> generic type for users
+ * @param <I> generic type for items
+ */
+public interface PreferenceVisitor<U, I> {
+
+    /**
+     * Visits a preference.
+     *
+     * @param user the user.
+     * @param item the item.
+     * @param preference the preference.
+     */
+    void visit(U user, I item, double preference);
+}
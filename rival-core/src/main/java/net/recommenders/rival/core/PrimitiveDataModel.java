@@ -0,0 +1,1129 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Data model that stores users and items as dense int indices and the
+ * preferences in compressed sparse row (CSR) arrays: for every user index
+ * {@code u}, the item indices and preferences of that user are stored,
+ * sorted by item index, between {@code offsets[u]} and
+ * {@code offsets[u + 1]}.
+ *
+ * New preferences are appended to primitive buffers and merged into the CSR
+ * arrays the next time the model is read, with the same duplicate handling as
+ * {@link DataModel} (values are summed unless duplicates are ignored, in which
+ * case the first value is kept). The maps returned by
+ * {@link #getUserItemPreferences()} are read-only views over the arrays.
+ * Since every merge rewrites the whole CSR arrays, this model is meant to be
+ * filled first and read afterwards: a workload that alternates single
+ * additions with reads of the preferences takes quadratic time, and should
+ * use a {@link DataModel} instead (or add its preferences in batches).
+ *
+ * The inverted index (the users of every item, in compressed sparse column
+ * order) is built from the CSR arrays the first time it is requested and
+ * rebuilt after new preferences are added.
+ *
+ * The indices are assigned by an {@link IdDictionary} for users and another
+ * one for items, which can be shared among several models (e.g., the splits
+ * of the same dataset) so that indices are consistent across them.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public class PrimitiveDataModel implements IndexedDataModelIF<Long, Long>, VisitableDataModelIF<Long, Long> {
+
+    /**
+     * Initial size of the buffers.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * Flag to indicate if duplicate preferences should be ignored or not.
+     * Default: false.
+     */
+    protected boolean ignoreDuplicatePreferences;
+    /**
+     * Dictionary of user indices.
+     */
+    private IdDictionary userDictionary;
+    /**
+     * Dictionary of item indices.
+     */
+    private IdDictionary itemDictionary;
+    /**
+     * Flag to indicate if the dictionaries were created by (and are not
+     * shared with other models than) this model.
+     */
+    private boolean ownDictionaries;
+    /**
+     * User indices with at least one preference in this model.
+     */
+    private BitSet userPresent;
+    /**
+     * Number of users with at least one preference in this model.
+     */
+    private int numUsers;
+    /**
+     * Item indices with at least one preference in this model.
+     */
+    private BitSet itemPresent;
+    /**
+     * Number of items with at least one preference in this model.
+     */
+    private int numItems;
+    /**
+     * Row offsets of the CSR arrays (one entry per user index plus one).
+     */
+    private int[] offsets;
+    /**
+     * Item indices of the CSR arrays.
+     */
+    private int[] itemIndices;
+    /**
+     * Preference values of the CSR arrays.
+     */
+    private double[] preferences;
+    /**
+     * Column offsets of the inverted (item to users) index, null until
+     * requested.
+     */
+    private int[] itemOffsets;
+    /**
+     * User index of every preference, in item-major order (the users of each
+     * item are sorted by index).
+     */
+    private int[] userIndices;
+    /**
+     * User indices of the preferences not yet merged into the CSR arrays.
+     */
+    private int[] pendingUsers;
+    /**
+     * Item indices of the preferences not yet merged into the CSR arrays.
+     */
+    private int[] pendingItems;
+    /**
+     * Values of the preferences not yet merged into the CSR arrays.
+     */
+    private double[] pendingPreferences;
+    /**
+     * Number of preferences not yet merged into the CSR arrays.
+     */
+    private int numPending;
+
+    /**
+     * Default constructor.
+     */
+    public PrimitiveDataModel() {
+        this(false);
+    }
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param ignoreDupPreferences The flag to indicate whether preferences
+     * should be ignored.
+     */
+    public PrimitiveDataModel(final boolean ignoreDupPreferences) {
+        this(new IdDictionary(), new IdDictionary(), ignoreDupPreferences, true);
+    }
+
+    /**
+     * Constructor of a model presized for some number of users, items and
+     * preferences.
+     *
+     * @param expectedUsers The expected number of users.
+     * @param expectedItems The expected number of items.
+     * @param expectedPreferences The expected number of preferences.
+     */
+    PrimitiveDataModel(final int expectedUsers, final int expectedItems, final int expectedPreferences) {
+        this(new IdDictionary(expectedUsers), new IdDictionary(expectedItems), false, true);
+        int capacity = Math.max(expectedPreferences, INITIAL_CAPACITY);
+        pendingUsers = new int[capacity];
+        pendingItems = new int[capacity];
+        pendingPreferences = new double[capacity];
+    }
+
+    /**
+     * Constructor with shared dictionaries.
+     *
+     * @param users The dictionary of user indices.
+     * @param items The dictionary of item indices.
+     */
+    public PrimitiveDataModel(final IdDictionary users, final IdDictionary items) {
+        this(users, items, false);
+    }
+
+    /**
+     * Constructor with shared dictionaries.
+     *
+     * @param users The dictionary of user indices.
+     * @param items The dictionary of item indices.
+     * @param ignoreDupPreferences The flag to indicate whether preferences
+     * should be ignored.
+     */
+    public PrimitiveDataModel(final IdDictionary users, final IdDictionary items, final boolean ignoreDupPreferences) {
+        this(users, items, ignoreDupPreferences, false);
+    }
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param users The dictionary of user indices.
+     * @param items The dictionary of item indices.
+     * @param ignoreDupPreferences The flag to indicate whether preferences
+     * should be ignored.
+     * @param ownDicts The flag to indicate whether the dictionaries belong to
+     * this model (and can be cleared with it).
+     */
+    private PrimitiveDataModel(final IdDictionary users, final IdDictionary items, final boolean ignoreDupPreferences, final boolean ownDicts) {
+        this.userDictionary = users;
+        this.itemDictionary = items;
+        this.ownDictionaries = ownDicts;
+        this.ignoreDuplicatePreferences = ignoreDupPreferences;
+        clear();
+    }
+
+    /**
+     * Method that returns the preference map between users and items. The
+     * returned map is a read-only view backed by the arrays of this model.
+     *
+     * @return the preference map between users and items.
+     */
+    @Override
+    public Map<Long, Map<Long, Double>> getUserItemPreferences() {
+        return new UserPreferencesView();
+    }
+
+    /**
+     * Method that adds a preference to the model between a user and an item.
+     *
+     * @param u the user.
+     * @param i the item.
+     * @param d the preference.
+     */
+    @Override
+    public void addPreference(final Long u, final Long i, final Double d) {
+        addPreference(u.longValue(), i.longValue(), d.doubleValue());
+    }
+
+    /**
+     * Method that adds a preference to the model between a user and an item,
+     * without boxing.
+     *
+     * @param u the user.
+     * @param i the item.
+     * @param d the preference.
+     */
+    public void addPreference(final long u, final long i, final double d) {
+        int user = userDictionary.add(u);
+        if (!userPresent.get(user)) {
+            userPresent.set(user);
+            numUsers++;
+        }
+        int item = itemDictionary.add(i);
+        if (!itemPresent.get(item)) {
+            itemPresent.set(item);
+            numItems++;
+        }
+        if (numPending == pendingUsers.length) {
+            int capacity = numPending << 1;
+            pendingUsers = Arrays.copyOf(pendingUsers, capacity);
+            pendingItems = Arrays.copyOf(pendingItems, capacity);
+            pendingPreferences = Arrays.copyOf(pendingPreferences, capacity);
+        }
+        itemOffsets = null;
+        userIndices = null;
+        pendingUsers[numPending] = user;
+        pendingItems[numPending] = item;
+        pendingPreferences[numPending] = d;
+        numPending++;
+    }
+
+    /**
+     * Method that returns the preference between a user and an item.
+     *
+     * @param u the user.
+     * @param i the item.
+     * @return the preference, or NaN if there is no such preference.
+     */
+    public double getPreference(final long u, final long i) {
+        int pos = findPosition(userDictionary.getIndex(u), itemDictionary.getIndex(i));
+        if (pos < 0) {
+            return Double.NaN;
+        }
+        return preferences[pos];
+    }
+
+    /**
+     * Method that returns the items in the model.
+     *
+     * @return the items in the model.
+     */
+    @Override
+    public Set<Long> getItems() {
+        return new IdSetView(false);
+    }
+
+    /**
+     * Method that returns the users in the model.
+     *
+     * @return the users in the model.
+     */
+    @Override
+    public Set<Long> getUsers() {
+        return new IdSetView(true);
+    }
+
+    /**
+     * Method that returns the number of items in the model.
+     *
+     * @return the number of items in the model.
+     */
+    @Override
+    public int getNumItems() {
+        return numItems;
+    }
+
+    /**
+     * Method that returns the number of users in the model.
+     *
+     * @return the number of users in the model.
+     */
+    @Override
+    public int getNumUsers() {
+        return numUsers;
+    }
+
+    /**
+     * Method that returns the number of (user, item) preferences in the model.
+     *
+     * @return the number of preferences in the model.
+     */
+    public int getNumPreferences() {
+        compact();
+        return offsets[offsets.length - 1];
+    }
+
+    /**
+     * Method that returns the dictionary of user indices.
+     *
+     * @return the dictionary of user indices.
+     */
+    public IdDictionary getUserDictionary() {
+        return userDictionary;
+    }
+
+    /**
+     * Method that returns the dictionary of item indices.
+     *
+     * @return the dictionary of item indices.
+     */
+    public IdDictionary getItemDictionary() {
+        return itemDictionary;
+    }
+
+    /**
+     * Method that returns the index of a user in the user dictionary.
+     *
+     * @param u the user.
+     * @return the index of the user, or -1 if the user is not in the
+     * dictionary.
+     */
+    public int getUserIndex(final long u) {
+        return userDictionary.getIndex(u);
+    }
+
+    /**
+     * Method that returns the user stored at an index.
+     *
+     * @param index the index of the user.
+     * @return the user.
+     */
+    public long getUserId(final int index) {
+        return userDictionary.getId(index);
+    }
+
+    /**
+     * Method that returns the index of an item in the item dictionary.
+     *
+     * @param i the item.
+     * @return the index of the item, or -1 if the item is not in the
+     * dictionary.
+     */
+    public int getItemIndex(final long i) {
+        return itemDictionary.getIndex(i);
+    }
+
+    /**
+     * Method that returns the item stored at an index.
+     *
+     * @param index the index of the item.
+     * @return the item.
+     */
+    public long getItemId(final int index) {
+        return itemDictionary.getId(index);
+    }
+
+    /**
+     * Method that returns the CSR row offsets: the preferences of the user
+     * with index {@code u} are stored between {@code offsets[u]} (inclusive)
+     * and {@code offsets[u + 1]} (exclusive). The array has one entry per
+     * index in the user dictionary plus one (users without preferences in
+     * this model have empty rows) and must not be modified.
+     *
+     * @return the row offsets.
+     */
+    int[] getUserOffsets() {
+        compact();
+        return offsets;
+    }
+
+    /**
+     * Method that returns the item index of every preference, in CSR order.
+     * The array must not be modified and may be longer than the number of
+     * preferences.
+     *
+     * @return the item indices.
+     */
+    int[] getItemIndices() {
+        compact();
+        return itemIndices;
+    }
+
+    /**
+     * Method that returns the value of every preference, in CSR order. The
+     * array must not be modified and may be longer than the number of
+     * preferences.
+     *
+     * @return the preference values.
+     */
+    double[] getPreferenceValues() {
+        compact();
+        return preferences;
+    }
+
+    /**
+     * Method that returns the inverted (item to users) index of the model.
+     * The returned map is a read-only view backed by the arrays of this
+     * model.
+     *
+     * @return the map between items and the users with preferences for them.
+     */
+    @Override
+    public Map<Long, Set<Long>> getItemUsers() {
+        return new ItemUsersView();
+    }
+
+    /**
+     * Method that returns the CSC column offsets of the inverted index: the
+     * users of the item with index {@code i} are stored between
+     * {@code offsets[i]} (inclusive) and {@code offsets[i + 1]} (exclusive)
+     * of {@link #getUserIndicesByItem()}, so that the popularity of the item
+     * is {@code offsets[i + 1] - offsets[i]}. The array has one entry per
+     * index in the item dictionary plus one and must not be modified.
+     *
+     * @return the column offsets.
+     */
+    int[] getItemOffsets() {
+        buildItemIndex();
+        return itemOffsets;
+    }
+
+    /**
+     * Method that returns the user index of every preference, in CSC order
+     * (see {@link #getItemOffsets()}). The array must not be modified.
+     *
+     * @return the user indices.
+     */
+    int[] getUserIndicesByItem() {
+        buildItemIndex();
+        return userIndices;
+    }
+
+    /**
+     * Method that returns the number of users with a preference for an item.
+     *
+     * @param i the item.
+     * @return the number of users with a preference for the item.
+     */
+    public int getItemPopularity(final long i) {
+        int item = itemDictionary.getIndex(i);
+        if (item == IdDictionary.NOT_FOUND) {
+            return 0;
+        }
+        buildItemIndex();
+        if (item >= itemOffsets.length - 1) {
+            return 0;
+        }
+        return itemOffsets[item + 1] - itemOffsets[item];
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The preferences are read directly from the arrays of the model.
+     */
+    @Override
+    public void forEachPreference(final PreferenceVisitor<Long, Long> visitor) {
+        compact();
+        for (int u = userPresent.nextSetBit(0); u >= 0; u = userPresent.nextSetBit(u + 1)) {
+            Long user = userDictionary.getId(u);
+            for (int p = offsets[u]; p < offsets[u + 1]; p++) {
+                visitor.visit(user, itemDictionary.getId(itemIndices[p]), preferences[p]);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The preferences are read directly from the arrays of the model.
+     */
+    @Override
+    public void forEachUser(final UserVisitor<Long, Long> visitor) {
+        compact();
+        for (int u = userPresent.nextSetBit(0); u >= 0; u = userPresent.nextSetBit(u + 1)) {
+            Long user = userDictionary.getId(u);
+            if (visitor.visitUser(user, offsets[u + 1] - offsets[u])) {
+                for (int p = offsets[u]; p < offsets[u + 1]; p++) {
+                    visitor.visitPreference(itemDictionary.getId(itemIndices[p]), preferences[p]);
+                }
+                visitor.endUser(user);
+            }
+        }
+    }
+
+    /**
+     * Method that clears all the arrays contained in the model. Dictionaries
+     * created by this model are replaced by new ones rather than cleared,
+     * since models obtained from
+     * {@link DataModelFactory#getSimilarModel(net.recommenders.rival.core.DataModelIF)}
+     * share them.
+     */
+    @Override
+    public void clear() {
+        if (ownDictionaries) {
+            userDictionary = new IdDictionary();
+            itemDictionary = new IdDictionary();
+        }
+        userPresent = new BitSet();
+        numUsers = 0;
+        itemPresent = new BitSet();
+        numItems = 0;
+        offsets = new int[1];
+        itemIndices = new int[0];
+        preferences = new double[0];
+        itemOffsets = null;
+        userIndices = null;
+        resetPending();
+    }
+
+    /**
+     * Merges the pending preferences into the CSR arrays. This is done
+     * automatically whenever the preferences of the model are read, and takes
+     * time linear in the size of the model plus the number of pending
+     * preferences (see the class documentation).
+     */
+    public void compact() {
+        int numIndices = userDictionary.size();
+        int oldUsers = offsets.length - 1;
+        if (numPending == 0) {
+            if (oldUsers < numIndices) {
+                // the (shared) dictionary has grown: add empty rows
+                offsets = Arrays.copyOf(offsets, numIndices + 1);
+                Arrays.fill(offsets, oldUsers + 1, numIndices + 1, offsets[oldUsers]);
+            }
+            return;
+        }
+        // stable counting sort of the pending preferences by user
+        int[] start = new int[numIndices + 1];
+        for (int p = 0; p < numPending; p++) {
+            start[pendingUsers[p] + 1]++;
+        }
+        int maxRow = 0;
+        for (int u = 0; u < numIndices; u++) {
+            maxRow = Math.max(maxRow, start[u + 1]);
+            start[u + 1] += start[u];
+        }
+        int[] order = new int[numPending];
+        int[] fill = Arrays.copyOf(start, numIndices);
+        for (int p = 0; p < numPending; p++) {
+            order[fill[pendingUsers[p]]++] = p;
+        }
+        // merge every row with its pending preferences
+        int capacity = offsets[oldUsers] + numPending;
+        int[] newOffsets = new int[numIndices + 1];
+        int[] newItems = new int[capacity];
+        double[] newPreferences = new double[capacity];
+        long[] keys = new long[maxRow];
+        int n = 0;
+        for (int u = 0; u < numIndices; u++) {
+            newOffsets[u] = n;
+            int e = 0;
+            int eEnd = 0;
+            if (u < oldUsers) {
+                e = offsets[u];
+                eEnd = offsets[u + 1];
+            }
+            // sort by item, keeping the insertion order within the same item
+            int len = start[u + 1] - start[u];
+            for (int k = 0; k < len; k++) {
+                keys[k] = ((long) pendingItems[order[start[u] + k]] << 32) | k;
+            }
+            Arrays.sort(keys, 0, len);
+            int k = 0;
+            while (e < eEnd || k < len) {
+                int item;
+                double pref;
+                if (k == len || (e < eEnd && itemIndices[e] <= (int) (keys[k] >>> 32))) {
+                    item = itemIndices[e];
+                    pref = preferences[e];
+                    e++;
+                } else {
+                    int p = order[start[u] + (int) keys[k]];
+                    item = pendingItems[p];
+                    pref = pendingPreferences[p];
+                    k++;
+                }
+                if (n > newOffsets[u] && newItems[n - 1] == item) {
+                    if (!ignoreDuplicatePreferences) {
+                        newPreferences[n - 1] += pref;
+                    }
+                } else {
+                    newItems[n] = item;
+                    newPreferences[n] = pref;
+                    n++;
+                }
+            }
+        }
+        newOffsets[numIndices] = n;
+        offsets = newOffsets;
+        itemIndices = Arrays.copyOf(newItems, n);
+        preferences = Arrays.copyOf(newPreferences, n);
+        resetPending();
+    }
+
+    /**
+     * Builds the inverted index by transposing the CSR arrays, unless it is
+     * up to date.
+     */
+    private void buildItemIndex() {
+        compact();
+        int numIndices = itemDictionary.size();
+        if (itemOffsets != null && itemOffsets.length == numIndices + 1) {
+            return;
+        }
+        int n = offsets[offsets.length - 1];
+        int[] start = new int[numIndices + 1];
+        for (int p = 0; p < n; p++) {
+            start[itemIndices[p] + 1]++;
+        }
+        for (int i = 0; i < numIndices; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] fill = Arrays.copyOf(start, numIndices);
+        int[] users = new int[n];
+        // rows are visited in order, hence the users of each item are sorted
+        for (int u = 0; u < offsets.length - 1; u++) {
+            for (int p = offsets[u]; p < offsets[u + 1]; p++) {
+                users[fill[itemIndices[p]]++] = u;
+            }
+        }
+        itemOffsets = start;
+        userIndices = users;
+    }
+
+    /**
+     * Releases the buffers of pending preferences.
+     */
+    private void resetPending() {
+        pendingUsers = new int[INITIAL_CAPACITY];
+        pendingItems = new int[INITIAL_CAPACITY];
+        pendingPreferences = new double[INITIAL_CAPACITY];
+        numPending = 0;
+    }
+
+    /**
+     * Finds the position of a (user, item) pair in the CSR arrays.
+     *
+     * @param user the user index.
+     * @param item the item index.
+     * @return the position of the pair, or a negative value if not found.
+     */
+    private int findPosition(final int user, final int item) {
+        if (user < 0 || item < 0) {
+            return -1;
+        }
+        compact();
+        if (user >= offsets.length - 1) {
+            return -1;
+        }
+        return Arrays.binarySearch(itemIndices, offsets[user], offsets[user + 1], item);
+    }
+
+    /**
+     * Estimates the heap footprint of the model: its arrays, bit sets and
+     * (if they are not shared) dictionaries.
+     *
+     * @return the estimated size, in bytes.
+     */
+    long estimateBytes() {
+        long bytes = MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 12 * MemoryEstimator.REFERENCE + 4 * 4);
+        if (ownDictionaries) {
+            bytes += userDictionary.estimateBytes() + itemDictionary.estimateBytes();
+        }
+        bytes += MemoryEstimator.array(8, userPresent.size() / 64) + MemoryEstimator.array(8, itemPresent.size() / 64);
+        int[][] intArrays = {offsets, itemIndices, itemOffsets, userIndices, pendingUsers, pendingItems};
+        for (int[] a : intArrays) {
+            if (a != null) {
+                bytes += MemoryEstimator.array(4, a.length);
+            }
+        }
+        double[][] doubleArrays = {preferences, pendingPreferences};
+        for (double[] a : doubleArrays) {
+            if (a != null) {
+                bytes += MemoryEstimator.array(8, a.length);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Read-only map view of the preferences of every user.
+     */
+    private final class UserPreferencesView extends AbstractMap<Long, Map<Long, Double>> {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Map<Long, Double> get(final Object key) {
+            if (!(key instanceof Long)) {
+                return null;
+            }
+            int user = userDictionary.getIndex((Long) key);
+            if (user == IdDictionary.NOT_FOUND || !userPresent.get(user)) {
+                return null;
+            }
+            return new UserRowView(user);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean containsKey(final Object key) {
+            return getUsers().contains(key);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return numUsers;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Entry<Long, Map<Long, Double>>> entrySet() {
+            return new AbstractSet<Entry<Long, Map<Long, Double>>>() {
+
+                @Override
+                public Iterator<Entry<Long, Map<Long, Double>>> iterator() {
+                    return new IndexIterator<Entry<Long, Map<Long, Double>>>(userPresent) {
+
+                        @Override
+                        protected Entry<Long, Map<Long, Double>> get(final int index) {
+                            Map<Long, Double> row = new UserRowView(index);
+                            return new SimpleImmutableEntry<Long, Map<Long, Double>>(userDictionary.getId(index), row);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return numUsers;
+                }
+            };
+        }
+    }
+
+    /**
+     * Read-only map view of the preferences of one user.
+     */
+    private final class UserRowView extends AbstractMap<Long, Double> {
+
+        /**
+         * The user index.
+         */
+        private final int user;
+
+        /**
+         * Constructor.
+         *
+         * @param userIdx the user index.
+         */
+        UserRowView(final int userIdx) {
+            this.user = userIdx;
+        }
+
+        /**
+         * Finds the position of an item in this row.
+         *
+         * @param key the item.
+         * @return the position, or a negative value if not found.
+         */
+        private int find(final Object key) {
+            if (!(key instanceof Long)) {
+                return -1;
+            }
+            return findPosition(user, itemDictionary.getIndex((Long) key));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Double get(final Object key) {
+            int pos = find(key);
+            if (pos < 0) {
+                return null;
+            }
+            return preferences[pos];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean containsKey(final Object key) {
+            return find(key) >= 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            compact();
+            if (user >= offsets.length - 1) {
+                return 0;
+            }
+            return offsets[user + 1] - offsets[user];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Entry<Long, Double>> entrySet() {
+            return new AbstractSet<Entry<Long, Double>>() {
+
+                @Override
+                public Iterator<Entry<Long, Double>> iterator() {
+                    final int from = getUserOffsets()[user];
+                    final int[] rowItems = itemIndices;
+                    final double[] rowPreferences = preferences;
+                    return new IndexIterator<Entry<Long, Double>>(offsets[user + 1] - from) {
+
+                        @Override
+                        protected Entry<Long, Double> get(final int index) {
+                            int pos = from + index;
+                            return new SimpleImmutableEntry<Long, Double>(itemDictionary.getId(rowItems[pos]), rowPreferences[pos]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return UserRowView.this.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Read-only map view of the users of every item.
+     */
+    private final class ItemUsersView extends AbstractMap<Long, Set<Long>> {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Long> get(final Object key) {
+            if (!(key instanceof Long)) {
+                return null;
+            }
+            int item = itemDictionary.getIndex((Long) key);
+            if (item == IdDictionary.NOT_FOUND || !itemPresent.get(item)) {
+                return null;
+            }
+            return new ItemColumnView(item);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean containsKey(final Object key) {
+            return getItems().contains(key);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return numItems;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Entry<Long, Set<Long>>> entrySet() {
+            return new AbstractSet<Entry<Long, Set<Long>>>() {
+
+                @Override
+                public Iterator<Entry<Long, Set<Long>>> iterator() {
+                    return new IndexIterator<Entry<Long, Set<Long>>>(itemPresent) {
+
+                        @Override
+                        protected Entry<Long, Set<Long>> get(final int index) {
+                            Set<Long> column = new ItemColumnView(index);
+                            return new SimpleImmutableEntry<Long, Set<Long>>(itemDictionary.getId(index), column);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return numItems;
+                }
+            };
+        }
+    }
+
+    /**
+     * Read-only set view of the users of one item.
+     */
+    private final class ItemColumnView extends AbstractSet<Long> {
+
+        /**
+         * The item index.
+         */
+        private final int item;
+
+        /**
+         * Constructor.
+         *
+         * @param itemIdx the item index.
+         */
+        ItemColumnView(final int itemIdx) {
+            this.item = itemIdx;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean contains(final Object o) {
+            if (!(o instanceof Long)) {
+                return false;
+            }
+            int user = userDictionary.getIndex((Long) o);
+            return user != IdDictionary.NOT_FOUND && findPosition(user, item) >= 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Iterator<Long> iterator() {
+            final int from = getItemOffsets()[item];
+            final int[] columnUsers = userIndices;
+            return new IndexIterator<Long>(itemOffsets[item + 1] - from) {
+
+                @Override
+                protected Long get(final int index) {
+                    return userDictionary.getId(columnUsers[from + index]);
+                }
+            };
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            int[] columns = getItemOffsets();
+            if (item >= columns.length - 1) {
+                return 0;
+            }
+            return columns[item + 1] - columns[item];
+        }
+    }
+
+    /**
+     * Read-only set view of the users or the items of the model.
+     */
+    private final class IdSetView extends AbstractSet<Long> {
+
+        /**
+         * Whether this view contains users (or items).
+         */
+        private final boolean users;
+
+        /**
+         * Constructor.
+         *
+         * @param ofUsers whether this view contains users (or items).
+         */
+        IdSetView(final boolean ofUsers) {
+            this.users = ofUsers;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean contains(final Object o) {
+            if (!(o instanceof Long)) {
+                return false;
+            }
+            int index = (users ? userDictionary : itemDictionary).getIndex((Long) o);
+            return index != IdDictionary.NOT_FOUND && (users ? userPresent : itemPresent).get(index);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Iterator<Long> iterator() {
+            final IdDictionary dictionary = users ? userDictionary : itemDictionary;
+            return new IndexIterator<Long>(users ? userPresent : itemPresent) {
+
+                @Override
+                protected Long get(final int index) {
+                    return dictionary.getId(index);
+                }
+            };
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return users ? numUsers : numItems;
+        }
+    }
+
+    /**
+     * Read-only iterator over a range or a set of indices.
+     *
+     * @param <E> type of the elements
+     */
+    private abstract static class IndexIterator<E> implements Iterator<E> {
+
+        /**
+         * Indices to iterate over, or null to iterate over a range.
+         */
+        private final BitSet indices;
+        /**
+         * Number of elements (when iterating over a range).
+         */
+        private final int size;
+        /**
+         * Next index to be returned.
+         */
+        private int next;
+
+        /**
+         * Constructor to iterate over the range [0, n).
+         *
+         * @param n number of elements.
+         */
+        IndexIterator(final int n) {
+            this.indices = null;
+            this.size = n;
+            this.next = 0;
+        }
+
+        /**
+         * Constructor to iterate over a set of indices.
+         *
+         * @param set the indices.
+         */
+        IndexIterator(final BitSet set) {
+            this.indices = set;
+            this.size = Integer.MAX_VALUE;
+            this.next = set.nextSetBit(0);
+        }
+
+        /**
+         * Returns the element at an index.
+         *
+         * @param index the index.
+         * @return the element.
+         */
+        protected abstract E get(int index);
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean hasNext() {
+            return next >= 0 && next < size;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int current = next;
+            if (indices == null) {
+                next++;
+            } else {
+                next = indices.nextSetBit(current + 1);
+            }
+            return get(current);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Read-only view");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Quantile sketch of a stream of values in bounded memory: a uniform sample
+ * of a fixed size (reservoir sampling), from which quantiles are estimated
+ * with a rank error of about {@code 1 / sqrt(size)}. Streams shorter than the
+ * sample size are kept entirely, hence their quantiles are exact.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public final class QuantileSketch {
+
+    /**
+     * The sampled values.
+     */
+    private final double[] sample;
+    /**
+     * Number of values added to the sketch.
+     */
+    private long count;
+    /**
+     * Whether the sample is sorted.
+     */
+    private boolean sorted;
+    /**
+     * Source of randomness for the sampling.
+     */
+    private final Random rnd;
+
+    /**
+     * Constructor.
+     *
+     * @param size size of the sample.
+     * @param seed seed for the sampling.
+     */
+    public QuantileSketch(final int size, final long seed) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Invalid sample size: " + size);
+        }
+        this.sample = new double[size];
+        this.count = 0L;
+        this.sorted = true;
+        this.rnd = new Random(seed);
+    }
+
+    /**
+     * Adds a value to the sketch.
+     *
+     * @param value the value.
+     */
+    public void add(final double value) {
+        if (count < sample.length) {
+            sample[(int) count] = value;
+            sorted = false;
+        } else {
+            long k = (long) (rnd.nextDouble() * (count + 1));
+            if (k < sample.length) {
+                sample[(int) k] = value;
+                sorted = false;
+            }
+        }
+        count++;
+    }
+
+    /**
+     * Gets the number of values added to the sketch.
+     *
+     * @return the number of values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Estimates a quantile of the values.
+     *
+     * @param q the quantile, between 0 and 1.
+     * @return the estimated quantile, or NaN if no value has been added.
+     */
+    public double getQuantile(final double q) {
+        if (q < 0.0 || q > 1.0) {
+            throw new IllegalArgumentException("Invalid quantile: " + q);
+        }
+        int n = (int) Math.min(count, sample.length);
+        if (n == 0) {
+            return Double.NaN;
+        }
+        if (!sorted) {
+            Arrays.sort(sample, 0, n);
+            sorted = true;
+        }
+        return sample[Math.min(n - 1, (int) (q * n))];
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream that reads another stream (typically, a decompressing one) on
+ * a background thread, which fills fixed-size chunks and hands them to the
+ * reader through a bounded queue. Hence, decompression runs concurrently with
+ * the decoding and parsing of the data on the reading thread, and at most a
+ * few chunks are kept in memory. Chunks are recycled, so no garbage is
+ * produced while reading. This class is not thread-safe (it has a single
+ * reader), and the underlying stream is closed by the background thread.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+final class ReadAheadInputStream extends InputStream {
+
+    /**
+     * Default size of a chunk.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+    /**
+     * Default number of chunks that can be waiting to be read.
+     */
+    static final int DEFAULT_QUEUE_SIZE = 8;
+    /**
+     * Marker of the end of the stream.
+     */
+    private static final Chunk END = new Chunk(0);
+    /**
+     * Chunks filled by the background thread.
+     */
+    private final BlockingQueue<Chunk> filled;
+    /**
+     * Chunks that can be filled.
+     */
+    private final BlockingQueue<Chunk> free;
+    /**
+     * The background thread.
+     */
+    private final Thread producer;
+    /**
+     * Error of the background thread, if any.
+     */
+    private volatile IOException failure;
+    /**
+     * Whether the stream has been closed.
+     */
+    private volatile boolean closed;
+    /**
+     * Chunk being read, null if none.
+     */
+    private Chunk current;
+    /**
+     * Position of the next byte in {@link #current}.
+     */
+    private int position;
+    /**
+     * Number of bytes in {@link #current}.
+     */
+    private int limit;
+    /**
+     * Whether the end of the stream has been reached.
+     */
+    private boolean eof;
+
+    /**
+     * Constructor with the default chunk and queue sizes.
+     *
+     * @param in the stream to be read in the background.
+     */
+    ReadAheadInputStream(final InputStream in) {
+        this(in, DEFAULT_CHUNK_SIZE, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param in the stream to be read in the background.
+     * @param chunkSize the size of a chunk.
+     * @param queueSize the number of chunks that can be waiting to be read.
+     */
+    ReadAheadInputStream(final InputStream in, final int chunkSize, final int queueSize) {
+        // one more chunk for the marker of the end, and another one being read
+        this.filled = new ArrayBlockingQueue<>(queueSize + 1);
+        this.free = new ArrayBlockingQueue<>(queueSize + 1);
+        for (int k = 0; k <= queueSize; k++) {
+            free.add(new Chunk(chunkSize));
+        }
+        this.producer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                fill(in);
+            }
+        }, "rival-read-ahead");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Reads the underlying stream into chunks until it ends, it fails, or
+     * this stream is closed.
+     *
+     * @param in the underlying stream.
+     */
+    private void fill(final InputStream in) {
+        try {
+            boolean more = true;
+            while (more && !closed) {
+                Chunk chunk = free.take();
+                byte[] data = chunk.data;
+                int n = 0;
+                int read = 0;
+                while ((n < data.length) && ((read = in.read(data, n, data.length - n)) >= 0)) {
+                    n += read;
+                }
+                more = read >= 0;
+                if (n > 0) {
+                    chunk.length = n;
+                    filled.put(chunk);
+                } else {
+                    free.put(chunk);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException(e);
+        } catch (InterruptedException e) {
+            // closed while waiting
+            return;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        try {
+            filled.put(END);
+        } catch (InterruptedException e) {
+            // closed while waiting
+        }
+    }
+
+    /**
+     * Makes sure that there are bytes to be read in the current chunk.
+     *
+     * @return false if the end of the stream has been reached.
+     * @throws IOException if the underlying stream failed or the thread was
+     * interrupted.
+     */
+    private boolean ensureAvailable() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (position < limit) {
+            return true;
+        }
+        if (eof) {
+            return false;
+        }
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+        Chunk chunk;
+        try {
+            chunk = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading ahead");
+        }
+        if (chunk == END) {
+            eof = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        current = chunk;
+        position = 0;
+        limit = chunk.length;
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current.data[position++] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(current.data, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() throws IOException {
+        return closed ? 0 : limit - position;
+    }
+
+    /**
+     * Closes the stream, stopping the background thread (which closes the
+     * underlying stream).
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            producer.interrupt();
+            filled.clear();
+        }
+    }
+
+    /**
+     * Chunk of bytes read from the underlying stream.
+     */
+    private static final class Chunk {
+
+        /**
+         * The bytes.
+         */
+        private final byte[] data;
+        /**
+         * Number of bytes read into the chunk.
+         */
+        private int length;
+
+        /**
+         * Constructor.
+         *
+         * @param size the size of the chunk.
+         */
+        Chunk(final int size) {
+            this.data = new byte[size];
+            this.length = 0;
+        }
+    }
+}
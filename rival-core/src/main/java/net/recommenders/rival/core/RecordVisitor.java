@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+/**
+ * Visitor of the records (user, item, preference and timestamp) read by a
+ * {@link StreamingParser}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public interface RecordVisitor {
+
+    /**
+     * Visit a record.
+     *
+     * @param user The user.
+     * @param item The item.
+     * @param preference The preference.
+     * @param timestamp The timestamp, or -1 if not available.
+     */
+    void visit(long user, long item, double preference, long timestamp);
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only view of a data model restricted to a sample of its users, without
+ * copying any preference. Whether a user is in the sample only depends on
+ * the hash of the user, the fraction and the seed, hence the same users are
+ * chosen in the training and test splits and in the predictions of a
+ * recommender.
+ *
+ * Users and preferences are filtered on the fly, whereas the items (and the
+ * item index) are computed from the preferences of the sampled users the
+ * first time they are requested and kept afterwards; hence, the wrapped model
+ * should not be modified once they have been requested.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ *
+ * @param <U> generic type for users
+ * @param <I> generic type for items
+ */
+public class SampledDataModel<U, I> implements TemporalDataModelIF<U, I>, IndexedDataModelIF<U, I>,
+        VisitableDataModelIF<U, I> {
+
+    /**
+     * Multiplier used to spread the hash codes of the users before mixing
+     * them with the seed (golden ratio).
+     */
+    private static final long SPREAD = 0x9E3779B97F4A7C15L;
+    /**
+     * Scale of the 53 bits used to obtain a number between 0 and 1.
+     */
+    private static final double UNIT = 1.0 / (1L << 53);
+    /**
+     * The wrapped model.
+     */
+    private final DataModelIF<U, I> model;
+    /**
+     * The fraction of users in the sample.
+     */
+    private final double fraction;
+    /**
+     * The seed of the sample.
+     */
+    private final long seed;
+    /**
+     * The item index of the sampled users, null until requested.
+     */
+    private Map<I, Set<U>> itemUsers;
+
+    /**
+     * Constructor.
+     *
+     * @param theModel the model to sample.
+     * @param theFraction the fraction of users in the sample (between 0 and
+     * 1).
+     * @param theSeed the seed of the sample: the same seed (and fraction)
+     * chooses the same users in every model.
+     */
+    public SampledDataModel(final DataModelIF<U, I> theModel, final double theFraction, final long theSeed) {
+        if (!(theFraction >= 0.0 && theFraction <= 1.0)) {
+            throw new IllegalArgumentException("Invalid sample fraction: " + theFraction);
+        }
+        this.model = theModel;
+        this.fraction = theFraction;
+        this.seed = theSeed;
+    }
+
+    /**
+     * Checks whether a user is in a sample. Samples with a larger fraction
+     * (and the same seed) contain those with a smaller one.
+     *
+     * @param user the user.
+     * @param fraction the fraction of users in the sample.
+     * @param seed the seed of the sample.
+     * @return true if the user is in the sample.
+     */
+    public static boolean isSampled(final Object user, final double fraction, final long seed) {
+        long h = HyperLogLog.hash(user.hashCode() * SPREAD + seed);
+        return (h >>> 11) * UNIT < fraction;
+    }
+
+    /**
+     * Checks whether a user is in this sample.
+     *
+     * @param user the user.
+     * @return true if the user is in the sample.
+     */
+    private boolean isSampled(final Object user) {
+        return user != null && isSampled(user, fraction, seed);
+    }
+
+    /**
+     * Returns the wrapped model.
+     *
+     * @return the wrapped model.
+     */
+    public DataModelIF<U, I> getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the fraction of users in the sample.
+     *
+     * @return the fraction of users.
+     */
+    public double getFraction() {
+        return fraction;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<U, Map<I, Double>> getUserItemPreferences() {
+        return new SampledMap<>(model.getUserItemPreferences());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The map is empty when the wrapped model is not temporal.
+     */
+    @Override
+    public Map<U, Map<I, Set<Long>>> getUserItemTimestamps() {
+        if (model instanceof TemporalDataModelIF) {
+            return new SampledMap<>(((TemporalDataModelIF<U, I>) model).getUserItemTimestamps());
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The index is built from the sampled users the first time it is
+     * requested.
+     */
+    @Override
+    public Map<I, Set<U>> getItemUsers() {
+        if (itemUsers == null) {
+            Map<I, Set<U>> index = DataModelUtils.buildItemUsers(getUserItemPreferences());
+            for (Map.Entry<I, Set<U>> e : index.entrySet()) {
+                e.setValue(Collections.unmodifiableSet(e.getValue()));
+            }
+            itemUsers = Collections.unmodifiableMap(index);
+        }
+        return itemUsers;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException always, the view is read-only
+     */
+    @Override
+    public void addPreference(final U u, final I i, final Double d) {
+        throw new UnsupportedOperationException("Sampled data models cannot be modified");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException always, the view is read-only
+     */
+    @Override
+    public void addTimestamp(final U u, final I i, final Long t) {
+        throw new UnsupportedOperationException("Sampled data models cannot be modified");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<I> getItems() {
+        return getItemUsers().keySet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<U> getUsers() {
+        final Set<U> users = model.getUsers();
+        return new AbstractSet<U>() {
+            @Override
+            public boolean contains(final Object o) {
+                return isSampled(o) && users.contains(o);
+            }
+
+            @Override
+            public Iterator<U> iterator() {
+                return new SampledIterator<>(users.iterator(), false);
+            }
+
+            @Override
+            public int size() {
+                int n = 0;
+                for (U u : users) {
+                    if (isSampled(u)) {
+                        n++;
+                    }
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNumItems() {
+        return getItemUsers().size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNumUsers() {
+        return getUsers().size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The preferences of the users not in the sample are skipped.
+     */
+    @Override
+    public void forEachPreference(final PreferenceVisitor<U, I> visitor) {
+        DataModelUtils.forEachUser(model, new UserVisitor<U, I>() {
+            /**
+             * The current user.
+             */
+            private U current;
+
+            @Override
+            public boolean visitUser(final U user, final int numPreferences) {
+                current = user;
+                return isSampled(user);
+            }
+
+            @Override
+            public void visitPreference(final I item, final double preference) {
+                visitor.visit(current, item, preference);
+            }
+
+            @Override
+            public void endUser(final U user) {
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The users not in the sample are skipped.
+     */
+    @Override
+    public void forEachUser(final UserVisitor<U, I> visitor) {
+        DataModelUtils.forEachUser(model, new UserVisitor<U, I>() {
+            @Override
+            public boolean visitUser(final U user, final int numPreferences) {
+                return isSampled(user) && visitor.visitUser(user, numPreferences);
+            }
+
+            @Override
+            public void visitPreference(final I item, final double preference) {
+                visitor.visitPreference(item, preference);
+            }
+
+            @Override
+            public void endUser(final U user) {
+                visitor.endUser(user);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException always, the view is read-only
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Sampled data models cannot be modified");
+    }
+
+    /**
+     * Map keyed by user that only shows the sampled users.
+     *
+     * @param <V> type of the values
+     */
+    private final class SampledMap<V> extends AbstractMap<U, V> {
+
+        /**
+         * The wrapped map.
+         */
+        private final Map<U, V> map;
+
+        /**
+         * Constructor.
+         *
+         * @param theMap the wrapped map.
+         */
+        SampledMap(final Map<U, V> theMap) {
+            this.map = theMap;
+        }
+
+        @Override
+        public V get(final Object key) {
+            return isSampled(key) ? map.get(key) : null;
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return isSampled(key) && map.containsKey(key);
+        }
+
+        @Override
+        public Set<Map.Entry<U, V>> entrySet() {
+            return new AbstractSet<Map.Entry<U, V>>() {
+                @Override
+                public Iterator<Map.Entry<U, V>> iterator() {
+                    return new SampledIterator<>(map.entrySet().iterator(), true);
+                }
+
+                @Override
+                public int size() {
+                    int n = 0;
+                    for (U u : map.keySet()) {
+                        if (isSampled(u)) {
+                            n++;
+                        }
+                    }
+                    return n;
+                }
+            };
+        }
+    }
+
+    /**
+     * Read-only iterator over the elements of another iterator whose user is
+     * sampled.
+     *
+     * @param <T> type of the elements (users or entries keyed by user)
+     */
+    private final class SampledIterator<T> implements Iterator<T> {
+
+        /**
+         * The wrapped iterator.
+         */
+        private final Iterator<T> iterator;
+        /**
+         * Whether the elements are map entries keyed by user.
+         */
+        private final boolean entries;
+        /**
+         * The next sampled element, if any.
+         */
+        private T next;
+        /**
+         * Whether the next element has already been found.
+         */
+        private boolean hasNext;
+
+        /**
+         * Constructor.
+         *
+         * @param theIterator the wrapped iterator.
+         * @param areEntries whether the elements are map entries keyed by
+         * user (otherwise, they are users).
+         */
+        SampledIterator(final Iterator<T> theIterator, final boolean areEntries) {
+            this.iterator = theIterator;
+            this.entries = areEntries;
+            this.hasNext = false;
+        }
+
+        /**
+         * Returns the user of an element of the wrapped iterator.
+         *
+         * @param element the element.
+         * @return its user.
+         */
+        private Object userOf(final T element) {
+            return entries ? ((Map.Entry<?, ?>) element).getKey() : element;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!hasNext && iterator.hasNext()) {
+                T t = iterator.next();
+                if (isSampled(userOf(t))) {
+                    next = t;
+                    hasNext = true;
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = false;
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,620 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Data model whose users are partitioned by a stable hash into a fixed number
+ * of shards. Every shard is a self-contained model holding all the
+ * preferences (and timestamps) of its users, so independent workers can
+ * process disjoint users without any coordination: see
+ * {@link #forEachShard(ShardTask, int)} and {@link #mergeMaps(List)}.
+ *
+ * The model itself exposes the usual interface on top of the shards: user
+ * lookups are routed to the owning shard and global views concatenate the
+ * shards. Two sharded models with the same number of shards place every user
+ * in the same shard, hence the shards of, e.g., a test split and the
+ * predictions for it can be paired by index.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ *
+ * @param <U> generic type for users
+ * @param <I> generic type for items
+ */
+public class ShardedDataModel<U, I> implements TemporalDataModelIF<U, I>, IndexedDataModelIF<U, I>,
+        VisitableDataModelIF<U, I> {
+
+    /**
+     * The shards of the model.
+     */
+    private final List<DataModelIF<U, I>> shards;
+
+    /**
+     * Task to be run independently on every shard.
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     * @param <R> type of the result of the task
+     */
+    public interface ShardTask<U, I, R> {
+
+        /**
+         * Processes one shard.
+         *
+         * @param shard the index of the shard.
+         * @param model the shard.
+         * @return the result for the shard.
+         */
+        R process(int shard, DataModelIF<U, I> model);
+    }
+
+    /**
+     * Constructor with empty temporal shards.
+     *
+     * @param numShards the number of shards.
+     */
+    public ShardedDataModel(final int numShards) {
+        this(ShardedDataModel.<U, I>emptyShards(numShards));
+    }
+
+    /**
+     * Constructor with the given shards, which must already contain their
+     * users according to {@link #getShardIndex(Object, int)} (e.g., the
+     * result of splitting the shards of another sharded model).
+     *
+     * @param theShards the shards.
+     */
+    public ShardedDataModel(final List<? extends DataModelIF<U, I>> theShards) {
+        if (theShards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<DataModelIF<U, I>>(theShards));
+    }
+
+    /**
+     * Creates a list of empty temporal shards.
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     * @param numShards the number of shards.
+     * @return the shards.
+     */
+    private static <U, I> List<DataModelIF<U, I>> emptyShards(final int numShards) {
+        if (numShards < 1) {
+            throw new IllegalArgumentException("Invalid number of shards: " + numShards);
+        }
+        List<DataModelIF<U, I>> list = new ArrayList<>(numShards);
+        for (int s = 0; s < numShards; s++) {
+            list.add(new TemporalDataModel<U, I>());
+        }
+        return list;
+    }
+
+    /**
+     * Partitions a model into shards. Temporal models are copied into
+     * temporal shards (with their timestamps); otherwise, the shards are of
+     * the same kind as the model (primitive shards share its dictionaries).
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     * @param model the model to partition.
+     * @param numShards the number of shards.
+     * @return the sharded model.
+     */
+    public static <U, I> ShardedDataModel<U, I> shard(final DataModelIF<U, I> model, final int numShards) {
+        ShardedDataModel<U, I> sharded;
+        Map<U, Map<I, Set<Long>>> timestamps = null;
+        if (model instanceof TemporalDataModelIF) {
+            sharded = new ShardedDataModel<>(numShards);
+            timestamps = ((TemporalDataModelIF<U, I>) model).getUserItemTimestamps();
+        } else {
+            List<DataModelIF<U, I>> list = new ArrayList<>(numShards);
+            for (int s = 0; s < numShards; s++) {
+                list.add(DataModelFactory.getSimilarModel(model));
+            }
+            sharded = new ShardedDataModel<>(list);
+        }
+        for (Map.Entry<U, Map<I, Double>> e : model.getUserItemPreferences().entrySet()) {
+            U u = e.getKey();
+            DataModelIF<U, I> shard = sharded.shardOf(u);
+            for (Map.Entry<I, Double> p : e.getValue().entrySet()) {
+                shard.addPreference(u, p.getKey(), p.getValue());
+            }
+            Map<I, Set<Long>> userTimestamps = timestamps == null ? null : timestamps.get(u);
+            if (userTimestamps != null) {
+                TemporalDataModelIF<U, I> temporalShard = (TemporalDataModelIF<U, I>) shard;
+                for (Map.Entry<I, Set<Long>> t : userTimestamps.entrySet()) {
+                    for (Long time : t.getValue()) {
+                        temporalShard.addTimestamp(u, t.getKey(), time);
+                    }
+                }
+            }
+        }
+        return sharded;
+    }
+
+    /**
+     * Returns the shard a user belongs to. The hash only depends on the
+     * hashCode of the user, which is stable across executions for numbers
+     * and strings.
+     *
+     * @param user the user.
+     * @param numShards the number of shards.
+     * @return the index of the shard of the user.
+     */
+    public static int getShardIndex(final Object user, final int numShards) {
+        long h = HyperLogLog.hash(user.hashCode());
+        return (int) ((h >>> 1) % numShards);
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the number of shards.
+     */
+    public int getNumShards() {
+        return shards.size();
+    }
+
+    /**
+     * Returns a shard.
+     *
+     * @param shard the index of the shard.
+     * @return the shard.
+     */
+    public DataModelIF<U, I> getShard(final int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * Returns the shards of the model.
+     *
+     * @return the shards (unmodifiable).
+     */
+    public List<DataModelIF<U, I>> getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns the shard a user belongs to.
+     *
+     * @param user the user.
+     * @return the shard of the user.
+     */
+    private DataModelIF<U, I> shardOf(final Object user) {
+        return shards.get(getShardIndex(user, shards.size()));
+    }
+
+    /**
+     * Runs a task on every shard, using up to the given number of threads,
+     * and returns the results in the order of the shards. Exceptions thrown
+     * by the task are propagated to the caller.
+     *
+     * @param <R> type of the result of the task
+     * @param task the task.
+     * @param nThreads the maximum number of threads.
+     * @return the result for each shard.
+     */
+    public <R> List<R> forEachShard(final ShardTask<U, I, R> task, final int nThreads) {
+        int n = Math.max(1, Math.min(nThreads, shards.size()));
+        List<R> results = new ArrayList<>(shards.size());
+        if (n == 1) {
+            for (int s = 0; s < shards.size(); s++) {
+                results.add(task.process(s, shards.get(s)));
+            }
+            return results;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<R>> futures = new ArrayList<>(shards.size());
+            for (int s = 0; s < shards.size(); s++) {
+                final int shard = s;
+                futures.add(pool.submit(new Callable<R>() {
+                    @Override
+                    public R call() {
+                        return task.process(shard, shards.get(shard));
+                    }
+                }));
+            }
+            for (Future<R> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Merges per-shard maps keyed by user (e.g., metric values per user) into
+     * a single map. Since the shards have disjoint users, no key is lost.
+     *
+     * @param <K> type of the keys
+     * @param <V> type of the values
+     * @param maps the maps to merge.
+     * @return the merged map.
+     */
+    public static <K, V> Map<K, V> mergeMaps(final List<? extends Map<K, V>> maps) {
+        int size = 0;
+        for (Map<K, V> m : maps) {
+            size += m.size();
+        }
+        Map<K, V> merged = new HashMap<>(size * 4 / 3 + 1);
+        for (Map<K, V> m : maps) {
+            merged.putAll(m);
+        }
+        return merged;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<U, Map<I, Double>> getUserItemPreferences() {
+        List<Map<U, Map<I, Double>>> maps = new ArrayList<>(shards.size());
+        for (DataModelIF<U, I> shard : shards) {
+            maps.add(shard.getUserItemPreferences());
+        }
+        return new ShardedMap<>(maps);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Shards that are not temporal do not contribute any timestamps.
+     */
+    @Override
+    public Map<U, Map<I, Set<Long>>> getUserItemTimestamps() {
+        List<Map<U, Map<I, Set<Long>>>> maps = new ArrayList<>(shards.size());
+        for (DataModelIF<U, I> shard : shards) {
+            if (shard instanceof TemporalDataModelIF) {
+                maps.add(((TemporalDataModelIF<U, I>) shard).getUserItemTimestamps());
+            } else {
+                maps.add(Collections.<U, Map<I, Set<Long>>>emptyMap());
+            }
+        }
+        return new ShardedMap<>(maps);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The index merges those of the shards when it is requested, so that it
+     * reflects changes made directly to the shards; callers that need it
+     * several times should keep the returned map.
+     */
+    @Override
+    public Map<I, Set<U>> getItemUsers() {
+        Map<I, Set<U>> index = new HashMap<>();
+        for (DataModelIF<U, I> shard : shards) {
+            for (Map.Entry<I, Set<U>> e : DataModelUtils.getItemUsers(shard).entrySet()) {
+                Set<U> users = index.get(e.getKey());
+                if (users == null) {
+                    users = new HashSet<>();
+                    index.put(e.getKey(), users);
+                }
+                users.addAll(e.getValue());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addPreference(final U u, final I i, final Double d) {
+        shardOf(u).addPreference(u, i, d);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if the shard of the user is not
+     * temporal
+     */
+    @Override
+    public void addTimestamp(final U u, final I i, final Long t) {
+        DataModelIF<U, I> shard = shardOf(u);
+        if (!(shard instanceof TemporalDataModelIF)) {
+            throw new UnsupportedOperationException("Shard does not support timestamps");
+        }
+        ((TemporalDataModelIF<U, I>) shard).addTimestamp(u, i, t);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The returned set is a read-only view over the items of the shards.
+     */
+    @Override
+    public Set<I> getItems() {
+        return new AbstractSet<I>() {
+            @Override
+            public boolean contains(final Object o) {
+                for (DataModelIF<U, I> shard : shards) {
+                    if (shard.getItems().contains(o)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public Iterator<I> iterator() {
+                List<I> items = new ArrayList<>();
+                for (int s = 0; s < shards.size(); s++) {
+                    for (I i : shards.get(s).getItems()) {
+                        if (!inPreviousShard(i, s)) {
+                            items.add(i);
+                        }
+                    }
+                }
+                return Collections.unmodifiableList(items).iterator();
+            }
+
+            @Override
+            public int size() {
+                return getNumItems();
+            }
+        };
+    }
+
+    /**
+     * Checks whether an item is in any of the shards before a given one.
+     *
+     * @param item the item.
+     * @param shard the index of the shard.
+     * @return true if one of the previous shards has the item.
+     */
+    private boolean inPreviousShard(final I item, final int shard) {
+        for (int s = 0; s < shard; s++) {
+            if (shards.get(s).getItems().contains(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<U> getUsers() {
+        return new AbstractSet<U>() {
+            @Override
+            public boolean contains(final Object o) {
+                return o != null && shardOf(o).getUsers().contains(o);
+            }
+
+            @Override
+            public Iterator<U> iterator() {
+                List<Iterator<U>> iterators = new ArrayList<>(shards.size());
+                for (DataModelIF<U, I> shard : shards) {
+                    iterators.add(shard.getUsers().iterator());
+                }
+                return new ConcatIterator<>(iterators);
+            }
+
+            @Override
+            public int size() {
+                return getNumUsers();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNumItems() {
+        int n = 0;
+        for (int s = 0; s < shards.size(); s++) {
+            for (I i : shards.get(s).getItems()) {
+                if (!inPreviousShard(i, s)) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNumUsers() {
+        int n = 0;
+        for (DataModelIF<U, I> shard : shards) {
+            n += shard.getNumUsers();
+        }
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The shards are visited one after the other.
+     */
+    @Override
+    public void forEachPreference(final PreferenceVisitor<U, I> visitor) {
+        for (DataModelIF<U, I> shard : shards) {
+            DataModelUtils.forEachPreference(shard, visitor);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The shards are visited one after the other.
+     */
+    @Override
+    public void forEachUser(final UserVisitor<U, I> visitor) {
+        for (DataModelIF<U, I> shard : shards) {
+            DataModelUtils.forEachUser(shard, visitor);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        for (DataModelIF<U, I> shard : shards) {
+            shard.clear();
+        }
+    }
+
+    /**
+     * Read-only map made of the (disjoint) maps of the shards, where lookups
+     * are routed to the shard owning the key.
+     *
+     * @param <K> type of the keys (users)
+     * @param <V> type of the values
+     */
+    private static final class ShardedMap<K, V> extends AbstractMap<K, V> {
+
+        /**
+         * The maps of the shards.
+         */
+        private final List<Map<K, V>> maps;
+
+        /**
+         * Constructor.
+         *
+         * @param theMaps the maps of the shards.
+         */
+        ShardedMap(final List<Map<K, V>> theMaps) {
+            this.maps = theMaps;
+        }
+
+        @Override
+        public V get(final Object key) {
+            return key == null ? null : maps.get(getShardIndex(key, maps.size())).get(key);
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return key != null && maps.get(getShardIndex(key, maps.size())).containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            int n = 0;
+            for (Map<K, V> m : maps) {
+                n += m.size();
+            }
+            return n;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    List<Iterator<Map.Entry<K, V>>> iterators = new ArrayList<>(maps.size());
+                    for (Map<K, V> m : maps) {
+                        iterators.add(Collections.unmodifiableMap(m).entrySet().iterator());
+                    }
+                    return new ConcatIterator<>(iterators);
+                }
+
+                @Override
+                public int size() {
+                    return ShardedMap.this.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Read-only iterator over a sequence of iterators.
+     *
+     * @param <T> type of the elements
+     */
+    private static final class ConcatIterator<T> implements Iterator<T> {
+
+        /**
+         * The iterators.
+         */
+        private final Iterator<Iterator<T>> iterators;
+        /**
+         * The current iterator.
+         */
+        private Iterator<T> current;
+
+        /**
+         * Constructor.
+         *
+         * @param theIterators the iterators to concatenate.
+         */
+        ConcatIterator(final List<Iterator<T>> theIterators) {
+            this.iterators = theIterators.iterator();
+            this.current = Collections.<T>emptyIterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && iterators.hasNext()) {
+                current = iterators.next();
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -17,17 +17,15 @@ package net.recommenders.rival.core;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Data parser for tab-separated data files.
  *
  * @author <a href="http://github.com/abellogin">Alejandro</a>
  */
-public class SimpleParser implements Parser<Long, Long> {
+public class SimpleParser implements StreamingParser {
 
     /**
      * The column index for the user id in the file.
@@ -45,6 +43,36 @@ public class SimpleParser implements Parser<Long, Long> {
      * The column index for the time in the file.
      */
     public static final int TIME_TOK = 3;
+    /**
+     * Number of threads used to parse uncompressed files.
+     */
+    private final int parallelism;
+
+    /**
+     * Default constructor: files are parsed sequentially.
+     */
+    public SimpleParser() {
+        this(1);
+    }
+
+    /**
+     * Constructor with a number of threads. When more than one thread is
+     * requested, uncompressed files with a single-character separator are
+     * memory-mapped, split on line boundaries and parsed concurrently; the
+     * records are still added to the data model (or visited) in file order,
+     * hence the result is the same as with a sequential parse. The only
+     * exception is a {@link DataModelRecordVisitor} over a
+     * {@link ConcurrentDataModel}, which is filled directly from the parsing
+     * threads.
+     *
+     * @param nThreads number of threads used to parse a file.
+     */
+    public SimpleParser(final int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + nThreads);
+        }
+        this.parallelism = nThreads;
+    }
 
     /**
      * {@inheritDoc}
@@ -74,24 +102,113 @@ public class SimpleParser implements Parser<Long, Long> {
      */
     public TemporalDataModelIF<Long, Long> parseData(final File f, final String token, final boolean isTemporal) throws IOException {
         TemporalDataModelIF<Long, Long> dataset = new TemporalDataModel<>();
+        parseData(f, token, isTemporal, dataset);
+        return dataset;
+    }
 
-        BufferedReader br = SimpleParser.getBufferedReader(f);
-        String line = br.readLine();
-        if ((line != null) && (!line.matches(".*[a-zA-Z].*"))) {
-            parseLine(line, dataset, token, isTemporal);
+    /**
+     * Parses a data file with a specific separator between fields into a
+     * given data model (for instance, a {@link PrimitiveDataModel}). Timestamps
+     * are only parsed when the data model is temporal.
+     *
+     * @param <D> type of the data model
+     * @param f The file to be parsed.
+     * @param token The separator to be used.
+     * @param dataset The data model where the preferences will be stored.
+     * @return The data model received as parameter.
+     * @throws IOException if the file cannot be read.
+     */
+    public <D extends DataModelIF<Long, Long>> D parseData(final File f, final String token, final D dataset) throws IOException {
+        parseData(f, token, dataset instanceof TemporalDataModelIF, dataset);
+        return dataset;
+    }
+
+    /**
+     * Parses a data file with a specific separator between fields into a
+     * given data model.
+     *
+     * @param f The file to be parsed.
+     * @param token The separator to be used.
+     * @param isTemporal A flag indicating if the file contains temporal
+     * information (only used if the data model is temporal).
+     * @param dataset The data model where the preferences will be stored.
+     * @throws IOException if the file cannot be read.
+     */
+    private void parseData(final File f, final String token, final boolean isTemporal, final DataModelIF<Long, Long> dataset) throws IOException {
+        DataModelRecordVisitor visitor = new DataModelRecordVisitor(dataset, isTemporal, PreferenceBatch.DEFAULT_CAPACITY);
+        parse(f, token, isTemporal, visitor);
+        visitor.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(final File f, final RecordVisitor visitor) throws IOException {
+        parse(f, "\t", visitor);
+    }
+
+    /**
+     * Parses a data file with a specific separator between fields, passing
+     * every record to a visitor in file order.
+     *
+     * @param f The file to be parsed.
+     * @param token The separator to be used.
+     * @param visitor The visitor of the records.
+     * @throws IOException if the file cannot be read.
+     */
+    public void parse(final File f, final String token, final RecordVisitor visitor) throws IOException {
+        parse(f, token, true, visitor);
+    }
+
+    /**
+     * Parses a data file with a specific separator between fields, passing
+     * every record to a visitor in file order.
+     *
+     * @param f The file to be parsed.
+     * @param token The separator to be used.
+     * @param isTemporal A flag indicating if timestamps should be parsed.
+     * @param visitor The visitor of the records.
+     * @throws IOException if the file cannot be read.
+     */
+    private void parse(final File f, final String token, final boolean isTemporal, final RecordVisitor visitor) throws IOException {
+        if (parallelism > 1 && ChunkedFileParser.supports(f, token)) {
+            ChunkedFileParser.parse(f, token.charAt(0), isTemporal, visitor, parallelism, 0L, isConcurrent(visitor));
+            return;
         }
-        while ((line = br.readLine()) != null) {
-            parseLine(line, dataset, token, isTemporal);
+        BufferedReader br = SimpleParser.getBufferedReader(f);
+        try {
+            LineTokenizer tokenizer = new LineTokenizer(token);
+            String line = br.readLine();
+            if ((line != null) && (!line.matches(".*[a-zA-Z].*"))) {
+                parseLine(line, visitor, tokenizer, isTemporal);
+            }
+            while ((line = br.readLine()) != null) {
+                parseLine(line, visitor, tokenizer, isTemporal);
+            }
+        } finally {
+            // also stops the read-ahead thread of compressed files
+            br.close();
         }
-        br.close();
+    }
 
-        return dataset;
+    /**
+     * Checks whether a visitor can be called from several threads at the same
+     * time, i.e., whether it adds the records to a {@link ConcurrentDataModel}.
+     *
+     * @param visitor The visitor.
+     * @return true if the visitor is thread-safe.
+     */
+    private static boolean isConcurrent(final RecordVisitor visitor) {
+        return (visitor instanceof DataModelRecordVisitor)
+                && (((DataModelRecordVisitor) visitor).getDataModel() instanceof ConcurrentDataModel);
     }
 
     /**
      * Obtains an instance of BufferedReader depending on the file extension: if
-     * it ends with gz, zip, or tgz then a compressed reader is used instead of
-     * the standard one.
+     * it ends with gz, zip, tgz, tar.gz or tar then a compressed reader is
+     * used instead of the standard one, which decompresses the file (or the
+     * first regular file in the archive) on a background thread.
      *
      * @param f The file to be opened.
      * @return An instance of BufferedReader or null if there is a problem
@@ -99,50 +216,61 @@ public class SimpleParser implements Parser<Long, Long> {
      * @see BufferedReader
      */
     public static BufferedReader getBufferedReader(final File f) throws IOException {
+        return getBufferedReader(f, null);
+    }
+
+    /**
+     * Obtains an instance of BufferedReader depending on the file extension,
+     * reading a given entry if the file is a zip or tar archive.
+     *
+     * @param f The file to be opened.
+     * @param entry The name (or the path suffix, e.g., "u.data" for
+     * "ml-100k/u.data") of the entry to be read from an archive, or null for
+     * the first regular file in it.
+     * @return An instance of BufferedReader or null if there is a problem
+     * @throws IOException when the file cannot be read.
+     * @throws java.io.FileNotFoundException when the entry is not in the
+     * archive.
+     * @see BufferedReader
+     */
+    public static BufferedReader getBufferedReader(final File f, final String entry) throws IOException {
         BufferedReader br = null;
         if ((f == null) || (!f.isFile())) {
             return br;
         }
-        if (f.getName().endsWith(".gz") || f.getName().endsWith(".zip") || f.getName().endsWith(".tgz")) {
-            br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(f)), "UTF-8"));
-        } else {
-            br = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
-        }
+        br = new BufferedReader(new InputStreamReader(CompressedInput.open(f, entry), "UTF-8"));
         return br;
     }
 
     /**
-     * Parses line from data file.
+     * Parses line from data file. Blank lines are skipped.
      *
      * @param line The line to be parsed.
-     * @param dataset The dataset to add data from line to.
-     * @param token the token to split on.
+     * @param visitor The visitor of the record in the line.
+     * @param toks the tokenizer for the separator of the file.
      * @param isTemporal A flag indicating if the line contains temporal
      * information.
      */
-    private void parseLine(final String line, final TemporalDataModelIF<Long, Long> dataset, final String token, final boolean isTemporal) {
-        if (line == null) {
+    private void parseLine(final String line, final RecordVisitor visitor, final LineTokenizer toks, final boolean isTemporal) {
+        if ((line == null) || line.isEmpty()) {
             return;
         }
-        String[] toks = line.split(token);
+        toks.tokenize(line);
         // user
-        long userId = Long.parseLong(toks[USER_TOK]);
+        long userId = toks.getLong(USER_TOK);
         // item
-        long itemId = Long.parseLong(toks[ITEM_TOK]);
+        long itemId = toks.getLong(ITEM_TOK);
         // preference
-        double preference = Double.parseDouble(toks[RATING_TOK]);
+        double preference = toks.getDouble(RATING_TOK);
         // timestamp
         long timestamp = -1;
         // allow no timestamp information
-        if (isTemporal && toks.length > TIME_TOK) {
-            timestamp = Long.parseLong(toks[TIME_TOK]);
+        if (isTemporal && toks.size() > TIME_TOK) {
+            timestamp = toks.getLong(TIME_TOK);
         }
         //////
         // update information
         //////
-        dataset.addPreference(userId, itemId, preference);
-        if (timestamp != -1) {
-            dataset.addTimestamp(userId, itemId, timestamp);
-        }
+        visitor.visit(userId, itemId, preference, timestamp);
     }
 }
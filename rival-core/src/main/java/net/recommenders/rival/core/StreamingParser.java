@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Parser that, besides building data models, can stream the records of a file
+ * to a {@link RecordVisitor} without storing them, so that one-pass tasks
+ * (counting, filtering, computing statistics) do not need to keep the whole
+ * dataset in memory.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public interface StreamingParser extends Parser<Long, Long> {
+
+    /**
+     * Parse a data file, passing every record to a visitor in file order.
+     *
+     * @param f The file to be parsed.
+     * @param visitor The visitor of the records.
+     * @throws IOException if the file cannot be read.
+     */
+    void parse(File f, RecordVisitor visitor) throws IOException;
+}
@@ -98,12 +98,62 @@ public class TemporalDataModel<U, I> extends DataModel<U, I> implements Temporal
         }
         Set<Long> timestamps = userTimestamps.get(i);
         if (timestamps == null) {
-            timestamps = new HashSet<>();
+            timestamps = newTimestampSet();
             userTimestamps.put(i, timestamps);
         }
         timestamps.add(t);
     }
 
+    /**
+     * Method that adds a batch of preferences and their timestamps (other
+     * than {@link PreferenceBatch#NO_TIMESTAMP}) to the model, grouped by
+     * user.
+     *
+     * @param batch the preferences.
+     */
+    @Override
+    public void addPreferences(final PreferenceBatch<U, I> batch) {
+        super.addPreferences(batch);
+        int numGroups = batch.groupByUser();
+        int[] order = batch.getGroupOrder();
+        int[] offsets = batch.getGroupOffsets();
+        for (int g = 0; g < numGroups; g++) {
+            Map<I, Set<Long>> userTimestamps = null;
+            for (int k = offsets[g]; k < offsets[g + 1]; k++) {
+                int n = order[k];
+                long t = batch.getTimestamp(n);
+                if (t == PreferenceBatch.NO_TIMESTAMP) {
+                    continue;
+                }
+                if (userTimestamps == null) {
+                    U u = batch.getUser(n);
+                    userTimestamps = userItemTimestamps.get(u);
+                    if (userTimestamps == null) {
+                        userTimestamps = new HashMap<>();
+                        userItemTimestamps.put(u, userTimestamps);
+                    }
+                }
+                I i = batch.getItem(n);
+                Set<Long> timestamps = userTimestamps.get(i);
+                if (timestamps == null) {
+                    timestamps = newTimestampSet();
+                    userTimestamps.put(i, timestamps);
+                }
+                timestamps.add(t);
+            }
+        }
+    }
+
+    /**
+     * Method that creates the set where the timestamps between a user and an
+     * item are stored.
+     *
+     * @return an empty set of timestamps.
+     */
+    protected Set<Long> newTimestampSet() {
+        return new HashSet<>();
+    }
+
     /**
      * Method that clears all the maps contained in the model.
      */
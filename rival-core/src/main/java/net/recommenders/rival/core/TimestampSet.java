@@ -0,0 +1,402 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Set of timestamps stored as a sorted, delta-encoded run of variable-length
+ * integers: the first (smallest) timestamp is stored zig-zag encoded and
+ * every other one as the difference with the previous timestamp, so that a
+ * timestamp usually takes one to four bytes instead of a boxed Long plus a
+ * hash set entry.
+ *
+ * Timestamps added in increasing order are appended in constant time; any
+ * other timestamp is kept in a small buffer that is sorted and merged into
+ * the run when it fills up (the buffer grows with the set, so that adding
+ * timestamps in decreasing order takes linearithmic time) or when the set is
+ * first read. Elements cannot be removed.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+final class TimestampSet extends AbstractSet<Long> {
+
+    /**
+     * Initial number of bytes (enough for a millisecond timestamp).
+     */
+    private static final int INITIAL_CAPACITY = 8;
+    /**
+     * Minimum number of buffered timestamps before they are merged.
+     */
+    private static final int MIN_PENDING = 8;
+    /**
+     * The encoded timestamps.
+     */
+    private byte[] data;
+    /**
+     * Number of used bytes.
+     */
+    private int length;
+    /**
+     * Number of timestamps.
+     */
+    private int size;
+    /**
+     * The smallest encoded timestamp.
+     */
+    private long first;
+    /**
+     * The largest encoded timestamp.
+     */
+    private long last;
+    /**
+     * Timestamps smaller than the largest encoded one, not merged yet.
+     */
+    private long[] pending;
+    /**
+     * Number of buffered timestamps.
+     */
+    private int pendingSize;
+    /**
+     * The smallest buffered timestamp.
+     */
+    private long pendingMin;
+    /**
+     * The largest buffered timestamp.
+     */
+    private long pendingMax;
+
+    /**
+     * Default constructor.
+     */
+    TimestampSet() {
+        data = new byte[INITIAL_CAPACITY];
+        length = 0;
+        size = 0;
+        pending = null;
+        pendingSize = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add(final Long t) {
+        return add(t.longValue());
+    }
+
+    /**
+     * Adds a timestamp, without boxing.
+     *
+     * @param t the timestamp.
+     * @return true if the timestamp was not in the set.
+     */
+    boolean add(final long t) {
+        if (size == 0 || t > last) {
+            append(t);
+            return true;
+        }
+        if (t == last || pendingContains(t) || encodedContains(t)) {
+            return false;
+        }
+        if (pending == null) {
+            pending = new long[MIN_PENDING];
+        } else if (pendingSize == pending.length) {
+            pending = Arrays.copyOf(pending, pendingSize << 1);
+        }
+        if (pendingSize == 0 || t < pendingMin) {
+            pendingMin = t;
+        }
+        if (pendingSize == 0 || t > pendingMax) {
+            pendingMax = t;
+        }
+        pending[pendingSize++] = t;
+        if (pendingSize >= Math.max(MIN_PENDING, size >> 2)) {
+            merge();
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(final Object o) {
+        if (!(o instanceof Long) || size == 0) {
+            return false;
+        }
+        long t = (Long) o;
+        return t == last || pendingContains(t) || encodedContains(t);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return size + pendingSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Long> iterator() {
+        flush();
+        return new TimestampIterator(new Decoder());
+    }
+
+    /**
+     * Returns the timestamps in increasing order.
+     *
+     * @return the timestamps.
+     */
+    long[] toLongArray() {
+        flush();
+        long[] values = new long[size];
+        Decoder decoder = new Decoder();
+        for (int k = 0; k < size; k++) {
+            values[k] = decoder.next();
+        }
+        return values;
+    }
+
+    /**
+     * Returns the number of bytes used by the encoded timestamps.
+     *
+     * @return the number of bytes.
+     */
+    int getEncodedLength() {
+        flush();
+        return length;
+    }
+
+    /**
+     * Appends a timestamp larger than every encoded one.
+     *
+     * @param t the timestamp.
+     */
+    private void append(final long t) {
+        if (size == 0) {
+            writeVarLong((t << 1) ^ (t >> 63));
+            first = t;
+        } else {
+            // the difference is positive, even if it overflows a signed long
+            writeVarLong(t - last);
+        }
+        last = t;
+        size++;
+    }
+
+    /**
+     * Checks whether a timestamp is in the encoded run, decoding only the
+     * timestamps smaller than it.
+     *
+     * @param t the timestamp.
+     * @return true if the timestamp is encoded.
+     */
+    private boolean encodedContains(final long t) {
+        if (size == 0 || t < first || t > last) {
+            return false;
+        }
+        Decoder decoder = new Decoder();
+        while (decoder.hasNext()) {
+            long value = decoder.next();
+            if (value >= t) {
+                return value == t;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a timestamp is in the buffer.
+     *
+     * @param t the timestamp.
+     * @return true if the timestamp is buffered.
+     */
+    private boolean pendingContains(final long t) {
+        if (pendingSize == 0 || t < pendingMin || t > pendingMax) {
+            return false;
+        }
+        for (int k = 0; k < pendingSize; k++) {
+            if (pending[k] == t) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges the buffered timestamps into the encoded run, if there are any.
+     * Readers call it before decoding the run, so it is synchronized in case
+     * several threads read the set at the same time.
+     */
+    private synchronized void flush() {
+        if (pendingSize > 0) {
+            merge();
+        }
+    }
+
+    /**
+     * Sorts the buffered timestamps and merges them into the encoded run.
+     */
+    private void merge() {
+        Arrays.sort(pending, 0, pendingSize);
+        long[] encoded = new long[size];
+        Decoder decoder = new Decoder();
+        for (int k = 0; k < encoded.length; k++) {
+            encoded[k] = decoder.next();
+        }
+        int numPending = pendingSize;
+        pendingSize = 0;
+        length = 0;
+        size = 0;
+        int a = 0;
+        int b = 0;
+        while (a < encoded.length || b < numPending) {
+            if (b == numPending || (a < encoded.length && encoded[a] < pending[b])) {
+                append(encoded[a++]);
+            } else {
+                append(pending[b++]);
+            }
+        }
+        pending = null;
+    }
+
+    /**
+     * Appends an (unsigned) variable-length integer.
+     *
+     * @param value the value.
+     */
+    private void writeVarLong(final long value) {
+        if (length + 10 > data.length) {
+            data = Arrays.copyOf(data, Math.max(length + 10, data.length + (data.length >> 1)));
+        }
+        long v = value;
+        while ((v & ~0x7FL) != 0L) {
+            data[length++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        data[length++] = (byte) v;
+    }
+
+    /**
+     * Estimates the heap footprint of the set.
+     *
+     * @return the estimated size, in bytes.
+     */
+    long estimateBytes() {
+        long bytes = MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 2 * MemoryEstimator.REFERENCE + 3 * 4 + 4 * 8)
+                + MemoryEstimator.array(1, data.length);
+        if (pending != null) {
+            bytes += MemoryEstimator.array(8, pending.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Sequential decoder of the timestamps.
+     */
+    private final class Decoder {
+
+        /**
+         * Position of the next byte.
+         */
+        private int pos = 0;
+        /**
+         * Number of decoded timestamps.
+         */
+        private int count = 0;
+        /**
+         * The last decoded timestamp.
+         */
+        private long current = 0L;
+
+        /**
+         * Checks whether there are more timestamps.
+         *
+         * @return true if there are more timestamps.
+         */
+        boolean hasNext() {
+            return count < size;
+        }
+
+        /**
+         * Decodes the next timestamp.
+         *
+         * @return the timestamp.
+         */
+        long next() {
+            if (count >= size) {
+                throw new NoSuchElementException();
+            }
+            long v = 0L;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (count == 0) {
+                current = (v >>> 1) ^ -(v & 1L);
+            } else {
+                current += v;
+            }
+            count++;
+            return current;
+        }
+    }
+
+    /**
+     * Read-only iterator over the timestamps of a decoder.
+     */
+    private static final class TimestampIterator implements Iterator<Long> {
+
+        /**
+         * The decoder of the timestamps.
+         */
+        private final Decoder decoder;
+
+        /**
+         * Constructor.
+         *
+         * @param theDecoder the decoder of the timestamps.
+         */
+        TimestampIterator(final Decoder theDecoder) {
+            this.decoder = theDecoder;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return decoder.hasNext();
+        }
+
+        @Override
+        public Long next() {
+            return decoder.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Timestamps cannot be removed");
+        }
+    }
+}
@@ -18,18 +18,29 @@ package net.recommenders.rival.core;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.Reader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.List;
 
 /**
  * User-Item-Preference (rating) Parser.
  *
+ * Rows without quotes (the common case of plain numeric files) are split and
+ * parsed directly from the line; only rows with quotes are handed to
+ * commons-csv (Excel format), which may join several lines into one record.
+ *
  * @author <a href="http://github.com/alansaid">Alan</a>.
  */
-public class UIPParser extends AbstractParser implements Parser<Long, Long> {
+public class UIPParser extends AbstractParser implements StreamingParser {
+
+    /**
+     * The quote character of the Excel format.
+     */
+    private static final char QUOTE = '"';
 
     /**
      * Default constructor.
@@ -44,26 +55,7 @@ public class UIPParser extends AbstractParser implements Parser<Long, Long> {
     @Override
     public TemporalDataModelIF<Long, Long> parseTemporalData(final File f) throws IOException {
         TemporalDataModelIF<Long, Long> dataset = new TemporalDataModel<>();
-        Reader in = new InputStreamReader(new FileInputStream(f), "UTF-8");
-
-        Iterable<CSVRecord> records;
-        if (isHasHeader()) {
-            records = CSVFormat.EXCEL.withDelimiter(getDelimiter()).withHeader().parse(in);
-        } else {
-            records = CSVFormat.EXCEL.withDelimiter(getDelimiter()).parse(in);
-        }
-        for (CSVRecord record : records) {
-            long userID = Long.parseLong(record.get(getUserTok()));
-            long itemID = Long.parseLong(record.get(getItemTok()));
-            long timestamp = -1L;
-            if (getTimeTok() != -1) {
-                timestamp = Long.parseLong(record.get(getTimeTok()));
-            }
-            double preference = Double.parseDouble(record.get(getPrefTok()));
-            dataset.addPreference(userID, itemID, preference);
-            dataset.addTimestamp(userID, itemID, timestamp);
-        }
-        in.close();
+        parse(f, new TemporalRecordVisitor(dataset));
         return dataset;
     }
 
@@ -72,22 +64,162 @@ public class UIPParser extends AbstractParser implements Parser<Long, Long> {
      */
     @Override
     public DataModelIF<Long, Long> parseData(final File f) throws IOException {
-        DataModelIF<Long, Long> dataset = new DataModel<>();
-        Reader in = new InputStreamReader(new FileInputStream(f), "UTF-8");
-
-        Iterable<CSVRecord> records;
-        if (isHasHeader()) {
-            records = CSVFormat.EXCEL.withDelimiter(getDelimiter()).withHeader().parse(in);
-        } else {
-            records = CSVFormat.EXCEL.withDelimiter(getDelimiter()).parse(in);
+        final DataModelIF<Long, Long> dataset = new DataModel<>();
+        DataModelRecordVisitor visitor = new DataModelRecordVisitor(dataset, false, PreferenceBatch.DEFAULT_CAPACITY);
+        parse(f, visitor);
+        visitor.flush();
+        return dataset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(final File f, final RecordVisitor visitor) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+        try {
+            int nFields = Math.max(Math.max(getUserTok(), getItemTok()), Math.max(getPrefTok(), getTimeTok())) + 1;
+            int[] starts = new int[nFields];
+            int[] ends = new int[nFields];
+            boolean header = isHasHeader();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.indexOf(QUOTE) >= 0) {
+                    CSVRecord record = parseQuotedRecord(line, in);
+                    if (!header) {
+                        visitRecord(record, visitor);
+                    }
+                } else if (!header) {
+                    visitLine(line, starts, ends, visitor);
+                }
+                header = false;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses a row without quotes: the fields are located in the line and
+     * the numbers parsed from it without creating any string.
+     *
+     * @param line The line.
+     * @param starts Buffer for the first position of every field.
+     * @param ends Buffer for the last position (exclusive) of every field.
+     * @param visitor The visitor of the record.
+     */
+    private void visitLine(final String line, final int[] starts, final int[] ends, final RecordVisitor visitor) {
+        char delimiter = getDelimiter();
+        int n = 0;
+        int start = 0;
+        while (n < starts.length) {
+            int end = line.indexOf(delimiter, start);
+            starts[n] = start;
+            if (end < 0) {
+                ends[n++] = line.length();
+                break;
+            }
+            ends[n++] = end;
+            start = end + 1;
         }
-        for (CSVRecord record : records) {
-            long userID = Long.parseLong(record.get(getUserTok()));
-            long itemID = Long.parseLong(record.get(getItemTok()));
-            double preference = Double.parseDouble(record.get(getPrefTok()));
-            dataset.addPreference(userID, itemID, preference);
+        int userTok = checkField(getUserTok(), n);
+        int itemTok = checkField(getItemTok(), n);
+        int prefTok = checkField(getPrefTok(), n);
+        long userID = LineTokenizer.parseLong(line, starts[userTok], ends[userTok]);
+        long itemID = LineTokenizer.parseLong(line, starts[itemTok], ends[itemTok]);
+        long timestamp = -1L;
+        if (getTimeTok() != -1) {
+            int timeTok = checkField(getTimeTok(), n);
+            timestamp = LineTokenizer.parseLong(line, starts[timeTok], ends[timeTok]);
+        }
+        double preference = LineTokenizer.parseDouble(line, starts[prefTok], ends[prefTok]);
+        visitor.visit(userID, itemID, preference, timestamp);
+    }
+
+    /**
+     * Checks that a field is present in a row, as {@link CSVRecord#get(int)}.
+     *
+     * @param field The index of the field.
+     * @param nFields The number of fields in the row.
+     * @return The index of the field.
+     */
+    private static int checkField(final int field, final int nFields) {
+        if (field >= nFields) {
+            throw new ArrayIndexOutOfBoundsException(field);
+        }
+        return field;
+    }
+
+    /**
+     * Visits a record parsed by commons-csv.
+     *
+     * @param record The record.
+     * @param visitor The visitor of the record.
+     */
+    private void visitRecord(final CSVRecord record, final RecordVisitor visitor) {
+        long userID = Long.parseLong(record.get(getUserTok()));
+        long itemID = Long.parseLong(record.get(getItemTok()));
+        long timestamp = -1L;
+        if (getTimeTok() != -1) {
+            timestamp = Long.parseLong(record.get(getTimeTok()));
+        }
+        double preference = Double.parseDouble(record.get(getPrefTok()));
+        visitor.visit(userID, itemID, preference, timestamp);
+    }
+
+    /**
+     * Parses a row with quotes using commons-csv. Quoted fields may contain
+     * line breaks, hence the next lines are added to the row until the
+     * record is complete.
+     *
+     * @param line The first line of the row.
+     * @param in The reader of the rest of the file.
+     * @return The record.
+     * @throws IOException if the file cannot be read or the record is not
+     * finished at the end of the file.
+     */
+    private CSVRecord parseQuotedRecord(final String line, final BufferedReader in) throws IOException {
+        CSVFormat format = CSVFormat.EXCEL.withDelimiter(getDelimiter());
+        StringBuilder row = new StringBuilder(line);
+        while (true) {
+            try {
+                List<CSVRecord> records = format.parse(new StringReader(row.toString())).getRecords();
+                return records.get(0);
+            } catch (IOException e) {
+                // unfinished quoted field
+                String next = in.readLine();
+                if (next == null) {
+                    throw e;
+                }
+                row.append('\n').append(next);
+            }
+        }
+    }
+
+    /**
+     * Record visitor that adds every preference, with its timestamp, to a
+     * temporal data model.
+     */
+    private static final class TemporalRecordVisitor implements RecordVisitor {
+
+        /**
+         * The data model.
+         */
+        private final TemporalDataModelIF<Long, Long> dataset;
+
+        /**
+         * Constructor.
+         *
+         * @param model The data model where the records will be stored.
+         */
+        TemporalRecordVisitor(final TemporalDataModelIF<Long, Long> model) {
+            this.dataset = model;
+        }
+
+        @Override
+        public void visit(final long user, final long item, final double preference, final long timestamp) {
+            dataset.addPreference(user, item, preference);
+            dataset.addTimestamp(user, item, timestamp);
         }
-        in.close();
-        return dataset;
     }
 }
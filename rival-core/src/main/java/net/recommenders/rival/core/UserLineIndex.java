@@ -0,0 +1,486 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Index of the byte ranges of the users of a text file whose lines (user,
+ * then other fields, separated by a delimiter) are grouped by user, such as
+ * recommendation, prediction or split files. The index is built in one
+ * sequential pass over the file and can be persisted next to it (in a file
+ * with the same name plus {@link #INDEX_SUFFIX}), so that later runs only
+ * read the bytes of the users they need through a {@link UserLineReader}.
+ * A persisted index is only reused while the length and the modification
+ * time of the indexed file are the same as when it was built.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public final class UserLineIndex {
+
+    /**
+     * Suffix of the file where the index of a file is persisted.
+     */
+    public static final String INDEX_SUFFIX = ".uidx";
+    /**
+     * Identifier of the index files.
+     */
+    static final int MAGIC = 0x52565549;
+    /**
+     * Version of the index files.
+     */
+    static final int VERSION = 1;
+    /**
+     * Size of the buffer used to scan the indexed file.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Length of the indexed file.
+     */
+    private final long fileLength;
+    /**
+     * Modification time of the indexed file.
+     */
+    private final long lastModified;
+    /**
+     * Delimiter between the fields of the indexed file.
+     */
+    private final char delimiter;
+    /**
+     * The users, in file order.
+     */
+    private final long[] users;
+    /**
+     * Offset of the first line of every user (one more than the number of
+     * users, the last one being the length of the file).
+     */
+    private final long[] offsets;
+    /**
+     * Position of every user in {@link #users}.
+     */
+    private final LongIntHashMap positions;
+
+    /**
+     * Constructor.
+     *
+     * @param length the length of the indexed file.
+     * @param modified the modification time of the indexed file.
+     * @param separator the delimiter between fields.
+     * @param userArray the users, in file order.
+     * @param offsetArray the offset of the first line of every user, plus the
+     * length of the file.
+     */
+    private UserLineIndex(final long length, final long modified, final char separator, final long[] userArray, final long[] offsetArray) {
+        this.fileLength = length;
+        this.lastModified = modified;
+        this.delimiter = separator;
+        this.users = userArray;
+        this.offsets = offsetArray;
+        this.positions = new LongIntHashMap(userArray.length);
+        for (int n = 0; n < userArray.length; n++) {
+            positions.put(userArray[n], n);
+        }
+    }
+
+    /**
+     * Returns the index of a file, loading it from the file next to it if it
+     * is up to date, or building it (and persisting it, if possible)
+     * otherwise.
+     *
+     * @param f the file, with its lines grouped by user.
+     * @param delimiter the separator between fields.
+     * @return the index of the file.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line does not start with a user
+     * id or the lines of a user are not contiguous.
+     */
+    public static UserLineIndex getIndex(final File f, final char delimiter) throws IOException {
+        File indexFile = getIndexFile(f);
+        UserLineIndex index = null;
+        try {
+            index = load(f, indexFile);
+        } catch (IOException e) {
+            // a corrupted or truncated index is built again
+            index = null;
+        }
+        if ((index == null) || (index.delimiter != delimiter)) {
+            index = build(f, delimiter);
+            try {
+                index.write(indexFile);
+            } catch (IOException e) {
+                // the index is still usable, it is just not persisted
+                if (!indexFile.delete()) {
+                    indexFile.deleteOnExit();
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the file where the index of a file is persisted.
+     *
+     * @param f the indexed file.
+     * @return the file of the index.
+     */
+    public static File getIndexFile(final File f) {
+        return new File(f.getPath() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Builds the index of a file by scanning it.
+     *
+     * @param f the file, with its lines grouped by user.
+     * @param delimiter the separator between fields, which has to be an ASCII
+     * character.
+     * @return the index of the file.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line does not start with a user
+     * id or the lines of a user are not contiguous.
+     */
+    public static UserLineIndex build(final File f, final char delimiter) throws IOException {
+        if (delimiter > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("The delimiter has to be an ASCII character: " + delimiter);
+        }
+        long modified = f.lastModified();
+        Scanner scanner = new Scanner(f, (byte) delimiter);
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            byte[] bytes = new byte[BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long base = 0L;
+            int read;
+            while ((read = channel.read(buffer)) >= 0) {
+                for (int k = 0; k < read; k++) {
+                    scanner.accept(bytes[k], base + k);
+                }
+                base += read;
+                buffer.clear();
+            }
+            scanner.endLine();
+            long[] offsets = Arrays.copyOf(scanner.offsets, scanner.numUsers + 1);
+            offsets[scanner.numUsers] = base;
+            return new UserLineIndex(base, modified, delimiter, Arrays.copyOf(scanner.users, scanner.numUsers), offsets);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Loads the persisted index of a file.
+     *
+     * @param f the indexed file.
+     * @param indexFile the file of the index.
+     * @return the index, or null if there is no index or it is not up to
+     * date.
+     * @throws IOException if the index cannot be read.
+     */
+    public static UserLineIndex load(final File f, final File indexFile) throws IOException {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a user index file: " + indexFile);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of the user index: " + indexFile);
+            }
+            long length = in.readLong();
+            long modified = in.readLong();
+            if ((length != f.length()) || (modified != f.lastModified())) {
+                return null;
+            }
+            char separator = in.readChar();
+            int numUsers = in.readInt();
+            long[] users = new long[numUsers];
+            long[] offsets = new long[numUsers + 1];
+            for (int n = 0; n < numUsers; n++) {
+                users[n] = in.readLong();
+            }
+            // offsets as differences with the previous one
+            for (int n = 1; n <= numUsers; n++) {
+                offsets[n] = offsets[n - 1] + in.readLong();
+            }
+            offsets[0] = 0L;
+            return new UserLineIndex(length, modified, separator, users, offsets);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Persists the index.
+     *
+     * @param indexFile the file where the index is written.
+     * @throws IOException if the index cannot be written.
+     */
+    public void write(final File indexFile) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileLength);
+            out.writeLong(lastModified);
+            out.writeChar(delimiter);
+            out.writeInt(users.length);
+            for (long u : users) {
+                out.writeLong(u);
+            }
+            for (int n = 1; n < offsets.length; n++) {
+                out.writeLong(offsets[n] - offsets[n - 1]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the number of users in the indexed file.
+     *
+     * @return the number of users.
+     */
+    public int getNumUsers() {
+        return users.length;
+    }
+
+    /**
+     * Returns a user of the indexed file.
+     *
+     * @param n position of the user, in file order.
+     * @return the user.
+     */
+    public long getUser(final int n) {
+        return users[n];
+    }
+
+    /**
+     * Checks whether a user is in the indexed file.
+     *
+     * @param user the user.
+     * @return true if the file has lines of the user.
+     */
+    public boolean contains(final long user) {
+        return positions.get(user) != LongIntHashMap.NO_VALUE;
+    }
+
+    /**
+     * Returns the offset of the first line of a user.
+     *
+     * @param user the user.
+     * @return the offset of the first line of the user, or -1 if the user is
+     * not in the file.
+     */
+    public long getStart(final long user) {
+        int n = positions.get(user);
+        return (n == LongIntHashMap.NO_VALUE) ? -1L : offsets[n];
+    }
+
+    /**
+     * Returns the offset after the last line of a user.
+     *
+     * @param user the user.
+     * @return the offset after the last line of the user, or -1 if the user
+     * is not in the file.
+     */
+    public long getEnd(final long user) {
+        int n = positions.get(user);
+        return (n == LongIntHashMap.NO_VALUE) ? -1L : offsets[n + 1];
+    }
+
+    /**
+     * Returns the length of the indexed file.
+     *
+     * @return the length of the file.
+     */
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    /**
+     * Returns the delimiter between the fields of the indexed file.
+     *
+     * @return the delimiter.
+     */
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * Scanner of the lines of a file that records where every user starts.
+     */
+    private static final class Scanner {
+
+        /**
+         * The file, for the error messages.
+         */
+        private final File file;
+        /**
+         * Delimiter between fields.
+         */
+        private final byte delimiter;
+        /**
+         * The users found, in file order.
+         */
+        private long[] users = new long[16];
+        /**
+         * Offset of the first line of every user.
+         */
+        private long[] offsets = new long[16];
+        /**
+         * Number of users found.
+         */
+        private int numUsers = 0;
+        /**
+         * Users found, to detect those whose lines are not contiguous.
+         */
+        private final LongIntHashMap seen = new LongIntHashMap();
+        /**
+         * Offset of the current line.
+         */
+        private long lineStart = 0L;
+        /**
+         * Whether the current line is blank so far.
+         */
+        private boolean blank = true;
+        /**
+         * Whether the first field of the current line is being read.
+         */
+        private boolean inUser = true;
+        /**
+         * Number of characters of the user of the current line.
+         */
+        private int userLength = 0;
+        /**
+         * Number of digits of the user of the current line.
+         */
+        private int numDigits = 0;
+        /**
+         * Whether the user of the current line is negative.
+         */
+        private boolean negative = false;
+        /**
+         * Whether the user of the current line is a number.
+         */
+        private boolean valid = true;
+        /**
+         * The user of the current line, accumulated as a negative number (as
+         * {@link Long#parseLong(java.lang.String)} does, so that
+         * {@link Long#MIN_VALUE} can be read).
+         */
+        private long user = 0L;
+
+        /**
+         * Constructor.
+         *
+         * @param f the file.
+         * @param separator the delimiter between fields.
+         */
+        Scanner(final File f, final byte separator) {
+            this.file = f;
+            this.delimiter = separator;
+        }
+
+        /**
+         * Processes a byte of the file. User ids follow the syntax of
+         * {@link Long#parseLong(java.lang.String)}.
+         *
+         * @param b the byte.
+         * @param offset the offset of the byte in the file.
+         */
+        void accept(final byte b, final long offset) {
+            if (b == '\n') {
+                endLine();
+                lineStart = offset + 1;
+                return;
+            }
+            if (b != '\r') {
+                blank = false;
+            }
+            if (!inUser) {
+                return;
+            }
+            if ((b == delimiter) || (b == '\r')) {
+                inUser = false;
+            } else if ((b >= '0') && (b <= '9')) {
+                long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+                int digit = b - '0';
+                if ((user < limit / 10) || (user * 10 < limit + digit)) {
+                    // overflow
+                    valid = false;
+                } else {
+                    user = user * 10 - digit;
+                }
+                numDigits++;
+            } else if (((b == '-') || (b == '+')) && (userLength == 0)) {
+                negative = b == '-';
+            } else {
+                valid = false;
+            }
+            userLength++;
+        }
+
+        /**
+         * Processes the end of a line: a new user starts a new range, and
+         * blank lines belong to the range of the previous user.
+         *
+         * @throws IllegalArgumentException if the first field of the line is
+         * not a valid user id.
+         */
+        void endLine() {
+            if (!blank) {
+                if (!valid || (numDigits == 0)) {
+                    throw new IllegalArgumentException("Invalid user id in the line at byte " + lineStart + " of " + file);
+                }
+                long u = negative ? user : -user;
+                if ((numUsers == 0) || (users[numUsers - 1] != u)) {
+                    if (seen.get(u) != LongIntHashMap.NO_VALUE) {
+                        throw new IllegalArgumentException("The lines of user " + u + " are not contiguous in " + file);
+                    }
+                    if (numUsers + 1 >= users.length) {
+                        users = Arrays.copyOf(users, users.length << 1);
+                        offsets = Arrays.copyOf(offsets, offsets.length << 1);
+                    }
+                    seen.put(u, numUsers);
+                    users[numUsers] = u;
+                    offsets[numUsers] = (numUsers == 0) ? 0L : lineStart;
+                    numUsers++;
+                }
+            }
+            blank = true;
+            inUser = true;
+            userLength = 0;
+            numDigits = 0;
+            negative = false;
+            valid = true;
+            user = 0L;
+        }
+    }
+}
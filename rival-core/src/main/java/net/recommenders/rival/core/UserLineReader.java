@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Random-access reader of the lines of the users of a file indexed by a
+ * {@link UserLineIndex}. The lines of a user are read with a single
+ * positional read on a {@link FileChannel}, so only the bytes of the
+ * requested users are read, and a reader can be shared by several threads.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public final class UserLineReader implements Closeable {
+
+    /**
+     * The index of the file.
+     */
+    private final UserLineIndex index;
+    /**
+     * The file.
+     */
+    private final RandomAccessFile raf;
+    /**
+     * The channel of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Constructor.
+     *
+     * @param f the file.
+     * @param userIndex the index of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public UserLineReader(final File f, final UserLineIndex userIndex) throws IOException {
+        this.index = userIndex;
+        this.raf = new RandomAccessFile(f, "r");
+        this.channel = raf.getChannel();
+    }
+
+    /**
+     * Opens a file, loading or building its index (see
+     * {@link UserLineIndex#getIndex(java.io.File, char)}).
+     *
+     * @param f the file, with its lines grouped by user.
+     * @param delimiter the separator between fields.
+     * @return the reader of the file.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line does not start with a user
+     * id or the lines of a user are not contiguous.
+     */
+    public static UserLineReader open(final File f, final char delimiter) throws IOException {
+        return new UserLineReader(f, UserLineIndex.getIndex(f, delimiter));
+    }
+
+    /**
+     * Returns the index of the file.
+     *
+     * @return the index of the file.
+     */
+    public UserLineIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Reads the bytes of the lines of a user.
+     *
+     * @param user the user.
+     * @return the bytes of the lines of the user, or an empty array if the
+     * user is not in the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public byte[] readBytes(final long user) throws IOException {
+        long start = index.getStart(user);
+        if (start < 0L) {
+            return new byte[0];
+        }
+        byte[] bytes = new byte[(int) (index.getEnd(user) - start)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new EOFException("The file is shorter than its index");
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads the (non-empty) lines of a user.
+     *
+     * @param user the user.
+     * @return the lines of the user, without line terminators, or null if the
+     * user is not in the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public List<String> readLines(final long user) throws IOException {
+        if (!index.contains(user)) {
+            return null;
+        }
+        byte[] bytes = readBytes(user);
+        List<String> lines = new ArrayList<String>();
+        int from = 0;
+        for (int k = 0; k <= bytes.length; k++) {
+            if ((k == bytes.length) || (bytes[k] == '\n')) {
+                int to = k;
+                if ((to > from) && (bytes[to - 1] == '\r')) {
+                    to--;
+                }
+                if (to > from) {
+                    lines.add(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+                }
+                from = k + 1;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+/**
+ * Visitor of the users of a data model and their preferences (see
+ * {@link VisitableDataModelIF#forEachUser(UserVisitor)}). For every user,
+ * {@link #visitUser(Object, int)} is called first and, unless it returns
+ * false, the preferences of the user are passed to
+ * {@link #visitPreference(Object, double)} followed by a call to
+ * {@link #endUser(Object)}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ *
+ * @param <U> generic type for users
+ * @param <I> generic type for items
+ */
+public interface UserVisitor<U, I> {
+
+    /**
+     * Starts visiting a user.
+     *
+     * @param user the user.
+     * @param numPreferences the number of preferences of the user.
+     * @return true if the preferences of the user should be visited.
+     */
+    boolean visitUser(U user, int numPreferences);
+
+    /**
+     * Visits a preference of the current user.
+     *
+     * @param item the item.
+     * @param preference the preference.
+     */
+    void visitPreference(I item, double preference);
+
+    /**
+     * Finishes visiting a user whose preferences have been visited.
+     *
+     * @param user the user.
+     */
+    void endUser(U user);
+}
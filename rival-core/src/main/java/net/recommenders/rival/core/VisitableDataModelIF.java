@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+/**
+ * Data model whose preferences can be visited without creating map views.
+ * Use {@link DataModelUtils#forEachPreference(DataModelIF, PreferenceVisitor)}
+ * and {@link DataModelUtils#forEachUser(DataModelIF, UserVisitor)} to visit
+ * any data model.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ *
+ * @param <U> generic type for users
+ * @param <I> generic type for items
+ */
+public interface VisitableDataModelIF<U, I> extends DataModelIF<U, I> {
+
+    /**
+     * Method that visits every preference of the model, user by user, in the
+     * same order as {@link #getUserItemPreferences()}. Array-backed models do
+     * it without creating any map view.
+     *
+     * @param visitor the visitor of the preferences.
+     */
+    public void forEachPreference(final PreferenceVisitor<U, I> visitor);
+
+    /**
+     * Method that visits every user of the model and (unless the visitor
+     * skips them) the preferences of the user, in the same order as
+     * {@link #getUserItemPreferences()}.
+     *
+     * @param visitor the visitor of the users.
+     */
+    public void forEachUser(final UserVisitor<U, I> visitor);
+}
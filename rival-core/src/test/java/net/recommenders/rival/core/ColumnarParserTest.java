@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.ColumnarParser}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class ColumnarParserTest {
+
+    /**
+     * Folder for the data files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    /**
+     * The data model, with more preferences than a block.
+     */
+    private TemporalDataModelIF<Long, Long> dm;
+
+    @Before
+    public void initialize() {
+        dm = new TemporalDataModel<>();
+        Random rnd = new Random(2016L);
+        for (int n = 0; n < ColumnarFormat.BLOCK_ROWS * 2 + 100; n++) {
+            long u = rnd.nextInt(5000);
+            long i = rnd.nextInt(2000);
+            dm.addPreference(u, i, rnd.nextInt(50) / 10.0);
+            if (n % 3 != 0) {
+                dm.addTimestamp(u, i, 1000000L + rnd.nextInt(1000000));
+            }
+        }
+        // negative and extreme ids and timestamps
+        dm.addPreference(-7L, Long.MAX_VALUE, 1.0);
+        dm.addPreference(Long.MIN_VALUE, -1L, 2.0);
+        dm.addTimestamp(-7L, Long.MAX_VALUE, Long.MAX_VALUE);
+        dm.addTimestamp(-7L, Long.MAX_VALUE, -5L);
+        dm.addTimestamp(-7L, Long.MAX_VALUE, Long.MIN_VALUE);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File f = new File(folder.getRoot(), "data" + ColumnarParser.EXTENSION);
+        assertTrue(ColumnarParser.isColumnarFile(f));
+        DataModelUtils.saveColumnarDataModel(dm, f.getPath(), false);
+        TemporalDataModelIF<Long, Long> temporal = new ColumnarParser().parseTemporalData(f);
+        assertEquals(dm.getUserItemPreferences(), temporal.getUserItemPreferences());
+        assertEquals(dm.getUserItemTimestamps(), temporal.getUserItemTimestamps());
+        PrimitiveDataModel primitive = new ColumnarParser().parseData(f);
+        assertEquals(dm.getNumUsers(), primitive.getNumUsers());
+        assertEquals(dm.getNumItems(), primitive.getNumItems());
+        for (Map.Entry<Long, Map<Long, Double>> e : dm.getUserItemPreferences().entrySet()) {
+            for (Map.Entry<Long, Double> p : e.getValue().entrySet()) {
+                assertEquals(p.getValue(), primitive.getPreference(e.getKey(), p.getKey()), 0.0);
+            }
+        }
+        // the loader is selected by the extension of the file
+        DataModelIF<Long, Long> loaded = DataModelUtils.loadDataModel(f);
+        assertEquals(dm.getUserItemPreferences(), loaded.getUserItemPreferences());
+        final int[] counts = new int[1];
+        new ColumnarParser().parse(f, new RecordVisitor() {
+            @Override
+            public void visit(final long user, final long item, final double preference, final long timestamp) {
+                assertEquals(preference, dm.getUserItemPreferences().get(user).get(item), 0.0);
+                counts[0]++;
+            }
+        });
+        assertEquals(primitive.getNumPreferences(), counts[0]);
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        File f = folder.newFile("text" + ColumnarParser.EXTENSION);
+        PrintStream out = new PrintStream(f, "UTF-8");
+        out.println("1\t2\t3.0\t4");
+        out.close();
+        try {
+            new ColumnarParser().parseData(f);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Not a columnar data file"));
+        }
+    }
+
+    @Test
+    public void testMapCapacity() {
+        assertEquals(16, DataModelUtils.mapCapacity(1));
+        assertEquals(16, DataModelUtils.mapCapacity(12));
+        assertEquals(32, DataModelUtils.mapCapacity(13));
+        assertEquals(64, DataModelUtils.mapCapacity(48));
+        assertEquals(128, DataModelUtils.mapCapacity(49));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.CompactTemporalDataModel}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class CompactTemporalDataModelTest {
+
+    @Test
+    public void testSameTimestampsAsTemporalDataModel() {
+        TemporalDataModel<Long, Long> expected = new TemporalDataModel<>();
+        CompactTemporalDataModel<Long, Long> compact = new CompactTemporalDataModel<>();
+        Random rnd = new Random(2016L);
+        long[] special = {-1L, 0L, Long.MIN_VALUE, Long.MAX_VALUE};
+        for (int n = 0; n < 5000; n++) {
+            long u = rnd.nextInt(10);
+            long i = rnd.nextInt(20);
+            // mostly increasing timestamps, with some out of order and repeated
+            long t = 1200000000000L + n * 1000L;
+            if (n % 5 == 0) {
+                t = 1200000000000L + rnd.nextInt(n + 1) * 1000L;
+            } else if (n % 97 == 0) {
+                t = special[rnd.nextInt(special.length)];
+            }
+            expected.addPreference(u, i, 1.0);
+            expected.addTimestamp(u, i, t);
+            compact.addPreference(u, i, 1.0);
+            compact.addTimestamp(u, i, t);
+        }
+        assertEquals(expected.getUserItemPreferences(), compact.getUserItemPreferences());
+        assertEquals(expected.getUserItemTimestamps(), compact.getUserItemTimestamps());
+        for (Long u : compact.getUsers()) {
+            for (Set<Long> timestamps : compact.getUserItemTimestamps().get(u).values()) {
+                // timestamps are iterated in increasing order
+                Iterator<Long> it = timestamps.iterator();
+                long previous = it.next();
+                while (it.hasNext()) {
+                    long t = it.next();
+                    assertTrue(previous < t);
+                    previous = t;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTimestampSet() {
+        TimestampSet set = new TimestampSet();
+        assertTrue(set.add(10L));
+        assertTrue(set.add(20L));
+        assertTrue(set.add(15L));
+        assertFalse(set.add(20L));
+        assertFalse(set.add(15L));
+        assertEquals(3, set.size());
+        assertTrue(set.contains(15L));
+        assertFalse(set.contains(16L));
+        assertFalse(set.contains(25L));
+        assertEquals(10L, set.toLongArray()[0]);
+        // one byte for the first value and one for each difference
+        assertEquals(3, set.getEncodedLength());
+    }
+
+    @Test(timeout = 10000L)
+    public void testDescendingTimestamps() {
+        // reverse-chronological input, as in the Last.fm 1K dataset
+        int n = 200000;
+        TimestampSet descending = new TimestampSet();
+        TimestampSet ascending = new TimestampSet();
+        for (int k = n - 1; k >= 0; k--) {
+            assertTrue(descending.add(1000L + 3L * k));
+            // a repeated timestamp, while it is still buffered
+            assertFalse(descending.add(1000L + 3L * k));
+        }
+        for (int k = 0; k < n; k++) {
+            assertTrue(ascending.add(1000L + 3L * k));
+        }
+        assertEquals(n, descending.size());
+        assertFalse(descending.add(1000L));
+        assertFalse(descending.add(1000L + 3L * (n - 1)));
+        assertTrue(descending.contains(1000L + 3L * (n / 2)));
+        assertFalse(descending.contains(1001L));
+        assertTrue(Arrays.equals(ascending.toLongArray(), descending.toLongArray()));
+        assertEquals(ascending.getEncodedLength(), descending.getEncodedLength());
+        // values added after the set was read are merged again
+        assertTrue(descending.add(1001L));
+        assertTrue(descending.add(999L));
+        assertEquals(n + 2, descending.size());
+        Iterator<Long> it = descending.iterator();
+        assertEquals(999L, (long) it.next());
+        assertEquals(1000L, (long) it.next());
+        assertEquals(1001L, (long) it.next());
+        assertEquals(1003L, (long) it.next());
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.CompressedInput} and
+ * {@link net.recommenders.rival.core.ReadAheadInputStream}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class CompressedInputTest {
+
+    /**
+     * The number of lines in the data file, enough for several chunks.
+     */
+    private static final int LINES = 50000;
+    /**
+     * Folder for the data files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    /**
+     * The contents of the data file.
+     */
+    private byte[] data;
+
+    @Before
+    public void initialize() {
+        StringBuilder sb = new StringBuilder();
+        Random rnd = new Random(2016L);
+        for (int n = 0; n < LINES; n++) {
+            sb.append(rnd.nextInt(1000)).append('\t').append(rnd.nextInt(5000)).append('\t').append(1 + rnd.nextInt(5)).append('\t')
+                    .append(rnd.nextInt(100000)).append('\n');
+        }
+        data = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        // two gzip members
+        File file = new File(folder.getRoot(), "data.tsv.gz");
+        OutputStream out = new FileOutputStream(file);
+        int half = data.length / 2;
+        for (int[] range : new int[][]{{0, half}, {half, data.length}}) {
+            GZIPOutputStream gz = new GZIPOutputStream(out);
+            gz.write(data, range[0], range[1] - range[0]);
+            gz.finish();
+        }
+        out.close();
+        assertArrayEquals(data, readAll(file, null));
+        // same data model as the uncompressed file
+        File plain = write("data.tsv", data);
+        assertEquals(new SimpleParser().parseData(plain).getUserItemPreferences(), new SimpleParser().parseData(file).getUserItemPreferences());
+    }
+
+    @Test
+    public void testZip() throws IOException {
+        File file = new File(folder.getRoot(), "data.zip");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        zip.putNextEntry(new ZipEntry("ml/"));
+        zip.closeEntry();
+        zip.putNextEntry(new ZipEntry("ml/README"));
+        zip.write("readme".getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+        zip.putNextEntry(new ZipEntry("ml/u.data"));
+        zip.write(data);
+        zip.closeEntry();
+        zip.close();
+        // the first regular file, or the requested one
+        assertEquals("readme", new String(readAll(file, null), StandardCharsets.UTF_8));
+        assertArrayEquals(data, readAll(file, "u.data"));
+        assertArrayEquals(data, readAll(file, "ml/u.data"));
+        try {
+            readAll(file, "u.item");
+            fail();
+        } catch (FileNotFoundException e) {
+            assertTrue(e.getMessage().contains("u.item"));
+        }
+    }
+
+    @Test
+    public void testTar() throws IOException {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTarEntry(tar, "lastfm/", new byte[0], '5');
+        writeTarEntry(tar, "lastfm/README.txt", new byte[700], '0');
+        writeTarEntry(tar, "lastfm/userid-timestamp.tsv", data, '0');
+        tar.write(new byte[1024]);
+        File file = new File(folder.getRoot(), "data.tar.gz");
+        GZIPOutputStream gz = new GZIPOutputStream(new FileOutputStream(file));
+        gz.write(tar.toByteArray());
+        gz.close();
+        assertArrayEquals(data, readAll(file, "userid-timestamp.tsv"));
+        assertEquals(700, readAll(file, null).length);
+        File plainTar = write("data.tar", tar.toByteArray());
+        assertArrayEquals(data, readAll(plainTar, "lastfm/userid-timestamp.tsv"));
+        assertTrue(CompressedInput.isCompressed(plainTar));
+    }
+
+    @Test
+    public void testReadAheadFailure() throws IOException {
+        // fails after some chunks have been read
+        InputStream failing = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                if (available() < data.length / 2) {
+                    throw new IllegalStateException("broken");
+                }
+                return super.read(b, off, len);
+            }
+        };
+        InputStream in = new ReadAheadInputStream(failing, 1024, 2);
+        byte[] buffer = new byte[100];
+        long read = 0;
+        try {
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                read += n;
+            }
+            fail();
+        } catch (IOException e) {
+            assertTrue(read >= data.length / 2);
+        }
+        in.close();
+        // closing before the end does not block the background thread
+        in = new ReadAheadInputStream(new ByteArrayInputStream(data), 16, 1);
+        assertEquals(data[0] & 0xff, in.read());
+        in.close();
+    }
+
+    @Test
+    public void testParseErrorStopsReadAhead() throws IOException, InterruptedException {
+        // an invalid line (after the one that may be a header) at the beginning of a file larger than the read-ahead queue
+        File file = new File(folder.getRoot(), "invalid.tsv.gz");
+        PrintStream out = new PrintStream(new GZIPOutputStream(new FileOutputStream(file)), false, "UTF-8");
+        out.println("1\t1\t1.0");
+        out.println("1\tx\t1.0");
+        for (int n = 0; n < 200000; n++) {
+            out.println(n + "\t" + n + "\t1.0");
+        }
+        out.close();
+        Set<Thread> before = getReadAheadThreads();
+        try {
+            new SimpleParser().parseData(file);
+            fail();
+        } catch (NumberFormatException e) {
+            // expected
+        }
+        for (Thread t : getReadAheadThreads()) {
+            if (!before.contains(t)) {
+                t.join(5000L);
+                assertFalse(t.isAlive());
+            }
+        }
+    }
+
+    /**
+     * Gets the live background threads of the read-ahead streams.
+     *
+     * @return the threads.
+     */
+    private static Set<Thread> getReadAheadThreads() {
+        Set<Thread> threads = new HashSet<>();
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("rival-read-ahead")) {
+                threads.add(t);
+            }
+        }
+        return threads;
+    }
+
+    /**
+     * Reads a file through {@link SimpleParser#getBufferedReader(java.io.File, java.lang.String)}.
+     *
+     * @param file the file.
+     * @param entry the entry of the archive.
+     * @return the bytes read.
+     * @throws IOException if the file cannot be read.
+     */
+    private static byte[] readAll(final File file, final String entry) throws IOException {
+        BufferedReader br = SimpleParser.getBufferedReader(file, entry);
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[1000];
+            int n;
+            while ((n = br.read(buffer)) >= 0) {
+                sb.append(buffer, 0, n);
+            }
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        } finally {
+            br.close();
+        }
+    }
+
+    /**
+     * Writes a file in the temporary folder.
+     *
+     * @param name the name of the file.
+     * @param contents the contents of the file.
+     * @return the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private File write(final String name, final byte[] contents) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Writes an entry of a ustar archive.
+     *
+     * @param out the archive.
+     * @param name the name of the entry.
+     * @param contents the contents of the entry.
+     * @param type the type of the entry.
+     * @throws IOException if the entry cannot be written.
+     */
+    private static void writeTarEntry(final OutputStream out, final String name, final byte[] contents, final char type) throws IOException {
+        byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 108, "0000000");
+        put(header, 116, "0000000");
+        put(header, 124, String.format("%011o", contents.length));
+        put(header, 136, String.format("%011o", 0));
+        header[156] = (byte) type;
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        put(header, 148, String.format("%06o", checksum));
+        header[154] = 0;
+        out.write(header);
+        out.write(contents);
+        out.write(new byte[(512 - contents.length % 512) % 512]);
+    }
+
+    /**
+     * Writes an ASCII string into a header.
+     *
+     * @param header the header.
+     * @param offset the offset of the string.
+     * @param value the string.
+     */
+    private static void put(final byte[] header, final int offset, final String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
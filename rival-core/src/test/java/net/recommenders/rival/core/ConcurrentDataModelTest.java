@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.ConcurrentDataModel}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class ConcurrentDataModelTest {
+
+    /**
+     * Folder for the data files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    /**
+     * The number of threads adding preferences.
+     */
+    private static final int THREADS = 4;
+    /**
+     * The number of users in the data model.
+     */
+    private static final int USERS = 20;
+    /**
+     * The number of items in the data model.
+     */
+    private static final int ITEMS = 30;
+
+    /**
+     * Adds every (user, item) pair from several threads at the same time.
+     *
+     * @param model the model to fill.
+     * @throws InterruptedException if the threads are interrupted.
+     */
+    private static void fill(final ConcurrentDataModel<Long, Long> model) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final long value = t + 1L;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (long u = 0L; u < USERS; u++) {
+                        for (long i = 0L; i < ITEMS; i++) {
+                            model.addPreference(u, i, (double) value);
+                            model.addTimestamp(u, i, value);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    @Test
+    public void testConcurrentAdditions() throws InterruptedException {
+        ConcurrentDataModel<Long, Long> model = new ConcurrentDataModel<>();
+        // the index is updated while preferences are being added
+        Map<Long, Set<Long>> itemUsers = model.getItemUsers();
+        fill(model);
+        assertEquals(USERS, model.getNumUsers());
+        assertEquals(ITEMS, model.getNumItems());
+        // integer values, so the sum does not depend on the order
+        double sum = THREADS * (THREADS + 1) / 2.0;
+        for (long u = 0L; u < USERS; u++) {
+            for (long i = 0L; i < ITEMS; i++) {
+                assertEquals(sum, model.getUserItemPreferences().get(u).get(i), 0.0);
+                assertEquals(THREADS, model.getUserItemTimestamps().get(u).get(i).size());
+            }
+        }
+        for (long i = 0L; i < ITEMS; i++) {
+            assertEquals(USERS, itemUsers.get(i).size());
+        }
+        model.clear();
+        assertEquals(0, model.getNumUsers());
+        assertEquals(0, model.getNumItems());
+    }
+
+    @Test
+    public void testDuplicatePreferences() throws InterruptedException {
+        ConcurrentDataModel<Long, Long> model = new ConcurrentDataModel<>(true);
+        fill(model);
+        for (long u = 0L; u < USERS; u++) {
+            for (long i = 0L; i < ITEMS; i++) {
+                // one of the values, not their sum
+                double value = model.getUserItemPreferences().get(u).get(i);
+                assertTrue(value >= 1.0 && value <= THREADS);
+            }
+        }
+        DataModelIF<Long, Long> sequential = new DataModel<>(true);
+        sequential.addPreference(1L, 1L, 2.0);
+        sequential.addPreference(1L, 1L, 3.0);
+        ConcurrentDataModel<Long, Long> concurrent = new ConcurrentDataModel<>(true);
+        concurrent.addPreference(1L, 1L, 2.0);
+        concurrent.addPreference(1L, 1L, 3.0);
+        assertEquals(sequential.getUserItemPreferences(), concurrent.getUserItemPreferences());
+    }
+
+    @Test
+    public void testParallelParse() throws IOException {
+        File data = folder.newFile("data.tsv");
+        PrintStream out = new PrintStream(data, "UTF-8");
+        Random rnd = new Random(2016L);
+        for (int n = 0; n < 5000; n++) {
+            out.print(rnd.nextInt(USERS) + "\t" + rnd.nextInt(ITEMS) + "\t" + rnd.nextInt(5) + "\t" + n + "\n");
+        }
+        out.close();
+        TemporalDataModelIF<Long, Long> expected = new SimpleParser().parseData(data, "\t", true);
+        ConcurrentDataModel<Long, Long> model = new ConcurrentDataModel<>();
+        ChunkedFileParser.parse(data, '\t', true, new DataModelRecordVisitor(model), 3, 512L, true);
+        assertEquals(expected.getUserItemPreferences(), model.getUserItemPreferences());
+        assertEquals(expected.getUserItemTimestamps(), model.getUserItemTimestamps());
+        model = new ConcurrentDataModel<>();
+        new SimpleParser(2).parse(data, new DataModelRecordVisitor(model));
+        assertEquals(expected.getUserItemPreferences(), model.getUserItemPreferences());
+    }
+}
@@ -16,8 +16,10 @@
 package net.recommenders.rival.core;
 
 import java.util.Map;
+import java.util.Set;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -66,6 +68,21 @@ public class DataModelTest<U, I> {
         }
     }
 
+    @Test
+    public void testGetItemUsers() {
+        Map<Long, Set<Long>> itemUsers = dm.getItemUsers();
+        assertEquals(ITEMS, itemUsers.size());
+        for (long i = 1L; i <= ITEMS; i++) {
+            assertEquals(USERS, itemUsers.get(i).size());
+        }
+        // the index is kept up to date once built
+        dm.addPreference(USERS + 1L, 1L, 1.0);
+        dm.addPreference(1L, ITEMS + 1L, 1.0);
+        assertEquals(USERS + 1, dm.getItemUsers().get(1L).size());
+        assertTrue(dm.getItemUsers().get(ITEMS + 1L).contains(1L));
+        assertEquals(1, DataModelUtils.getItemPopularity(dm).get(ITEMS + 1L).intValue());
+    }
+
     @Test
     public void testGetNumItems() {
         assertEquals(ITEMS, dm.getNumItems());
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.DataModelWriter}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class DataModelWriterTest {
+
+    /**
+     * Folder for the data files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    /**
+     * The data model.
+     */
+    private TemporalDataModelIF<Long, Long> dm;
+
+    @Before
+    public void initialize() {
+        dm = new TemporalDataModel<>();
+        Random rnd = new Random(2016L);
+        double[] special = {0.0, -0.0, -3.0, 0.1, 2.5, 1e7, 123456789.0, -1e-5, Double.NaN, Double.POSITIVE_INFINITY, 9999999.0};
+        for (int n = 0; n < 20000; n++) {
+            long u = rnd.nextInt(500) - 10;
+            long i = rnd.nextInt(1000) + (n % 50 == 0 ? Long.MAX_VALUE / 2 : 0L);
+            double pref = n < special.length ? special[n] : rnd.nextInt(5) + 1.0;
+            dm.addPreference(u, i, pref);
+            if (n % 4 != 0) {
+                dm.addTimestamp(u, i, 1400000000L + rnd.nextInt(100000000));
+            }
+        }
+    }
+
+    @Test
+    public void testSameOutput() throws IOException {
+        File expected = folder.newFile("expected.tsv");
+        File actual = folder.newFile("actual.tsv");
+        DataModelUtils.saveDataModel(dm, expected.getPath(), true, "\t");
+        // small buffer, so that it is written many times
+        new DataModelWriter(1024).write(dm, actual, "\t", true);
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+        DataModelIF<Long, Long> plain = dm;
+        DataModelUtils.saveDataModel(plain, expected.getPath(), true, "::");
+        new DataModelWriter().write(plain, actual, "::", false);
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+        // non-numeric ids
+        DataModelIF<String, String> strings = DataModelFactory.getDefaultModel();
+        strings.addPreference("useré", "item", 1.0);
+        DataModelUtils.saveDataModel(strings, expected.getPath(), true, ",");
+        new DataModelWriter().write(strings, actual, ",", false);
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+    }
+
+    @Test
+    public void testWriteAll() throws IOException {
+        List<TemporalDataModelIF<Long, Long>> models = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (int k = 0; k < 5; k++) {
+            models.add(dm);
+            files.add(folder.newFile("fold" + k + ".tsv"));
+        }
+        DataModelWriter.writeAll(models, files, "\t", true, 3);
+        File expected = folder.newFile("expected.tsv");
+        DataModelUtils.saveDataModel(dm, expected.getPath(), true, "\t");
+        byte[] bytes = Files.readAllBytes(expected.toPath());
+        for (File f : files) {
+            assertArrayEquals(bytes, Files.readAllBytes(f.toPath()));
+        }
+        DataModelWriter.writeAll(models.subList(0, 1), Arrays.asList(files.get(0)), "\t", true, 3);
+        assertArrayEquals(bytes, Files.readAllBytes(files.get(0).toPath()));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.DatasetProfiler}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class DatasetProfilerTest {
+
+    /**
+     * Folder for the data files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSmallDataset() throws IOException {
+        File data = folder.newFile("data.tsv");
+        PrintStream out = new PrintStream(data, "UTF-8");
+        // user u rates items 1..u, each one twice
+        for (int u = 1; u <= 10; u++) {
+            for (int i = 1; i <= u; i++) {
+                out.println(u + "\t" + i + "\t" + (i % 5 + 1) + "\t" + (1000 + u));
+                out.println(u + "\t" + i + "\t" + (i % 5 + 1) + "\t" + (2000 + u));
+            }
+        }
+        out.close();
+        DatasetProfiler profiler = DatasetProfiler.profile(new SimpleParser(), data);
+        assertEquals(110, profiler.getNumRecords());
+        assertEquals(110, profiler.getNumTimestamps());
+        assertEquals(1001L, profiler.getMinTimestamp());
+        assertEquals(2010L, profiler.getMaxTimestamp());
+        // small datasets are not sampled: exact counts
+        assertEquals(10, profiler.getNumUsers());
+        assertEquals(10, profiler.getNumItems());
+        // but the number of pairs is always estimated
+        assertEquals(55, profiler.getNumPreferences(), 2);
+        assertEquals(0.55, profiler.getDensity(), 0.02);
+        assertEquals(1.0, profiler.getMinPreference(), 0.0);
+        assertEquals(5.0, profiler.getMaxPreference(), 0.0);
+        assertEquals(2L, profiler.getUserActivityQuantile(0.0));
+        assertEquals(20L, profiler.getUserActivityQuantile(1.0));
+        assertEquals(12L, profiler.getUserActivityQuantile(0.5));
+        assertEquals(20L, profiler.getItemPopularityQuantile(1.0));
+        // the two most popular items (1 and 2) have 20 + 18 of the 110 records
+        assertEquals(38.0 / 110, profiler.getTopItemsShare(0.2), 1e-12);
+    }
+
+    @Test
+    public void testLargeStream() {
+        DatasetProfiler profiler = new DatasetProfiler(DatasetProfiler.DEFAULT_PRECISION, 1 << 12, 2016L);
+        int numUsers = 100000;
+        for (long u = 0L; u < numUsers; u++) {
+            // activity 1, 2, 3 or 4
+            for (long i = 0L; i <= u % 4; i++) {
+                profiler.visit(u, u + i, 1.0, -1L);
+            }
+        }
+        assertEquals(numUsers * 2.5, profiler.getNumRecords(), 0.0);
+        assertEquals(-1L, profiler.getMinTimestamp());
+        // HyperLogLog estimates, with a relative error of about 1%
+        assertEquals(numUsers, profiler.getNumUsers(), numUsers * 0.03);
+        assertEquals(numUsers * 2.5, profiler.getNumPreferences(), numUsers * 2.5 * 0.03);
+        // quantiles from the sample of users
+        assertEquals(1L, profiler.getUserActivityQuantile(0.1));
+        assertEquals(4L, profiler.getUserActivityQuantile(0.9));
+        assertEquals(1.0, profiler.getPreferenceQuantile(0.5), 0.0);
+    }
+
+    @Test
+    public void testHyperLogLog() {
+        HyperLogLog hll = new HyperLogLog(12);
+        HyperLogLog other = new HyperLogLog(12);
+        for (long v = 0L; v < 50000L; v++) {
+            hll.add(v);
+            hll.add(v);
+            other.add(v + 25000L);
+        }
+        assertEquals(50000L, hll.estimate(), 50000L * 0.05);
+        hll.merge(other);
+        assertEquals(75000L, hll.estimate(), 75000L * 0.05);
+        assertEquals(0L, new HyperLogLog(4).estimate());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.DeltaLogDataModel}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class DeltaLogDataModelTest {
+
+    /**
+     * Folder for the data files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes the interactions of a day: every user rates some items.
+     *
+     * @param day the day.
+     * @param all file where the interactions of every day are appended.
+     * @return the file with the interactions of the day.
+     * @throws IOException if the file cannot be written.
+     */
+    private File writeDay(final int day, final PrintStream all) throws IOException {
+        File f = folder.newFile("day" + day + ".tsv");
+        PrintStream out = new PrintStream(f, "UTF-8");
+        for (int u = 0; u < 20; u++) {
+            for (int i = day; i < day + 5; i++) {
+                String line = u + "\t" + i + "\t" + ((u + i) % 5 + 1) + "\t" + (day * 100000L + u * 10 + i);
+                out.println(line);
+                all.println(line);
+            }
+        }
+        out.close();
+        return f;
+    }
+
+    @Test
+    public void testIncrementalDays() throws IOException {
+        File dir = new File(folder.getRoot(), "log");
+        File allDays = folder.newFile("all.tsv");
+        PrintStream all = new PrintStream(allDays, "UTF-8");
+        DeltaLogDataModel model = DeltaLogDataModel.open(dir, false);
+        model.appendFile(new SimpleParser(), writeDay(0, all));
+        model.appendFile(new SimpleParser(), writeDay(1, all));
+        assertEquals(2, model.getNumPendingSegments());
+        // a new run only parses the new day
+        model = DeltaLogDataModel.open(dir, false);
+        model.appendFile(new SimpleParser(), writeDay(2, all));
+        all.close();
+        assertEquals(3, model.getNumPendingSegments());
+        TemporalDataModelIF<Long, Long> expected = new SimpleParser().parseData(allDays, "\t", true);
+        assertEquals(expected.getUserItemPreferences(), model.getUserItemPreferences());
+        assertEquals(expected.getUserItemTimestamps(), model.getUserItemTimestamps());
+        assertEquals(0, model.getNumPendingSegments());
+        // compaction replaces the segments with a new base
+        model.compact();
+        assertEquals(1, dir.listFiles().length);
+        assertTrue(dir.listFiles()[0].getName().startsWith(DeltaLogDataModel.BASE_PREFIX));
+        model = DeltaLogDataModel.open(dir, false);
+        assertEquals(0, model.getNumPendingSegments());
+        assertEquals(expected.getUserItemPreferences(), model.getUserItemPreferences());
+        // preferences added directly are merged by reads without writing
+        // them, and persisted when flushed
+        model.addPreference(100L, 1L, 2.0);
+        model.addTimestamp(100L, 1L, 5L);
+        assertEquals(expected.getNumUsers() + 1, model.getNumUsers());
+        model.addPreference(100L, 2L, 1.0);
+        assertEquals(2, model.getUserItemPreferences().get(100L).size());
+        assertEquals(1, dir.listFiles().length);
+        assertEquals(expected.getNumUsers(), DeltaLogDataModel.open(dir, false).getNumUsers());
+        model.flush();
+        assertEquals(3, dir.listFiles().length);
+        model.flush();
+        assertEquals(3, dir.listFiles().length);
+        model = DeltaLogDataModel.open(dir, false);
+        assertEquals(expected.getNumUsers() + 1, model.getNumUsers());
+        assertTrue(model.getUserItemTimestamps().get(100L).get(1L).contains(5L));
+        assertEquals(1.0, model.getUserItemPreferences().get(100L).get(2L), 0.0);
+    }
+
+    @Test
+    public void testInterruptedCompaction() throws IOException {
+        File dir = new File(folder.getRoot(), "log");
+        File allDays = folder.newFile("all.tsv");
+        PrintStream all = new PrintStream(allDays, "UTF-8");
+        DeltaLogDataModel model = DeltaLogDataModel.open(dir, false);
+        model.appendFile(new SimpleParser(), writeDay(0, all));
+        model.compact();
+        model.appendFile(new SimpleParser(), writeDay(1, all));
+        model.appendFile(new SimpleParser(), writeDay(2, all));
+        all.close();
+        File[] before = dir.listFiles();
+        byte[][] contents = new byte[before.length][];
+        for (int k = 0; k < before.length; k++) {
+            contents[k] = Files.readAllBytes(before[k].toPath());
+        }
+        model.compact();
+        // the compaction stopped after moving the new base into place: the old base and the segments are still there
+        for (int k = 0; k < before.length; k++) {
+            Files.write(before[k].toPath(), contents[k]);
+        }
+        assertEquals(before.length + 1, dir.listFiles().length);
+        TemporalDataModelIF<Long, Long> expected = new SimpleParser().parseData(allDays, "\t", true);
+        model = DeltaLogDataModel.open(dir, false);
+        assertEquals(0, model.getNumPendingSegments());
+        assertEquals(expected.getUserItemPreferences(), model.getUserItemPreferences());
+        // new segments are numbered after the ones left behind
+        model.addPreference(100L, 1L, 2.0);
+        model.flush();
+        model = DeltaLogDataModel.open(dir, false);
+        assertEquals(1, model.getNumPendingSegments());
+        assertEquals(expected.getNumUsers() + 1, model.getNumUsers());
+        model.compact();
+        assertEquals(1, dir.listFiles().length);
+        model = DeltaLogDataModel.open(dir, false);
+        assertEquals(2.0, model.getUserItemPreferences().get(100L).get(1L), 0.0);
+        assertEquals(expected.getUserItemPreferences().get(0L), model.getUserItemPreferences().get(0L));
+    }
+
+    @Test
+    public void testInMemory() {
+        DeltaLogDataModel model = new DeltaLogDataModel(true);
+        model.addPreference(1L, 1L, 1.0);
+        assertEquals(1, model.getNumUsers());
+        // later duplicates are ignored, across segments too
+        model.addPreference(1L, 1L, 3.0);
+        model.addPreference(1L, 2L, 3.0);
+        assertEquals(1, model.getNumPendingSegments());
+        assertEquals(1.0, model.getUserItemPreferences().get(1L).get(1L), 0.0);
+        assertEquals(2, model.getNumItems());
+        model.clear();
+        assertFalse(model.getUsers().contains(1L));
+    }
+}
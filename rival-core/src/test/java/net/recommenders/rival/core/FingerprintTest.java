@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.Fingerprint}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class FingerprintTest {
+
+    /**
+     * Folder for temporary files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBytes() throws IOException {
+        // reference values of MurmurHash3 x64 128 with seed 0
+        assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347",
+                Fingerprint.toHex(Fingerprint.of("The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8))));
+        assertEquals("cbd8a7b341bd9b025b1e906a48ae1d19", Fingerprint.toHex(Fingerprint.of("hello".getBytes(StandardCharsets.UTF_8))));
+        // files, whose bytes are read in several buffers
+        Random rnd = new Random(2016L);
+        for (int length : new int[]{0, 15, 16, 17, 65535, 65536, 65537, 200003}) {
+            byte[] bytes = new byte[length];
+            rnd.nextBytes(bytes);
+            File file = new File(folder.getRoot(), "data" + length);
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            assertArrayEquals(Fingerprint.of(bytes), Fingerprint.of(file));
+        }
+    }
+
+    @Test
+    public void testDataModels() {
+        List<long[]> triples = new ArrayList<>();
+        Random rnd = new Random(2016L);
+        for (int n = 0; n < 2000; n++) {
+            triples.add(new long[]{rnd.nextInt(100), rnd.nextInt(300), 1 + rnd.nextInt(5), 1000L + n});
+        }
+        TemporalDataModel<Long, Long> model = new TemporalDataModel<>();
+        for (long[] t : triples) {
+            model.addPreference(t[0], t[1], (double) t[2]);
+            model.addTimestamp(t[0], t[1], t[3]);
+        }
+        // the same triples added in another order, to other data models
+        Collections.shuffle(triples, rnd);
+        TemporalDataModel<Long, Long> shuffled = new TemporalDataModel<>();
+        PrimitiveDataModel primitive = new PrimitiveDataModel();
+        for (long[] t : triples) {
+            shuffled.addPreference(t[0], t[1], (double) t[2]);
+            shuffled.addTimestamp(t[0], t[1], t[3]);
+            primitive.addPreference(t[0], t[1], (double) t[2]);
+        }
+        assertArrayEquals(Fingerprint.of(model), Fingerprint.of(shuffled));
+        assertArrayEquals(Fingerprint.of(model), Fingerprint.of(primitive));
+        assertArrayEquals(Fingerprint.ofTemporal(model), Fingerprint.ofTemporal(shuffled));
+        assertFalse(Fingerprint.toHex(Fingerprint.of(model)).equals(Fingerprint.toHex(Fingerprint.ofTemporal(model))));
+        // a new timestamp only changes the temporal fingerprint
+        long[] t = triples.get(0);
+        shuffled.addTimestamp(t[0], t[1], 1L);
+        assertArrayEquals(Fingerprint.of(model), Fingerprint.of(shuffled));
+        assertFalse(Fingerprint.toHex(Fingerprint.ofTemporal(model)).equals(Fingerprint.toHex(Fingerprint.ofTemporal(shuffled))));
+        // a new preference changes both
+        shuffled.addPreference(t[0], t[1], 0.5);
+        assertFalse(Fingerprint.toHex(Fingerprint.of(model)).equals(Fingerprint.toHex(Fingerprint.of(shuffled))));
+        // string ids are hashed by value
+        DataModelIF<String, String> strings = DataModelFactory.getDefaultModel();
+        strings.addPreference(new String("u1"), "i1", 1.0);
+        DataModelIF<String, String> others = DataModelFactory.getDefaultModel();
+        others.addPreference("u1", new String("i1"), 1.0);
+        assertArrayEquals(Fingerprint.of(strings), Fingerprint.of(others));
+    }
+}
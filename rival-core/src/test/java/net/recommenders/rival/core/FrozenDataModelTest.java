@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Iterator;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.FrozenDataModel}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class FrozenDataModelTest {
+
+    /**
+     * The original data model.
+     */
+    private TemporalDataModelIF<Long, Long> dm;
+    /**
+     * The number of users in the data model.
+     */
+    private static final int USERS = 4;
+    /**
+     * The number of items in the data model.
+     */
+    private static final int ITEMS = 5;
+
+    @Before
+    public void initialize() {
+        dm = new TemporalDataModel<>();
+        // items are added in reverse order to check they get sorted
+        for (long u = 1L; u <= USERS; u++) {
+            for (long i = ITEMS; i >= u; i--) {
+                dm.addPreference(u, i, 1.0 * u * i);
+                dm.addTimestamp(u, i, 10L * i);
+                dm.addTimestamp(u, i, i);
+            }
+        }
+        // an item with a timestamp but no preference
+        dm.addTimestamp(1L, 0L, 7L);
+    }
+
+    @Test
+    public void testSameContents() {
+        TemporalDataModelIF<Long, Long> frozen = DataModelUtils.freeze(dm);
+        assertEquals(dm.getNumUsers(), frozen.getNumUsers());
+        assertEquals(dm.getNumItems(), frozen.getNumItems());
+        assertEquals(dm.getUsers(), frozen.getUsers());
+        assertEquals(dm.getItems(), frozen.getItems());
+        assertEquals(dm.getUserItemPreferences(), frozen.getUserItemPreferences());
+        assertEquals(dm.getUserItemTimestamps(), frozen.getUserItemTimestamps());
+        assertEquals(DataModelUtils.getItemUsers(dm), DataModelUtils.getItemUsers(frozen));
+        assertNull(frozen.getUserItemPreferences().get(1L).get(ITEMS + 1L));
+        assertFalse(frozen.getUserItemPreferences().get(2L).containsKey(1L));
+        assertTrue(frozen.getUserItemTimestamps().get(1L).get(2L).contains(20L));
+        assertTrue(frozen.getUserItemTimestamps().get(1L).get(0L).contains(7L));
+        assertFalse(frozen.getItems().contains(0L));
+        int numPreferences = 0;
+        for (long u = 1L; u <= USERS; u++) {
+            numPreferences += dm.getUserItemPreferences().get(u).size();
+        }
+        assertEquals(numPreferences, ((FrozenDataModel<Long, Long>) frozen).getNumPreferences());
+        // freezing a frozen model does not copy it
+        assertSame(frozen, DataModelUtils.freeze(frozen));
+    }
+
+    @Test
+    public void testSortedIteration() {
+        TemporalDataModelIF<Long, Long> frozen = DataModelUtils.freeze(dm);
+        for (Map<Long, Double> prefs : frozen.getUserItemPreferences().values()) {
+            Iterator<Long> it = prefs.keySet().iterator();
+            long previous = it.next();
+            while (it.hasNext()) {
+                long item = it.next();
+                assertTrue(previous < item);
+                previous = item;
+            }
+        }
+    }
+
+    @Test
+    public void testImmutable() {
+        TemporalDataModelIF<Long, Long> frozen = DataModelUtils.freeze(dm);
+        // later changes of the original model are not visible
+        dm.addPreference(USERS + 1L, 1L, 1.0);
+        assertEquals(USERS, frozen.getNumUsers());
+        try {
+            frozen.addPreference(1L, 1L, 1.0);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            assertEquals(1.0, frozen.getUserItemPreferences().get(1L).get(1L), 0.0);
+        }
+        try {
+            frozen.getUserItemPreferences().get(1L).put(1L, 2.0);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            assertEquals(1.0, frozen.getUserItemPreferences().get(1L).get(1L), 0.0);
+        }
+        try {
+            frozen.clear();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            assertEquals(USERS, frozen.getNumUsers());
+        }
+    }
+}
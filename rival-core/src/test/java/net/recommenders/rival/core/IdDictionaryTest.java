@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.IdDictionary}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class IdDictionaryTest {
+
+    /**
+     * The number of ids in the dictionary.
+     */
+    private static final int IDS = 1000;
+
+    @Test
+    public void testDenseIndices() {
+        IdDictionary dictionary = new IdDictionary();
+        for (int i = 0; i < IDS; i++) {
+            assertEquals(i, dictionary.add(-37L * i));
+        }
+        // adding again does not change the indices
+        for (int i = 0; i < IDS; i++) {
+            assertEquals(i, dictionary.add(-37L * i));
+            assertEquals(-37L * i, dictionary.getId(i));
+        }
+        assertEquals(IDS, dictionary.size());
+        assertFalse(dictionary.contains(1L));
+        assertEquals(IdDictionary.NOT_FOUND, dictionary.getIndex(1L));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.KCoreFilter}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class KCoreFilterTest {
+
+    @Test
+    public void testCascade() {
+        // a 2-core of users 1-3 and items 1-3, and a chain hanging from it
+        TemporalDataModel<Long, Long> model = new TemporalDataModel<>();
+        long[][] pairs = new long[][]{{1, 1}, {1, 2}, {2, 2}, {2, 3}, {3, 3}, {3, 1}, {3, 4}, {4, 4}, {4, 5}, {5, 5}};
+        for (long[] pair : pairs) {
+            model.addPreference(pair[0], pair[1], 1.0);
+            model.addTimestamp(pair[0], pair[1], 100L * pair[0] + pair[1]);
+        }
+        KCoreFilter filter = new KCoreFilter(2);
+        TemporalDataModelIF<Long, Long> filtered = (TemporalDataModelIF<Long, Long>) filter.filter(model);
+        assertEquals(3, filtered.getNumUsers());
+        assertEquals(3, filtered.getNumItems());
+        assertEquals(2, filter.getRemovedUsers());
+        assertEquals(2, filter.getRemovedItems());
+        assertEquals(4L, filter.getRemovedPreferences());
+        // user 5, then item 5, then user 4, then item 4
+        assertEquals(4, filter.getRounds());
+        assertEquals(2, filtered.getUserItemPreferences().get(3L).size());
+        assertEquals(Long.valueOf(301L), filtered.getUserItemTimestamps().get(3L).get(1L).iterator().next());
+        // nothing else is removed
+        filter.filter(filtered);
+        assertEquals(0L, filter.getRemovedPreferences());
+        assertEquals(0, filter.getRounds());
+    }
+
+    @Test
+    public void testSameAsNaive() {
+        Random rnd = new Random(2016L);
+        DataModelIF<Long, Long> model = DataModelFactory.getDefaultModel();
+        PrimitiveDataModel primitive = new PrimitiveDataModel();
+        for (int n = 0; n < 3000; n++) {
+            // skewed users and items, so that removals cascade
+            long u = (long) Math.abs(rnd.nextGaussian() * 150);
+            long i = (long) Math.abs(rnd.nextGaussian() * 100);
+            double d = 1.0 + rnd.nextInt(5);
+            model.addPreference(u, i, d);
+            primitive.addPreference(u, i, d);
+        }
+        KCoreFilter filter = new KCoreFilter(5, 3);
+        DataModelIF<Long, Long> filtered = filter.filter(model);
+        Map<Long, Map<Long, Double>> expected = naiveCore(model.getUserItemPreferences(), 5, 3);
+        assertTrue(filter.getRounds() > 1);
+        assertEquals(expected, filtered.getUserItemPreferences());
+        assertEquals(model.getNumUsers() - expected.size(), filter.getRemovedUsers());
+        long removed = filter.getRemovedPreferences();
+        DataModelIF<Long, Long> filteredPrimitive = filter.filter((DataModelIF<Long, Long>) primitive);
+        assertTrue(filteredPrimitive instanceof PrimitiveDataModel);
+        assertEquals(removed, filter.getRemovedPreferences());
+        assertEquals(filtered.getNumUsers(), filteredPrimitive.getNumUsers());
+        assertEquals(filtered.getNumItems(), filteredPrimitive.getNumItems());
+        for (Long u : filtered.getUserItemPreferences().keySet()) {
+            for (Map.Entry<Long, Double> e : filtered.getUserItemPreferences().get(u).entrySet()) {
+                assertEquals(e.getValue(), filteredPrimitive.getUserItemPreferences().get(u).get(e.getKey()), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Computes the k-core by removing users and items until nothing changes.
+     *
+     * @param preferences the preferences.
+     * @param minItems minimum number of items per user.
+     * @param minUsers minimum number of users per item.
+     * @return the preferences in the k-core.
+     */
+    private static Map<Long, Map<Long, Double>> naiveCore(final Map<Long, Map<Long, Double>> preferences, final int minItems, final int minUsers) {
+        Map<Long, Map<Long, Double>> core = new HashMap<>();
+        for (Map.Entry<Long, Map<Long, Double>> e : preferences.entrySet()) {
+            core.put(e.getKey(), new HashMap<>(e.getValue()));
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Map<Long, Integer> itemUsers = new HashMap<>();
+            for (Map<Long, Double> items : core.values()) {
+                for (Long i : items.keySet()) {
+                    Integer c = itemUsers.get(i);
+                    itemUsers.put(i, c == null ? 1 : c + 1);
+                }
+            }
+            Set<Long> removedUsers = new HashSet<>();
+            for (Map.Entry<Long, Map<Long, Double>> e : core.entrySet()) {
+                int before = e.getValue().size();
+                for (Map.Entry<Long, Integer> c : itemUsers.entrySet()) {
+                    if (c.getValue() < minUsers) {
+                        e.getValue().remove(c.getKey());
+                    }
+                }
+                changed |= before != e.getValue().size();
+                if (e.getValue().size() < minItems) {
+                    removedUsers.add(e.getKey());
+                }
+            }
+            changed |= !removedUsers.isEmpty();
+            core.keySet().removeAll(removedUsers);
+        }
+        return core;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.LineTokenizer}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class LineTokenizerTest {
+
+    @Test
+    public void testSameTokensAsSplit() {
+        String[] delimiters = {"\t", "::", ",", "\\s+"};
+        String[] lines = {"", "1", "1\t2\t3.5", "\t1\t\t2\t\t", "1::2::3::4", "::1::", "a,b,,c,,", ",,,", "1  2 3 ", " x"};
+        for (String d : delimiters) {
+            LineTokenizer tokenizer = new LineTokenizer(d);
+            for (String line : lines) {
+                String[] expected = line.split(d);
+                tokenizer.tokenize(line);
+                assertEquals(d + " on [" + line + "]", expected.length, tokenizer.size());
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals(expected[i], tokenizer.getString(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParseNumbers() {
+        String[] doubles = {"0", "-0", "1.5", "+3", "0.1", "4.35", "123456789.123456", "0.1234567890123456789", "1e5", ".5", "5.", "-0.000001", "NaN"};
+        for (String v : doubles) {
+            String s = "x" + v + "x";
+            assertEquals(v, Double.doubleToLongBits(Double.parseDouble(v)), Double.doubleToLongBits(LineTokenizer.parseDouble(s, 1, s.length() - 1)));
+        }
+        String[] longs = {"0", "-7", "+42", "9223372036854775807", "-9223372036854775808"};
+        for (String v : longs) {
+            assertEquals(Long.parseLong(v), LineTokenizer.parseLong(v, 0, v.length()));
+        }
+    }
+
+    @Test
+    public void testByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap("12\t34\t0.5\nignored".getBytes(StandardCharsets.UTF_8));
+        LineTokenizer tokenizer = new LineTokenizer("\t").tokenize(LineTokenizer.asCharSequence(buffer), 0, 9);
+        assertEquals(3, tokenizer.size());
+        assertEquals(12L, tokenizer.getLong(0));
+        assertEquals(34L, tokenizer.getLong(1));
+        assertEquals(0.5, tokenizer.getDouble(2), 0.0);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testInvalidNumber() {
+        new LineTokenizer("\t").tokenize("1\tx").getLong(1);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.MemoryEstimator}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class MemoryEstimatorTest {
+
+    /**
+     * The number of users in the data models.
+     */
+    private static final int USERS = 200;
+    /**
+     * The number of items rated by every user.
+     */
+    private static final int ITEMS = 50;
+
+    /**
+     * Fills a data model, with two timestamps per preference if it is
+     * temporal.
+     *
+     * @param <D> type of the data model
+     * @param dm the data model.
+     * @return the data model.
+     */
+    private static <D extends DataModelIF<Long, Long>> D fill(final D dm) {
+        for (long u = 0L; u < USERS; u++) {
+            for (long i = 0L; i < ITEMS; i++) {
+                dm.addPreference(u, u + i, 1.0);
+                if (dm instanceof TemporalDataModelIF) {
+                    ((TemporalDataModelIF<Long, Long>) dm).addTimestamp(u, u + i, 1000L * i);
+                    ((TemporalDataModelIF<Long, Long>) dm).addTimestamp(u, u + i, 1000L * i + 1L);
+                }
+            }
+        }
+        return dm;
+    }
+
+    @Test
+    public void testEstimates() {
+        long temporal = MemoryEstimator.estimate(fill(new TemporalDataModel<Long, Long>()));
+        long compact = MemoryEstimator.estimate(fill(new CompactTemporalDataModel<Long, Long>()));
+        long plain = MemoryEstimator.estimate(fill(DataModelFactory.<Long, Long>getDefaultModel()));
+        long primitive = MemoryEstimator.estimate(fill(new PrimitiveDataModel()));
+        long frozen = MemoryEstimator.estimate(DataModelUtils.freeze(fill(new TemporalDataModel<Long, Long>())));
+        assertTrue(compact < temporal);
+        assertTrue(plain < temporal);
+        assertTrue(primitive < plain / 2);
+        assertTrue(frozen < temporal / 4);
+        // the projection from the counts is close to the estimate
+        long projected = MemoryEstimator.projectTemporalModel(USERS, USERS + ITEMS, USERS * ITEMS, 2L * USERS * ITEMS);
+        assertEquals(1.0, (double) projected / temporal, 0.25);
+    }
+
+    @Test
+    public void testCheckHeap() {
+        assertTrue(MemoryEstimator.checkHeap(0L, "Nothing"));
+        assertFalse(MemoryEstimator.checkHeap(Long.MAX_VALUE, "Everything"));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.PreferenceAggregator}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class PreferenceAggregatorTest {
+
+    /**
+     * The number of records.
+     */
+    private static final int RECORDS = 20000;
+    /**
+     * The initial capacity of the aggregators, so that records are reduced
+     * several times.
+     */
+    private static final int CAPACITY = 1000;
+    /**
+     * The half-life of the decayed preferences.
+     */
+    private static final double HALF_LIFE = 500.0;
+
+    @Test
+    public void testPolicies() {
+        for (PreferenceAggregator.Policy policy : PreferenceAggregator.Policy.values()) {
+            PreferenceAggregator aggregator = new PreferenceAggregator(policy, HALF_LIFE, CAPACITY);
+            // expected value and latest timestamp of every pair, computed one record at a time
+            final Map<String, double[]> expected = new HashMap<>();
+            Random rnd = new Random(2016L);
+            long firstTimestamp = -1L;
+            long maxTimestamp = -1L;
+            for (int n = 0; n < RECORDS; n++) {
+                // few users and items, so that there are many repetitions;
+                // negative ids cannot be sorted as packed keys
+                long u = rnd.nextInt(30) - (policy.ordinal() % 2 == 0 ? 0 : 15);
+                long i = rnd.nextInt(n % 2 == 0 ? 10 : 100);
+                double d = rnd.nextInt(50) / 10.0;
+                long t = 1000L + rnd.nextInt(5000);
+                if (n == 0) {
+                    firstTimestamp = t;
+                }
+                maxTimestamp = Math.max(maxTimestamp, t);
+                aggregator.visit(u, i, d, t);
+                double[] current = expected.get(u + ":" + i);
+                if (current == null) {
+                    current = new double[]{Double.NaN, t};
+                    expected.put(u + ":" + i, current);
+                }
+                double decayed = d * Math.pow(2.0, (t - firstTimestamp) / HALF_LIFE);
+                boolean first = Double.isNaN(current[0]);
+                switch (policy) {
+                    case SUM:
+                        current[0] = first ? d : current[0] + d;
+                        break;
+                    case FIRST:
+                        current[0] = first ? d : current[0];
+                        break;
+                    case COUNT:
+                        current[0] = first ? 1.0 : current[0] + 1.0;
+                        break;
+                    case MAX:
+                        current[0] = first ? d : Math.max(current[0], d);
+                        break;
+                    case LATEST:
+                        current[0] = (first || t >= current[1]) ? d : current[0];
+                        break;
+                    default:
+                        current[0] = first ? decayed : current[0] + decayed;
+                        break;
+                }
+                current[1] = Math.max(current[1], t);
+            }
+            final double scale = (policy == PreferenceAggregator.Policy.DECAYED) ? Math.pow(2.0, (firstTimestamp - maxTimestamp) / HALF_LIFE) : 1.0;
+            final String name = policy.name();
+            final long[] previous = new long[]{Long.MIN_VALUE, Long.MIN_VALUE};
+            aggregator.visitAll(new RecordVisitor() {
+                @Override
+                public void visit(final long user, final long item, final double preference, final long timestamp) {
+                    // sorted by user and item
+                    assertTrue(user > previous[0] || (user == previous[0] && item > previous[1]));
+                    previous[0] = user;
+                    previous[1] = item;
+                    double[] current = expected.get(user + ":" + item);
+                    assertEquals(name, current[0] * scale, preference, 1e-9);
+                    assertEquals(name, (long) current[1], timestamp);
+                }
+            });
+            assertEquals(expected.size(), aggregator.getNumPairs());
+            // one preference and timestamp per pair in the data model
+            TemporalDataModel<Long, Long> model = new TemporalDataModel<>();
+            aggregator.addTo(model);
+            int pairs = 0;
+            for (Map<Long, Set<Long>> timestamps : model.getUserItemTimestamps().values()) {
+                for (Set<Long> t : timestamps.values()) {
+                    assertEquals(1, t.size());
+                    pairs++;
+                }
+            }
+            assertEquals(expected.size(), pairs);
+        }
+    }
+
+    @Test
+    public void testDecayedLongSpan() {
+        // 2000 half-lives: 2^2000 does not fit in a double
+        PreferenceAggregator aggregator = new PreferenceAggregator(PreferenceAggregator.Policy.DECAYED, 1.0, CAPACITY);
+        aggregator.visit(1L, 1L, 1.0, 0L);
+        aggregator.visit(2L, 1L, 1.0, 0L);
+        aggregator.visit(1L, 1L, 2.0, 2000L);
+        aggregator.visit(3L, 1L, 3.0, 1990L);
+        aggregator.visit(2L, 1L, 4.0, 1000L);
+        // out of order, within the same pair
+        aggregator.visit(3L, 1L, 5.0, 1200L);
+        aggregator.visit(3L, 1L, 8.0, 1995L);
+        final Map<Long, Double> decayed = new HashMap<>();
+        aggregator.visitAll(new RecordVisitor() {
+            @Override
+            public void visit(final long user, final long item, final double preference, final long timestamp) {
+                decayed.put(user, preference);
+            }
+        });
+        assertEquals(2.0, decayed.get(1L), 0.0);
+        assertEquals(4.0 * Math.pow(2.0, -1000.0), decayed.get(2L), 0.0);
+        assertEquals(3.0 * Math.pow(2.0, -10.0) + 8.0 * Math.pow(2.0, -5.0), decayed.get(3L), 1e-15);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecayedWithoutTimestamps() {
+        new PreferenceAggregator(PreferenceAggregator.Policy.DECAYED, HALF_LIFE).visit(1L, 1L, 1.0, -1L);
+    }
+}
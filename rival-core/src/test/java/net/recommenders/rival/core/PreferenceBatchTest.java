@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.PreferenceBatch}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class PreferenceBatchTest {
+
+    /**
+     * The number of preferences.
+     */
+    private static final int PREFERENCES = 5000;
+    /**
+     * The capacity of the batches.
+     */
+    private static final int CAPACITY = 700;
+
+    @Test
+    public void testSameAsOneByOne() {
+        for (boolean ignoreDuplicates : new boolean[]{false, true}) {
+            TemporalDataModel<Long, Long> expected = new TemporalDataModel<>(ignoreDuplicates);
+            TemporalDataModel<Long, Long> batched = new TemporalDataModel<>(ignoreDuplicates);
+            CompactTemporalDataModel<Long, Long> compact = new CompactTemporalDataModel<>(ignoreDuplicates);
+            // the inverted index is updated by the batches too
+            batched.getItemUsers();
+            PreferenceBatch<Long, Long> batch = new PreferenceBatch<>(CAPACITY);
+            // a new user with more rows than distinct items, whose items collide in small maps
+            for (int n = 0; n < 15; n++) {
+                long i = 5L + 16L * (n % 3);
+                expected.addPreference(1000L, i, 1.0);
+                batch.add(1000L, i, 1.0, PreferenceBatch.NO_TIMESTAMP);
+            }
+            Random rnd = new Random(2016L);
+            for (int n = 0; n < PREFERENCES; n++) {
+                // few users and items, so that there are duplicates
+                long u = rnd.nextInt(n % 3 == 0 ? 20 : 200);
+                long i = rnd.nextInt(300);
+                double d = rnd.nextInt(50) / 10.0;
+                long t = (n % 5 == 0) ? PreferenceBatch.NO_TIMESTAMP : 1000L + rnd.nextInt(100);
+                expected.addPreference(u, i, d);
+                if (t != PreferenceBatch.NO_TIMESTAMP) {
+                    expected.addTimestamp(u, i, t);
+                }
+                batch.add(u, i, d, t);
+                if (batch.isFull()) {
+                    batch.addTo(compact);
+                    batch.flushTo(batched);
+                }
+            }
+            batch.addTo(compact);
+            batch.flushTo(batched);
+            assertEquals(0, batch.size());
+            // same contents and same iteration order
+            assertEquals(expected.getUserItemPreferences().toString(), batched.getUserItemPreferences().toString());
+            assertEquals(expected.getUserItemTimestamps(), batched.getUserItemTimestamps());
+            assertEquals(expected.getItems(), batched.getItems());
+            assertEquals(expected.getItemUsers(), batched.getItemUsers());
+            assertEquals(expected.getUserItemPreferences().toString(), compact.getUserItemPreferences().toString());
+            assertEquals(expected.getUserItemTimestamps(), compact.getUserItemTimestamps());
+        }
+    }
+
+    @Test
+    public void testArrays() {
+        Long[] users = new Long[]{1L, 2L, 1L, 3L, 2L, 1L};
+        Long[] items = new Long[]{1L, 1L, 2L, 3L, 1L, 2L};
+        double[] preferences = new double[]{1.0, 2.0, 3.0, 4.0, 5.0, 6.0};
+        PreferenceBatch<Long, Long> batch = new PreferenceBatch<>(users, items, preferences, null);
+        assertTrue(batch.isFull());
+        assertEquals(3, batch.groupByUser());
+        // users by first appearance, preferences in batch order
+        int[] order = batch.getGroupOrder();
+        int[] offsets = batch.getGroupOffsets();
+        assertEquals("[0, 2, 5, 1, 4, 3]", Arrays.toString(order));
+        assertEquals("[0, 3, 5, 6]", Arrays.toString(offsets));
+        DataModelIF<Long, Long> model = DataModelFactory.getDefaultModel();
+        batch.addTo(model);
+        assertEquals(3, model.getNumUsers());
+        assertEquals(9.0, model.getUserItemPreferences().get(1L).get(2L), 0.0);
+        assertEquals(7.0, model.getUserItemPreferences().get(2L).get(1L), 0.0);
+        // other data models get the preferences one by one
+        PrimitiveDataModel primitive = new PrimitiveDataModel();
+        batch.addTo(primitive);
+        assertEquals(9.0, primitive.getPreference(1L, 2L), 0.0);
+        assertEquals(4, primitive.getNumPreferences());
+        // the arrays of the caller are copied, not emptied
+        batch.clear();
+        assertEquals("[1, 2, 1, 3, 2, 1]", Arrays.toString(users));
+        assertEquals("[1, 1, 2, 3, 1, 2]", Arrays.toString(items));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFull() {
+        PreferenceBatch<Long, Long> batch = new PreferenceBatch<>(1);
+        batch.add(1L, 1L, 1.0);
+        assertFalse(batch.size() == 0);
+        batch.add(1L, 2L, 1.0);
+    }
+}
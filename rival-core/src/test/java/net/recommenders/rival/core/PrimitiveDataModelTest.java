@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.PrimitiveDataModel}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class PrimitiveDataModelTest {
+
+    /**
+     * The data model.
+     */
+    private PrimitiveDataModel dm = new PrimitiveDataModel();
+    /**
+     * The number of users in the data model.
+     */
+    private static final int USERS = 3;
+    /**
+     * The number of items in the data model.
+     */
+    private static final int ITEMS = 3;
+
+    @Before
+    public void initialize() {
+        // items are added in reverse order to check they get sorted
+        for (long u = 1L; u <= USERS; u++) {
+            for (long i = ITEMS; i >= 1L; i--) {
+                dm.addPreference(u, i, 1.0 * u * i);
+            }
+        }
+    }
+
+    @Test
+    public void testGetUserPreferences() {
+        Map<Long, Map<Long, Double>> storedPrefs = dm.getUserItemPreferences();
+        assertEquals(USERS, storedPrefs.size());
+        for (long u = 1L; u <= USERS; u++) {
+            Map<Long, Double> iprefs = storedPrefs.get(u);
+            assertEquals(ITEMS, iprefs.size());
+            for (long i = 1L; i <= ITEMS; i++) {
+                assertEquals(1.0 * u * i, iprefs.get(i), 0.0);
+                assertEquals(1.0 * u * i, dm.getPreference(u, i), 0.0);
+            }
+            assertNull(iprefs.get(ITEMS + 1L));
+        }
+        assertNull(storedPrefs.get(USERS + 1L));
+        assertTrue(Double.isNaN(dm.getPreference(USERS + 1L, 1L)));
+    }
+
+    @Test
+    public void testGetNumItems() {
+        assertEquals(ITEMS, dm.getNumItems());
+        assertEquals(ITEMS, dm.getItems().size());
+    }
+
+    @Test
+    public void testGetNumUsers() {
+        assertEquals(USERS, dm.getNumUsers());
+        assertTrue(dm.getUsers().contains(1L));
+        assertFalse(dm.getUsers().contains(USERS + 1L));
+    }
+
+    @Test
+    public void testCSRArrays() {
+        int[] offsets = dm.getUserOffsets();
+        int[] items = dm.getItemIndices();
+        assertEquals(USERS * ITEMS, dm.getNumPreferences());
+        for (int u = 0; u < USERS; u++) {
+            assertEquals(ITEMS, offsets[u + 1] - offsets[u]);
+            for (int p = offsets[u] + 1; p < offsets[u + 1]; p++) {
+                assertTrue(items[p - 1] < items[p]);
+            }
+        }
+    }
+
+    @Test
+    public void testGetItemUsers() {
+        Map<Long, Set<Long>> itemUsers = dm.getItemUsers();
+        assertEquals(ITEMS, itemUsers.size());
+        for (long i = 1L; i <= ITEMS; i++) {
+            assertEquals(USERS, itemUsers.get(i).size());
+            assertEquals(USERS, dm.getItemPopularity(i));
+            assertTrue(itemUsers.get(i).contains(1L));
+        }
+        int[] itemOffsets = dm.getItemOffsets();
+        int[] users = dm.getUserIndicesByItem();
+        for (int i = 0; i < ITEMS; i++) {
+            for (int p = itemOffsets[i] + 1; p < itemOffsets[i + 1]; p++) {
+                assertTrue(users[p - 1] < users[p]);
+            }
+        }
+        // the index is rebuilt after new preferences are added
+        dm.addPreference(USERS + 1L, 1L, 1.0);
+        assertEquals(USERS + 1, dm.getItemPopularity(1L));
+        assertTrue(itemUsers.get(1L).contains(USERS + 1L));
+        assertFalse(itemUsers.get(2L).contains(USERS + 1L));
+        assertNull(itemUsers.get(ITEMS + 1L));
+    }
+
+    @Test
+    public void testForEach() {
+        final StringBuilder visited = new StringBuilder();
+        dm.forEachPreference(new PreferenceVisitor<Long, Long>() {
+            @Override
+            public void visit(final Long user, final Long item, final double preference) {
+                assertEquals(1.0 * user * item, preference, 0.0);
+                visited.append(user).append(':').append(item).append(' ');
+            }
+        });
+        // same order as the map view
+        StringBuilder view = new StringBuilder();
+        for (Map.Entry<Long, Map<Long, Double>> e : dm.getUserItemPreferences().entrySet()) {
+            for (Long i : e.getValue().keySet()) {
+                view.append(e.getKey()).append(':').append(i).append(' ');
+            }
+        }
+        assertEquals(view.toString(), visited.toString());
+        final int[] counts = new int[2];
+        dm.forEachUser(new UserVisitor<Long, Long>() {
+            @Override
+            public boolean visitUser(final Long user, final int numPreferences) {
+                assertEquals(ITEMS, numPreferences);
+                counts[0]++;
+                // only the preferences of the first user
+                return user == 1L;
+            }
+
+            @Override
+            public void visitPreference(final Long item, final double preference) {
+                assertEquals(1.0 * item, preference, 0.0);
+                counts[1]++;
+            }
+
+            @Override
+            public void endUser(final Long user) {
+                assertEquals(1L, (long) user);
+            }
+        });
+        assertEquals(USERS, counts[0]);
+        assertEquals(ITEMS, counts[1]);
+    }
+
+    @Test
+    public void testClear() {
+        // a model sharing the dictionaries keeps its ids
+        DataModelIF<Long, Long> sibling = DataModelFactory.getSimilarModel((DataModelIF<Long, Long>) dm);
+        sibling.addPreference(1L, 2L, 3.0);
+        dm.clear();
+        assertEquals(0, dm.getNumItems());
+        assertEquals(0, dm.getNumUsers());
+        assertEquals(0, dm.getNumPreferences());
+        assertEquals(3.0, sibling.getUserItemPreferences().get(1L).get(2L), 0.0);
+        dm.addPreference(5L, 6L, 1.0);
+        assertEquals(1, dm.getNumUsers());
+    }
+
+    @Test
+    public void testDuplicatePreferences() {
+        // duplicates added after the model has been read
+        dm.getNumPreferences();
+        for (long u = 1L; u <= USERS; u++) {
+            for (long i = 1L; i <= ITEMS; i++) {
+                dm.addPreference(u, i, 1.0 * u * i);
+            }
+        }
+        for (long u = 1L; u <= USERS; u++) {
+            for (long i = 1L; i <= ITEMS; i++) {
+                assertEquals(2.0 * u * i, dm.getUserItemPreferences().get(u).get(i), 0.0);
+            }
+        }
+        PrimitiveDataModel constrainedModel = new PrimitiveDataModel(true);
+        for (long u = 1L; u <= USERS; u++) {
+            for (long i = 1L; i <= ITEMS; i++) {
+                constrainedModel.addPreference(u, i, 1.0 * u * i);
+            }
+            // duplicate preferences
+            for (long i = 1L; i <= ITEMS; i++) {
+                constrainedModel.addPreference(u, i, 2.0 * u * i);
+            }
+        }
+        assertEquals(USERS * ITEMS, constrainedModel.getNumPreferences());
+        for (long u = 1L; u <= USERS; u++) {
+            for (long i = 1L; i <= ITEMS; i++) {
+                assertEquals(1.0 * u * i, constrainedModel.getUserItemPreferences().get(u).get(i), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testSharedDictionaries() {
+        PrimitiveDataModel other = new PrimitiveDataModel(dm.getUserDictionary(), dm.getItemDictionary());
+        other.addPreference(USERS + 1L, 1L, 1.0);
+        // the new user gets the next index in the shared dictionary
+        assertEquals(USERS, other.getUserIndex(USERS + 1L));
+        assertEquals(dm.getItemIndex(1L), other.getItemIndex(1L));
+        assertEquals(1, other.getNumUsers());
+        assertEquals(1, other.getNumItems());
+        // but it is not a user of the first model
+        assertEquals(USERS, dm.getNumUsers());
+        assertFalse(dm.getUsers().contains(USERS + 1L));
+        assertNull(dm.getUserItemPreferences().get(USERS + 1L));
+        assertEquals(USERS + 2, dm.getUserOffsets().length);
+        assertEquals(1, other.getNumPreferences());
+    }
+
+    @Test
+    public void testInterleavedReads() {
+        // every read merges the preferences added since the previous one
+        PrimitiveDataModel model = new PrimitiveDataModel();
+        DataModelIF<Long, Long> expected = DataModelFactory.getDefaultModel();
+        for (long p = 0L; p < 200L; p++) {
+            long u = p % 7L;
+            long i = (p * 31L) % 11L;
+            model.addPreference(u, i, 1.0 * p);
+            expected.addPreference(u, i, 1.0 * p);
+            assertEquals(expected.getUserItemPreferences().get(u).get(i), model.getPreference(u, i), 0.0);
+        }
+        assertEquals(expected.getUserItemPreferences(), model.getUserItemPreferences());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.SampledDataModel}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class SampledDataModelTest {
+
+    /**
+     * The number of users in the data model.
+     */
+    private static final int USERS = 2000;
+    /**
+     * The number of items in the data model.
+     */
+    private static final int ITEMS = 10;
+    /**
+     * The data model.
+     */
+    private TemporalDataModelIF<Long, Long> dm;
+
+    @Before
+    public void initialize() {
+        dm = new TemporalDataModel<>();
+        for (long u = 1L; u <= USERS; u++) {
+            for (long i = 1L; i <= ITEMS; i++) {
+                if (i <= u) {
+                    dm.addPreference(u, i, 1.0 * i);
+                    dm.addTimestamp(u, i, u * i);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSample() {
+        SampledDataModel<Long, Long> sample = new SampledDataModel<>(dm, 0.05, 1L);
+        int n = sample.getNumUsers();
+        // about 5% of the users
+        assertTrue(n > 50 && n < 150);
+        assertEquals(n, sample.getUserItemPreferences().size());
+        assertEquals(n, sample.getUserItemTimestamps().size());
+        int nUsers = 0;
+        for (long u = 1L; u <= USERS; u++) {
+            boolean sampled = SampledDataModel.isSampled(u, 0.05, 1L);
+            assertEquals(sampled, sample.getUsers().contains(u));
+            assertEquals(sampled, sample.getUserItemPreferences().containsKey(u));
+            if (sampled) {
+                nUsers++;
+                assertEquals(dm.getUserItemPreferences().get(u), sample.getUserItemPreferences().get(u));
+            } else {
+                assertNull(sample.getUserItemPreferences().get(u));
+            }
+        }
+        assertEquals(n, nUsers);
+        for (Map.Entry<Long, Set<Long>> e : sample.getItemUsers().entrySet()) {
+            for (Long u : e.getValue()) {
+                assertTrue(sample.getUsers().contains(u));
+            }
+        }
+        assertEquals(ITEMS, sample.getNumItems());
+        // the items are computed once
+        assertSame(sample.getItemUsers(), sample.getItemUsers());
+        assertEquals(sample.getItemUsers().keySet(), sample.getItems());
+        assertEquals(DataModelUtils.buildItemUsers(sample.getUserItemPreferences()), sample.getItemUsers());
+        // the same users are chosen in another model, and larger samples
+        // contain the smaller ones
+        DataModelIF<Long, Long> other = DataModelFactory.getDefaultModel();
+        for (long u = 1L; u <= USERS; u++) {
+            other.addPreference(u, 1L, 1.0);
+        }
+        assertEquals(sample.getUsers(), new SampledDataModel<>(other, 0.05, 1L).getUsers());
+        assertTrue(new SampledDataModel<>(other, 0.2, 1L).getUsers().containsAll(sample.getUsers()));
+        assertFalse(sample.getUsers().equals(new SampledDataModel<>(other, 0.05, 2L).getUsers()));
+        assertEquals(0, new SampledDataModel<>(dm, 0.0, 1L).getNumUsers());
+        assertEquals(USERS, new SampledDataModel<>(dm, 1.0, 1L).getNumUsers());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        new SampledDataModel<>(dm, 0.5, 1L).addPreference(1L, 1L, 1.0);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.ShardedDataModel}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class ShardedDataModelTest {
+
+    /**
+     * The number of users in the data model.
+     */
+    private static final int USERS = 50;
+    /**
+     * The number of items in the data model.
+     */
+    private static final int ITEMS = 20;
+    /**
+     * The number of shards.
+     */
+    private static final int SHARDS = 4;
+    /**
+     * The data model.
+     */
+    private TemporalDataModelIF<Long, Long> dm;
+
+    @Before
+    public void initialize() {
+        dm = new TemporalDataModel<>();
+        for (long u = 1L; u <= USERS; u++) {
+            for (long i = 1L; i <= ITEMS; i++) {
+                if ((u + i) % 3 != 0) {
+                    dm.addPreference(u, i, 1.0 * u * i);
+                    dm.addTimestamp(u, i, u + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testShard() {
+        ShardedDataModel<Long, Long> sharded = ShardedDataModel.shard(dm, SHARDS);
+        assertEquals(SHARDS, sharded.getNumShards());
+        assertEquals(dm.getNumUsers(), sharded.getNumUsers());
+        assertEquals(dm.getNumItems(), sharded.getNumItems());
+        assertEquals(dm.getUserItemPreferences(), sharded.getUserItemPreferences());
+        assertEquals(dm.getUserItemTimestamps(), sharded.getUserItemTimestamps());
+        assertEquals(DataModelUtils.getItemUsers(dm), DataModelUtils.getItemUsers(sharded));
+        assertEquals(dm.getUsers(), sharded.getUsers());
+        int nUsers = 0;
+        for (int s = 0; s < SHARDS; s++) {
+            DataModelIF<Long, Long> shard = sharded.getShard(s);
+            // every shard has at least one user and only its own users
+            assertTrue(shard.getNumUsers() > 0);
+            for (Long u : shard.getUsers()) {
+                assertEquals(s, ShardedDataModel.getShardIndex(u, SHARDS));
+            }
+            nUsers += shard.getNumUsers();
+        }
+        assertEquals(USERS, nUsers);
+        assertNull(sharded.getUserItemPreferences().get(USERS + 1L));
+        assertFalse(sharded.getUsers().contains(USERS + 1L));
+        // the item index is updated with new preferences
+        sharded.addPreference(USERS + 1L, ITEMS + 1L, 1.0);
+        assertEquals(ITEMS + 1, sharded.getNumItems());
+        assertTrue(sharded.getItemUsers().get(ITEMS + 1L).contains(USERS + 1L));
+        // and so are the item views with preferences added directly to a shard
+        DataModelIF<Long, Long> shard = sharded.getShard(1);
+        Long user = shard.getUsers().iterator().next();
+        shard.addPreference(user, ITEMS + 2L, 1.0);
+        assertEquals(ITEMS + 2, sharded.getNumItems());
+        assertEquals(ITEMS + 2, sharded.getItems().size());
+        assertTrue(sharded.getItems().contains(ITEMS + 2L));
+        assertEquals(new HashSet<>(sharded.getItems()), sharded.getItemUsers().keySet());
+        assertTrue(sharded.getItemUsers().get(ITEMS + 2L).contains(user));
+        sharded.clear();
+        assertEquals(0, sharded.getNumUsers());
+        assertEquals(0, sharded.getNumItems());
+    }
+
+    @Test
+    public void testForEachShard() {
+        ShardedDataModel<Long, Long> sharded = ShardedDataModel.shard(dm, SHARDS);
+        final Set<Thread> threads = new HashSet<>();
+        List<Map<Long, Integer>> counts = sharded.forEachShard(new ShardedDataModel.ShardTask<Long, Long, Map<Long, Integer>>() {
+            @Override
+            public Map<Long, Integer> process(final int shard, final DataModelIF<Long, Long> model) {
+                synchronized (threads) {
+                    threads.add(Thread.currentThread());
+                }
+                Map<Long, Integer> m = new HashMap<>();
+                for (Map.Entry<Long, Map<Long, Double>> e : model.getUserItemPreferences().entrySet()) {
+                    m.put(e.getKey(), e.getValue().size());
+                }
+                return m;
+            }
+        }, 3);
+        assertEquals(SHARDS, counts.size());
+        assertFalse(threads.contains(Thread.currentThread()));
+        Map<Long, Integer> merged = ShardedDataModel.mergeMaps(counts);
+        assertEquals(USERS, merged.size());
+        for (long u = 1L; u <= USERS; u++) {
+            assertEquals(dm.getUserItemPreferences().get(u).size(), (int) merged.get(u));
+        }
+    }
+
+    @Test
+    public void testPrimitiveShards() {
+        PrimitiveDataModel primitive = new PrimitiveDataModel();
+        for (Map.Entry<Long, Map<Long, Double>> e : dm.getUserItemPreferences().entrySet()) {
+            for (Map.Entry<Long, Double> p : e.getValue().entrySet()) {
+                primitive.addPreference(e.getKey(), p.getKey(), p.getValue());
+            }
+        }
+        ShardedDataModel<Long, Long> sharded = ShardedDataModel.shard(primitive, SHARDS);
+        for (int s = 0; s < SHARDS; s++) {
+            assertTrue(((PrimitiveDataModel) sharded.getShard(s)).getUserDictionary() == primitive.getUserDictionary());
+        }
+        assertEquals(dm.getUserItemPreferences(), sharded.getUserItemPreferences());
+        assertTrue(sharded.getUserItemTimestamps().isEmpty());
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.SimpleParser}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class SimpleParserTest {
+
+    /**
+     * Folder for the data files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    /**
+     * The number of lines in the data file.
+     */
+    private static final int LINES = 5000;
+    /**
+     * The data file.
+     */
+    private File data;
+
+    @Before
+    public void initialize() throws IOException {
+        data = folder.newFile("data.tsv");
+        PrintStream out = new PrintStream(data, "UTF-8");
+        out.print("user\titem\trating\ttime\r\n");
+        Random rnd = new Random(2016L);
+        for (int n = 0; n < LINES; n++) {
+            // few users and items, so that there are duplicates
+            long u = rnd.nextInt(50);
+            long i = rnd.nextInt(100);
+            String rating = (rnd.nextInt(50) / 10.0) + "";
+            if (n % 7 == 0) {
+                rating = "0.1234567890123456789";
+            } else if (n % 11 == 0) {
+                rating = "-2e-3";
+            }
+            out.print(u + "\t" + i + "\t" + rating + "\t" + (1000000L + n) + (n % 2 == 0 ? "\n" : "\r\n"));
+        }
+        out.close();
+    }
+
+    @Test
+    public void testParallelParse() throws IOException {
+        TemporalDataModelIF<Long, Long> expected = new SimpleParser().parseData(data, "\t", true);
+        TemporalDataModelIF<Long, Long> parallel = new SimpleParser(4).parseData(data, "\t", true);
+        assertSameModel(expected, parallel);
+        assertEquals(expected.getUserItemTimestamps(), parallel.getUserItemTimestamps());
+        // small ranges, so that the file is split into many of them
+        TemporalDataModel<Long, Long> chunked = new TemporalDataModel<>();
+        ChunkedFileParser.parse(data, '\t', true, new DataModelRecordVisitor(chunked), 3, 512L);
+        assertSameModel(expected, chunked);
+        assertEquals(expected.getUserItemTimestamps(), chunked.getUserItemTimestamps());
+        PrimitiveDataModel primitive = new PrimitiveDataModel();
+        ChunkedFileParser.parse(data, '\t', false, new DataModelRecordVisitor(primitive), 3, 1000L);
+        assertSameModel(expected, primitive);
+    }
+
+    @Test
+    public void testBlankLines() throws IOException {
+        File blank = folder.newFile("blank.tsv");
+        PrintStream out = new PrintStream(blank, "UTF-8");
+        // a blank first line, blank lines in every range and at the end
+        out.print("\n");
+        for (int n = 0; n < 300; n++) {
+            out.print((n % 20) + "\t" + (n % 7) + "\t" + (n % 5) + "\t" + n + "\n");
+            if (n % 3 == 0) {
+                out.print(n % 2 == 0 ? "\n" : "\r\n");
+            }
+        }
+        out.close();
+        TemporalDataModelIF<Long, Long> expected = new SimpleParser().parseData(blank, "\t", true);
+        assertEquals(20, expected.getNumUsers());
+        assertEquals(7, expected.getNumItems());
+        TemporalDataModelIF<Long, Long> parallel = new SimpleParser(4).parseData(blank, "\t", true);
+        assertSameModel(expected, parallel);
+        assertEquals(expected.getUserItemTimestamps(), parallel.getUserItemTimestamps());
+        TemporalDataModel<Long, Long> chunked = new TemporalDataModel<>();
+        ChunkedFileParser.parse(blank, '\t', true, new DataModelRecordVisitor(chunked), 3, 256L);
+        assertSameModel(expected, chunked);
+        assertEquals(expected.getUserItemTimestamps(), chunked.getUserItemTimestamps());
+    }
+
+    @Test
+    public void testStreamingParse() throws IOException {
+        final long[] counts = new long[2];
+        RecordVisitor counter = new RecordVisitor() {
+            @Override
+            public void visit(final long user, final long item, final double preference, final long timestamp) {
+                counts[0]++;
+                if (timestamp != -1L) {
+                    counts[1]++;
+                }
+            }
+        };
+        new SimpleParser().parse(data, counter);
+        assertEquals(LINES, counts[0]);
+        assertEquals(LINES, counts[1]);
+        new SimpleParser(2).parse(data, counter);
+        assertEquals(2 * LINES, counts[0]);
+        assertEquals(2 * LINES, counts[1]);
+    }
+
+    /**
+     * Checks that two models have the same preferences.
+     *
+     * @param expected the expected model.
+     * @param actual the actual model.
+     */
+    private static void assertSameModel(final DataModelIF<Long, Long> expected, final DataModelIF<Long, Long> actual) {
+        assertEquals(expected.getNumUsers(), actual.getNumUsers());
+        assertEquals(expected.getNumItems(), actual.getNumItems());
+        for (Map.Entry<Long, Map<Long, Double>> e : expected.getUserItemPreferences().entrySet()) {
+            Map<Long, Double> prefs = actual.getUserItemPreferences().get(e.getKey());
+            Set<Map.Entry<Long, Double>> expectedPrefs = e.getValue().entrySet();
+            assertEquals(expectedPrefs.size(), prefs.size());
+            for (Map.Entry<Long, Double> p : expectedPrefs) {
+                // same order of additions, hence exactly the same sums
+                assertEquals(p.getValue(), prefs.get(p.getKey()), 0.0);
+            }
+        }
+    }
+}
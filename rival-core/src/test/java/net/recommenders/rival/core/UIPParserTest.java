@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.UIPParser}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class UIPParserTest {
+
+    /**
+     * Folder for the data files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPlainAndQuotedRows() throws IOException {
+        File data = folder.newFile("data.csv");
+        PrintStream out = new PrintStream(data, "UTF-8");
+        out.print("\"user\",\"item\",\"rating\",\"time\",\"comment\"\r\n");
+        out.print("1,10,4.5,1000,plain\r\n");
+        out.print("\"2\",20,3,2000,\"quoted, with delimiter\"\n");
+        out.print("3,30,-0.25,3000,\"quoted\n");
+        out.print("over two lines\"\n");
+        out.print("4,40,1e2,4000\n");
+        out.close();
+        UIPParser parser = new UIPParser();
+        parser.setHasHeader(true);
+        final List<String> records = new ArrayList<>();
+        RecordVisitor visitor = new RecordVisitor() {
+            @Override
+            public void visit(final long user, final long item, final double preference, final long timestamp) {
+                records.add(user + " " + item + " " + preference + " " + timestamp);
+            }
+        };
+        parser.parse(data, visitor);
+        assertEquals(4, records.size());
+        assertEquals("1 10 4.5 1000", records.get(0));
+        assertEquals("2 20 3.0 2000", records.get(1));
+        assertEquals("3 30 -0.25 3000", records.get(2));
+        assertEquals("4 40 100.0 4000", records.get(3));
+
+        // without header, other columns and no timestamps
+        out = new PrintStream(data, "UTF-8");
+        out.print("x;5;6;\"7.5\"\n");
+        out.print("x;8;9;1\n");
+        out.close();
+        parser = new UIPParser();
+        parser.setDelimiter(';');
+        parser.setUserTok(1);
+        parser.setItemTok(2);
+        parser.setPrefTok(3);
+        parser.setTimeTok(-1);
+        records.clear();
+        parser.parse(data, visitor);
+        assertEquals(2, records.size());
+        assertEquals("5 6 7.5 -1", records.get(0));
+        assertEquals("8 9 1.0 -1", records.get(1));
+        TemporalDataModelIF<Long, Long> dm = parser.parseTemporalData(data);
+        assertEquals(2, dm.getNumUsers());
+        assertEquals(7.5, dm.getUserItemPreferences().get(5L).get(6L), 0.0);
+        assertEquals(1, dm.getUserItemTimestamps().get(8L).get(9L).size());
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void testMissingField() throws IOException {
+        File data = folder.newFile("data.csv");
+        PrintStream out = new PrintStream(data, "UTF-8");
+        out.print("1,2,3.0,4\n1,2\n");
+        out.close();
+        new UIPParser().parseData(data);
+    }
+}
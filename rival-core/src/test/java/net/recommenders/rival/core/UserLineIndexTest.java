@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link net.recommenders.rival.core.UserLineIndex} and
+ * {@link net.recommenders.rival.core.UserLineReader}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class UserLineIndexTest {
+
+    /**
+     * The number of users in the file, enough for several scan buffers.
+     */
+    private static final int USERS = 5000;
+    /**
+     * Folder for temporary files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadUsers() throws IOException {
+        Map<Long, List<String>> expected = new LinkedHashMap<>();
+        Random rnd = new Random(2016L);
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < USERS; n++) {
+            long user = (n % 7 == 0) ? -n : 3L * n;
+            List<String> lines = new ArrayList<>();
+            int numLines = 1 + rnd.nextInt(10);
+            for (int k = 0; k < numLines; k++) {
+                String line = user + "\t" + rnd.nextInt(1000) + "\t" + rnd.nextDouble();
+                lines.add(line);
+                // some Windows line terminators and empty lines
+                sb.append(line).append(rnd.nextInt(5) == 0 ? "\r\n" : "\n");
+                if (rnd.nextInt(20) == 0) {
+                    sb.append("\n");
+                }
+            }
+            expected.put(user, lines);
+        }
+        // the last line has no terminator
+        File file = write("recs.tsv", sb.substring(0, sb.length() - 1));
+        UserLineReader reader = UserLineReader.open(file, '\t');
+        try {
+            UserLineIndex index = reader.getIndex();
+            assertEquals(USERS, index.getNumUsers());
+            assertEquals(file.length(), index.getFileLength());
+            int n = 0;
+            for (Map.Entry<Long, List<String>> e : expected.entrySet()) {
+                assertEquals(e.getKey().longValue(), index.getUser(n++));
+                assertEquals(e.getValue(), reader.readLines(e.getKey()));
+            }
+            assertFalse(index.contains(1L));
+            assertNull(reader.readLines(1L));
+            assertEquals(0, reader.readBytes(1L).length);
+        } finally {
+            reader.close();
+        }
+        // the persisted index is reused
+        File indexFile = UserLineIndex.getIndexFile(file);
+        assertTrue(indexFile.isFile());
+        UserLineIndex loaded = UserLineIndex.load(file, indexFile);
+        assertEquals(USERS, loaded.getNumUsers());
+        for (Long user : expected.keySet()) {
+            assertEquals(reader.getIndex().getStart(user), loaded.getStart(user));
+            assertEquals(reader.getIndex().getEnd(user), loaded.getEnd(user));
+        }
+    }
+
+    @Test
+    public void testStaleIndex() throws IOException {
+        File file = write("recs.tsv", "1\t1\t1.0\n1\t2\t0.5\n2\t1\t1.0\n");
+        assertEquals(2, UserLineIndex.getIndex(file, '\t').getNumUsers());
+        file = write("recs.tsv", "1\t1\t1.0\n2\t2\t0.5\n3\t1\t1.0\n4\t1\t1.0\n");
+        assertNull(UserLineIndex.load(file, UserLineIndex.getIndexFile(file)));
+        UserLineIndex index = UserLineIndex.getIndex(file, '\t');
+        assertEquals(4, index.getNumUsers());
+        assertEquals(8L, index.getStart(2L));
+        // mymedialite format, one line per user
+        file = write("recs.txt", "5\t[1:0.5,2:0.25]\n6\t[3:1.0]");
+        UserLineReader reader = UserLineReader.open(file, '\t');
+        try {
+            assertEquals("[6\t[3:1.0]]", reader.readLines(6L).toString());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotGrouped() throws IOException {
+        UserLineIndex.build(write("recs.tsv", "1\t1\t1.0\n2\t1\t1.0\n1\t2\t1.0\n"), '\t');
+    }
+
+    @Test
+    public void testInvalidUsers() throws IOException {
+        String[] lines = {"\t1\t1.0", "1 2\t1\t1.0", " 2\t1\t1.0", "-\t1\t1.0", "1-\t1\t1.0", "a\t1\t1.0",
+            "9223372036854775808\t1\t1.0", "-9223372036854775809\t1\t1.0", "99999999999999999999\t1\t1.0"};
+        for (String line : lines) {
+            try {
+                UserLineIndex.build(write("recs.tsv", "1\t1\t1.0\n" + line + "\n"), '\t');
+                fail("Invalid user accepted: " + line);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains("byte 8 "));
+            }
+        }
+        // the ids have the same syntax as in Long.parseLong
+        UserLineIndex index = UserLineIndex.build(write("recs.tsv",
+                "9223372036854775807\t1\t1.0\n-9223372036854775808\t1\t1.0\n+3\t1\t1.0\n\r\n"), '\t');
+        assertEquals(3, index.getNumUsers());
+        assertEquals(Long.MAX_VALUE, index.getUser(0));
+        assertEquals(Long.MIN_VALUE, index.getUser(1));
+        assertEquals(3L, index.getUser(2));
+    }
+
+    /**
+     * Writes a file in the temporary folder.
+     *
+     * @param name the name of the file.
+     * @param contents the contents of the file.
+     * @return the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private File write(final String name, final String contents) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
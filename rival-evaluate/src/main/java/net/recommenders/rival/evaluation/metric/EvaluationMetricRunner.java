@@ -25,7 +25,8 @@ import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Properties;
 import net.recommenders.rival.core.DataModelIF;
-import net.recommenders.rival.core.SimpleParser;
+import net.recommenders.rival.core.DataModelUtils;
+import net.recommenders.rival.core.SampledDataModel;
 import net.recommenders.rival.evaluation.metric.error.AbstractErrorMetric;
 import net.recommenders.rival.evaluation.metric.ranking.AbstractRankingMetric;
 import net.recommenders.rival.evaluation.metric.ranking.NDCG;
@@ -87,6 +88,14 @@ public final class EvaluationMetricRunner {
      * Variable that represent the name of a property in the file.
      */
     public static final String METRIC_PER_USER = "evaluation.peruser";
+    /**
+     * Variable that represent the name of a property in the file.
+     */
+    public static final String SAMPLE_FRACTION = "evaluation.sample.fraction";
+    /**
+     * Variable that represent the name of a property in the file.
+     */
+    public static final String SAMPLE_SEED = "evaluation.sample.seed";
 
     /**
      * Utility classes should not have a public or default constructor.
@@ -140,7 +149,7 @@ public final class EvaluationMetricRunner {
         }
         switch (recFormat) {
             case SIMPLE:
-                predictions = new SimpleParser().parseData(recommendationFile);
+                predictions = DataModelUtils.loadDataModel(recommendationFile);
                 break;
             case TRECEVAL:
                 predictions = new TrecEvalParser().parseData(recommendationFile);
@@ -151,8 +160,10 @@ public final class EvaluationMetricRunner {
         System.out.println("Parsing finished: recommendation file");
         System.out.println("Parsing started: test file");
         File testFile = new File(properties.getProperty(TEST_FILE));
-        DataModelIF<Long, Long> testModel = new SimpleParser().parseData(testFile);
+        DataModelIF<Long, Long> testModel = DataModelUtils.loadDataModel(testFile);
         System.out.println("Parsing finished: test file");
+        predictions = sampleUsers(properties, predictions);
+        testModel = sampleUsers(properties, testModel);
         // read other parameters
         Boolean overwrite = Boolean.parseBoolean(properties.getProperty(OUTPUT_OVERWRITE, "false"));
         Boolean doAppend = Boolean.parseBoolean(properties.getProperty(OUTPUT_APPEND, "true"));
@@ -166,6 +177,29 @@ public final class EvaluationMetricRunner {
         generateOutput(testModel, rankingCutoffs, metric, metric.getClass().getSimpleName(), perUser, resultsFile, overwrite, doAppend);
     }
 
+    /**
+     * Restricts a model to the sample of users requested in a properties
+     * mapping ({@link #SAMPLE_FRACTION}, 1 by default, and
+     * {@link #SAMPLE_SEED}, 0 by default). The sample only depends on the
+     * user ids, so the same users are kept in the test set and the
+     * predictions.
+     *
+     * @param <U> generic type for users.
+     * @param <I> generic type for items.
+     * @param properties the properties mapping to be parsed.
+     * @param model the model.
+     * @return a sampled view of the model, or the model itself if every
+     * user is requested.
+     */
+    public static <U, I> DataModelIF<U, I> sampleUsers(final Properties properties, final DataModelIF<U, I> model) {
+        double fraction = Double.parseDouble(properties.getProperty(SAMPLE_FRACTION, "1.0"));
+        if (fraction >= 1.0) {
+            return model;
+        }
+        long seed = Long.parseLong(properties.getProperty(SAMPLE_SEED, "0"));
+        return new SampledDataModel<>(model, fraction, seed);
+    }
+
     /**
      *
      * Gets the ranking cutoffs requested in a properties mapping.
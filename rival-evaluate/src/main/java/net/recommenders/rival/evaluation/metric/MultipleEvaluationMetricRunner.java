@@ -25,7 +25,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import net.recommenders.rival.core.DataModelIF;
-import net.recommenders.rival.core.SimpleParser;
+import net.recommenders.rival.core.DataModelUtils;
 import net.recommenders.rival.evaluation.parser.TrecEvalParser;
 import net.recommenders.rival.evaluation.strategy.EvaluationStrategy;
 
@@ -88,6 +88,14 @@ public final class MultipleEvaluationMetricRunner {
      * Variable that represents the name of a property in the file.
      */
     public static final String METRIC_PER_USER = "evaluation.peruser";
+    /**
+     * Variable that represents the name of a property in the file.
+     */
+    public static final String SAMPLE_FRACTION = "evaluation.sample.fraction";
+    /**
+     * Variable that represents the name of a property in the file.
+     */
+    public static final String SAMPLE_SEED = "evaluation.sample.seed";
 
     /**
      * Utility classes should not have a public or default constructor.
@@ -145,8 +153,9 @@ public final class MultipleEvaluationMetricRunner {
 
         System.out.println("Parsing started: test file");
         File testFile = new File(properties.getProperty(TEST_FILE));
-        DataModelIF<Long, Long> testModel = new SimpleParser().parseData(testFile);
+        DataModelIF<Long, Long> testModel = DataModelUtils.loadDataModel(testFile);
         System.out.println("Parsing finished: test file");
+        testModel = EvaluationMetricRunner.sampleUsers(properties, testModel);
 
         File predictionsFolder = new File(properties.getProperty(PREDICTION_FOLDER));
         String predictionsPrefix = properties.getProperty(PREDICTION_PREFIX);
@@ -166,7 +175,7 @@ public final class MultipleEvaluationMetricRunner {
             DataModelIF<Long, Long> predictions;
             switch (recFormat) {
                 case SIMPLE:
-                    predictions = new SimpleParser().parseData(predictionFile);
+                    predictions = DataModelUtils.loadDataModel(predictionFile);
                     break;
                 case TRECEVAL:
                     predictions = new TrecEvalParser().parseData(predictionFile);
@@ -175,6 +184,7 @@ public final class MultipleEvaluationMetricRunner {
                     throw new AssertionError();
             }
             System.out.println("Parsing finished: recommendation file");
+            predictions = EvaluationMetricRunner.sampleUsers(properties, predictions);
             File resultsFile = new File(resultsFolder, "eval" + "__" + predictionFile.getName());
 
             // get metrics
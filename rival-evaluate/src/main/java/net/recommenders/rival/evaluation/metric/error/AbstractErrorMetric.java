@@ -16,6 +16,8 @@
 package net.recommenders.rival.evaluation.metric.error;
 
 import net.recommenders.rival.core.DataModelIF;
+import net.recommenders.rival.core.DataModelUtils;
+import net.recommenders.rival.core.UserVisitor;
 import net.recommenders.rival.evaluation.metric.AbstractMetric;
 import net.recommenders.rival.evaluation.metric.EvaluationMetric;
 
@@ -23,7 +25,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * @param <U> - type associated to users' ids
@@ -61,14 +62,6 @@ public abstract class AbstractErrorMetric<U, I> extends AbstractMetric<U, I> imp
          */
         CONSIDER_NAN_AS_3;
     }
-    /**
-     * For coverage.
-     */
-    private int emptyUsers;
-    /**
-     * For coverage.
-     */
-    private int emptyItems;
     /**
      * Strategy to decide what to do when there is no predicted value for a user
      * and item contained in the test set.
@@ -115,43 +108,9 @@ public abstract class AbstractErrorMetric<U, I> extends AbstractMetric<U, I> imp
      * @return a map with the transformed data, one list per user
      */
     public Map<U, List<Double>> processDataAsPredictedDifferencesToTest() {
-        Map<U, List<Double>> data = new HashMap<U, List<Double>>();
-        Map<U, Map<I, Double>> actualRatings = getTest().getUserItemPreferences();
-        Map<U, Map<I, Double>> predictedRatings = getPredictions().getUserItemPreferences();
-
-        emptyItems = 0;
-        emptyUsers = 0;
-
-        for (U testUser : getTest().getUsers()) {
-            Map<I, Double> ratings = actualRatings.get(testUser);
-            List<Double> userData = data.get(testUser);
-            if (userData == null) {
-                userData = new ArrayList<Double>();
-                data.put(testUser, userData);
-            }
-            for (Entry<I, Double> e : ratings.entrySet()) {
-                I testItem = e.getKey();
-                double realRating = ratings.get(testItem);
-                double predictedRating = Double.NaN; // NaN as default value
-                if (predictedRatings.containsKey(testUser)) {
-                    if (predictedRatings.get(testUser).containsKey(testItem)) {
-                        predictedRating = predictedRatings.get(testUser).get(testItem);
-                    } else {
-                        emptyItems++;
-                    }
-                } else {
-                    emptyUsers++;
-                }
-                // get estimated preference depending on the ErrorStrategy
-                predictedRating = considerEstimatedPreference(strategy, predictedRating);
-                // if returned value is NaN, then we ignore the predicted rating
-                if (!Double.isNaN(predictedRating)) {
-                    double difference = realRating - predictedRating;
-                    userData.add(difference);
-                }
-            }
-        }
-        return data;
+        DifferenceCollector<U, I> collector = new DifferenceCollector<U, I>(getPredictions().getUserItemPreferences(), strategy);
+        DataModelUtils.forEachUser(getTest(), collector);
+        return collector.data;
     }
 
     /**
@@ -194,4 +153,97 @@ public abstract class AbstractErrorMetric<U, I> extends AbstractMetric<U, I> imp
             return Double.NaN;
         }
     }
+
+    /**
+     * Visitor of the test preferences that collects the differences with the
+     * predicted ratings of every user.
+     *
+     * @param <U> - type associated to users' ids
+     * @param <I> - type associated to items' ids
+     */
+    private static final class DifferenceCollector<U, I> implements UserVisitor<U, I> {
+
+        /**
+         * The differences of every user.
+         */
+        private final Map<U, List<Double>> data;
+        /**
+         * The predicted ratings.
+         */
+        private final Map<U, Map<I, Double>> predictedRatings;
+        /**
+         * The error strategy.
+         */
+        private final ErrorStrategy strategy;
+        /**
+         * For coverage: test preferences of users without predictions.
+         */
+        private int emptyUsers;
+        /**
+         * For coverage: test preferences without prediction of users with
+         * predictions.
+         */
+        private int emptyItems;
+        /**
+         * Differences of the current user.
+         */
+        private List<Double> userData;
+        /**
+         * Predictions for the current user, null if there are none.
+         */
+        private Map<I, Double> userPredictions;
+
+        /**
+         * Constructor.
+         *
+         * @param predictions the predicted ratings
+         * @param errorStrategy the error strategy
+         */
+        DifferenceCollector(final Map<U, Map<I, Double>> predictions, final ErrorStrategy errorStrategy) {
+            this.data = new HashMap<U, List<Double>>();
+            this.predictedRatings = predictions;
+            this.strategy = errorStrategy;
+            this.emptyUsers = 0;
+            this.emptyItems = 0;
+            this.userData = new ArrayList<Double>();
+            this.userPredictions = null;
+        }
+
+        @Override
+        public boolean visitUser(final U testUser, final int numPreferences) {
+            userData = data.get(testUser);
+            if (userData == null) {
+                userData = new ArrayList<Double>();
+                data.put(testUser, userData);
+            }
+            userPredictions = predictedRatings.get(testUser);
+            return true;
+        }
+
+        @Override
+        public void visitPreference(final I testItem, final double realRating) {
+            double predictedRating = Double.NaN; // NaN as default value
+            if (userPredictions != null) {
+                Double p = userPredictions.get(testItem);
+                if (p != null) {
+                    predictedRating = p;
+                } else {
+                    emptyItems++;
+                }
+            } else {
+                emptyUsers++;
+            }
+            // get estimated preference depending on the ErrorStrategy
+            predictedRating = considerEstimatedPreference(strategy, predictedRating);
+            // if returned value is NaN, then we ignore the predicted rating
+            if (!Double.isNaN(predictedRating)) {
+                double difference = realRating - predictedRating;
+                userData.add(difference);
+            }
+        }
+
+        @Override
+        public void endUser(final U testUser) {
+        }
+    }
 }
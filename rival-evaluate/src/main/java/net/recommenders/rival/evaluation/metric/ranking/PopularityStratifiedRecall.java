@@ -16,6 +16,7 @@
 package net.recommenders.rival.evaluation.metric.ranking;
 
 import net.recommenders.rival.core.DataModelIF;
+import net.recommenders.rival.core.DataModelUtils;
 import net.recommenders.rival.evaluation.metric.EvaluationMetric;
 
 import java.util.HashMap;
@@ -101,6 +102,22 @@ public class PopularityStratifiedRecall<U, I> extends AbstractRankingMetric<U, I
         this.observedItemRelevance = theObservedItemRelevance;
     }
 
+    /**
+     * Constructor where the item relevance is the popularity of the items in
+     * the training set, read from its item-to-users index.
+     *
+     * @param predictions predicted ratings
+     * @param test groundtruth ratings
+     * @param training training ratings, where item popularity is observed
+     * @param relThreshold relevance threshold
+     * @param ats cutoffs
+     * @param theGamma smoothing parameter
+     */
+    public PopularityStratifiedRecall(final DataModelIF<U, I> predictions, final DataModelIF<U, I> test, final DataModelIF<U, I> training,
+            final double relThreshold, final int[] ats, final double theGamma) {
+        this(predictions, test, relThreshold, ats, theGamma, DataModelUtils.getItemPopularity(training));
+    }
+
     /**
      * Computes the global popularity-stratified recall by applying the
      * normalized user weights w^u as defined in the paper.
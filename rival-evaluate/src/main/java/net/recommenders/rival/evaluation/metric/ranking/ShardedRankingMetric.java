@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.evaluation.metric.ranking;
+
+import net.recommenders.rival.core.DataModelIF;
+import net.recommenders.rival.core.ShardedDataModel;
+import net.recommenders.rival.evaluation.metric.EvaluationMetric;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranking metric computed in parallel over the shards of the predictions and
+ * the test set, which must have the same number of shards (so that every
+ * user is in the same shard of both). One metric is computed per shard and
+ * the results are merged, giving the same values as the metric on the whole
+ * models for metrics that average over users (precision, recall, MAP, and
+ * NDCG).
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>.
+ *
+ * @param <U> - type associated to users' ids
+ * @param <I> - type associated to items' ids
+ */
+public class ShardedRankingMetric<U, I> implements EvaluationMetric<U> {
+
+    /**
+     * Factory of the metrics computed on every shard.
+     */
+    private final MetricFactory<U, I> factory;
+    /**
+     * The predictions.
+     */
+    private final ShardedDataModel<U, I> predictions;
+    /**
+     * The test set.
+     */
+    private final ShardedDataModel<U, I> test;
+    /**
+     * The maximum number of threads.
+     */
+    private final int nThreads;
+    /**
+     * The metric of every shard, null until computed.
+     */
+    private List<AbstractRankingMetric<U, I>> metrics;
+    /**
+     * Metric per user.
+     */
+    private Map<U, Double> metricPerUser;
+    /**
+     * Global value.
+     */
+    private double value;
+
+    /**
+     * Factory of ranking metrics, one per shard.
+     *
+     * @param <U> - type associated to users' ids
+     * @param <I> - type associated to items' ids
+     */
+    public interface MetricFactory<U, I> {
+
+        /**
+         * Creates the metric for a shard.
+         *
+         * @param predictions predicted scores of the users of the shard
+         * @param test groundtruth of the users of the shard
+         * @return the metric for the shard.
+         */
+        AbstractRankingMetric<U, I> create(DataModelIF<U, I> predictions, DataModelIF<U, I> test);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param metricFactory factory of the metric computed on every shard
+     * @param thePredictions predicted scores for users and items
+     * @param theTest groundtruth information for users and items
+     * @param numThreads maximum number of shards evaluated at the same time
+     */
+    public ShardedRankingMetric(final MetricFactory<U, I> metricFactory, final ShardedDataModel<U, I> thePredictions, final ShardedDataModel<U, I> theTest, final int numThreads) {
+        if (thePredictions.getNumShards() != theTest.getNumShards()) {
+            throw new IllegalArgumentException("Predictions and test have different number of shards");
+        }
+        this.factory = metricFactory;
+        this.predictions = thePredictions;
+        this.test = theTest;
+        this.nThreads = numThreads;
+        this.metrics = null;
+        this.metricPerUser = new HashMap<>();
+        this.value = Double.NaN;
+    }
+
+    /**
+     * Computes the metric on every shard, and averages the per-user values.
+     */
+    @Override
+    public void compute() {
+        if (metrics != null) {
+            // since the data cannot change, avoid re-doing the calculations
+            return;
+        }
+        List<AbstractRankingMetric<U, I>> shardMetrics = test.forEachShard(new ShardedDataModel.ShardTask<U, I, AbstractRankingMetric<U, I>>() {
+            @Override
+            public AbstractRankingMetric<U, I> process(final int shard, final DataModelIF<U, I> model) {
+                AbstractRankingMetric<U, I> metric = factory.create(predictions.getShard(shard), model);
+                metric.compute();
+                return metric;
+            }
+        }, nThreads);
+        List<Map<U, Double>> perUser = new ArrayList<>(shardMetrics.size());
+        for (AbstractRankingMetric<U, I> metric : shardMetrics) {
+            perUser.add(metric.getValuePerUser());
+        }
+        metricPerUser = ShardedDataModel.mergeMaps(perUser);
+        double sum = 0.0;
+        for (double v : metricPerUser.values()) {
+            sum += v;
+        }
+        value = sum / metricPerUser.size();
+        metrics = shardMetrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<U, Double> getValuePerUser() {
+        return metricPerUser;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getValue(final U u) {
+        if (metricPerUser.containsKey(u)) {
+            return metricPerUser.get(u);
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Method to return the metric value at a particular cutoff level.
+     *
+     * @param at cutoff level
+     * @return the metric corresponding to the requested cutoff level
+     */
+    public double getValueAt(final int at) {
+        if (metrics == null) {
+            return Double.NaN;
+        }
+        boolean computed = false;
+        int n = 0;
+        double sum = 0.0;
+        for (int s = 0; s < metrics.size(); s++) {
+            AbstractRankingMetric<U, I> metric = metrics.get(s);
+            if (Double.isNaN(metric.getValueAt(at))) {
+                // no user of the shard has a value at this cutoff
+                continue;
+            }
+            computed = true;
+            for (U u : test.getShard(s).getUsers()) {
+                double v = metric.getValueAt(u, at);
+                if (!Double.isNaN(v)) {
+                    sum += v;
+                    n++;
+                }
+            }
+        }
+        if (!computed) {
+            return Double.NaN;
+        }
+        if (n == 0) {
+            return 0.0;
+        }
+        return sum / n;
+    }
+
+    /**
+     * Method to return the metric value at a particular cutoff level for a
+     * given user.
+     *
+     * @param user the user
+     * @param at cutoff level
+     * @return the metric corresponding to the requested user at the cutoff
+     * level
+     */
+    public double getValueAt(final U user, final int at) {
+        if (metrics == null) {
+            return Double.NaN;
+        }
+        int shard = ShardedDataModel.getShardIndex(user, metrics.size());
+        return metrics.get(shard).getValueAt(user, at);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        if (metrics == null) {
+            return "Sharded";
+        }
+        return metrics.get(0).toString();
+    }
+}
@@ -23,7 +23,11 @@ import java.io.InputStreamReader;
 import net.recommenders.rival.core.DataModel;
 import net.recommenders.rival.core.DataModelFactory;
 import net.recommenders.rival.core.DataModelIF;
-import net.recommenders.rival.core.Parser;
+import net.recommenders.rival.core.DataModelRecordVisitor;
+import net.recommenders.rival.core.LineTokenizer;
+import net.recommenders.rival.core.PreferenceBatch;
+import net.recommenders.rival.core.RecordVisitor;
+import net.recommenders.rival.core.StreamingParser;
 import net.recommenders.rival.core.TemporalDataModelIF;
 
 /**
@@ -31,7 +35,7 @@ import net.recommenders.rival.core.TemporalDataModelIF;
  *
  * @author <a href="http://github.com/abellogin">Alejandro</a>
  */
-public class TrecEvalParser implements Parser<Long, Long> {
+public class TrecEvalParser implements StreamingParser {
 
     /**
      * The column index for the user id in the file.
@@ -60,39 +64,46 @@ public class TrecEvalParser implements Parser<Long, Long> {
     @Override
     public DataModelIF<Long, Long> parseData(final File f) throws IOException {
         DataModelIF<Long, Long> dataset = DataModelFactory.getDefaultModel();
+        DataModelRecordVisitor visitor = new DataModelRecordVisitor(dataset, true, PreferenceBatch.DEFAULT_CAPACITY);
+        parse(f, visitor);
+        visitor.flush();
+        return dataset;
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(final File f, final RecordVisitor visitor) throws IOException {
         BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
         try {
+            LineTokenizer tokenizer = new LineTokenizer("\t");
             String line = null;
             while ((line = br.readLine()) != null) {
-                parseLine(line, dataset);
+                parseLine(tokenizer.tokenize(line), visitor);
             }
         } finally {
             br.close();
         }
-
-        return dataset;
     }
 
     /**
      * A method that parses a line from the file.
      *
-     * @param line the line to be parsed
-     * @param dataset the dataset where the information parsed from the line
-     * will be stored into.
+     * @param toks the tokens of the line to be parsed
+     * @param visitor the visitor of the record in the line.
      */
-    private void parseLine(final String line, final DataModelIF<Long, Long> dataset) {
-        String[] toks = line.split("\t");
+    private void parseLine(final LineTokenizer toks, final RecordVisitor visitor) {
         // user
-        long userId = Long.parseLong(toks[USER_TOK]);
+        long userId = toks.getLong(USER_TOK);
         // item
-        long itemId = Long.parseLong(toks[ITEM_TOK]);
+        long itemId = toks.getLong(ITEM_TOK);
         // preference
-        double preference = Double.parseDouble(toks[RATING_TOK]);
+        double preference = toks.getDouble(RATING_TOK);
         //////
         // update information
         //////
-        dataset.addPreference(userId, itemId, preference);
         // no timestamp info
+        visitor.visit(userId, itemId, preference, -1L);
     }
 }
@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import net.recommenders.rival.core.LineTokenizer;
 
 /**
  *
@@ -70,6 +71,15 @@ public final class StatisticsRunner {
      * Variable that represents the name of a property in the file.
      */
     public static final String AVOID_USERS = "statistics.users_to_avoid";
+    /**
+     * Tokenizer for tab-separated lines, one per thread.
+     */
+    private static final ThreadLocal<LineTokenizer> TOKENIZER = new ThreadLocal<LineTokenizer>() {
+        @Override
+        protected LineTokenizer initialValue() {
+            return new LineTokenizer("\t");
+        }
+    };
 
     /**
      * Utility classes should not have a public or default constructor.
@@ -261,12 +271,12 @@ public final class StatisticsRunner {
      * testing (e.g., 'all')
      */
     public static void readLine(final String format, final String line, final Map<String, Map<String, Double>> mapMetricUserValue, final Set<String> usersToAvoid) {
-        String[] toks = line.split("\t");
         // default (also trec_eval) format: metric \t user|all \t value
         if (format.equals("default")) {
-            String metric = toks[0];
-            String user = toks[1];
-            Double score = Double.parseDouble(toks[2]);
+            LineTokenizer toks = TOKENIZER.get().tokenize(line);
+            String metric = toks.getString(0);
+            String user = toks.getString(1);
+            Double score = toks.getDouble(2);
             if (usersToAvoid.contains(user)) {
                 return;
             }
@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import net.recommenders.rival.core.DataModelIF;
+import net.recommenders.rival.core.DataModelUtils;
 import net.recommenders.rival.evaluation.Pair;
 
 /**
@@ -46,6 +47,11 @@ public abstract class AbstractStrategy implements EvaluationStrategy<Long, Long>
      * The relevance threshold.
      */
     private double threshold;
+    /**
+     * The inverted (item to users) index of the training set, obtained the
+     * first time it is needed.
+     */
+    private Map<Long, Set<Long>> trainingItemUsers;
 
     /**
      * Default constructor for the evaluation strategy.
@@ -88,7 +94,9 @@ public abstract class AbstractStrategy implements EvaluationStrategy<Long, Long>
     }
 
     /**
-     * Get the items appearing in the training set and not in the data model.
+     * Get the items appearing in the training set and not in the data model,
+     * i.e., the items of the model whose training users (according to the
+     * item-to-users index of the training set) do not include the user.
      *
      * @param model The data model.
      * @param user The user.
@@ -97,9 +105,10 @@ public abstract class AbstractStrategy implements EvaluationStrategy<Long, Long>
     protected Set<Long> getModelTrainingDifference(final DataModelIF<Long, Long> model, final Long user) {
         final Set<Long> items = new HashSet<Long>();
         if (training.getUserItemPreferences().containsKey(user)) {
-            final Set<Long> trainingItems = training.getUserItemPreferences().get(user).keySet();
+            final Map<Long, Set<Long>> itemUsers = getTrainingItemUsers();
             for (Long item : model.getItems()) {
-                if (!trainingItems.contains(item)) {
+                final Set<Long> users = itemUsers.get(item);
+                if ((users == null) || (!users.contains(user))) {
                     items.add(item);
                 }
             }
@@ -107,6 +116,19 @@ public abstract class AbstractStrategy implements EvaluationStrategy<Long, Long>
         return items;
     }
 
+    /**
+     * Gets the inverted (item to users) index of the training set.
+     *
+     * @return the map between items and the users with training preferences
+     * for them
+     */
+    protected Map<Long, Set<Long>> getTrainingItemUsers() {
+        if (trainingItemUsers == null) {
+            trainingItemUsers = DataModelUtils.getItemUsers(training);
+        }
+        return trainingItemUsers;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -31,7 +31,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import net.recommenders.rival.core.DataModelIF;
-import net.recommenders.rival.core.SimpleParser;
+import net.recommenders.rival.core.DataModelUtils;
 import net.recommenders.rival.evaluation.Pair;
 
 /**
@@ -164,11 +164,11 @@ public final class MultipleStrategyRunner {
         for (String split : splits) {
             File trainingFile = new File(split + trainingSuffix);
             System.out.println("Parsing started: training file" + trainingFile);
-            DataModelIF<Long, Long> trainingModel = new SimpleParser().parseData(trainingFile);
+            DataModelIF<Long, Long> trainingModel = DataModelUtils.loadDataModel(trainingFile);
             System.out.println("Parsing finished: training file ");
             File testFile = new File(split + testSuffix);
             System.out.println("Parsing started: test file" + testFile);
-            DataModelIF<Long, Long> testModel = new SimpleParser().parseData(testFile);
+            DataModelIF<Long, Long> testModel = DataModelUtils.loadDataModel(testFile);
             System.out.println("Parsing finished: test file");
             Set<String> recommendationFiles = new HashSet<String>();
             getAllRecommendationFiles(recommendationFiles, inputFolder, new File(split).getName(), inputSuffix);
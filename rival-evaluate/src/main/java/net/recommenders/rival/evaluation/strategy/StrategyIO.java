@@ -18,6 +18,7 @@ package net.recommenders.rival.evaluation.strategy;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import net.recommenders.rival.core.LineTokenizer;
 import net.recommenders.rival.evaluation.Pair;
 
 /**
@@ -27,6 +28,16 @@ import net.recommenders.rival.evaluation.Pair;
  */
 public final class StrategyIO {
 
+    /**
+     * Tokenizer for tab-separated lines, one per thread.
+     */
+    private static final ThreadLocal<LineTokenizer> TOKENIZER = new ThreadLocal<LineTokenizer>() {
+        @Override
+        protected LineTokenizer initialValue() {
+            return new LineTokenizer("\t");
+        }
+    };
+
     /**
      * Utility classes should not have a public or default constructor.
      */
@@ -41,26 +52,42 @@ public final class StrategyIO {
      * information will be stored into.
      */
     public static void readLine(final String line, final Map<Long, List<Pair<Long, Double>>> mapUserRecommendations) {
-        String[] toks = line.split("\t");
+        LineTokenizer toks = TOKENIZER.get().tokenize(line);
         // mymedialite format: user \t [item:score,item:score,...]
-        if (line.contains(":") && line.contains(",")) {
-            Long user = Long.parseLong(toks[0]);
-            String items = toks[1].replace("[", "").replace("]", "");
-            for (String pair : items.split(",")) {
-                String[] pairToks = pair.split(":");
-                Long item = Long.parseLong(pairToks[0]);
-                Double score = Double.parseDouble(pairToks[1]);
-                List<Pair<Long, Double>> userRec = mapUserRecommendations.get(user);
-                if (userRec == null) {
-                    userRec = new ArrayList<Pair<Long, Double>>();
-                    mapUserRecommendations.put(user, userRec);
+        if (line.indexOf(':') >= 0 && line.indexOf(',') >= 0) {
+            Long user = toks.getLong(0);
+            List<Pair<Long, Double>> userRec = mapUserRecommendations.get(user);
+            if (userRec == null) {
+                userRec = new ArrayList<Pair<Long, Double>>();
+                mapUserRecommendations.put(user, userRec);
+            }
+            int from = toks.getStart(1);
+            int to = toks.getEnd(1);
+            if (from < to && line.charAt(from) == '[') {
+                from++;
+            }
+            if (to > from && line.charAt(to - 1) == ']') {
+                to--;
+            }
+            int pairStart = from;
+            while (pairStart < to) {
+                int pairEnd = line.indexOf(',', pairStart);
+                if (pairEnd < 0 || pairEnd > to) {
+                    pairEnd = to;
+                }
+                int colon = line.indexOf(':', pairStart);
+                if (colon < 0 || colon > pairEnd) {
+                    colon = pairEnd;
                 }
+                Long item = LineTokenizer.parseLong(line, pairStart, colon);
+                Double score = LineTokenizer.parseDouble(line, colon + 1, pairEnd);
                 userRec.add(new Pair<Long, Double>(item, score));
+                pairStart = pairEnd + 1;
             }
         } else {
-            Long user = Long.parseLong(toks[0]);
-            Long item = Long.parseLong(toks[1]);
-            Double score = Double.parseDouble(toks[2]);
+            Long user = toks.getLong(0);
+            Long item = toks.getLong(1);
+            Double score = toks.getDouble(2);
             List<Pair<Long, Double>> userRec = mapUserRecommendations.get(user);
             if (userRec == null) {
                 userRec = new ArrayList<Pair<Long, Double>>();
@@ -31,7 +31,8 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import net.recommenders.rival.core.DataModelIF;
-import net.recommenders.rival.core.SimpleParser;
+import net.recommenders.rival.core.DataModelUtils;
+import net.recommenders.rival.core.MemoryEstimator;
 import net.recommenders.rival.evaluation.Pair;
 
 /**
@@ -85,6 +86,15 @@ public final class StrategyRunner {
      * Variable that represents the name of a property in the file.
      */
     public static final String RELPLUSN_SEED = "strategy.relplusn.seed";
+    /**
+     * Approximate length of a line of a recommendation file.
+     */
+    private static final long BYTES_PER_LINE = 24L;
+    /**
+     * Approximate heap footprint of a recommendation read from a file (a
+     * pair with a boxed item and score, and its slot in a list).
+     */
+    private static final long BYTES_PER_RECOMMENDATION = 72L;
 
     /**
      * Utility classes should not have a public or default constructor.
@@ -129,11 +139,11 @@ public final class StrategyRunner {
         // read splits
         System.out.println("Parsing started: training file");
         File trainingFile = new File(properties.getProperty(TRAINING_FILE));
-        DataModelIF<Long, Long> trainingModel = new SimpleParser().parseData(trainingFile);
+        DataModelIF<Long, Long> trainingModel = DataModelUtils.loadDataModel(trainingFile);
         System.out.println("Parsing finished: training file");
         System.out.println("Parsing started: test file");
         File testFile = new File(properties.getProperty(TEST_FILE));
-        DataModelIF<Long, Long> testModel = new SimpleParser().parseData(testFile);
+        DataModelIF<Long, Long> testModel = DataModelUtils.loadDataModel(testFile);
         System.out.println("Parsing finished: test file");
         // read other parameters
         File inputFile = new File(properties.getProperty(INPUT_FILE));
@@ -150,7 +160,8 @@ public final class StrategyRunner {
         // get strategy
         EvaluationStrategy<Long, Long> strategy = instantiateStrategy(properties, trainingModel, testModel);
 
-        // read recommendations: user \t item \t score
+        // check that the recommendations fit in memory, then read them: user \t item \t score
+        MemoryEstimator.checkHeap(projectRecommendationsFootprint(inputFile), "Reading the recommendations");
         final Map<Long, List<Pair<Long, Double>>> mapUserRecommendations = new HashMap<Long, List<Pair<Long, Double>>>();
         BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile), "UTF-8"));
         try {
@@ -165,6 +176,18 @@ public final class StrategyRunner {
         generateOutput(testModel, mapUserRecommendations, strategy, format, rankingFile, groundtruthFile, overwrite);
     }
 
+    /**
+     * Projects the memory needed to keep the recommendations of a file in
+     * memory: every line (about {@link #BYTES_PER_LINE} bytes of text)
+     * becomes a boxed item and score in a list of pairs.
+     *
+     * @param inputFile the file with the recommendations.
+     * @return the projected size of the recommendations, in bytes.
+     */
+    public static long projectRecommendationsFootprint(final File inputFile) {
+        return inputFile.length() / BYTES_PER_LINE * BYTES_PER_RECOMMENDATION;
+    }
+
     /**
      * Instantiates an strategy, according to the provided properties mapping.
      *
@@ -30,7 +30,8 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import net.recommenders.rival.core.DataModelIF;
-import net.recommenders.rival.core.SimpleParser;
+import net.recommenders.rival.core.DataModelUtils;
+import net.recommenders.rival.core.UserLineReader;
 import net.recommenders.rival.evaluation.Pair;
 
 /**
@@ -135,11 +136,11 @@ public final class StrategyRunnerInfile {
         // read splits
         System.out.println("Parsing started: training file");
         File trainingFile = new File(properties.getProperty(TRAINING_FILE));
-        DataModelIF<Long, Long> trainingModel = new SimpleParser().parseData(trainingFile);
+        DataModelIF<Long, Long> trainingModel = DataModelUtils.loadDataModel(trainingFile);
         System.out.println("Parsing finished: training file");
         System.out.println("Parsing started: test file");
         File testFile = new File(properties.getProperty(TEST_FILE));
-        DataModelIF<Long, Long> testModel = new SimpleParser().parseData(testFile);
+        DataModelIF<Long, Long> testModel = DataModelUtils.loadDataModel(testFile);
         System.out.println("Parsing finished: test file");
         // read other parameters
         File inputFile = new File(properties.getProperty(INPUT_FILE));
@@ -175,7 +176,11 @@ public final class StrategyRunnerInfile {
 
     /**
      * Runs a particular strategy on some data using pre-computed
-     * recommendations and outputs the result into a file.
+     * recommendations and outputs the result into a file. The recommendation
+     * file is indexed by user (see
+     * {@link net.recommenders.rival.core.UserLineIndex}), so that only the
+     * lines of the test users are read; if its lines are not grouped by user,
+     * it is scanned once per user instead.
      *
      * @param testModel The test split
      * @param userRecommendationFile The file where recommendations are stored
@@ -203,31 +208,45 @@ public final class StrategyRunnerInfile {
         } else {
             outGroundtruth = new PrintStream(groundtruthFile, "UTF-8");
         }
-        for (Long user : testModel.getUsers()) {
-            if (outRanking != null) {
-                final List<Pair<Long, Double>> allScoredItems = readScoredItems(userRecommendationFile, user);
-                if (allScoredItems == null) {
-                    continue;
-                }
-                final Set<Long> items = strategy.getCandidateItemsToRank(user);
-                final List<Pair<Long, Double>> scoredItems = new ArrayList<Pair<Long, Double>>();
-                for (Pair<Long, Double> scoredItem : allScoredItems) {
-                    if (items.contains(scoredItem.getFirst())) {
-                        scoredItems.add(scoredItem);
+        UserLineReader reader = null;
+        if (outRanking != null) {
+            try {
+                reader = UserLineReader.open(userRecommendationFile, '\t');
+            } catch (IllegalArgumentException e) {
+                System.out.println("Not indexing " + userRecommendationFile + ": " + e.getMessage());
+            }
+        }
+        try {
+            for (Long user : testModel.getUsers()) {
+                if (outRanking != null) {
+                    final List<Pair<Long, Double>> allScoredItems = (reader == null) ? readScoredItems(userRecommendationFile, user) : readScoredItems(reader, user);
+                    if (allScoredItems == null) {
+                        continue;
+                    }
+                    final Set<Long> items = strategy.getCandidateItemsToRank(user);
+                    final List<Pair<Long, Double>> scoredItems = new ArrayList<Pair<Long, Double>>();
+                    for (Pair<Long, Double> scoredItem : allScoredItems) {
+                        if (items.contains(scoredItem.getFirst())) {
+                            scoredItems.add(scoredItem);
+                        }
                     }
+                    strategy.printRanking(user, scoredItems, outRanking, format);
                 }
-                strategy.printRanking(user, scoredItems, outRanking, format);
+                if (outGroundtruth != null) {
+                    strategy.printGroundtruth(user, outGroundtruth, format);
+                }
+            }
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+            if (outRanking != null) {
+                outRanking.close();
             }
             if (outGroundtruth != null) {
-                strategy.printGroundtruth(user, outGroundtruth, format);
+                outGroundtruth.close();
             }
         }
-        if (outRanking != null) {
-            outRanking.close();
-        }
-        if (outGroundtruth != null) {
-            outGroundtruth.close();
-        }
     }
 
     /**
@@ -263,4 +282,28 @@ public final class StrategyRunnerInfile {
         }
         return mapUserRecommendations.get(user);
     }
+
+    /**
+     * Method that reads the scores given to items by a recommender only for a
+     * given user, reading only the lines of the user.
+     *
+     * @param reader The reader of the indexed file with the recommendation
+     * scores
+     * @param user The user
+     * @return the pairs (item, score) contained in the file for that user, or
+     * null if there are none
+     * @throws IOException when the file cannot be read
+     * @see StrategyIO#readLine(java.lang.String, java.util.Map)
+     */
+    public static List<Pair<Long, Double>> readScoredItems(final UserLineReader reader, final Long user) throws IOException {
+        final List<String> lines = reader.readLines(user);
+        if (lines == null) {
+            return null;
+        }
+        final Map<Long, List<Pair<Long, Double>>> mapUserRecommendations = new HashMap<Long, List<Pair<Long, Double>>>();
+        for (String line : lines) {
+            StrategyIO.readLine(line, mapUserRecommendations);
+        }
+        return mapUserRecommendations.get(user);
+    }
 }
@@ -26,6 +26,7 @@ import net.recommenders.rival.core.DataModelFactory;
 import net.recommenders.rival.evaluation.metric.ranking.PopularityStratifiedRecall;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test for {@link PopularityStratifiedRecall}.
@@ -68,4 +69,41 @@ public class PopularityStratifiedRecallTest {
             assertEquals(1.0, value, 0.0);
         }
     }
+
+    @Test
+    public void testPopularityFromTraining() {
+        DataModelIF<Long, Long> predictions = DataModelFactory.getDefaultModel();
+        DataModelIF<Long, Long> test = DataModelFactory.getDefaultModel();
+        DataModelIF<Long, Long> training = DataModelFactory.getDefaultModel();
+        for (long i = 1L; i < 31; i++) {
+            for (long j = 1L; j < 21; j++) {
+                if ((i * j) % 3 == 0) {
+                    training.addPreference(i, j, 1.0);
+                } else if ((i + j) % 2 == 0) {
+                    test.addPreference(i, j, i * j % 5 + 1.0);
+                }
+                predictions.addPreference(i, j, (i + 2 * j) % 7 + 1.0);
+            }
+        }
+        // popularity counted by going through the training users
+        Map<Long, Integer> popularity = new HashMap<Long, Integer>();
+        for (Map.Entry<Long, Map<Long, Double>> e : training.getUserItemPreferences().entrySet()) {
+            for (Long item : e.getValue().keySet()) {
+                Integer n = popularity.get(item);
+                popularity.put(item, n == null ? 1 : n + 1);
+            }
+        }
+        int[] ats = new int[]{5, 10, 20};
+        double gamma = 1.5;
+        PopularityStratifiedRecall<Long, Long> expected = new PopularityStratifiedRecall<Long, Long>(predictions, test, 3.0, ats, gamma, popularity);
+        PopularityStratifiedRecall<Long, Long> recall = new PopularityStratifiedRecall<Long, Long>(predictions, test, training, 3.0, ats, gamma);
+        expected.compute();
+        recall.compute();
+        assertTrue(recall.getValue() > 0.0);
+        assertEquals(expected.getValue(), recall.getValue(), 0.0);
+        for (int at : ats) {
+            assertEquals(expected.getValueAt(at), recall.getValueAt(at), 0.0);
+        }
+        assertEquals(expected.getValuePerUser(), recall.getValuePerUser());
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.evaluation.metric;
+
+import net.recommenders.rival.core.DataModelFactory;
+import net.recommenders.rival.core.DataModelIF;
+import net.recommenders.rival.core.ShardedDataModel;
+import net.recommenders.rival.evaluation.metric.ranking.AbstractRankingMetric;
+import net.recommenders.rival.evaluation.metric.ranking.NDCG;
+import net.recommenders.rival.evaluation.metric.ranking.Precision;
+import net.recommenders.rival.evaluation.metric.ranking.ShardedRankingMetric;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ShardedRankingMetric}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>.
+ */
+@RunWith(JUnit4.class)
+public class ShardedRankingMetricTest {
+
+    @Test
+    public void testSameAsUnsharded() {
+        DataModelIF<Long, Long> predictions = DataModelFactory.getDefaultModel();
+        DataModelIF<Long, Long> test = DataModelFactory.getDefaultModel();
+        for (long i = 1L; i < 40; i++) {
+            for (long j = 1L; j < 15; j++) {
+                if ((i + j) % 4 != 0) {
+                    test.addPreference(i, j, i * j % 5 + 1.0);
+                }
+                if (i % 7 != 0) {
+                    predictions.addPreference(i, j, (i + j) % 6 + 1.0);
+                }
+            }
+        }
+        final int[] ats = new int[]{1, 5, 10, 20};
+        ShardedDataModel<Long, Long> shardedPredictions = ShardedDataModel.shard(predictions, 4);
+        ShardedDataModel<Long, Long> shardedTest = ShardedDataModel.shard(test, 4);
+
+        Precision<Long, Long> precision = new Precision<Long, Long>(predictions, test, 3.0, ats);
+        precision.compute();
+        ShardedRankingMetric<Long, Long> shardedPrecision = new ShardedRankingMetric<Long, Long>(new ShardedRankingMetric.MetricFactory<Long, Long>() {
+            @Override
+            public AbstractRankingMetric<Long, Long> create(final DataModelIF<Long, Long> p, final DataModelIF<Long, Long> t) {
+                return new Precision<Long, Long>(p, t, 3.0, ats);
+            }
+        }, shardedPredictions, shardedTest, 2);
+        // no values before computing the metric
+        assertTrue(Double.isNaN(shardedPrecision.getValue(1L)));
+        assertTrue(Double.isNaN(shardedPrecision.getValueAt(5)));
+        assertTrue(shardedPrecision.getValuePerUser().isEmpty());
+        shardedPrecision.compute();
+        assertSameValues(precision, shardedPrecision, ats);
+
+        NDCG<Long, Long> ndcg = new NDCG<Long, Long>(predictions, test, ats);
+        ndcg.compute();
+        ShardedRankingMetric<Long, Long> shardedNdcg = new ShardedRankingMetric<Long, Long>(new ShardedRankingMetric.MetricFactory<Long, Long>() {
+            @Override
+            public AbstractRankingMetric<Long, Long> create(final DataModelIF<Long, Long> p, final DataModelIF<Long, Long> t) {
+                return new NDCG<Long, Long>(p, t, ats);
+            }
+        }, shardedPredictions, shardedTest, 3);
+        shardedNdcg.compute();
+        assertSameValues(ndcg, shardedNdcg, ats);
+    }
+
+    /**
+     * Checks that a sharded metric has the same values as the original one.
+     *
+     * @param expected the metric computed on the whole models.
+     * @param actual the sharded metric.
+     * @param ats the cutoffs.
+     */
+    private static void assertSameValues(final AbstractRankingMetric<Long, Long> expected, final ShardedRankingMetric<Long, Long> actual, final int[] ats) {
+        assertEquals(expected.getValue(), actual.getValue(), 1e-12);
+        assertEquals(expected.getValuePerUser(), actual.getValuePerUser());
+        for (int at : ats) {
+            assertEquals(expected.getValueAt(at), actual.getValueAt(at), 1e-12);
+            for (Map.Entry<Long, Double> e : expected.getValuePerUser().entrySet()) {
+                assertEquals(expected.getValueAt(e.getKey(), at), actual.getValueAt(e.getKey(), at), 0.0);
+            }
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+}
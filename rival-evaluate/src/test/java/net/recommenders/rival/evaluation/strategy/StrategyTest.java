@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.evaluation.strategy;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import net.recommenders.rival.core.DataModel;
+import net.recommenders.rival.core.TemporalDataModel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the candidate items of the evaluation strategies.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>.
+ */
+@RunWith(JUnit4.class)
+public class StrategyTest {
+
+    /**
+     * The training set.
+     */
+    private DataModel<Long, Long> training;
+    /**
+     * The test set.
+     */
+    private DataModel<Long, Long> test;
+
+    @Before
+    public void initialize() {
+        training = new TemporalDataModel<Long, Long>();
+        test = new TemporalDataModel<Long, Long>();
+        for (long u = 1L; u <= 30L; u++) {
+            for (long i = 1L; i <= 25L; i++) {
+                if ((u * i) % 3 == 0) {
+                    training.addPreference(u, i, (double) (u + i) % 5 + 1.0);
+                } else if ((u + i) % 4 == 0) {
+                    test.addPreference(u, i, (double) (u * i) % 5 + 1.0);
+                }
+            }
+        }
+        // items only in the test set
+        test.addPreference(3L, 100L, 5.0);
+        test.addPreference(6L, 101L, 4.0);
+    }
+
+    /**
+     * Gets the items of a model not rated by a user in the training set, by
+     * looking at the training preferences of the user.
+     *
+     * @param model the model.
+     * @param user the user.
+     * @return the items of the model not rated by the user in training.
+     */
+    private Set<Long> getUnratedItems(final DataModel<Long, Long> model, final Long user) {
+        Set<Long> items = new HashSet<Long>();
+        Map<Long, Double> prefs = training.getUserItemPreferences().get(user);
+        if (prefs != null) {
+            for (Long i : model.getItems()) {
+                if (!prefs.containsKey(i)) {
+                    items.add(i);
+                }
+            }
+        }
+        return items;
+    }
+
+    @Test
+    public void testCandidateItems() {
+        TrainItems trainItems = new TrainItems(training, test, 3.0);
+        TestItems testItems = new TestItems(training, test, 3.0);
+        AllItems allItems = new AllItems(training, test, 3.0);
+        for (Long u : test.getUsers()) {
+            Set<Long> expectedTrain = getUnratedItems(training, u);
+            Set<Long> expectedTest = getUnratedItems(test, u);
+            Set<Long> expectedAll = new HashSet<Long>(expectedTrain);
+            expectedAll.addAll(expectedTest);
+            assertEquals(expectedTrain, trainItems.getCandidateItemsToRank(u));
+            assertEquals(expectedTest, testItems.getCandidateItemsToRank(u));
+            assertEquals(expectedAll, allItems.getCandidateItemsToRank(u));
+        }
+        // a test user without training preferences has no candidates
+        test.addPreference(1000L, 1L, 5.0);
+        assertEquals(0, allItems.getCandidateItemsToRank(1000L).size());
+        // item 1 is in the test set, but user 3 rated it in training
+        assertTrue(test.getItems().contains(1L));
+        assertFalse(testItems.getCandidateItemsToRank(3L).contains(1L));
+    }
+}
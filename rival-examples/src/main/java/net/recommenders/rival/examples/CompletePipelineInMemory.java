@@ -27,6 +27,7 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import net.recommenders.rival.core.DataModelFactory;
 import net.recommenders.rival.core.DataModelIF;
+import net.recommenders.rival.core.MemoryEstimator;
 import net.recommenders.rival.core.Parser;
 import net.recommenders.rival.core.TemporalDataModelIF;
 import net.recommenders.rival.evaluation.metric.EvaluationMetric;
@@ -238,7 +239,10 @@ public final class CompletePipelineInMemory {
         // parse dataset
         Parser<Long, Long> parser = ParserRunner.instantiateParser(properties);
         TemporalDataModelIF<Long, Long> data = parser.parseTemporalData(new File(inFile));
-        // prepare splits
+        // prepare splits, checking first that they fit in memory if requested
+        if (Boolean.parseBoolean(properties.getProperty(SplitterRunner.SPLIT_MEMORY_CHECK, "false"))) {
+            MemoryEstimator.checkHeap(SplitterRunner.projectSplitsFootprint(properties, data), "Splitting the dataset");
+        }
         Splitter<Long, Long> splitter = SplitterRunner.instantiateSplitter(properties);
         return splitter.split(data);
     }
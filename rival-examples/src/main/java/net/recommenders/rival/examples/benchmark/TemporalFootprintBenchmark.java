@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.examples.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import net.recommenders.rival.core.CompactTemporalDataModel;
+import net.recommenders.rival.core.DataModelRecordVisitor;
+import net.recommenders.rival.core.TemporalDataModel;
+import net.recommenders.rival.core.TemporalDataModelIF;
+import net.recommenders.rival.split.parser.LastfmCelma1KParser;
+
+/**
+ * Benchmark that compares the heap used by {@link TemporalDataModel} and
+ * {@link CompactTemporalDataModel} when loading a Last.fm 1K listening log
+ * (userid-timestamp-artid-artname-traid-traname.tsv). If no file is given, a
+ * synthetic log with the same format is generated.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public final class TemporalFootprintBenchmark {
+
+    /**
+     * Default number of lines of the synthetic log.
+     */
+    public static final int LINES = 2000000;
+    /**
+     * Number of users of the synthetic log.
+     */
+    public static final int USERS = 1000;
+    /**
+     * Number of tracks of the synthetic log.
+     */
+    public static final int TRACKS = 20000;
+    /**
+     * Default seed.
+     */
+    public static final long SEED = 2048L;
+
+    /**
+     * Utility classes should not have a public or default constructor.
+     */
+    private TemporalFootprintBenchmark() {
+    }
+
+    /**
+     * Main method. The optional parameter is the path of the Last.fm 1K
+     * file.
+     *
+     * @param args the arguments
+     * @throws IOException when the file cannot be read or generated
+     */
+    public static void main(final String[] args) throws IOException {
+        File log;
+        if (args.length > 0) {
+            log = new File(args[0]);
+        } else {
+            log = File.createTempFile("lastfm1k", ".tsv");
+            log.deleteOnExit();
+            generateLog(log, LINES);
+        }
+        LastfmCelma1KParser parser = new LastfmCelma1KParser(false);
+        long plain = measure(parser, log, new TemporalDataModel<Long, Long>());
+        long compact = measure(parser, log, new CompactTemporalDataModel<Long, Long>());
+        System.out.println("TemporalDataModel: " + plain / (1 << 20) + " MB");
+        System.out.println("CompactTemporalDataModel: " + compact / (1 << 20) + " MB");
+        System.out.println(String.format("Reduction: %.1f%%", 100.0 * (plain - compact) / plain));
+    }
+
+    /**
+     * Generates a synthetic listening log.
+     *
+     * @param out the output file
+     * @param n number of lines
+     * @throws IOException when the file cannot be written
+     */
+    private static void generateLog(final File out, final int n) throws IOException {
+        Random rnd = new Random(SEED);
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        PrintStream ps = new PrintStream(out, "UTF-8");
+        long time = 1108296000000L;
+        for (int i = 0; i < n; i++) {
+            time += rnd.nextInt(600) * 1000L;
+            int user = rnd.nextInt(USERS);
+            // skewed track popularity
+            int track = (int) (TRACKS * Math.pow(rnd.nextDouble(), 3));
+            ps.println("user_" + user + "\t" + sdf.format(new Date(time)) + "\tart-" + (track / 10) + "\tArtist " + (track / 10)
+                    + "\ttra-" + track + "\tTrack " + track);
+        }
+        ps.close();
+    }
+
+    /**
+     * Loads a log into a data model and measures the heap it uses.
+     *
+     * @param parser the parser
+     * @param log the log
+     * @param model the (empty) data model
+     * @return the used heap, in bytes
+     * @throws IOException when the file cannot be read
+     */
+    private static long measure(final LastfmCelma1KParser parser, final File log, final TemporalDataModelIF<Long, Long> model) throws IOException {
+        long before = usedMemory();
+        parser.parse(log, null, new DataModelRecordVisitor(model));
+        long after = usedMemory();
+        // keep the model reachable until it has been measured
+        System.out.println(model.getClass().getSimpleName() + ": " + model.getNumUsers() + " users, " + model.getNumItems() + " items");
+        return after - before;
+    }
+
+    /**
+     * Returns the used heap after a garbage collection.
+     *
+     * @return the used heap, in bytes
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
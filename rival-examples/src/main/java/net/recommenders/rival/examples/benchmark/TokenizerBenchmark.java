@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.examples.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import net.recommenders.rival.core.LineTokenizer;
+
+/**
+ * Benchmark that compares the time and the memory allocated per line when
+ * parsing "user \t item \t rating \t timestamp" lines with
+ * {@link String#split} and with {@link LineTokenizer}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+public final class TokenizerBenchmark {
+
+    /**
+     * Default number of lines.
+     */
+    public static final int LINES = 1000000;
+    /**
+     * Number of rounds (the first ones warm up the JIT).
+     */
+    public static final int ROUNDS = 5;
+    /**
+     * Default seed.
+     */
+    public static final long SEED = 2048L;
+
+    /**
+     * Utility classes should not have a public or default constructor.
+     */
+    private TokenizerBenchmark() {
+    }
+
+    /**
+     * Main method. The optional parameter is the number of lines.
+     *
+     * @param args the arguments
+     */
+    public static void main(final String[] args) {
+        int n = LINES;
+        if (args.length > 0) {
+            n = Integer.parseInt(args[0]);
+        }
+        String[] lines = generateLines(n);
+        LineTokenizer tokenizer = new LineTokenizer("\t");
+        for (int r = 0; r < ROUNDS; r++) {
+            long[] split = measure(lines, null);
+            long[] tokens = measure(lines, tokenizer);
+            System.out.println("Round " + r + ": split " + split[0] / n + " ns/line, " + bytesPerLine(split[1], n)
+                    + "; tokenizer " + tokens[0] / n + " ns/line, " + bytesPerLine(tokens[1], n));
+        }
+    }
+
+    /**
+     * Generates random lines.
+     *
+     * @param n number of lines
+     * @return the lines
+     */
+    private static String[] generateLines(final int n) {
+        Random rnd = new Random(SEED);
+        String[] lines = new String[n];
+        for (int i = 0; i < n; i++) {
+            lines[i] = rnd.nextInt(100000) + "\t" + rnd.nextInt(50000) + "\t" + (1 + rnd.nextInt(10) / 2.0) + "\t" + (1300000000L + rnd.nextInt(100000000));
+        }
+        return lines;
+    }
+
+    /**
+     * Parses every line and measures the time and the memory allocated by
+     * the current thread.
+     *
+     * @param lines the lines
+     * @param tokenizer the tokenizer, or null to use {@link String#split}
+     * @return the elapsed nanoseconds and the allocated bytes (-1 if not
+     * available)
+     */
+    private static long[] measure(final String[] lines, final LineTokenizer tokenizer) {
+        long checksum = 0L;
+        long bytes = allocatedBytes();
+        long time = System.nanoTime();
+        for (String line : lines) {
+            if (tokenizer == null) {
+                String[] toks = line.split("\t");
+                checksum += Long.parseLong(toks[0]) + Long.parseLong(toks[1]) + (long) Double.parseDouble(toks[2]) + Long.parseLong(toks[3]);
+            } else {
+                tokenizer.tokenize(line);
+                checksum += tokenizer.getLong(0) + tokenizer.getLong(1) + (long) tokenizer.getDouble(2) + tokenizer.getLong(3);
+            }
+        }
+        time = System.nanoTime() - time;
+        long after = allocatedBytes();
+        if (checksum == 0L) {
+            System.out.println("Unexpected checksum");
+        }
+        return new long[]{time, (bytes < 0 || after < 0) ? -1L : after - bytes};
+    }
+
+    /**
+     * Formats the allocated bytes per line.
+     *
+     * @param bytes the allocated bytes (-1 if not available)
+     * @param n number of lines
+     * @return the formatted value
+     */
+    private static String bytesPerLine(final long bytes, final int n) {
+        if (bytes < 0) {
+            return "n/a bytes/line";
+        }
+        return String.format("%.2f bytes/line", 1.0 * bytes / n);
+    }
+
+    /**
+     * Returns the memory allocated by the current thread, if the JVM supports
+     * it.
+     *
+     * @return the allocated bytes, or -1 if not available
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1L;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * RiVal micro-benchmarks.
+ */
+package net.recommenders.rival.examples.benchmark;
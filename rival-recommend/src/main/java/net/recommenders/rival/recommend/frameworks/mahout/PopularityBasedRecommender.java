@@ -63,7 +63,7 @@ public class PopularityBasedRecommender extends AbstractRecommender implements R
      */
     @Override
     public float estimatePreference(final long u, final long i) throws TasteException {
-        return 1.0f * getDataModel().getPreferencesForItem(i).length();
+        return 1.0f * getDataModel().getNumUsersWithPreferenceFor(i);
     }
 
     /**
@@ -28,6 +28,19 @@ import net.recommenders.rival.core.SimpleParser;
  */
 public class AbstractLastfmCelmaParser {
 
+    /**
+     * Layout of the timestamps: yyyy-MM-dd'T'HH:mm:ss'Z'.
+     */
+    private static final String TIMESTAMP_LAYOUT = "0000-00-00T00:00:00Z";
+    /**
+     * Days between 0000-03-01 and 1970-01-01 in the proleptic Gregorian
+     * calendar.
+     */
+    private static final long EPOCH_SHIFT = 719468L;
+    /**
+     * Days in an era of 400 years.
+     */
+    private static final long DAYS_PER_ERA = 146097L;
     /**
      * A flag that indicates if the artists should be considered as the items
      * (instead of tracks).
@@ -57,18 +70,80 @@ public class AbstractLastfmCelmaParser {
         long id = 0;
         if (in.exists()) {
             BufferedReader br = SimpleParser.getBufferedReader(in);
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] toks = line.split("\t");
-                long i = Long.parseLong(toks[1]);
-                map.put(toks[0], i);
-                id = Math.max(i, id);
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] toks = line.split("\t");
+                    long i = Long.parseLong(toks[1]);
+                    map.put(toks[0], i);
+                    id = Math.max(i, id);
+                }
+            } finally {
+                br.close();
             }
-            br.close();
         }
         return id + 1;
     }
 
+    /**
+     * Parses a UTC timestamp with the fixed layout yyyy-MM-dd'T'HH:mm:ss'Z'
+     * used by the Last.fm logs, directly from a region of a character
+     * sequence. Unlike {@link java.text.SimpleDateFormat}, it does not
+     * allocate any object and can be used from several threads.
+     *
+     * @param s the sequence.
+     * @param from first position of the timestamp (inclusive).
+     * @param to last position of the timestamp (exclusive).
+     * @return the timestamp, in milliseconds since the epoch.
+     * @throws IllegalArgumentException if the region is not a valid
+     * timestamp.
+     */
+    public static long parseTimestamp(final CharSequence s, final int from, final int to) {
+        if (to - from != TIMESTAMP_LAYOUT.length()) {
+            throw new IllegalArgumentException("Invalid timestamp: " + s.subSequence(from, to));
+        }
+        for (int i = 0; i < TIMESTAMP_LAYOUT.length(); i++) {
+            char c = s.charAt(from + i);
+            char l = TIMESTAMP_LAYOUT.charAt(i);
+            if (l == '0' ? (c < '0' || c > '9') : c != l) {
+                throw new IllegalArgumentException("Invalid timestamp: " + s.subSequence(from, to));
+            }
+        }
+        long year = digits(s, from, 4);
+        int month = digits(s, from + 5, 2);
+        int day = digits(s, from + 8, 2);
+        int hour = digits(s, from + 11, 2);
+        int minute = digits(s, from + 14, 2);
+        int second = digits(s, from + 17, 2);
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59) {
+            throw new IllegalArgumentException("Invalid timestamp: " + s.subSequence(from, to));
+        }
+        // days since the epoch (civil calendar algorithm, years start in March)
+        long y = month <= 2 ? year - 1 : year;
+        long era = y / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * DAYS_PER_ERA + dayOfEra - EPOCH_SHIFT;
+        return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+    }
+
+    /**
+     * Parses a fixed number of decimal digits.
+     *
+     * @param s the sequence.
+     * @param from position of the first digit.
+     * @param n number of digits.
+     * @return the number.
+     */
+    private static int digits(final CharSequence s, final int from, final int n) {
+        int v = 0;
+        for (int i = from; i < from + n; i++) {
+            v = v * 10 + (s.charAt(i) - '0');
+        }
+        return v;
+    }
+
     /**
      * Gets the value of the flag indicating if the artists should be considered
      * as items (instead of tracks).
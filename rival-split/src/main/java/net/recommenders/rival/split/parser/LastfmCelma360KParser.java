@@ -18,13 +18,14 @@ package net.recommenders.rival.split.parser;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 import net.recommenders.rival.core.DataModelIF;
+import net.recommenders.rival.core.DataModelRecordVisitor;
+import net.recommenders.rival.core.LineTokenizer;
 import net.recommenders.rival.core.ParserWithIdMapping;
+import net.recommenders.rival.core.PreferenceBatch;
+import net.recommenders.rival.core.RecordVisitor;
 import net.recommenders.rival.core.SimpleParser;
+import net.recommenders.rival.core.StreamingParser;
 import net.recommenders.rival.core.TemporalDataModel;
 import net.recommenders.rival.core.TemporalDataModelIF;
 
@@ -34,7 +35,7 @@ import net.recommenders.rival.core.TemporalDataModelIF;
  *
  * @author <a href="http://github.com/abellogin">Alejandro</a>
  */
-public class LastfmCelma360KParser extends AbstractLastfmCelmaParser implements ParserWithIdMapping<Long, Long> {
+public class LastfmCelma360KParser extends AbstractLastfmCelmaParser implements ParserWithIdMapping<Long, Long>, StreamingParser {
 
     /**
      * The column index for the user id in the file.
@@ -90,63 +91,73 @@ public class LastfmCelma360KParser extends AbstractLastfmCelmaParser implements
     @Override
     public TemporalDataModelIF<Long, Long> parseTemporalData(final File f, final String mapIdsPrefix) throws IOException {
         TemporalDataModelIF<Long, Long> dataset = new TemporalDataModel<>();
+        DataModelRecordVisitor visitor = new DataModelRecordVisitor(dataset, true, PreferenceBatch.DEFAULT_CAPACITY);
+        parse(f, mapIdsPrefix, visitor);
+        visitor.flush();
+        return dataset;
+    }
 
-        Map<String, Long> mapUserIds = new HashMap<>();
-        Map<String, Long> mapItemIds = new HashMap<>();
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(final File f, final RecordVisitor visitor) throws IOException {
+        parse(f, null, visitor);
+    }
 
-        long curUser = getIndexMap(new File(mapIdsPrefix + "_userId.txt"), mapUserIds);
-        long curItem = getIndexMap(new File(mapIdsPrefix + "_itemId.txt"), mapItemIds);
+    /**
+     * Parses a data file, passing every record to a visitor in file order.
+     *
+     * @param f The file to be parsed.
+     * @param mapIdsPrefix The prefix of the file where the id mapping will be
+     * stored (and will be read from), or null if the mapping should not be
+     * stored.
+     * @param visitor The visitor of the records.
+     * @throws IOException if the file cannot be read.
+     */
+    public void parse(final File f, final String mapIdsPrefix, final RecordVisitor visitor) throws IOException {
+        StringDictionary mapUserIds = new StringDictionary();
+        StringDictionary mapItemIds = new StringDictionary();
+        if (mapIdsPrefix != null) {
+            mapUserIds = StringDictionary.load(new File(mapIdsPrefix + "_userId.txt"));
+            mapItemIds = StringDictionary.load(new File(mapIdsPrefix + "_itemId.txt"));
+        }
 
+        LineTokenizer tokenizer = new LineTokenizer("\t");
+        // reused to build the keys of the tracks
+        StringBuilder track = new StringBuilder();
         BufferedReader br = SimpleParser.getBufferedReader(f);
-        String line;
-        while ((line = br.readLine()) != null) {
-            String[] toks = line.split("\t");
-            // user
-            String user = toks[USER_TOK];
-            if (!mapUserIds.containsKey(user)) {
-                mapUserIds.put(user, curUser);
-                curUser++;
-            }
-            long userId = mapUserIds.get(user);
-            // item
-            String artist = toks[ARTIST_TOK];
-            String track = toks[TRACK_TOK];
-            String item;
-            if (isUseArtists()) {
-                item = artist;
-            } else {
-                item = artist + "_" + track;
-            }
-            if (!mapItemIds.containsKey(item)) {
-                mapItemIds.put(item, curItem);
-                curItem++;
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                tokenizer.tokenize(line);
+                // user
+                long userId = mapUserIds.getOrAdd(line, tokenizer.getStart(USER_TOK), tokenizer.getEnd(USER_TOK));
+                // item
+                long itemId;
+                if (isUseArtists()) {
+                    itemId = mapItemIds.getOrAdd(line, tokenizer.getStart(ARTIST_TOK), tokenizer.getEnd(ARTIST_TOK));
+                } else {
+                    track.setLength(0);
+                    track.append(line, tokenizer.getStart(ARTIST_TOK), tokenizer.getEnd(ARTIST_TOK)).append('_');
+                    track.append(line, tokenizer.getStart(TRACK_TOK), tokenizer.getEnd(TRACK_TOK));
+                    itemId = mapItemIds.getOrAdd(track, 0, track.length());
+                }
+                // preference
+                double preference = tokenizer.getDouble(PREF_TOK);
+                //////
+                // update information
+                //////
+                visitor.visit(userId, itemId, preference, -1L);
             }
-            long itemId = mapItemIds.get(item);
-            // preference
-            double preference = Double.parseDouble(toks[PREF_TOK]);
-            //////
-            // update information
-            //////
-            dataset.addPreference(userId, itemId, preference);
+        } finally {
+            br.close();
         }
-        br.close();
 
         // save map ids?
         if (mapIdsPrefix != null) {
-            // save user map
-            PrintStream outUser = new PrintStream(mapIdsPrefix + "_userId.txt", "UTF-8");
-            for (Entry<String, Long> e : mapUserIds.entrySet()) {
-                outUser.println(e.getKey() + "\t" + e.getValue());
-            }
-            outUser.close();
-            // save item map
-            PrintStream outItem = new PrintStream(mapIdsPrefix + "_itemId.txt", "UTF-8");
-            for (Entry<String, Long> e : mapItemIds.entrySet()) {
-                outItem.println(e.getKey() + "\t" + e.getValue());
-            }
-            outItem.close();
+            mapUserIds.save(new File(mapIdsPrefix + "_userId.txt"));
+            mapItemIds.save(new File(mapIdsPrefix + "_itemId.txt"));
         }
-
-        return dataset;
     }
 }
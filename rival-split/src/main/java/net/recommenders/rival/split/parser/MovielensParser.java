@@ -19,8 +19,12 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import net.recommenders.rival.core.DataModelIF;
-import net.recommenders.rival.core.Parser;
+import net.recommenders.rival.core.DataModelRecordVisitor;
+import net.recommenders.rival.core.LineTokenizer;
+import net.recommenders.rival.core.PreferenceBatch;
+import net.recommenders.rival.core.RecordVisitor;
 import net.recommenders.rival.core.SimpleParser;
+import net.recommenders.rival.core.StreamingParser;
 import net.recommenders.rival.core.TemporalDataModel;
 import net.recommenders.rival.core.TemporalDataModelIF;
 
@@ -29,7 +33,7 @@ import net.recommenders.rival.core.TemporalDataModelIF;
  *
  * @author <a href="http://github.com/abellogin">Alejandro</a>
  */
-public class MovielensParser implements Parser<Long, Long> {
+public class MovielensParser implements StreamingParser {
 
     /**
      * The column index for the user id in the file.
@@ -61,44 +65,68 @@ public class MovielensParser implements Parser<Long, Long> {
      */
     @Override
     public TemporalDataModelIF<Long, Long> parseTemporalData(final File f) throws IOException {
-        TemporalDataModelIF<Long, Long> dataset = new TemporalDataModel<>();
+        return parseData(f, new TemporalDataModel<Long, Long>());
+    }
+
+    /**
+     * Parses a data file into a given data model (for instance, a
+     * {@link net.recommenders.rival.core.PrimitiveDataModel} sharing its id
+     * dictionaries with other models). Timestamps are only stored when the
+     * data model is temporal.
+     *
+     * @param <D> type of the data model
+     * @param f The file to be parsed.
+     * @param dataset The data model where the preferences will be stored.
+     * @return The data model received as parameter.
+     * @throws IOException if the file cannot be read.
+     */
+    public <D extends DataModelIF<Long, Long>> D parseData(final File f, final D dataset) throws IOException {
+        DataModelRecordVisitor visitor = new DataModelRecordVisitor(dataset, true, PreferenceBatch.DEFAULT_CAPACITY);
+        parse(f, visitor);
+        visitor.flush();
+        return dataset;
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(final File f, final RecordVisitor visitor) throws IOException {
         BufferedReader br = SimpleParser.getBufferedReader(f);
-        String line;
-        while ((line = br.readLine()) != null) {
-            parseLine(line, dataset);
+        try {
+            LineTokenizer colonTokenizer = new LineTokenizer("::");
+            LineTokenizer tabTokenizer = new LineTokenizer("\t");
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.contains("::")) {
+                    parseLine(colonTokenizer.tokenize(line), visitor);
+                } else {
+                    parseLine(tabTokenizer.tokenize(line), visitor);
+                }
+            }
+        } finally {
+            br.close();
         }
-        br.close();
-
-        return dataset;
     }
 
     /**
      * A method that parses a line from the file.
      *
-     * @param line the line to be parsed
-     * @param dataset the dataset where the information parsed from the line
-     * will be stored into.
+     * @param toks the tokens of the line to be parsed
+     * @param visitor the visitor of the record in the line.
      */
-    private void parseLine(final String line, final TemporalDataModelIF<Long, Long> dataset) {
-        String[] toks;
-        if (line.contains("::")) {
-            toks = line.split("::");
-        } else {
-            toks = line.split("\t");
-        }
+    private void parseLine(final LineTokenizer toks, final RecordVisitor visitor) {
         // user
-        long userId = Long.parseLong(toks[USER_TOK]);
+        long userId = toks.getLong(USER_TOK);
         // item
-        long itemId = Long.parseLong(toks[ITEM_TOK]);
+        long itemId = toks.getLong(ITEM_TOK);
         // timestamp
-        long timestamp = Long.parseLong(toks[TIME_TOK]);
+        long timestamp = toks.getLong(TIME_TOK);
         // preference
-        double preference = Double.parseDouble(toks[RATING_TOK]);
+        double preference = toks.getDouble(RATING_TOK);
         //////
         // update information
         //////
-        dataset.addPreference(userId, itemId, preference);
-        dataset.addTimestamp(userId, itemId, timestamp);
+        visitor.visit(userId, itemId, preference, timestamp);
     }
 }
@@ -18,9 +18,15 @@ package net.recommenders.rival.split.parser;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
 import java.util.Properties;
 import net.recommenders.rival.core.DataModel;
+import net.recommenders.rival.core.KCoreFilter;
 import net.recommenders.rival.core.Parser;
+import net.recommenders.rival.core.PreferenceAggregator;
+import net.recommenders.rival.core.RecordVisitor;
+import net.recommenders.rival.core.StreamingParser;
+import net.recommenders.rival.core.TemporalDataModel;
 import net.recommenders.rival.core.TemporalDataModelIF;
 
 /**
@@ -46,6 +52,22 @@ public final class ParserRunner {
      * Variable that represent the name of a property in the file.
      */
     public static final String LASTFM_USEARTISTS = "dataset.parser.lastfm.useartists";
+    /**
+     * Variable that represent the name of a property in the file.
+     */
+    public static final String DATASET_AGGREGATION = "dataset.aggregation";
+    /**
+     * Variable that represent the name of a property in the file.
+     */
+    public static final String DATASET_AGGREGATION_HALFLIFE = "dataset.aggregation.halflife";
+    /**
+     * Variable that represent the name of a property in the file.
+     */
+    public static final String DATASET_KCORE_USERS = "dataset.kcore.users";
+    /**
+     * Variable that represent the name of a property in the file.
+     */
+    public static final String DATASET_KCORE_ITEMS = "dataset.kcore.items";
 
     /**
      * Utility classes should not have a public or default constructor.
@@ -78,7 +100,10 @@ public final class ParserRunner {
         String parserClassName = properties.getProperty(DATASET_PARSER);
         Class<?> parserClass = Class.forName(parserClassName);
         Parser<Long, Long> parser = instantiateParser(properties);
-        if (parserClassName.contains("LastfmCelma")) {
+        String aggregation = properties.getProperty(DATASET_AGGREGATION);
+        if (aggregation != null) {
+            model = parseAggregated(properties, parser, file, aggregation);
+        } else if (parserClassName.contains("LastfmCelma")) {
             String mapIdsPrefix = properties.getProperty(LASTFM_IDS_PREFIX);
             Object modelObj = parserClass.getMethod("parseData", File.class, String.class).invoke(parser, file, mapIdsPrefix);
             if (modelObj instanceof TemporalDataModelIF) {
@@ -90,6 +115,70 @@ public final class ParserRunner {
             model = parser.parseTemporalData(file);
         }
         System.out.println("Parsing finished");
+        String minItems = properties.getProperty(DATASET_KCORE_USERS);
+        String minUsers = properties.getProperty(DATASET_KCORE_ITEMS);
+        if ((model != null) && ((minItems != null) || (minUsers != null))) {
+            model = filterCore(model, minItems == null ? 0 : Integer.parseInt(minItems.trim()), minUsers == null ? 0 : Integer.parseInt(minUsers.trim()));
+        }
+        return model;
+    }
+
+    /**
+     * Keeps the k-core of a data model, that is, the preferences of the users
+     * with at least a minimum number of items (given by
+     * {@link #DATASET_KCORE_USERS}) and of the items with at least a minimum
+     * number of users (given by {@link #DATASET_KCORE_ITEMS}) once the other
+     * users and items are iteratively removed.
+     *
+     * @param model The data model.
+     * @param minItemsPerUser The minimum number of items of every user.
+     * @param minUsersPerItem The minimum number of users of every item.
+     * @return The filtered data model.
+     */
+    private static TemporalDataModelIF<Long, Long> filterCore(final TemporalDataModelIF<Long, Long> model, final int minItemsPerUser, final int minUsersPerItem) {
+        KCoreFilter filter = new KCoreFilter(minItemsPerUser, minUsersPerItem);
+        TemporalDataModelIF<Long, Long> filtered = (TemporalDataModelIF<Long, Long>) filter.filter(model);
+        System.out.println("K-core filtering finished: " + filter.getRemovedUsers() + " users, " + filter.getRemovedItems() + " items and "
+                + filter.getRemovedPreferences() + " preferences removed in " + filter.getRounds() + " rounds");
+        return filtered;
+    }
+
+    /**
+     * Parses a file through a {@link PreferenceAggregator}, so that the
+     * repeated records of every (user, item) pair are aggregated with a given
+     * policy (sum, first, count, max, latest, or decayed, the latter with a
+     * half-life, in the units of the timestamps, given by
+     * {@link #DATASET_AGGREGATION_HALFLIFE}).
+     *
+     * @param properties The properties.
+     * @param parser The parser, which has to be a {@link StreamingParser}.
+     * @param file The file to be parsed.
+     * @param aggregation The name of the aggregation policy.
+     * @return The data model with the aggregated preferences.
+     * @throws IllegalAccessException when {@link java.lang.reflect.Method#invoke(java.lang.Object, java.lang.Object[])}
+     * fails
+     * @throws InvocationTargetException when {@link java.lang.reflect.Method#invoke(java.lang.Object, java.lang.Object[])}
+     * fails
+     * @throws NoSuchMethodException when {@link Class#getMethod(java.lang.String, java.lang.Class[])}
+     * fails
+     * @throws IOException when the file cannot be parsed
+     */
+    private static TemporalDataModelIF<Long, Long> parseAggregated(final Properties properties, final Parser<Long, Long> parser, final File file,
+            final String aggregation) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException, IOException {
+        if (!(parser instanceof StreamingParser)) {
+            throw new IllegalArgumentException("Aggregation is only supported by streaming parsers: " + parser.getClass().getName());
+        }
+        PreferenceAggregator.Policy policy = PreferenceAggregator.Policy.valueOf(aggregation.trim().toUpperCase(Locale.ENGLISH));
+        double halfLife = Double.parseDouble(properties.getProperty(DATASET_AGGREGATION_HALFLIFE, "NaN"));
+        PreferenceAggregator aggregator = new PreferenceAggregator(policy, halfLife);
+        if (parser.getClass().getName().contains("LastfmCelma")) {
+            String mapIdsPrefix = properties.getProperty(LASTFM_IDS_PREFIX);
+            parser.getClass().getMethod("parse", File.class, String.class, RecordVisitor.class).invoke(parser, file, mapIdsPrefix, aggregator);
+        } else {
+            ((StreamingParser) parser).parse(file, aggregator);
+        }
+        TemporalDataModelIF<Long, Long> model = new TemporalDataModel<>();
+        aggregator.addTo(model);
         return model;
     }
 
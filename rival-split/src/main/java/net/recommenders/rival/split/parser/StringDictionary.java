@@ -0,0 +1,331 @@
+/*
+ * Copyright 2015 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.split.parser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import net.recommenders.rival.core.LineTokenizer;
+import net.recommenders.rival.core.SimpleParser;
+
+/**
+ * Compact dictionary between string keys and long ids. Keys are looked up
+ * directly from a region of a character sequence (e.g., a token of the line
+ * being parsed), so known keys do not create any object. The characters of
+ * all the keys are stored in a single pool and the hash table only contains
+ * int offsets, instead of one String and one boxed Long per key.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+final class StringDictionary {
+
+    /**
+     * Value returned when a key is not in the dictionary.
+     */
+    static final long NOT_FOUND = -1L;
+    /**
+     * Initial number of keys.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+    /**
+     * Characters of all the keys, one after the other.
+     */
+    private char[] pool;
+    /**
+     * Number of characters used in the pool.
+     */
+    private int poolSize;
+    /**
+     * First position in the pool of every key, plus one extra position with
+     * the end of the last key.
+     */
+    private int[] offsets;
+    /**
+     * Id of every key.
+     */
+    private long[] ids;
+    /**
+     * Hash of every key.
+     */
+    private int[] hashes;
+    /**
+     * Open addressing table with the index of the keys plus one (zero means
+     * empty slot).
+     */
+    private int[] table;
+    /**
+     * Number of keys.
+     */
+    private int size;
+    /**
+     * Id assigned to the next new key.
+     */
+    private long nextId;
+
+    /**
+     * Constructor of an empty dictionary whose first id is 1.
+     */
+    StringDictionary() {
+        this.pool = new char[INITIAL_CAPACITY * 8];
+        this.poolSize = 0;
+        this.offsets = new int[INITIAL_CAPACITY + 1];
+        this.ids = new long[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.table = new int[INITIAL_CAPACITY * 2];
+        this.size = 0;
+        this.nextId = 1L;
+    }
+
+    /**
+     * Returns the id of a key, assigning the next id if it is new.
+     *
+     * @param s the sequence containing the key.
+     * @param from first position of the key (inclusive).
+     * @param to last position of the key (exclusive).
+     * @return the id of the key.
+     */
+    long getOrAdd(final CharSequence s, final int from, final int to) {
+        int h = hash(s, from, to);
+        int mask = table.length - 1;
+        int slot = h & mask;
+        int k;
+        while ((k = table[slot]) != 0) {
+            if (hashes[k - 1] == h && matches(k - 1, s, from, to)) {
+                return ids[k - 1];
+            }
+            slot = (slot + 1) & mask;
+        }
+        long id = nextId;
+        insert(slot, h, s, from, to, id);
+        return id;
+    }
+
+    /**
+     * Returns the id of a key.
+     *
+     * @param key the key.
+     * @return the id of the key, or {@link #NOT_FOUND}.
+     */
+    long get(final CharSequence key) {
+        int h = hash(key, 0, key.length());
+        int mask = table.length - 1;
+        int slot = h & mask;
+        int k;
+        while ((k = table[slot]) != 0) {
+            if (hashes[k - 1] == h && matches(k - 1, key, 0, key.length())) {
+                return ids[k - 1];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Adds a key with a given id (e.g., when loading a previous mapping). New
+     * keys will get ids larger than any id in the dictionary.
+     *
+     * @param key the key.
+     * @param id the id.
+     */
+    void put(final CharSequence key, final long id) {
+        int h = hash(key, 0, key.length());
+        int mask = table.length - 1;
+        int slot = h & mask;
+        int k;
+        while ((k = table[slot]) != 0) {
+            if (hashes[k - 1] == h && matches(k - 1, key, 0, key.length())) {
+                ids[k - 1] = id;
+                nextId = Math.max(nextId, id + 1);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        insert(slot, h, key, 0, key.length(), id);
+    }
+
+    /**
+     * Returns the number of keys.
+     *
+     * @return the number of keys.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the key at a position (in order of insertion).
+     *
+     * @param index the position of the key.
+     * @return the key.
+     */
+    String getKey(final int index) {
+        return new String(pool, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    /**
+     * Returns the id of the key at a position (in order of insertion).
+     *
+     * @param index the position of the key.
+     * @return the id.
+     */
+    long getId(final int index) {
+        return ids[index];
+    }
+
+    /**
+     * Saves the dictionary to a file, one key and its id per line (as read by
+     * {@link #load(java.io.File)}).
+     *
+     * @param outfile file where the dictionary will be saved
+     * @throws FileNotFoundException when outfile cannot be used.
+     * @throws UnsupportedEncodingException when the requested encoding
+     * (UTF-8) is not available.
+     */
+    void save(final File outfile) throws FileNotFoundException, UnsupportedEncodingException {
+        PrintStream out = new PrintStream(outfile, "UTF-8");
+        for (int i = 0; i < size; i++) {
+            out.println(getKey(i) + "\t" + ids[i]);
+        }
+        out.close();
+    }
+
+    /**
+     * Loads a dictionary from a file with one key and its id per line, as
+     * {@link AbstractLastfmCelmaParser#getIndexMap(java.io.File, java.util.Map)}.
+     *
+     * @param in the file with the dictionary
+     * @return the dictionary, empty if the file does not exist
+     * @throws IOException when the file cannot be read
+     */
+    static StringDictionary load(final File in) throws IOException {
+        StringDictionary dictionary = new StringDictionary();
+        if (!in.exists()) {
+            return dictionary;
+        }
+        LineTokenizer tokenizer = new LineTokenizer("\t");
+        BufferedReader br = SimpleParser.getBufferedReader(in);
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                tokenizer.tokenize(line);
+                dictionary.put(tokenizer.getString(0), tokenizer.getLong(1));
+            }
+        } finally {
+            br.close();
+        }
+        return dictionary;
+    }
+
+    /**
+     * Stores a new key.
+     *
+     * @param slot the empty slot of the table for the key.
+     * @param h the hash of the key.
+     * @param s the sequence containing the key.
+     * @param from first position of the key (inclusive).
+     * @param to last position of the key (exclusive).
+     * @param id the id of the key.
+     */
+    private void insert(final int slot, final int h, final CharSequence s, final int from, final int to, final long id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+        int len = to - from;
+        if (poolSize + len > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + len));
+        }
+        for (int i = 0; i < len; i++) {
+            pool[poolSize + i] = s.charAt(from + i);
+        }
+        offsets[size] = poolSize;
+        poolSize += len;
+        offsets[size + 1] = poolSize;
+        ids[size] = id;
+        hashes[size] = h;
+        size++;
+        table[slot] = size;
+        nextId = Math.max(nextId, id + 1);
+        if (size * 2 > table.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * Doubles the size of the table.
+     */
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        int mask = newTable.length - 1;
+        for (int k = 0; k < size; k++) {
+            int slot = hashes[k] & mask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = k + 1;
+        }
+        table = newTable;
+    }
+
+    /**
+     * Checks whether a stored key is equal to a region of a sequence.
+     *
+     * @param k the index of the stored key.
+     * @param s the sequence.
+     * @param from first position of the region (inclusive).
+     * @param to last position of the region (exclusive).
+     * @return true if they are equal.
+     */
+    private boolean matches(final int k, final CharSequence s, final int from, final int to) {
+        int start = offsets[k];
+        if (offsets[k + 1] - start != to - from) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (pool[start + i - from] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes a region of a sequence (as String#hashCode, with a final mix so
+     * that similar keys are spread over the table).
+     *
+     * @param s the sequence.
+     * @param from first position of the region (inclusive).
+     * @param to last position of the region (exclusive).
+     * @return the hash.
+     */
+    private static int hash(final CharSequence s, final int from, final int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -22,6 +22,7 @@ import java.util.Random;
 import java.util.Set;
 import net.recommenders.rival.core.DataModelFactory;
 import net.recommenders.rival.core.DataModelIF;
+import net.recommenders.rival.core.PreferenceBatch;
 import net.recommenders.rival.core.TemporalDataModel;
 import net.recommenders.rival.core.TemporalDataModelIF;
 
@@ -71,8 +72,14 @@ public class CrossValidationSplitter<U, I> implements Splitter<U, I> {
         @SuppressWarnings("unchecked")
         final DataModelIF<U, I>[] splits = new DataModelIF[2 * nFolds];
         for (int i = 0; i < nFolds; i++) {
-            splits[2 * i] = DataModelFactory.getDefaultModel(); // training
-            splits[2 * i + 1] = DataModelFactory.getDefaultModel(); // test
+            splits[2 * i] = DataModelFactory.getSimilarModel(data); // training
+            splits[2 * i + 1] = DataModelFactory.getSimilarModel(data); // test
+        }
+        // preferences are added to the splits in batches
+        @SuppressWarnings("unchecked")
+        final PreferenceBatch<U, I>[] batches = new PreferenceBatch[splits.length];
+        for (int i = 0; i < splits.length; i++) {
+            batches[i] = new PreferenceBatch<>();
         }
         if (perUser) {
             int n = 0;
@@ -83,12 +90,12 @@ public class CrossValidationSplitter<U, I> implements Splitter<U, I> {
                     Double pref = data.getUserItemPreferences().get(user).get(item);
                     int curFold = n % nFolds;
                     for (int i = 0; i < nFolds; i++) {
-                        DataModelIF<U, I> datamodel = splits[2 * i]; // training
+                        int split = 2 * i; // training
                         if (i == curFold) {
-                            datamodel = splits[2 * i + 1]; // test
+                            split = 2 * i + 1; // test
                         }
                         if (pref != null) {
-                            datamodel.addPreference(user, item, pref);
+                            batches[split].add(splits[split], user, item, pref);
                         }
                     }
                     n++;
@@ -105,18 +112,21 @@ public class CrossValidationSplitter<U, I> implements Splitter<U, I> {
                     Double pref = data.getUserItemPreferences().get(user).get(item);
                     int curFold = n % nFolds;
                     for (int i = 0; i < nFolds; i++) {
-                        DataModelIF<U, I> datamodel = splits[2 * i]; // training
+                        int split = 2 * i; // training
                         if (i == curFold) {
-                            datamodel = splits[2 * i + 1]; // test
+                            split = 2 * i + 1; // test
                         }
                         if (pref != null) {
-                            datamodel.addPreference(user, item, pref);
+                            batches[split].add(splits[split], user, item, pref);
                         }
                     }
                     n++;
                 }
             }
         }
+        for (int i = 0; i < splits.length; i++) {
+            batches[i].flushTo(splits[i]);
+        }
         return splits;
     }
 
@@ -17,6 +17,9 @@ package net.recommenders.rival.split.splitter;
 
 import net.recommenders.rival.core.DataModelFactory;
 import net.recommenders.rival.core.DataModelIF;
+import net.recommenders.rival.core.DataModelUtils;
+import net.recommenders.rival.core.PreferenceBatch;
+import net.recommenders.rival.core.PreferenceVisitor;
 import net.recommenders.rival.core.TemporalDataModel;
 import net.recommenders.rival.core.TemporalDataModelIF;
 
@@ -79,8 +82,11 @@ public class RandomSplitter<U, I> implements Splitter<U, I> {
     public DataModelIF<U, I>[] split(final DataModelIF<U, I> data) {
         @SuppressWarnings("unchecked")
         final DataModelIF<U, I>[] splits = new DataModelIF[2];
-        splits[0] = DataModelFactory.getDefaultModel(); // training
-        splits[1] = DataModelFactory.getDefaultModel(); // test
+        splits[0] = DataModelFactory.getSimilarModel(data); // training
+        splits[1] = DataModelFactory.getSimilarModel(data); // test
+        // preferences are added to the splits in batches
+        final PreferenceBatch<U, I> training = new PreferenceBatch<>();
+        final PreferenceBatch<U, I> test = new PreferenceBatch<>();
         if (perUser) {
             for (U user : data.getUsers()) {
                 if (doSplitPerItems) {
@@ -90,40 +96,32 @@ public class RandomSplitter<U, I> implements Splitter<U, I> {
                     for (int i = 0; i < items.size(); i++) {
                         I item = items.get(i);
                         Double pref = data.getUserItemPreferences().get(user).get(item);
-                        DataModelIF<U, I> datamodel = splits[0]; // training
-                        if (i > splitPoint) {
-                            datamodel = splits[1]; // test
+                        if (pref == null) {
+                            continue;
                         }
-                        if (pref != null) {
-                            datamodel.addPreference(user, item, pref);
+                        if (i > splitPoint) {
+                            test.add(splits[1], user, item, pref);
+                        } else {
+                            training.add(splits[0], user, item, pref);
                         }
                     }
                 }
             }
         } else {
-            for (U user : data.getUsers()) {
-                for (I item : data.getUserItemPreferences().get(user).keySet()) {
-                    Double pref = data.getUserItemPreferences().get(user).get(item);
-                    if (doSplitPerItems) {
-                        DataModelIF<U, I> datamodel = splits[0]; // training
-                        if (rnd.nextDouble() > percentageTraining) {
-                            datamodel = splits[1]; // test
-                        }
-                        if (pref != null) {
-                            datamodel.addPreference(user, item, pref);
-                        }
+            // every preference goes to training or test independently
+            DataModelUtils.forEachPreference(data, new PreferenceVisitor<U, I>() {
+                @Override
+                public void visit(final U user, final I item, final double pref) {
+                    if (rnd.nextDouble() > percentageTraining) {
+                        test.add(splits[1], user, item, pref);
                     } else {
-                        DataModelIF<U, I> datamodel = splits[0]; // training
-                        if (rnd.nextDouble() > percentageTraining) {
-                            datamodel = splits[1]; // test
-                        }
-                        if (pref != null) {
-                            datamodel.addPreference(user, item, pref);
-                        }
+                        training.add(splits[0], user, item, pref);
                     }
                 }
-            }
+            });
         }
+        training.flushTo(splits[0]);
+        test.flushTo(splits[1]);
         return splits;
     }
 
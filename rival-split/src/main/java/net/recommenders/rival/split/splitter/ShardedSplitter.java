@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.split.splitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.recommenders.rival.core.DataModelIF;
+import net.recommenders.rival.core.ShardedDataModel;
+import net.recommenders.rival.core.TemporalDataModelIF;
+
+/**
+ * Splitter that splits every shard of a {@link ShardedDataModel}
+ * independently and in parallel, using one splitter per shard (so that
+ * random splitters get their own generator and the result does not depend on
+ * thread scheduling). Split k of the result is a sharded model made of split
+ * k of every shard.
+ *
+ * Per-user splits are equivalent to those on the whole model; global splits
+ * (e.g., a temporal split not per user) are applied within each shard.
+ * Models that are not sharded are split as a single shard.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ *
+ * @param <U> generic type for users
+ * @param <I> generic type for items
+ */
+public class ShardedSplitter<U, I> implements Splitter<U, I> {
+
+    /**
+     * Factory of the splitters used on every shard.
+     */
+    private final SplitterFactory<U, I> factory;
+    /**
+     * The maximum number of threads.
+     */
+    private final int nThreads;
+
+    /**
+     * Factory of splitters, one per shard.
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     */
+    public interface SplitterFactory<U, I> {
+
+        /**
+         * Creates the splitter for a shard.
+         *
+         * @param shard the index of the shard.
+         * @return the splitter for the shard.
+         */
+        Splitter<U, I> create(int shard);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param splitterFactory factory of the splitters used on every shard
+     * @param numThreads maximum number of shards split at the same time
+     */
+    public ShardedSplitter(final SplitterFactory<U, I> splitterFactory, final int numThreads) {
+        this.factory = splitterFactory;
+        this.nThreads = numThreads;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DataModelIF<U, I>[] split(final DataModelIF<U, I> data) {
+        if (!(data instanceof ShardedDataModel)) {
+            return factory.create(0).split(data);
+        }
+        List<DataModelIF<U, I>[]> shardSplits = ((ShardedDataModel<U, I>) data).forEachShard(new ShardedDataModel.ShardTask<U, I, DataModelIF<U, I>[]>() {
+            @Override
+            public DataModelIF<U, I>[] process(final int shard, final DataModelIF<U, I> model) {
+                if (model instanceof TemporalDataModelIF) {
+                    return factory.create(shard).split((TemporalDataModelIF<U, I>) model);
+                }
+                return factory.create(shard).split(model);
+            }
+        }, nThreads);
+        return combine(shardSplits);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TemporalDataModelIF<U, I>[] split(final TemporalDataModelIF<U, I> data) {
+        if (!(data instanceof ShardedDataModel)) {
+            return factory.create(0).split(data);
+        }
+        List<TemporalDataModelIF<U, I>[]> shardSplits = ((ShardedDataModel<U, I>) data).forEachShard(new ShardedDataModel.ShardTask<U, I, TemporalDataModelIF<U, I>[]>() {
+            @Override
+            public TemporalDataModelIF<U, I>[] process(final int shard, final DataModelIF<U, I> model) {
+                if (!(model instanceof TemporalDataModelIF)) {
+                    throw new IllegalArgumentException("Shard " + shard + " is not temporal");
+                }
+                return factory.create(shard).split((TemporalDataModelIF<U, I>) model);
+            }
+        }, nThreads);
+        return combine(shardSplits);
+    }
+
+    /**
+     * Builds the sharded splits from the splits of every shard.
+     *
+     * @param <U> generic type for users
+     * @param <I> generic type for items
+     * @param shardSplits the splits of every shard.
+     * @return the sharded splits.
+     */
+    @SuppressWarnings("unchecked")
+    private static <U, I> ShardedDataModel<U, I>[] combine(final List<? extends DataModelIF<U, I>[]> shardSplits) {
+        int nSplits = shardSplits.get(0).length;
+        final ShardedDataModel<U, I>[] splits = new ShardedDataModel[nSplits];
+        for (int k = 0; k < nSplits; k++) {
+            List<DataModelIF<U, I>> shards = new ArrayList<>(shardSplits.size());
+            for (DataModelIF<U, I>[] s : shardSplits) {
+                shards.add(s[k]);
+            }
+            splits[k] = new ShardedDataModel<>(shards);
+        }
+        return splits;
+    }
+}
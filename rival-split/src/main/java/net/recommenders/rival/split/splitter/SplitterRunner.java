@@ -15,12 +15,24 @@
  */
 package net.recommenders.rival.split.splitter;
 
-import java.io.FileNotFoundException;
-import java.io.UnsupportedEncodingException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
+import net.recommenders.rival.core.ColumnarParser;
 import net.recommenders.rival.core.DataModelIF;
 import net.recommenders.rival.core.DataModelUtils;
+import net.recommenders.rival.core.DataModelWriter;
+import net.recommenders.rival.core.Fingerprint;
+import net.recommenders.rival.core.MemoryEstimator;
 import net.recommenders.rival.core.TemporalDataModelIF;
 
 /**
@@ -83,6 +95,36 @@ public final class SplitterRunner {
      * Variable that represent the field delimiter for each line
      */
     public static final String SPLIT_FIELD_DELIMITER = "split.delimiter";
+    /**
+     * Variable that represent the name of a property in the file.
+     */
+    public static final String SPLIT_MEMORY_CHECK = "split.memory.check";
+    /**
+     * Variable that represent the name of a property in the file.
+     */
+    public static final String SPLIT_OUTPUT_THREADS = "split.output.threads";
+    /**
+     * Variable that represent the name of a property in the file.
+     */
+    public static final String SPLIT_FINGERPRINT = "split.fingerprint";
+    /**
+     * Name of the file, in the output folder, where the fingerprint of the
+     * data, the splitting parameters and the split files are recorded.
+     */
+    public static final String FINGERPRINT_FILE = "splits.fingerprint";
+    /**
+     * Key of the fingerprint of the data in {@link #FINGERPRINT_FILE}.
+     */
+    public static final String FINGERPRINT_DATA = "data.fingerprint";
+    /**
+     * Key of the split files in {@link #FINGERPRINT_FILE}.
+     */
+    public static final String FINGERPRINT_FILES = "split.files";
+    /**
+     * Properties that determine the splits.
+     */
+    private static final String[] FINGERPRINT_PROPERTIES = new String[]{DATASET_SPLITTER, SPLIT_PERUSER, SPLIT_PERITEMS, SPLIT_SEED,
+        SPLIT_CV_NFOLDS, SPLIT_RANDOM_PERCENTAGE, SPLIT_FIELD_DELIMITER};
 
     /**
      * Utility classes should not have a public or default constructor.
@@ -91,7 +133,17 @@ public final class SplitterRunner {
     }
 
     /**
-     * Runs a Splitter instance based on the properties.
+     * Runs a Splitter instance based on the properties. Splits whose suffix
+     * is the extension of the columnar format
+     * ({@link ColumnarParser#EXTENSION}) are saved in that binary format,
+     * the rest as delimited text. If {@link #SPLIT_FINGERPRINT} is true, the
+     * fingerprint of the data (see
+     * {@link Fingerprint#ofTemporal(net.recommenders.rival.core.TemporalDataModelIF)})
+     * and the splitting parameters are recorded in {@link #FINGERPRINT_FILE},
+     * and nothing is done (even if the output should be overwritten) when
+     * they are the same as those recorded and all the split files exist. The
+     * fingerprint is only recorded when every split file is written, so it is
+     * removed if some existing file is not overwritten.
      *
      * @param <U>         user identifier type
      * @param <I>         item identifier type
@@ -99,13 +151,13 @@ public final class SplitterRunner {
      * @param data        the data to be split
      * @param doDataClear flag to clear the memory used for the data before
      *                    saving the splits
-     * @throws FileNotFoundException        see
-     *                                      {@link net.recommenders.rival.core.DataModelUtils#saveDataModel(DataModelIF, String, boolean, String)}
-     * @throws UnsupportedEncodingException see
-     *                                      {@link net.recommenders.rival.core.DataModelUtils#saveDataModel(DataModelIF, String, boolean, String)}
+     * @throws IOException see
+     *                     {@link net.recommenders.rival.core.DataModelWriter#writeAll(List, List, String, boolean, int)}
+     *                     and
+     *                     {@link net.recommenders.rival.core.DataModelUtils#saveColumnarDataModel(DataModelIF, String, boolean)}
      */
     public static <U, I> void run(final Properties properties, final TemporalDataModelIF<U, I> data, final boolean doDataClear)
-            throws FileNotFoundException, UnsupportedEncodingException {
+            throws IOException {
         System.out.println("Start splitting");
         TemporalDataModelIF<U, I>[] splits;
         // read parameters
@@ -116,6 +168,23 @@ public final class SplitterRunner {
         String splitTrainingSuffix = properties.getProperty(SPLIT_TRAINING_SUFFIX);
         String splitTestPrefix = properties.getProperty(SPLIT_TEST_PREFIX);
         String splitTestSuffix = properties.getProperty(SPLIT_TEST_SUFFIX);
+        // check whether the splits are up to date
+        Properties fingerprint = null;
+        File fingerprintFile = new File(outputFolder + FINGERPRINT_FILE);
+        if (Boolean.parseBoolean(properties.getProperty(SPLIT_FINGERPRINT, "false"))) {
+            fingerprint = getFingerprint(properties, data);
+            if (isUpToDate(fingerprintFile, fingerprint)) {
+                System.out.println("Splits are up to date: " + fingerprintFile);
+                if (doDataClear) {
+                    data.clear();
+                }
+                return;
+            }
+        }
+        // check that the splits fit in memory (on request, since estimating the size of the data walks all of it)
+        if (Boolean.parseBoolean(properties.getProperty(SPLIT_MEMORY_CHECK, "false"))) {
+            MemoryEstimator.checkHeap(projectSplitsFootprint(properties, data), "Splitting the dataset");
+        }
         // generate splits
         Splitter<U, I> splitter = instantiateSplitter(properties);
         splits = splitter.split(data);
@@ -123,15 +192,115 @@ public final class SplitterRunner {
             data.clear();
         }
         System.out.println("Saving splits");
-        // save splits
-        for (int i = 0; i < splits.length / 2; i++) {
-            TemporalDataModelIF<U, I> training = splits[2 * i];
-            TemporalDataModelIF<U, I> test = splits[2 * i + 1];
-            String trainingFile = outputFolder + splitTrainingPrefix + i + splitTrainingSuffix;
-            String testFile = outputFolder + splitTestPrefix + i + splitTestSuffix;
-            DataModelUtils.saveDataModel(training, trainingFile, overwrite, fieldDelimiter);
-            DataModelUtils.saveDataModel(test, testFile, overwrite, fieldDelimiter);
+        // the splits recorded are about to change
+        Files.deleteIfExists(fingerprintFile.toPath());
+        // save splits: binary ones directly, text ones (possibly) concurrently
+        int nThreads = Integer.parseInt(properties.getProperty(SPLIT_OUTPUT_THREADS, "" + Runtime.getRuntime().availableProcessors()));
+        List<TemporalDataModelIF<U, I>> textSplits = new ArrayList<>();
+        List<File> textFiles = new ArrayList<>();
+        StringBuilder splitFiles = new StringBuilder();
+        boolean allWritten = true;
+        for (int i = 0; i < 2 * (splits.length / 2); i++) {
+            String outfile;
+            if (i % 2 == 0) {
+                outfile = outputFolder + splitTrainingPrefix + (i / 2) + splitTrainingSuffix;
+            } else {
+                outfile = outputFolder + splitTestPrefix + (i / 2) + splitTestSuffix;
+            }
+            File f = new File(outfile);
+            splitFiles.append(i == 0 ? "" : File.pathSeparator).append(outfile);
+            if (f.exists() && !overwrite) {
+                System.out.println("Ignoring " + outfile);
+                allWritten = false;
+            } else if (ColumnarParser.isColumnarFile(f)) {
+                DataModelUtils.saveColumnarDataModel(splits[i], outfile, true);
+            } else {
+                textSplits.add(splits[i]);
+                textFiles.add(f);
+            }
+        }
+        DataModelWriter.writeAll(textSplits, textFiles, fieldDelimiter, true, nThreads);
+        if (fingerprint != null && allWritten) {
+            fingerprint.setProperty(FINGERPRINT_FILES, splitFiles.toString());
+            File tmp = new File(fingerprintFile.getPath() + ".tmp");
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                fingerprint.store(out, "Fingerprint of the splits");
+            } finally {
+                out.close();
+            }
+            Files.move(tmp.toPath(), fingerprintFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Builds the fingerprint of a splitting: the fingerprint of the data and
+     * the properties that determine the splits.
+     *
+     * @param properties the properties to be used.
+     * @param data the data to be split.
+     * @return the fingerprint, as properties.
+     */
+    public static Properties getFingerprint(final Properties properties, final TemporalDataModelIF<?, ?> data) {
+        Properties fingerprint = new Properties();
+        fingerprint.setProperty(FINGERPRINT_DATA, Fingerprint.toHex(Fingerprint.ofTemporal(data)));
+        for (String key : FINGERPRINT_PROPERTIES) {
+            String value = properties.getProperty(key);
+            if (value != null) {
+                fingerprint.setProperty(key, value);
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Checks whether the splits recorded in a fingerprint file have the given
+     * fingerprint and all their files exist.
+     *
+     * @param fingerprintFile the fingerprint file.
+     * @param fingerprint the fingerprint of the splitting.
+     * @return true if the splits do not need to be computed again.
+     * @throws IOException if the fingerprint file cannot be read.
+     */
+    private static boolean isUpToDate(final File fingerprintFile, final Properties fingerprint) throws IOException {
+        if (!fingerprintFile.isFile()) {
+            return false;
+        }
+        Properties recorded = new Properties();
+        InputStream in = new FileInputStream(fingerprintFile);
+        try {
+            recorded.load(in);
+        } finally {
+            in.close();
+        }
+        String files = (String) recorded.remove(FINGERPRINT_FILES);
+        if ((files == null) || !recorded.equals(fingerprint)) {
+            return false;
+        }
+        for (String f : files.split(File.pathSeparator)) {
+            if (!new File(f).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Projects the memory needed by the splits of a dataset, according to the
+     * splitter in the properties: every fold of a cross validation holds a
+     * copy of the whole dataset (training plus test), the other splitters
+     * create a single copy.
+     *
+     * @param properties the properties to be used.
+     * @param data       the data to be split.
+     * @return the projected size of the splits, in bytes.
+     */
+    public static long projectSplitsFootprint(final Properties properties, final DataModelIF<?, ?> data) {
+        long bytes = MemoryEstimator.estimate(data);
+        if (properties.getProperty(DATASET_SPLITTER).contains("CrossValidation")) {
+            return bytes * Integer.parseInt(properties.getProperty(SPLIT_CV_NFOLDS));
         }
+        return bytes;
     }
 
     /**
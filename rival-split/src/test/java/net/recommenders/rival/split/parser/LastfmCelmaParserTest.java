@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 recommenders.net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.recommenders.rival.split.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TimeZone;
+import net.recommenders.rival.core.TemporalDataModelIF;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link LastfmCelma1KParser} and {@link LastfmCelma360KParser}.
+ *
+ * @author <a href="http://github.com/abellogin">Alejandro</a>
+ */
+@RunWith(JUnit4.class)
+public class LastfmCelmaParserTest {
+
+    /**
+     * Folder for the data files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParseTimestamp() throws Exception {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String[] dates = {"1970-01-01T00:00:00Z", "2009-05-04T23:08:57Z", "2000-02-29T12:00:01Z", "1969-12-31T23:59:59Z", "2100-03-01T00:00:00Z", "1600-01-01T00:00:00Z"};
+        for (String d : dates) {
+            assertEquals(d, sdf.parse(d).getTime(), AbstractLastfmCelmaParser.parseTimestamp("x" + d, 1, d.length() + 1));
+        }
+        String[] invalid = {"2009-05-04 23:08:57Z", "2009-13-04T23:08:57Z", "2009-05-04T23:08:57", "2009-5-04T23:08:57Z"};
+        for (String d : invalid) {
+            try {
+                AbstractLastfmCelmaParser.parseTimestamp(d, 0, d.length());
+                assertTrue(d, false);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testParse1K() throws IOException {
+        File data = folder.newFile("lastfm1k.tsv");
+        PrintStream out = new PrintStream(data, "UTF-8");
+        out.println("user_000001\t2009-05-04T23:08:57Z\ta1\tDeep Dish\tt1\tFuck Me Im Famous");
+        out.println("user_000001\t2009-05-04T13:54:10Z\ta2\t坂本龍一\tt2\tComposition 0919");
+        out.println("user_000002\t2009-05-04T13:52:04Z\ta2\t坂本龍一\tt3\tMc2");
+        out.println("user_000001\t2009-05-05T13:54:10Z\ta2\t坂本龍一\tt2\tComposition 0919");
+        out.close();
+        String prefix = new File(folder.getRoot(), "map").getPath();
+        TemporalDataModelIF<Long, Long> dm = new LastfmCelma1KParser(false).parseTemporalData(data, prefix);
+        assertEquals(2, dm.getNumUsers());
+        assertEquals(3, dm.getNumItems());
+        // ids are assigned in order of appearance
+        Map<Long, Set<Long>> timestamps = dm.getUserItemTimestamps().get(1L);
+        assertEquals(2, timestamps.get(2L).size());
+        assertTrue(timestamps.get(1L).contains(1241478537000L));
+        assertEquals(2.0, dm.getUserItemPreferences().get(1L).get(2L), 0.0);
+
+        // the mapping is reused: new ids continue after the existing ones
+        StringDictionary items = StringDictionary.load(new File(prefix + "_itemId.txt"));
+        assertEquals(2L, items.get("坂本龍一_Composition 0919"));
+        out = new PrintStream(data, "UTF-8");
+        out.println("user_000003\t2009-05-04T13:52:04Z\ta2\t坂本龍一\tt3\tMc2");
+        out.println("user_000003\t2009-05-04T13:52:04Z\ta3\tAphex Twin\tt4\tXtal");
+        out.close();
+        dm = new LastfmCelma1KParser(false).parseTemporalData(data, prefix);
+        assertTrue(dm.getUserItemPreferences().get(3L).containsKey(3L));
+        assertTrue(dm.getUserItemPreferences().get(3L).containsKey(4L));
+        items = StringDictionary.load(new File(prefix + "_itemId.txt"));
+        assertEquals(4, items.size());
+    }
+
+    @Test
+    public void testAggregation() throws Exception {
+        File data = folder.newFile("lastfm1k.tsv");
+        PrintStream out = new PrintStream(data, "UTF-8");
+        out.println("user_000001\t2009-05-04T13:54:10Z\ta2\t坂本龍一\tt2\tComposition 0919");
+        out.println("user_000001\t2009-05-04T23:08:57Z\ta1\tDeep Dish\tt1\tFuck Me Im Famous");
+        out.println("user_000001\t2009-05-05T13:54:10Z\ta2\t坂本龍一\tt2\tComposition 0919");
+        out.close();
+        Properties properties = new Properties();
+        properties.setProperty(ParserRunner.DATASET_FILE, data.getPath());
+        properties.setProperty(ParserRunner.DATASET_PARSER, LastfmCelma1KParser.class.getName());
+        properties.setProperty(ParserRunner.LASTFM_IDS_PREFIX, new File(folder.getRoot(), "map").getPath());
+        properties.setProperty(ParserRunner.LASTFM_USEARTISTS, "false");
+        properties.setProperty(ParserRunner.DATASET_AGGREGATION, "count");
+        TemporalDataModelIF<Long, Long> dm = ParserRunner.run(properties);
+        assertEquals(2.0, dm.getUserItemPreferences().get(1L).get(1L), 0.0);
+        assertEquals(1.0, dm.getUserItemPreferences().get(1L).get(2L), 0.0);
+        // only the latest timestamp of every pair
+        assertEquals(1, dm.getUserItemTimestamps().get(1L).get(1L).size());
+        assertTrue(dm.getUserItemTimestamps().get(1L).get(1L).contains(1241531650000L));
+        // a half-life of one day
+        properties.setProperty(ParserRunner.DATASET_AGGREGATION, "decayed");
+        properties.setProperty(ParserRunner.DATASET_AGGREGATION_HALFLIFE, "86400000");
+        dm = ParserRunner.run(properties);
+        assertEquals(1.5, dm.getUserItemPreferences().get(1L).get(1L), 1e-9);
+    }
+
+    @Test
+    public void testParse360K() throws IOException {
+        File data = folder.newFile("lastfm360k.tsv");
+        PrintStream out = new PrintStream(data, "UTF-8");
+        out.println("u1\ta1\tbetty blowtorch\t2137");
+        out.println("u1\ta2\tdie Ärzte\t1099");
+        out.println("u2\ta2\tdie Ärzte\t0.5");
+        out.close();
+        TemporalDataModelIF<Long, Long> dm = new LastfmCelma360KParser(true).parseTemporalData(data, null);
+        assertEquals(2, dm.getNumUsers());
+        assertEquals(2, dm.getNumItems());
+        assertEquals(2137.0, dm.getUserItemPreferences().get(1L).get(1L), 0.0);
+        assertEquals(0.5, dm.getUserItemPreferences().get(2L).get(2L), 0.0);
+    }
+}
@@ -17,11 +17,21 @@ package net.recommenders.rival.split.splitter;
 
 import net.recommenders.rival.core.DataModelFactory;
 import net.recommenders.rival.core.DataModelIF;
+import net.recommenders.rival.core.PrimitiveDataModel;
+import net.recommenders.rival.core.ShardedDataModel;
+import net.recommenders.rival.core.TemporalDataModel;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -40,6 +50,11 @@ public class SplitTest {
      * The number of items in the data model.
      */
     private static final int ITEMS = 10;
+    /**
+     * Folder for the split files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     @Test
     public void testCrossValidation() {
@@ -82,6 +97,68 @@ public class SplitTest {
         }
     }
 
+    @Test
+    public void testCrossValidationPrimitive() {
+        PrimitiveDataModel dm = DataModelFactory.getPrimitiveModel();
+        for (long u = 1L; u <= USERS; u++) {
+            for (long i = 1L; i <= ITEMS; i++) {
+                dm.addPreference(u, i, 1.0 * u * i);
+            }
+        }
+
+        int nFolds = 5;
+
+        DataModelIF<Long, Long>[] splits = new CrossValidationSplitter<Long, Long>(nFolds, false, 1L).split(dm);
+
+        assertTrue(splits.length == 2 * nFolds);
+        int nPreferences = 0;
+        for (int i = 0; i < nFolds; i++) {
+            // every split shares the dictionaries of the original data
+            PrimitiveDataModel test = (PrimitiveDataModel) splits[2 * i + 1];
+            assertTrue(test.getUserDictionary() == dm.getUserDictionary());
+            assertTrue(test.getItemDictionary() == dm.getItemDictionary());
+            nPreferences += test.getNumPreferences();
+        }
+        // every preference appears in exactly one test split
+        assertTrue(nPreferences == dm.getNumPreferences());
+    }
+
+    @Test
+    public void testCrossValidationSharded() {
+        DataModelIF<Long, Long> dm = DataModelFactory.getDefaultModel();
+        for (long u = 1L; u <= USERS; u++) {
+            for (long i = 1L; i <= ITEMS; i++) {
+                dm.addPreference(u, i, 1.0 * u * i);
+            }
+        }
+
+        final int nFolds = 5;
+        ShardedDataModel<Long, Long> sharded = ShardedDataModel.shard(dm, 3);
+        DataModelIF<Long, Long>[] splits = new ShardedSplitter<Long, Long>(new ShardedSplitter.SplitterFactory<Long, Long>() {
+            @Override
+            public Splitter<Long, Long> create(final int shard) {
+                return new CrossValidationSplitter<Long, Long>(nFolds, true, 1L + shard);
+            }
+        }, 2).split((DataModelIF<Long, Long>) sharded);
+
+        assertTrue(splits.length == 2 * nFolds);
+        for (int i = 0; i < nFolds; i++) {
+            ShardedDataModel<Long, Long> training = (ShardedDataModel<Long, Long>) splits[2 * i];
+            ShardedDataModel<Long, Long> test = (ShardedDataModel<Long, Long>) splits[2 * i + 1];
+            assertTrue(test.getNumShards() == 3);
+            // per user split: every user is in every training and test split
+            assertTrue(training.getNumUsers() == USERS);
+            assertTrue(test.getNumUsers() == USERS);
+            for (long u = 1L; u <= USERS; u++) {
+                Map<Long, Double> testPrefs = test.getUserItemPreferences().get(u);
+                assertTrue(testPrefs.size() == ITEMS / nFolds);
+                for (long item : testPrefs.keySet()) {
+                    assertTrue(!training.getUserItemPreferences().get(u).containsKey(item));
+                }
+            }
+        }
+    }
+
     @Test
     public void testRandom() {
         DataModelIF<Long, Long> dm = DataModelFactory.getDefaultModel();
@@ -194,5 +271,53 @@ public class SplitTest {
 
     }
 
-
+    @Test
+    public void testFingerprint() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(SplitterRunner.DATASET_SPLITTER, RandomSplitter.class.getName());
+        properties.setProperty(SplitterRunner.SPLIT_PERUSER, "false");
+        properties.setProperty(SplitterRunner.SPLIT_RANDOM_PERCENTAGE, "0.8");
+        properties.setProperty(SplitterRunner.SPLIT_SEED, "2016");
+        properties.setProperty(SplitterRunner.SPLIT_OUTPUT_FOLDER, folder.getRoot().getPath() + File.separator);
+        properties.setProperty(SplitterRunner.SPLIT_OUTPUT_OVERWRITE, "true");
+        properties.setProperty(SplitterRunner.SPLIT_TRAINING_PREFIX, "train_");
+        properties.setProperty(SplitterRunner.SPLIT_TRAINING_SUFFIX, ".tsv");
+        properties.setProperty(SplitterRunner.SPLIT_TEST_PREFIX, "test_");
+        properties.setProperty(SplitterRunner.SPLIT_TEST_SUFFIX, ".tsv");
+        properties.setProperty(SplitterRunner.SPLIT_FINGERPRINT, "true");
+        TemporalDataModel<Long, Long> dm = new TemporalDataModel<>();
+        for (long u = 1L; u <= USERS; u++) {
+            for (long i = 1L; i <= ITEMS; i++) {
+                dm.addPreference(u, i, 1.0 * u * i);
+            }
+        }
+        SplitterRunner.run(properties, dm, false);
+        File training = new File(folder.getRoot(), "train_0.tsv");
+        assertTrue(training.isFile());
+        assertTrue(new File(folder.getRoot(), SplitterRunner.FINGERPRINT_FILE).isFile());
+        // same data and parameters: the splits are not written again
+        assertTrue(training.delete() && training.createNewFile());
+        SplitterRunner.run(properties, dm, false);
+        assertEquals(0L, training.length());
+        // other parameters or other data: the splits are written again
+        properties.setProperty(SplitterRunner.SPLIT_SEED, "2017");
+        SplitterRunner.run(properties, dm, false);
+        assertTrue(training.length() > 0L);
+        assertTrue(training.delete() && training.createNewFile());
+        dm.addPreference(1L, 1L, 2.0);
+        SplitterRunner.run(properties, dm, false);
+        assertTrue(training.length() > 0L);
+        // existing split files that are not overwritten: no fingerprint, so the next run writes them
+        File fingerprint = new File(folder.getRoot(), SplitterRunner.FINGERPRINT_FILE);
+        properties.setProperty(SplitterRunner.SPLIT_OUTPUT_OVERWRITE, "false");
+        properties.setProperty(SplitterRunner.SPLIT_SEED, "2018");
+        assertTrue(training.delete() && training.createNewFile());
+        SplitterRunner.run(properties, dm, false);
+        assertEquals(0L, training.length());
+        assertFalse(fingerprint.exists());
+        properties.setProperty(SplitterRunner.SPLIT_OUTPUT_OVERWRITE, "true");
+        SplitterRunner.run(properties, dm, false);
+        assertTrue(training.length() > 0L);
+        assertTrue(fingerprint.isFile());
+    }
 }